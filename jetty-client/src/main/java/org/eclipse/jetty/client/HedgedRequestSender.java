@@ -0,0 +1,520 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2015 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+package org.eclipse.jetty.client;
+
+import java.net.HttpCookie;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+import org.eclipse.jetty.client.api.ContentResponse;
+import org.eclipse.jetty.client.api.Request;
+import org.eclipse.jetty.client.api.Result;
+import org.eclipse.jetty.client.util.BufferingResponseListener;
+import org.eclipse.jetty.http.HttpField;
+import org.eclipse.jetty.http.HttpHeader;
+import org.eclipse.jetty.http.HttpMethod;
+import org.eclipse.jetty.util.Promise;
+import org.eclipse.jetty.util.annotation.ManagedAttribute;
+import org.eclipse.jetty.util.annotation.ManagedObject;
+import org.eclipse.jetty.util.annotation.ManagedOperation;
+import org.eclipse.jetty.util.log.Log;
+import org.eclipse.jetty.util.log.Logger;
+import org.eclipse.jetty.util.thread.Scheduler;
+
+/**
+ * <p>Sends hedged requests to reduce tail latency.</p>
+ * <p>A request is sent normally and, if it has not completed within the hedging delay,
+ * a duplicate request (the hedge) is sent.
+ * The first response that completes successfully is used, and the other request is aborted.
+ * If the request fails before the hedging delay expires, the hedge is sent immediately.</p>
+ * <p>A response with a {@code 5xx} status code, for example a fast {@code 503} from a degraded
+ * server, does not win: it is treated like a failure, so the hedge is sent immediately and
+ * the other request is not aborted. The {@code 5xx} response is used only if no other request
+ * completes with a better response.</p>
+ * <p>The hedging delay is the {@link #getPercentile() percentile} of the latencies of the
+ * recently completed requests, bounded by {@link #getMinDelay()} and {@link #getMaxDelay()}.
+ * Until enough latencies have been recorded, the max delay is used.</p>
+ * <p>The number of hedges is limited by a budget: each request adds {@link #getBudgetRatio()}
+ * tokens, up to {@link #getMaxBudget()} tokens, and each hedge takes one token.
+ * The budget is initially full.
+ * When no token is available, the hedge is not sent.</p>
+ * <p>Only requests with idempotent methods are hedged.
+ * By default the hedge is a copy of the request to the same destination, which
+ * is sent on a different connection; requests with content are not copied, because
+ * the content may not be reproducible.
+ * Applications may provide the hedge explicitly, for example to send it to another replica,
+ * with {@link #send(Request, Supplier, Promise)}.</p>
+ * <p>Since two responses may be received for the same request, response content is buffered
+ * and returned as a {@link ContentResponse}.</p>
+ * <p>Example usage:</p>
+ * <pre>
+ * HedgedRequestSender sender = new HedgedRequestSender(httpClient);
+ * sender.send(httpClient.newRequest("http://replica1/path"), () -&gt; httpClient.newRequest("http://replica2/path"), new Promise&lt;ContentResponse&gt;()
+ * {
+ *     public void succeeded(ContentResponse response)
+ *     {
+ *         // The first response received
+ *     }
+ *
+ *     public void failed(Throwable failure)
+ *     {
+ *         // Both the request and the hedge failed
+ *     }
+ * });
+ * </pre>
+ */
+@ManagedObject("Sends hedged requests")
+public class HedgedRequestSender
+{
+    private static final Logger LOG = Log.getLogger(HedgedRequestSender.class);
+    private static final Set<String> IDEMPOTENT_METHODS = Collections.unmodifiableSet(new HashSet<>(Arrays.asList(
+            HttpMethod.GET.asString(),
+            HttpMethod.HEAD.asString(),
+            HttpMethod.OPTIONS.asString(),
+            HttpMethod.TRACE.asString(),
+            HttpMethod.PUT.asString(),
+            HttpMethod.DELETE.asString())));
+    private static final int TOKEN = 1000;
+
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong hedges = new AtomicLong();
+    private final AtomicLong hedgeWins = new AtomicLong();
+    private final AtomicLong throttled = new AtomicLong();
+    private final AtomicLong tokens = new AtomicLong();
+    private final AtomicLong samples = new AtomicLong();
+    private final HttpClient client;
+    private final long[] latencies;
+    private volatile long delay;
+    private volatile double percentile = 95;
+    private volatile long minDelay = 10;
+    private volatile long maxDelay = 1000;
+    private volatile double budgetRatio = 0.1;
+    private volatile int maxBudget = 10;
+    private volatile int maxContentLength = 2 * 1024 * 1024;
+
+    public HedgedRequestSender(HttpClient client)
+    {
+        this(client, 1024);
+    }
+
+    /**
+     * @param client the {@link HttpClient} that sends the requests
+     * @param window the number of recent request latencies used to compute the hedging delay
+     */
+    public HedgedRequestSender(HttpClient client, int window)
+    {
+        this.client = client;
+        this.latencies = new long[window];
+        this.delay = maxDelay;
+        this.tokens.set((long)maxBudget * TOKEN);
+    }
+
+    /**
+     * @return the percentile of the recent request latencies used as hedging delay
+     */
+    @ManagedAttribute("The percentile of the recent request latencies used as hedging delay")
+    public double getPercentile()
+    {
+        return percentile;
+    }
+
+    /**
+     * @param percentile the percentile of the recent request latencies used as hedging delay
+     */
+    public void setPercentile(double percentile)
+    {
+        if (percentile <= 0 || percentile > 100)
+            throw new IllegalArgumentException("Invalid percentile " + percentile);
+        this.percentile = percentile;
+    }
+
+    /**
+     * @return the min hedging delay, in milliseconds
+     */
+    @ManagedAttribute("The min hedging delay, in milliseconds")
+    public long getMinDelay()
+    {
+        return minDelay;
+    }
+
+    /**
+     * @param minDelay the min hedging delay, in milliseconds
+     */
+    public void setMinDelay(long minDelay)
+    {
+        this.minDelay = minDelay;
+    }
+
+    /**
+     * @return the max hedging delay, in milliseconds
+     */
+    @ManagedAttribute("The max hedging delay, in milliseconds")
+    public long getMaxDelay()
+    {
+        return maxDelay;
+    }
+
+    /**
+     * @param maxDelay the max hedging delay, in milliseconds
+     */
+    public void setMaxDelay(long maxDelay)
+    {
+        this.maxDelay = maxDelay;
+        if (samples.get() < latencies.length)
+            this.delay = maxDelay;
+    }
+
+    /**
+     * @return the fraction of requests that may be hedged
+     */
+    @ManagedAttribute("The fraction of requests that may be hedged")
+    public double getBudgetRatio()
+    {
+        return budgetRatio;
+    }
+
+    /**
+     * @param budgetRatio the fraction of requests that may be hedged
+     */
+    public void setBudgetRatio(double budgetRatio)
+    {
+        this.budgetRatio = budgetRatio;
+    }
+
+    /**
+     * @return the max number of hedges that may be sent in a burst
+     */
+    @ManagedAttribute("The max number of hedges that may be sent in a burst")
+    public int getMaxBudget()
+    {
+        return maxBudget;
+    }
+
+    /**
+     * @param maxBudget the max number of hedges that may be sent in a burst
+     */
+    public void setMaxBudget(int maxBudget)
+    {
+        this.maxBudget = maxBudget;
+        tokens.accumulateAndGet((long)maxBudget * TOKEN, Math::min);
+    }
+
+    /**
+     * @return the max length, in bytes, of the response content
+     */
+    public int getMaxContentLength()
+    {
+        return maxContentLength;
+    }
+
+    /**
+     * @param maxContentLength the max length, in bytes, of the response content
+     */
+    public void setMaxContentLength(int maxContentLength)
+    {
+        this.maxContentLength = maxContentLength;
+    }
+
+    /**
+     * @return the current hedging delay, in milliseconds
+     */
+    @ManagedAttribute(value = "The current hedging delay, in milliseconds", readonly = true)
+    public long getDelay()
+    {
+        return delay;
+    }
+
+    @ManagedAttribute(value = "The number of requests sent", readonly = true)
+    public long getRequests()
+    {
+        return requests.get();
+    }
+
+    @ManagedAttribute(value = "The number of hedges sent", readonly = true)
+    public long getHedges()
+    {
+        return hedges.get();
+    }
+
+    @ManagedAttribute(value = "The number of hedges that completed before the request", readonly = true)
+    public long getHedgeWins()
+    {
+        return hedgeWins.get();
+    }
+
+    @ManagedAttribute(value = "The number of hedges not sent because the budget was exhausted", readonly = true)
+    public long getThrottled()
+    {
+        return throttled.get();
+    }
+
+    @ManagedOperation(value = "Resets the statistics", impact = "ACTION")
+    public void resetStatistics()
+    {
+        requests.set(0);
+        hedges.set(0);
+        hedgeWins.set(0);
+        throttled.set(0);
+    }
+
+    /**
+     * <p>Sends the given request, hedging it with a copy of the request to the same destination.</p>
+     *
+     * @param request the request to send
+     * @param promise the promise notified with the first response
+     */
+    public void send(Request request, Promise<ContentResponse> promise)
+    {
+        send(request, request.getContent() == null ? () -> copy(request) : null, promise);
+    }
+
+    /**
+     * <p>Sends the given request, hedging it with the request provided by the given supplier.</p>
+     *
+     * @param request the request to send
+     * @param hedge the supplier of the hedge request, or null to not hedge the request
+     * @param promise the promise notified with the first response
+     */
+    public void send(Request request, Supplier<Request> hedge, Promise<ContentResponse> promise)
+    {
+        requests.incrementAndGet();
+        deposit();
+        boolean hedgeable = hedge != null && IDEMPOTENT_METHODS.contains(request.getMethod().toUpperCase(Locale.ENGLISH));
+        new Hedge(hedgeable ? hedge : null, promise).send(request, false);
+    }
+
+    /**
+     * @param request the request to copy
+     * @return a copy of the given request, sent to the same destination
+     */
+    protected Request copy(Request request)
+    {
+        Request copy = client.newRequest(request.getURI())
+                .method(request.getMethod())
+                .version(request.getVersion())
+                .agent(request.getAgent())
+                .idleTimeout(request.getIdleTimeout(), TimeUnit.MILLISECONDS)
+                .timeout(request.getTimeout(), TimeUnit.MILLISECONDS)
+                .followRedirects(request.isFollowRedirects());
+        for (HttpField field : request.getHeaders())
+        {
+            if (field.getHeader() == HttpHeader.HOST)
+                continue;
+            String value = field.getValue();
+            if (!copy.getHeaders().contains(field.getName(), value))
+                copy.header(field.getName(), value);
+        }
+        for (HttpCookie cookie : request.getCookies())
+            copy.cookie(cookie);
+        request.getAttributes().forEach(copy::attribute);
+        return copy;
+    }
+
+    private void deposit()
+    {
+        long deposit = (long)(getBudgetRatio() * TOKEN);
+        long max = (long)getMaxBudget() * TOKEN;
+        while (true)
+        {
+            long current = tokens.get();
+            long next = Math.min(current + deposit, max);
+            if (next == current || tokens.compareAndSet(current, next))
+                return;
+        }
+    }
+
+    private boolean withdraw()
+    {
+        while (true)
+        {
+            long current = tokens.get();
+            if (current < TOKEN)
+                return false;
+            if (tokens.compareAndSet(current, current - TOKEN))
+                return true;
+        }
+    }
+
+    private void record(long latency)
+    {
+        // Concurrent updates may overwrite each other,
+        // which is acceptable for a sample of latencies.
+        long sample = samples.getAndIncrement();
+        int length = latencies.length;
+        latencies[(int)(sample % length)] = latency;
+        // Recompute the delay every 1/16 of the window, once the window is full.
+        if (sample + 1 >= length && (sample + 1) % Math.max(1, length / 16) == 0)
+        {
+            long[] copy = latencies.clone();
+            Arrays.sort(copy);
+            int index = (int)Math.ceil(getPercentile() / 100 * length) - 1;
+            long value = TimeUnit.NANOSECONDS.toMillis(copy[Math.max(0, index)]);
+            delay = Math.max(getMinDelay(), Math.min(getMaxDelay(), value));
+        }
+    }
+
+    private class Hedge
+    {
+        private final AtomicBoolean complete = new AtomicBoolean();
+        private final AtomicBoolean hedged = new AtomicBoolean();
+        private final AtomicInteger pending = new AtomicInteger();
+        private final List<Request> requests = new CopyOnWriteArrayList<>();
+        private final Supplier<Request> hedge;
+        private final Promise<ContentResponse> promise;
+        private volatile Scheduler.Task task;
+        private volatile Throwable failure;
+        private volatile ContentResponse lost;
+
+        private Hedge(Supplier<Request> hedge, Promise<ContentResponse> promise)
+        {
+            this.hedge = hedge;
+            this.promise = promise;
+        }
+
+        private void send(Request request, boolean isHedge)
+        {
+            pending.incrementAndGet();
+            requests.add(request);
+            if (!isHedge && hedge != null)
+                task = client.getScheduler().schedule(this::hedge, delay, TimeUnit.MILLISECONDS);
+            long begin = System.nanoTime();
+            request.send(new BufferingResponseListener(getMaxContentLength())
+            {
+                @Override
+                public void onComplete(Result result)
+                {
+                    if (result.isSucceeded())
+                    {
+                        ContentResponse response = new HttpContentResponse(result.getResponse(), getContent(), getMediaType(), getEncoding());
+                        if (response.getStatus() >= 500)
+                        {
+                            lost(request, response, isHedge);
+                        }
+                        else
+                        {
+                            record(System.nanoTime() - begin);
+                            succeeded(request, response, isHedge);
+                        }
+                    }
+                    else
+                    {
+                        failed(request, result.getFailure(), isHedge);
+                    }
+                }
+            });
+        }
+
+        private void hedge()
+        {
+            // Hold a pending count, so that a concurrent failure
+            // of the request is not reported while hedging.
+            pending.incrementAndGet();
+            if (!complete.get() && hedged.compareAndSet(false, true))
+            {
+                if (withdraw())
+                {
+                    hedges.incrementAndGet();
+                    Request request = hedge.get();
+                    if (LOG.isDebugEnabled())
+                        LOG.debug("Hedging {} with {}", requests.get(0), request);
+                    send(request, true);
+                }
+                else
+                {
+                    throttled.incrementAndGet();
+                    if (LOG.isDebugEnabled())
+                        LOG.debug("Hedge throttled for {}", requests.get(0));
+                }
+            }
+            done();
+        }
+
+        private void succeeded(Request request, ContentResponse response, boolean isHedge)
+        {
+            if (complete.compareAndSet(false, true))
+            {
+                Scheduler.Task task = this.task;
+                if (task != null)
+                    task.cancel();
+                if (isHedge)
+                    hedgeWins.incrementAndGet();
+                for (Request other : requests)
+                {
+                    if (other != request)
+                        other.abort(new CancellationException("Hedged request completed"));
+                }
+                promise.succeeded(response);
+            }
+        }
+
+        private void lost(Request request, ContentResponse response, boolean isHedge)
+        {
+            if (LOG.isDebugEnabled())
+                LOG.debug("Server error {} for {}", response.getStatus(), request);
+            this.lost = response;
+            hedgeNow(isHedge);
+            done();
+        }
+
+        private void failed(Request request, Throwable failure, boolean isHedge)
+        {
+            if (LOG.isDebugEnabled())
+                LOG.debug("Failed " + request, failure);
+            this.failure = failure;
+            hedgeNow(isHedge);
+            done();
+        }
+
+        private void hedgeNow(boolean isHedge)
+        {
+            // Send the hedge immediately if the request did not succeed.
+            if (!isHedge && hedge != null)
+            {
+                Scheduler.Task task = this.task;
+                if (task != null)
+                    task.cancel();
+                hedge();
+            }
+        }
+
+        private void done()
+        {
+            if (pending.decrementAndGet() == 0 && complete.compareAndSet(false, true))
+            {
+                // A server error response is better than no response.
+                ContentResponse lost = this.lost;
+                if (lost != null)
+                    promise.succeeded(lost);
+                else
+                    promise.failed(failure);
+            }
+        }
+    }
+}
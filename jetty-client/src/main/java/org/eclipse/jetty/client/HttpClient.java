@@ -21,6 +21,7 @@ package org.eclipse.jetty.client;
 import java.net.CookieManager;
 import java.net.CookiePolicy;
 import java.net.CookieStore;
+import java.net.Inet6Address;
 import java.net.InetSocketAddress;
 import java.net.Socket;
 import java.net.SocketAddress;
@@ -43,6 +44,8 @@ import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.eclipse.jetty.client.api.AuthenticationStore;
 import org.eclipse.jetty.client.api.Connection;
@@ -127,6 +130,7 @@ public class HttpClient extends ContainerLifeCycle
     private volatile ByteBufferPool byteBufferPool;
     private volatile Scheduler scheduler;
     private volatile SocketAddressResolver resolver;
+    private volatile HttpResponseCache responseCache;
     private volatile HttpField agentField = new HttpField(HttpHeader.USER_AGENT, "Jetty/" + Jetty.VERSION);
     private volatile boolean followRedirects = true;
     private volatile int maxConnectionsPerDestination = 64;
@@ -136,6 +140,7 @@ public class HttpClient extends ContainerLifeCycle
     private volatile int maxRedirects = 8;
     private volatile SocketAddress bindAddress;
     private volatile long connectTimeout = 15000;
+    private volatile long connectAttemptDelay;
     private volatile long addressResolutionTimeout = 15000;
     private volatile long idleTimeout;
     private volatile boolean tcpNoDelay = true;
@@ -528,6 +533,15 @@ public class HttpClient extends ContainerLifeCycle
     }
 
     protected void send(final HttpRequest request, List<Response.ResponseListener> listeners)
+    {
+        HttpResponseCache cache = getResponseCache();
+        if (cache != null)
+            cache.send(request, listeners);
+        else
+            sendToDestination(request, listeners);
+    }
+
+    void sendToDestination(HttpRequest request, List<Response.ResponseListener> listeners)
     {
         String scheme = request.getScheme().toLowerCase(Locale.ENGLISH);
         String host = request.getHost().toLowerCase(Locale.ENGLISH);
@@ -545,7 +559,11 @@ public class HttpClient extends ContainerLifeCycle
             {
                 Map<String, Object> context = new HashMap<>();
                 context.put(HttpClientTransport.HTTP_DESTINATION_CONTEXT_KEY, destination);
-                connect(socketAddresses, 0, context);
+                long delay = getConnectAttemptDelay();
+                if (delay > 0 && socketAddresses.size() > 1)
+                    new ConcurrentConnect(interleave(socketAddresses), context, delay, promise).next();
+                else
+                    connect(socketAddresses, 0, context);
             }
 
             @Override
@@ -579,6 +597,38 @@ public class HttpClient extends ContainerLifeCycle
         });
     }
 
+    /**
+     * <p>Reorders the given addresses so that address families alternate,
+     * starting with the family of the first address.</p>
+     *
+     * @param addresses the addresses to reorder
+     * @return the addresses, interleaved by address family
+     */
+    protected static List<InetSocketAddress> interleave(List<InetSocketAddress> addresses)
+    {
+        List<InetSocketAddress> ipv6 = new ArrayList<>();
+        List<InetSocketAddress> ipv4 = new ArrayList<>();
+        for (InetSocketAddress address : addresses)
+        {
+            if (address.getAddress() instanceof Inet6Address)
+                ipv6.add(address);
+            else
+                ipv4.add(address);
+        }
+        boolean ipv6First = addresses.get(0).getAddress() instanceof Inet6Address;
+        List<InetSocketAddress> first = ipv6First ? ipv6 : ipv4;
+        List<InetSocketAddress> second = ipv6First ? ipv4 : ipv6;
+        List<InetSocketAddress> result = new ArrayList<>(addresses.size());
+        for (int i = 0; i < Math.max(first.size(), second.size()); ++i)
+        {
+            if (i < first.size())
+                result.add(first.get(i));
+            if (i < second.size())
+                result.add(second.get(i));
+        }
+        return result;
+    }
+
     private HttpConversation newConversation()
     {
         return new HttpConversation();
@@ -628,6 +678,33 @@ public class HttpClient extends ContainerLifeCycle
         this.connectTimeout = connectTimeout;
     }
 
+    /**
+     * @return the delay, in milliseconds, before attempting to connect to the next address of a destination
+     * @see #setConnectAttemptDelay(long)
+     */
+    @ManagedAttribute("The delay, in milliseconds, before attempting to connect to the next address")
+    public long getConnectAttemptDelay()
+    {
+        return connectAttemptDelay;
+    }
+
+    /**
+     * <p>Sets the delay before attempting to connect to the next address when a destination
+     * host resolves to multiple addresses, in the style of "Happy Eyeballs" (RFC 8305).</p>
+     * <p>When positive, the addresses are interleaved by address family, and connect attempts
+     * are started one after the other every {@code connectAttemptDelay} milliseconds, or as
+     * soon as the previous attempt fails, without waiting for the previous attempts to complete.
+     * The first connection established is used, the others are closed.</p>
+     * <p>When zero (the default), the addresses are tried sequentially, each waiting for
+     * the previous attempt to fail.</p>
+     *
+     * @param connectAttemptDelay the delay, in milliseconds, before attempting to connect to the next address
+     */
+    public void setConnectAttemptDelay(long connectAttemptDelay)
+    {
+        this.connectAttemptDelay = connectAttemptDelay;
+    }
+
     /**
      * @return the timeout, in milliseconds, for the default {@link SocketAddressResolver} created at startup
      * @see #getSocketAddressResolver()
@@ -772,6 +849,23 @@ public class HttpClient extends ContainerLifeCycle
         this.resolver = resolver;
     }
 
+    /**
+     * @return the {@link HttpResponseCache} of this {@link HttpClient}, or null if responses are not cached
+     */
+    public HttpResponseCache getResponseCache()
+    {
+        return responseCache;
+    }
+
+    /**
+     * @param responseCache the {@link HttpResponseCache} of this {@link HttpClient}, or null to not cache responses
+     */
+    public void setResponseCache(HttpResponseCache responseCache)
+    {
+        updateBean(this.responseCache, responseCache);
+        this.responseCache = responseCache;
+    }
+
     /**
      * @return the max number of connections that this {@link HttpClient} opens to {@link Destination}s
      */
@@ -1192,4 +1286,91 @@ public class HttpClient extends ContainerLifeCycle
             }
         }
     }
+
+    /**
+     * <p>Connects to a list of addresses with staggered, concurrent, connect attempts.</p>
+     * <p>Each attempt holds a count in {@code pending}, so that the failure is only
+     * reported when all the attempts have failed and no more addresses are left.</p>
+     */
+    private class ConcurrentConnect
+    {
+        private final AtomicBoolean complete = new AtomicBoolean();
+        private final AtomicInteger index = new AtomicInteger();
+        private final AtomicInteger pending = new AtomicInteger();
+        private final List<InetSocketAddress> addresses;
+        private final Map<String, Object> context;
+        private final long delay;
+        private final Promise<Connection> promise;
+        private volatile Scheduler.Task task;
+        private volatile Throwable failure;
+
+        private ConcurrentConnect(List<InetSocketAddress> addresses, Map<String, Object> context, long delay, Promise<Connection> promise)
+        {
+            this.addresses = addresses;
+            this.context = context;
+            this.delay = delay;
+            this.promise = promise;
+        }
+
+        private void next()
+        {
+            pending.incrementAndGet();
+            int next = index.getAndIncrement();
+            if (next >= addresses.size() || complete.get())
+            {
+                done();
+                return;
+            }
+
+            InetSocketAddress address = addresses.get(next);
+            if (LOG.isDebugEnabled())
+                LOG.debug("Connect attempt {}/{} to {}", next + 1, addresses.size(), address);
+
+            Scheduler.Task task = this.task;
+            if (task != null)
+                task.cancel();
+            if (next + 1 < addresses.size())
+                this.task = scheduler.schedule(this::next, delay, TimeUnit.MILLISECONDS);
+
+            Map<String, Object> context = new HashMap<>(this.context);
+            context.put(HttpClientTransport.HTTP_CONNECTION_PROMISE_CONTEXT_KEY, new Promise<Connection>()
+            {
+                @Override
+                public void succeeded(Connection connection)
+                {
+                    if (complete.compareAndSet(false, true))
+                    {
+                        Scheduler.Task task = ConcurrentConnect.this.task;
+                        if (task != null)
+                            task.cancel();
+                        promise.succeeded(connection);
+                    }
+                    else
+                    {
+                        if (LOG.isDebugEnabled())
+                            LOG.debug("Closing redundant connection to {}", address);
+                        connection.close();
+                    }
+                }
+
+                @Override
+                public void failed(Throwable x)
+                {
+                    if (LOG.isDebugEnabled())
+                        LOG.debug("Connect attempt to " + address + " failed", x);
+                    failure = x;
+                    // Do not wait for the delay to try the next address.
+                    next();
+                    done();
+                }
+            });
+            transport.connect(address, context);
+        }
+
+        private void done()
+        {
+            if (pending.decrementAndGet() == 0 && complete.compareAndSet(false, true))
+                promise.failed(failure);
+        }
+    }
 }
@@ -27,6 +27,7 @@ import java.util.Enumeration;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
 
 import org.eclipse.jetty.client.api.Response;
@@ -62,6 +63,11 @@ import org.eclipse.jetty.util.log.Logger;
  * <p>
  * The state machine maintained by this class ensures that the response steps are not executed by an I/O thread
  * if the response has already been failed.
+ * <p>
+ * When the response has {@link Response.DemandedContentListener}s, response content is only delivered
+ * when it has been {@link #demand(long) demanded}. Content that is not demanded is held, without completing
+ * the callback passed to {@link #responseContent(HttpExchange, ByteBuffer, Callback)}, so that subclasses
+ * stop reading from the network until more content is demanded.
  *
  * @see HttpSender
  */
@@ -70,6 +76,9 @@ public abstract class HttpReceiver
     protected static final Logger LOG = Log.getLogger(HttpReceiver.class);
 
     private final AtomicReference<ResponseState> responseState = new AtomicReference<>(ResponseState.IDLE);
+    private final AtomicLong demand = new AtomicLong();
+    private final AtomicReference<Runnable> stalled = new AtomicReference<>();
+    private volatile boolean demanding;
     private final HttpChannel channel;
     private ContentDecoder decoder;
     private Throwable failure;
@@ -254,7 +263,14 @@ public abstract class HttpReceiver
         if (LOG.isDebugEnabled())
             LOG.debug("Response headers {}{}{}", response, System.lineSeparator(), response.getHeaders().toString().trim());
         ResponseNotifier notifier = getHttpDestination().getResponseNotifier();
-        notifier.notifyHeaders(exchange.getConversation().getResponseListeners(), response);
+        List<Response.ResponseListener> listeners = exchange.getConversation().getResponseListeners();
+        notifier.notifyHeaders(listeners, response);
+
+        if (notifier.hasDemandedContentListener(listeners))
+        {
+            demanding = true;
+            notifier.notifyBeforeContent(listeners, response, this::demand);
+        }
 
         Enumeration<String> contentEncodings = response.getHeaders().getValues(HttpHeader.CONTENT_ENCODING.asString(), ",");
         if (contentEncodings != null)
@@ -291,6 +307,14 @@ public abstract class HttpReceiver
      */
     protected boolean responseContent(HttpExchange exchange, ByteBuffer buffer, final Callback callback)
     {
+        if (demanding && !acquireDemand())
+        {
+            if (LOG.isDebugEnabled())
+                LOG.debug("Response content stalled, no demand {}", exchange.getResponse());
+            stall(() -> responseContent(exchange, buffer, callback));
+            return true;
+        }
+
         out: while (true)
         {
             ResponseState current = responseState.get();
@@ -320,7 +344,7 @@ public abstract class HttpReceiver
         ContentDecoder decoder = this.decoder;
         if (decoder == null)
         {
-            notifier.notifyContent(listeners, response, buffer, callback);
+            notifier.notifyContent(listeners, response, buffer, callback, this::demand);
         }
         else
         {
@@ -337,6 +361,9 @@ public abstract class HttpReceiver
 
             if (decodeds.isEmpty())
             {
+                // Nothing was delivered, give the demand back.
+                if (demanding)
+                    demand.incrementAndGet();
                 callback.succeeded();
             }
             else
@@ -344,7 +371,7 @@ public abstract class HttpReceiver
                 int size = decodeds.size();
                 CountingCallback counter = new CountingCallback(callback, size);
                 for (int i = 0; i < size; ++i)
-                    notifier.notifyContent(listeners, response, decodeds.get(i), counter);
+                    notifier.notifyContent(listeners, response, decodeds.get(i), counter, this::demand);
             }
         }
 
@@ -355,6 +382,60 @@ public abstract class HttpReceiver
         return false;
     }
 
+    /**
+     * <p>Demands {@code n} more chunks of response content.</p>
+     * <p>This method is invoked by {@link Response.DemandedContentListener}s.</p>
+     *
+     * @param n the number of chunks of content demanded, must be positive
+     */
+    public void demand(long n)
+    {
+        if (n <= 0)
+        {
+            HttpExchange exchange = getHttpExchange();
+            if (exchange != null)
+                exchange.getRequest().abort(new IllegalArgumentException("Invalid demand " + n));
+            return;
+        }
+
+        while (true)
+        {
+            long current = demand.get();
+            long next = current + n;
+            // Overflow means unbounded demand.
+            if (next < 0)
+                next = Long.MAX_VALUE;
+            if (demand.compareAndSet(current, next))
+                break;
+        }
+        if (LOG.isDebugEnabled())
+            LOG.debug("Response content demand {}/{}", n, demand.get());
+
+        Runnable action = stalled.getAndSet(null);
+        if (action != null)
+            action.run();
+    }
+
+    private boolean acquireDemand()
+    {
+        while (true)
+        {
+            long current = demand.get();
+            if (current == 0)
+                return false;
+            if (demand.compareAndSet(current, current - 1))
+                return true;
+        }
+    }
+
+    private void stall(Runnable action)
+    {
+        stalled.set(action);
+        // Demand may have arrived concurrently.
+        if (demand.get() > 0 && stalled.compareAndSet(action, null))
+            action.run();
+    }
+
     /**
      * Method to be invoked when the response is successful.
      * <p>
@@ -366,6 +447,23 @@ public abstract class HttpReceiver
      */
     protected boolean responseSuccess(HttpExchange exchange)
     {
+        if (demanding)
+        {
+            // Content that was not demanded yet must be
+            // delivered before the response success.
+            Runnable action = stalled.get();
+            if (action != null)
+            {
+                Runnable deferred = () ->
+                {
+                    action.run();
+                    responseSuccess(exchange);
+                };
+                if (stalled.compareAndSet(action, deferred))
+                    return true;
+            }
+        }
+
         // Mark atomically the response as completed, with respect
         // to concurrency between response success and response failure.
         if (!exchange.responseComplete(null))
@@ -461,6 +559,7 @@ public abstract class HttpReceiver
     protected void reset()
     {
         decoder = null;
+        resetDemand();
     }
 
     /**
@@ -473,6 +572,14 @@ public abstract class HttpReceiver
     protected void dispose()
     {
         decoder = null;
+        resetDemand();
+    }
+
+    private void resetDemand()
+    {
+        demanding = false;
+        demand.set(0);
+        stalled.set(null);
     }
 
     public boolean abort(HttpExchange exchange, Throwable failure)
@@ -0,0 +1,554 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2015 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+package org.eclipse.jetty.client;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.eclipse.jetty.client.api.Request;
+import org.eclipse.jetty.client.api.Response;
+import org.eclipse.jetty.client.api.Result;
+import org.eclipse.jetty.client.util.BufferingResponseListener;
+import org.eclipse.jetty.http.HttpField;
+import org.eclipse.jetty.http.HttpFields;
+import org.eclipse.jetty.http.HttpHeader;
+import org.eclipse.jetty.http.HttpMethod;
+import org.eclipse.jetty.util.BufferUtil;
+import org.eclipse.jetty.util.annotation.ManagedAttribute;
+import org.eclipse.jetty.util.annotation.ManagedObject;
+import org.eclipse.jetty.util.annotation.ManagedOperation;
+import org.eclipse.jetty.util.log.Log;
+import org.eclipse.jetty.util.log.Logger;
+
+/**
+ * <p>A shared HTTP cache for the responses received by {@link HttpClient}.</p>
+ * <p>The cache is installed with {@link HttpClient#setResponseCache(HttpResponseCache)}
+ * and stores the responses to {@code GET} requests, keyed by origin and request URI,
+ * following the {@code Cache-Control} and {@code Expires} response headers.</p>
+ * <p>Fresh responses are served from the cache without network activity.
+ * Stale responses are revalidated with a conditional request that carries the
+ * {@code If-None-Match} and {@code If-Modified-Since} headers; if the server replies
+ * with {@code 304 Not Modified}, the cached response is served.
+ * Concurrent requests for the same key that miss the cache are coalesced: only one
+ * request is sent to the server, and the others are served with its response when it
+ * is cacheable, or sent to the server as soon as its response headers show that it is
+ * not; in that case the key is remembered as not cacheable, and later requests for it
+ * are not coalesced until a cacheable response is received.
+ * Requests with unsafe methods invalidate the cached response for their key.</p>
+ * <p>Since a {@link HttpClient} may be shared by many users, the cache follows the
+ * storage rules of a shared cache: responses marked {@code private}, responses that set cookies, and
+ * responses to requests that carry {@code Authorization} or {@code Cookie} headers,
+ * unless marked {@code public}, {@code must-revalidate} or with {@code s-maxage},
+ * are not stored.
+ * Only one response is stored per key; it is served to requests whose headers listed
+ * in its {@code Vary} header match those of the request it was stored for.</p>
+ * <p>Responses are kept in a {@link ResponseStore}, in memory up to
+ * {@link #getMaxMemorySize()} bytes of content; if a directory is configured, responses evicted from memory are moved to files in
+ * that directory, up to {@link #getMaxDiskSize()} bytes of content.
+ * Responses whose content is larger than {@link #getMaxEntrySize()} are not cached.</p>
+ * <p>Responses served from the cache notify the response listeners, but not the request
+ * listeners since no request is sent; they carry an {@code Age} header.
+ * Requests that carry their own conditional or {@code Range} headers, and requests
+ * that are part of a conversation such as a redirect, bypass the cache.</p>
+ */
+@ManagedObject("HTTP response cache")
+public class HttpResponseCache
+{
+    private static final Logger LOG = Log.getLogger(HttpResponseCache.class);
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong revalidations = new AtomicLong();
+    private final AtomicLong coalesced = new AtomicLong();
+    private final ConcurrentMap<String, Miss> pending = new ConcurrentHashMap<>();
+    private final HttpClient client;
+    private final ResponseStore store;
+    private volatile int maxEntrySize = 2 * 1024 * 1024;
+
+    public HttpResponseCache(HttpClient client)
+    {
+        this(client, null);
+    }
+
+    /**
+     * @param client the {@link HttpClient} that uses this cache
+     * @param directory the directory where responses evicted from memory are stored, or null to only use memory
+     */
+    public HttpResponseCache(HttpClient client, Path directory)
+    {
+        this.client = client;
+        this.store = new ResponseStore(directory);
+    }
+
+    /**
+     * @return the directory where responses evicted from memory are stored, or null
+     */
+    public Path getDirectory()
+    {
+        return store.getDirectory();
+    }
+
+    /**
+     * @return the max size, in bytes, of the response content stored in memory
+     */
+    @ManagedAttribute("The max size, in bytes, of the response content stored in memory")
+    public long getMaxMemorySize()
+    {
+        return store.getMaxMemorySize();
+    }
+
+    /**
+     * @param maxMemorySize the max size, in bytes, of the response content stored in memory
+     */
+    public void setMaxMemorySize(long maxMemorySize)
+    {
+        store.setMaxMemorySize(maxMemorySize);
+    }
+
+    /**
+     * @return the max size, in bytes, of the response content stored on disk
+     */
+    @ManagedAttribute("The max size, in bytes, of the response content stored on disk")
+    public long getMaxDiskSize()
+    {
+        return store.getMaxDiskSize();
+    }
+
+    /**
+     * @param maxDiskSize the max size, in bytes, of the response content stored on disk
+     */
+    public void setMaxDiskSize(long maxDiskSize)
+    {
+        store.setMaxDiskSize(maxDiskSize);
+    }
+
+    /**
+     * @return the max size, in bytes, of the content of a cacheable response
+     */
+    @ManagedAttribute("The max size, in bytes, of the content of a cacheable response")
+    public int getMaxEntrySize()
+    {
+        return maxEntrySize;
+    }
+
+    /**
+     * @param maxEntrySize the max size, in bytes, of the content of a cacheable response
+     */
+    public void setMaxEntrySize(int maxEntrySize)
+    {
+        this.maxEntrySize = maxEntrySize;
+    }
+
+    @ManagedAttribute(value = "The number of requests served from the cache without network activity", readonly = true)
+    public long getHits()
+    {
+        return hits.get();
+    }
+
+    @ManagedAttribute(value = "The number of cacheable requests sent to the server", readonly = true)
+    public long getMisses()
+    {
+        return misses.get();
+    }
+
+    @ManagedAttribute(value = "The number of stale responses revalidated by the server", readonly = true)
+    public long getRevalidations()
+    {
+        return revalidations.get();
+    }
+
+    @ManagedAttribute(value = "The number of requests coalesced with a concurrent request", readonly = true)
+    public long getCoalesced()
+    {
+        return coalesced.get();
+    }
+
+    @ManagedAttribute(value = "The number of responses evicted from the cache", readonly = true)
+    public long getEvictions()
+    {
+        return store.getEvictions();
+    }
+
+    @ManagedAttribute(value = "The number of cached responses", readonly = true)
+    public int getSize()
+    {
+        return store.getSize();
+    }
+
+    @ManagedAttribute(value = "The size, in bytes, of the response content stored in memory", readonly = true)
+    public long getMemorySize()
+    {
+        return store.getMemorySize();
+    }
+
+    @ManagedAttribute(value = "The size, in bytes, of the response content stored on disk", readonly = true)
+    public long getDiskSize()
+    {
+        return store.getDiskSize();
+    }
+
+    @ManagedOperation(value = "Resets the statistics", impact = "ACTION")
+    public void resetStatistics()
+    {
+        hits.set(0);
+        misses.set(0);
+        revalidations.set(0);
+        coalesced.set(0);
+        store.resetStatistics();
+    }
+
+    @ManagedOperation(value = "Removes all the cached responses", impact = "ACTION")
+    public void clear()
+    {
+        store.clear();
+    }
+
+    /**
+     * <p>Removes the cached response for the given URI.</p>
+     *
+     * @param request a request for the URI to remove
+     */
+    public void invalidate(Request request)
+    {
+        store.remove(keyFor(request));
+    }
+
+    /**
+     * <p>Sends the given request, serving it from the cache if possible.</p>
+     *
+     * @param request the request to send
+     * @param listeners the response listeners to notify
+     */
+    protected void send(HttpRequest request, List<Response.ResponseListener> listeners)
+    {
+        String method = request.getMethod();
+        if (!HttpMethod.GET.is(method))
+        {
+            if (!HttpMethod.HEAD.is(method) && !HttpMethod.OPTIONS.is(method) && !HttpMethod.TRACE.is(method))
+                store.remove(keyFor(request));
+            client.sendToDestination(request, listeners);
+            return;
+        }
+
+        HttpFields headers = request.getHeaders();
+        ResponseStore.CacheControl cacheControl = new ResponseStore.CacheControl(headers);
+        if (request.getContent() != null ||
+                cacheControl.isNoStore() ||
+                headers.containsKey(HttpHeader.IF_NONE_MATCH.asString()) ||
+                headers.containsKey(HttpHeader.IF_MODIFIED_SINCE.asString()) ||
+                headers.containsKey(HttpHeader.RANGE.asString()) ||
+                !request.getConversation().getExchanges().isEmpty())
+        {
+            client.sendToDestination(request, listeners);
+            return;
+        }
+
+        String key = keyFor(request);
+        ResponseStore.Entry entry = store.lookup(key);
+        if (entry != null && entry.matches(headers))
+        {
+            boolean noCache = cacheControl.isNoCache() || cacheControl.getMaxAge() == 0 || headers.contains(HttpHeader.PRAGMA, "no-cache");
+            if (!noCache && entry.isFresh(System.currentTimeMillis()))
+            {
+                if (LOG.isDebugEnabled())
+                    LOG.debug("Cache hit {} for {}", entry, request);
+                hits.incrementAndGet();
+                serve(entry, request, listeners);
+                return;
+            }
+
+            if (entry.hasValidators())
+            {
+                revalidate(entry, request, listeners);
+                return;
+            }
+        }
+
+        Miss miss = new Miss(key, request);
+        while (!store.isPass(key))
+        {
+            Miss existing = pending.putIfAbsent(key, miss);
+            if (existing == null)
+                break;
+            if (existing.join(request, listeners))
+            {
+                if (LOG.isDebugEnabled())
+                    LOG.debug("Cache miss coalesced with {} for {}", existing, request);
+                coalesced.incrementAndGet();
+                return;
+            }
+            // The existing miss completed, retry.
+            pending.remove(key, existing);
+        }
+
+        if (LOG.isDebugEnabled())
+            LOG.debug("Cache miss {} for {}", key, request);
+        misses.incrementAndGet();
+        // Store the response before the application is notified of its completion.
+        List<Response.ResponseListener> all = new ArrayList<>(listeners.size() + 1);
+        all.add(miss);
+        all.addAll(listeners);
+        client.sendToDestination(request, all);
+    }
+
+    private String keyFor(Request request)
+    {
+        String scheme = request.getScheme().toLowerCase(Locale.ENGLISH);
+        StringBuilder key = new StringBuilder(scheme).append("://")
+                .append(request.getHost().toLowerCase(Locale.ENGLISH))
+                .append(":").append(client.normalizePort(scheme, request.getPort()))
+                .append(request.getPath());
+        String query = request.getQuery();
+        if (query != null)
+            key.append("?").append(query);
+        return key.toString();
+    }
+
+    private void revalidate(ResponseStore.Entry entry, HttpRequest request, List<Response.ResponseListener> listeners)
+    {
+        if (LOG.isDebugEnabled())
+            LOG.debug("Cache revalidate {} for {}", entry, request);
+
+        Request validation = client.newRequest(request.getURI())
+                .version(request.getVersion())
+                .idleTimeout(request.getIdleTimeout(), TimeUnit.MILLISECONDS)
+                .timeout(request.getTimeout(), TimeUnit.MILLISECONDS);
+        for (HttpField field : request.getHeaders())
+            validation.header(field.getName(), field.getValue());
+        String etag = entry.getHeaders().get(HttpHeader.ETAG);
+        if (etag != null)
+            validation.header(HttpHeader.IF_NONE_MATCH, etag);
+        String lastModified = entry.getHeaders().get(HttpHeader.LAST_MODIFIED);
+        if (lastModified != null)
+            validation.header(HttpHeader.IF_MODIFIED_SINCE, lastModified);
+
+        validation.send(new BufferingResponseListener(getMaxEntrySize())
+        {
+            @Override
+            public void onComplete(Result result)
+            {
+                if (result.isFailed())
+                {
+                    // Let the request fail or succeed on its own.
+                    client.sendToDestination(request, listeners);
+                    return;
+                }
+
+                Response response = result.getResponse();
+                ResponseStore.Entry updated;
+                if (response.getStatus() == 304)
+                {
+                    revalidations.incrementAndGet();
+                    updated = entry.revalidate(response.getHeaders());
+                }
+                else
+                {
+                    misses.incrementAndGet();
+                    updated = newEntry(entry.getKey(), request.getHeaders(), response, getContent());
+                }
+
+                if (updated.isStorable())
+                    store.store(updated);
+                else
+                    store.remove(entry.getKey());
+                serve(updated, request, listeners);
+            }
+        });
+    }
+
+    private void serve(ResponseStore.Entry entry, HttpRequest request, List<Response.ResponseListener> listeners)
+    {
+        byte[] content = entry.getContent();
+        if (content == null)
+        {
+            try
+            {
+                content = Files.readAllBytes(entry.getFile());
+            }
+            catch (IOException x)
+            {
+                if (LOG.isDebugEnabled())
+                    LOG.debug("Could not read cached content " + entry, x);
+                store.remove(entry.getKey());
+                client.sendToDestination(request, listeners);
+                return;
+            }
+        }
+
+        HttpResponse response = new HttpResponse(request, listeners)
+                .version(entry.getVersion())
+                .status(entry.getStatus())
+                .reason(entry.getReason());
+        response.getHeaders().add(entry.getHeaders());
+        response.getHeaders().putLongField(HttpHeader.AGE, entry.getAge(System.currentTimeMillis()));
+
+        ResponseNotifier notifier = new ResponseNotifier();
+        Throwable failure = request.getAbortCause();
+        if (failure == null)
+            notifier.forwardSuccessComplete(listeners, request, new HttpContentResponse(response, content, null, null));
+        else
+            notifier.forwardFailureComplete(listeners, request, failure, response, failure);
+    }
+
+    private ResponseStore.Entry newEntry(String key, HttpFields requestHeaders, Response response, byte[] content)
+    {
+        HttpFields headers = new HttpFields(response.getHeaders());
+        String encoding = headers.get(HttpHeader.CONTENT_ENCODING);
+        if (encoding != null)
+        {
+            // The content was decoded when it was received.
+            for (ContentDecoder.Factory factory : client.getContentDecoderFactories())
+            {
+                if (factory.getEncoding().equalsIgnoreCase(encoding))
+                {
+                    headers.remove(HttpHeader.CONTENT_ENCODING);
+                    break;
+                }
+            }
+        }
+        // The headers actually sent, including the cookies and the credentials added by the client.
+        HttpFields sent = response.getRequest().getHeaders();
+        boolean credentials = sent.containsKey(HttpHeader.AUTHORIZATION.asString()) || sent.containsKey(HttpHeader.COOKIE.asString());
+        return ResponseStore.newEntry(key, requestHeaders, response, headers, content, credentials);
+    }
+
+    private class Miss extends Response.Listener.Adapter
+    {
+        private final List<HttpRequest> requests = new ArrayList<>();
+        private final List<List<Response.ResponseListener>> listeners = new ArrayList<>();
+        private final String key;
+        private final HttpRequest request;
+        private final HttpFields requestHeaders;
+        private ByteBuffer content = BufferUtil.EMPTY_BUFFER;
+        private boolean storable;
+        private boolean overflow;
+        private boolean complete;
+
+        private Miss(String key, HttpRequest request)
+        {
+            this.key = key;
+            this.request = request;
+            // Snapshot the headers before they are modified to send the request.
+            this.requestHeaders = new HttpFields(request.getHeaders());
+        }
+
+        private boolean join(HttpRequest request, List<Response.ResponseListener> listeners)
+        {
+            synchronized (this)
+            {
+                if (complete)
+                    return false;
+                this.requests.add(request);
+                this.listeners.add(listeners);
+                return true;
+            }
+        }
+
+        @Override
+        public void onHeaders(Response response)
+        {
+            // The response may be for a redirected request.
+            storable = response.getRequest() == request &&
+                    response.getHeaders().getLongField(HttpHeader.CONTENT_LENGTH.asString()) <= getMaxEntrySize() &&
+                    newEntry(key, requestHeaders, response, new byte[0]).isStorable();
+            store.pass(key, !storable);
+            if (!storable)
+            {
+                // Do not make the coalesced requests wait for a
+                // response that will not be stored: send them now.
+                if (LOG.isDebugEnabled())
+                    LOG.debug("Cache pass {} for {}", key, response);
+                release(null);
+            }
+        }
+
+        @Override
+        public void onContent(Response response, ByteBuffer buffer)
+        {
+            if (!storable || overflow)
+                return;
+            int length = content.remaining() + buffer.remaining();
+            if (length > getMaxEntrySize())
+            {
+                overflow = true;
+                content = null;
+                store.pass(key, true);
+                return;
+            }
+            if (BufferUtil.space(content) < buffer.remaining())
+            {
+                ByteBuffer copy = BufferUtil.allocate(Math.min(Math.max(2 * length, 1024), getMaxEntrySize()));
+                BufferUtil.append(copy, content);
+                content = copy;
+            }
+            BufferUtil.append(content, buffer);
+        }
+
+        @Override
+        public void onComplete(Result result)
+        {
+            ResponseStore.Entry entry = null;
+            if (result.isSucceeded() && storable && !overflow)
+            {
+                entry = newEntry(key, requestHeaders, result.getResponse(), BufferUtil.toArray(content));
+                store.store(entry);
+            }
+            release(entry);
+        }
+
+        private void release(ResponseStore.Entry entry)
+        {
+            List<HttpRequest> requests;
+            List<List<Response.ResponseListener>> listeners;
+            synchronized (this)
+            {
+                complete = true;
+                requests = new ArrayList<>(this.requests);
+                listeners = new ArrayList<>(this.listeners);
+                this.requests.clear();
+                this.listeners.clear();
+            }
+            pending.remove(key, this);
+
+            for (int i = 0; i < requests.size(); ++i)
+            {
+                HttpRequest waiter = requests.get(i);
+                if (entry != null && entry.matches(waiter.getHeaders()))
+                    serve(entry, waiter, listeners.get(i));
+                else
+                    client.sendToDestination(waiter, listeners.get(i));
+            }
+        }
+
+        @Override
+        public String toString()
+        {
+            return String.format("%s@%x[%s]", getClass().getSimpleName(), hashCode(), key);
+        }
+    }
+}
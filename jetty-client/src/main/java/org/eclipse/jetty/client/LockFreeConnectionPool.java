@@ -0,0 +1,341 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2015 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+package org.eclipse.jetty.client;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.eclipse.jetty.client.api.Connection;
+import org.eclipse.jetty.client.api.Destination;
+import org.eclipse.jetty.util.Callback;
+import org.eclipse.jetty.util.annotation.ManagedAttribute;
+import org.eclipse.jetty.util.annotation.ManagedObject;
+import org.eclipse.jetty.util.component.ContainerLifeCycle;
+import org.eclipse.jetty.util.component.Dumpable;
+import org.eclipse.jetty.util.log.Log;
+import org.eclipse.jetty.util.log.Logger;
+import org.eclipse.jetty.util.thread.Sweeper;
+
+/**
+ * <p>A {@link ConnectionPool} for duplex connections that does not take locks
+ * when connections are acquired, released or swept.</p>
+ * <p>Idle connections are kept in a lock-free deque and are selected in LIFO
+ * order, so that the most recently released ("hot") connections are reused first,
+ * while the least recently used ones are left to idle timeout.
+ * Each connection has an entry whose state is changed with compare-and-set
+ * operations, so that a connection is reserved by exactly one thread.</p>
+ * <p>Connections may be retired after they have been used for
+ * {@link #setMaxUsageCount(int) a number of requests}, or after they have been
+ * open for {@link #setMaxAge(long) a period of time}.
+ * Retired connections are closed and replaced by new connections on demand.</p>
+ * <p>This pool may be used in place of {@link DuplexConnectionPool} by overriding
+ * {@link HttpDestination#newConnectionPool(HttpClient)}.</p>
+ */
+@ManagedObject("A lock-free connection pool")
+public class LockFreeConnectionPool extends AbstractConnectionPool implements Dumpable, Sweeper.Sweepable
+{
+    private static final Logger LOG = Log.getLogger(LockFreeConnectionPool.class);
+
+    private final ConcurrentMap<Connection, Entry> entries;
+    private final Deque<Entry> idleEntries = new ConcurrentLinkedDeque<>();
+    private final AtomicLong retired = new AtomicLong();
+    private volatile int maxUsageCount;
+    private volatile long maxAge;
+
+    public LockFreeConnectionPool(Destination destination, int maxConnections, Callback requester)
+    {
+        super(destination, maxConnections, requester);
+        this.entries = new ConcurrentHashMap<>(maxConnections);
+    }
+
+    /**
+     * @return the max number of times a connection is used before being retired, or 0 if unlimited
+     */
+    @ManagedAttribute("The max number of times a connection is used before being retired")
+    public int getMaxUsageCount()
+    {
+        return maxUsageCount;
+    }
+
+    /**
+     * @param maxUsageCount the max number of times a connection is used before being retired, or 0 if unlimited
+     */
+    public void setMaxUsageCount(int maxUsageCount)
+    {
+        this.maxUsageCount = maxUsageCount;
+    }
+
+    /**
+     * @return the max time, in milliseconds, a connection is used before being retired, or 0 if unlimited
+     */
+    @ManagedAttribute("The max time, in milliseconds, a connection is used before being retired")
+    public long getMaxAge()
+    {
+        return maxAge;
+    }
+
+    /**
+     * @param maxAge the max time, in milliseconds, a connection is used before being retired, or 0 if unlimited
+     */
+    public void setMaxAge(long maxAge)
+    {
+        this.maxAge = maxAge;
+    }
+
+    @ManagedAttribute(value = "The number of idle connections", readonly = true)
+    public int getIdleConnectionCount()
+    {
+        return count(State.IDLE);
+    }
+
+    @ManagedAttribute(value = "The number of active connections", readonly = true)
+    public int getActiveConnectionCount()
+    {
+        return count(State.ACTIVE);
+    }
+
+    @ManagedAttribute(value = "The number of connections retired because of max usage or max age", readonly = true)
+    public long getRetiredConnectionCount()
+    {
+        return retired.get();
+    }
+
+    private int count(State state)
+    {
+        int result = 0;
+        for (Entry entry : entries.values())
+        {
+            if (entry.state.get() == state)
+                ++result;
+        }
+        return result;
+    }
+
+    @Override
+    public boolean isActive(Connection connection)
+    {
+        Entry entry = entries.get(connection);
+        return entry != null && entry.state.get() == State.ACTIVE;
+    }
+
+    @Override
+    protected void onCreated(Connection connection)
+    {
+        Entry entry = new Entry(connection);
+        entries.put(connection, entry);
+        // Use "cold" new connections as last.
+        idleEntries.offerLast(entry);
+        idle(connection, false);
+    }
+
+    @Override
+    protected Connection activate()
+    {
+        while (true)
+        {
+            Entry entry = idleEntries.pollFirst();
+            if (entry == null)
+                return null;
+
+            // The entry may have been removed concurrently.
+            if (!entry.state.compareAndSet(State.IDLE, State.ACTIVE))
+                continue;
+
+            if (isExpired(entry))
+            {
+                entry.state.set(State.RETIRED);
+                Connection connection = entry.connection;
+                if (LOG.isDebugEnabled())
+                    LOG.debug("Connection retired {}", entry);
+                retired.incrementAndGet();
+                if (entries.remove(connection, entry))
+                    removed(connection);
+                connection.close();
+                continue;
+            }
+
+            ++entry.usage;
+            return active(entry.connection);
+        }
+    }
+
+    @Override
+    public boolean release(Connection connection)
+    {
+        Entry entry = entries.get(connection);
+        if (entry == null)
+            return false;
+
+        boolean closed = isClosed();
+        boolean retire = !closed && isRetirable(entry);
+        State next = closed || retire ? State.RETIRED : State.IDLE;
+        if (!entry.state.compareAndSet(State.ACTIVE, next))
+            return false;
+
+        released(connection);
+
+        if (retire)
+        {
+            // The connection is closed by the caller and then removed.
+            if (LOG.isDebugEnabled())
+                LOG.debug("Connection retired {}", entry);
+            retired.incrementAndGet();
+            return idle(connection, true);
+        }
+
+        if (!closed)
+        {
+            // Make sure we use "hot" connections first.
+            idleEntries.offerFirst(entry);
+        }
+        return idle(connection, closed);
+    }
+
+    private boolean isRetirable(Entry entry)
+    {
+        int maxUsage = getMaxUsageCount();
+        if (maxUsage > 0 && entry.usage >= maxUsage)
+            return true;
+        return isExpired(entry);
+    }
+
+    private boolean isExpired(Entry entry)
+    {
+        long maxAge = getMaxAge();
+        return maxAge > 0 && TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - entry.created) >= maxAge;
+    }
+
+    @Override
+    public boolean remove(Connection connection)
+    {
+        return remove(connection, false);
+    }
+
+    protected boolean remove(Connection connection, boolean force)
+    {
+        boolean activeRemoved = false;
+        boolean removed = force;
+        Entry entry = entries.remove(connection);
+        if (entry != null)
+        {
+            removed = true;
+            State previous = entry.state.getAndSet(State.RETIRED);
+            activeRemoved = previous == State.ACTIVE;
+            if (previous == State.IDLE)
+                idleEntries.remove(entry);
+        }
+
+        if (activeRemoved || force)
+            released(connection);
+        if (removed)
+            removed(connection);
+        return removed;
+    }
+
+    @Override
+    public void close()
+    {
+        super.close();
+
+        List<Connection> connections = new ArrayList<>();
+        for (Entry entry : entries.values())
+        {
+            entry.state.set(State.RETIRED);
+            connections.add(entry.connection);
+        }
+        entries.clear();
+        idleEntries.clear();
+
+        close(connections);
+    }
+
+    @Override
+    public void dump(Appendable out, String indent) throws IOException
+    {
+        ContainerLifeCycle.dumpObject(out, this);
+        ContainerLifeCycle.dump(out, indent, new ArrayList<>(entries.values()));
+    }
+
+    @Override
+    public boolean sweep()
+    {
+        for (Entry entry : entries.values())
+        {
+            Connection connection = entry.connection;
+            if (entry.state.get() == State.ACTIVE && connection instanceof Sweeper.Sweepable)
+            {
+                if (((Sweeper.Sweepable)connection).sweep())
+                {
+                    boolean removed = remove(connection, true);
+                    LOG.warn("Connection swept: {}{}{} from active connections{}{}",
+                            connection,
+                            System.lineSeparator(),
+                            removed ? "Removed" : "Not removed",
+                            System.lineSeparator(),
+                            dump());
+                }
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("%s[c=%d/%d,a=%d,i=%d]",
+                getClass().getSimpleName(),
+                getConnectionCount(),
+                getMaxConnectionCount(),
+                getActiveConnectionCount(),
+                getIdleConnectionCount());
+    }
+
+    private enum State
+    {
+        IDLE, ACTIVE, RETIRED
+    }
+
+    private static class Entry
+    {
+        private final AtomicReference<State> state = new AtomicReference<>(State.IDLE);
+        private final long created = System.nanoTime();
+        private final Connection connection;
+        // Only modified by the thread that reserved the entry.
+        private int usage;
+
+        private Entry(Connection connection)
+        {
+            this.connection = connection;
+        }
+
+        @Override
+        public String toString()
+        {
+            return String.format("%s[%s,%d]", connection, state.get(), usage);
+        }
+    }
+}
@@ -21,6 +21,7 @@ package org.eclipse.jetty.client;
 import java.nio.ByteBuffer;
 import java.util.Iterator;
 import java.util.List;
+import java.util.function.LongConsumer;
 
 import org.eclipse.jetty.client.api.ContentResponse;
 import org.eclipse.jetty.client.api.Request;
@@ -108,12 +109,51 @@ public class ResponseNotifier
         }
     }
 
+    public boolean hasDemandedContentListener(List<Response.ResponseListener> listeners)
+    {
+        // Optimized to avoid allocations of iterator instances
+        for (int i = 0; i < listeners.size(); ++i)
+        {
+            if (listeners.get(i) instanceof Response.DemandedContentListener)
+                return true;
+        }
+        return false;
+    }
+
+    public void notifyBeforeContent(List<Response.ResponseListener> listeners, Response response, LongConsumer demand)
+    {
+        // Optimized to avoid allocations of iterator instances
+        for (int i = 0; i < listeners.size(); ++i)
+        {
+            Response.ResponseListener listener = listeners.get(i);
+            if (listener instanceof Response.DemandedContentListener)
+                notifyBeforeContent((Response.DemandedContentListener)listener, response, demand);
+        }
+    }
+
+    private void notifyBeforeContent(Response.DemandedContentListener listener, Response response, LongConsumer demand)
+    {
+        try
+        {
+            listener.onBeforeContent(response, demand);
+        }
+        catch (Throwable x)
+        {
+            LOG.info("Exception while notifying listener " + listener, x);
+        }
+    }
+
     public void notifyContent(List<Response.ResponseListener> listeners, Response response, ByteBuffer buffer, Callback callback)
+    {
+        notifyContent(listeners, response, buffer, callback, n -> {});
+    }
+
+    public void notifyContent(List<Response.ResponseListener> listeners, Response response, ByteBuffer buffer, Callback callback, LongConsumer demand)
     {
         // Here we use an IteratingNestedCallback not to avoid the stack overflow, but to
         // invoke the listeners one after the other. When all of them have invoked the
         // callback they got passed, the callback passed to this method is finally invoked.
-        ContentCallback contentCallback = new ContentCallback(listeners, response, buffer, callback);
+        ContentCallback contentCallback = new ContentCallback(listeners, response, buffer, callback, demand);
         contentCallback.iterate();
     }
 
@@ -129,6 +169,18 @@ public class ResponseNotifier
         }
     }
 
+    private void notifyContent(Response.DemandedContentListener listener, Response response, LongConsumer demand, ByteBuffer buffer, Callback callback)
+    {
+        try
+        {
+            listener.onContent(response, demand, buffer, callback);
+        }
+        catch (Throwable x)
+        {
+            LOG.info("Exception while notifying listener " + listener, x);
+        }
+    }
+
     public void notifySuccess(List<Response.ResponseListener> listeners, Response response)
     {
         // Optimized to avoid allocations of iterator instances
@@ -247,13 +299,15 @@ public class ResponseNotifier
         private final List<Response.ResponseListener> listeners;
         private final Response response;
         private final ByteBuffer buffer;
+        private final LongConsumer demand;
         private int index;
 
-        private ContentCallback(List<Response.ResponseListener> listeners, Response response, ByteBuffer buffer, Callback callback)
+        private ContentCallback(List<Response.ResponseListener> listeners, Response response, ByteBuffer buffer, Callback callback, LongConsumer demand)
         {
             super(callback);
             this.listeners = listeners;
             this.response = response;
+            this.demand = demand;
             // Slice the buffer to avoid that listeners peek into data they should not look at.
             this.buffer = buffer.slice();
         }
@@ -265,11 +319,17 @@ public class ResponseNotifier
                 return Action.SUCCEEDED;
 
             Response.ResponseListener listener = listeners.get(index);
-            if (listener instanceof Response.AsyncContentListener)
+            // The buffer was sliced, so we always clear it
+            // (clear => position=0, limit=capacity) before
+            // passing it to the listener that may consume it.
+            if (listener instanceof Response.DemandedContentListener)
+            {
+                buffer.clear();
+                ResponseNotifier.this.notifyContent((Response.DemandedContentListener)listener, response, demand, buffer, this);
+                return Action.SCHEDULED;
+            }
+            else if (listener instanceof Response.AsyncContentListener)
             {
-                // The buffer was sliced, so we always clear it
-                // (clear => position=0, limit=capacity) before
-                // passing it to the listener that may consume it.
                 buffer.clear();
                 ResponseNotifier.this.notifyContent((Response.AsyncContentListener)listener, response, buffer, this);
                 return Action.SCHEDULED;
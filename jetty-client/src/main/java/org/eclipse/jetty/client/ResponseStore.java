@@ -0,0 +1,743 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2015 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+package org.eclipse.jetty.client;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.eclipse.jetty.client.api.Response;
+import org.eclipse.jetty.http.HttpField;
+import org.eclipse.jetty.http.HttpFields;
+import org.eclipse.jetty.http.HttpHeader;
+import org.eclipse.jetty.http.HttpVersion;
+import org.eclipse.jetty.util.log.Log;
+import org.eclipse.jetty.util.log.Logger;
+
+/**
+ * <p>The storage of an HTTP cache, shared by {@link HttpResponseCache} and the
+ * proxy response cache.</p>
+ * <p>Responses are stored as {@link Entry entries}, one per key, in memory up to
+ * {@link #getMaxMemorySize()} bytes of content; if a directory is configured, the
+ * entries evicted from memory are moved to files in that directory, up to
+ * {@link #getMaxDiskSize()} bytes of content.
+ * Entries are evicted in least recently used order.</p>
+ * <p>The store also remembers the keys whose last response could not be stored,
+ * so that caches do not make concurrent requests for those keys wait for each other.</p>
+ * <p>Entries follow the rules of a shared cache, see RFC 7234: responses marked
+ * {@code private} and responses that set cookies are not storable, and responses to
+ * requests with credentials are storable only if explicitly allowed.</p>
+ */
+public class ResponseStore
+{
+    private static final Logger LOG = Log.getLogger(ResponseStore.class);
+    private static final int MAX_PASSES = 1024;
+
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong ids = new AtomicLong();
+    private final Map<String, Entry> memory = new LinkedHashMap<>(16, 0.75F, true);
+    private final Map<String, Entry> disk = new LinkedHashMap<>(16, 0.75F, true);
+    private final Map<String, Boolean> passes = new LinkedHashMap<String, Boolean>(16, 0.75F, true)
+    {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest)
+        {
+            return size() > MAX_PASSES;
+        }
+    };
+    private final Path directory;
+    private long memorySize;
+    private long diskSize;
+    private volatile long maxMemorySize = 32 * 1024 * 1024;
+    private volatile long maxDiskSize = 256 * 1024 * 1024;
+
+    /**
+     * @param directory the directory where entries evicted from memory are stored, or null to only use memory
+     */
+    public ResponseStore(Path directory)
+    {
+        this.directory = directory;
+    }
+
+    /**
+     * @return the directory where entries evicted from memory are stored, or null
+     */
+    public Path getDirectory()
+    {
+        return directory;
+    }
+
+    /**
+     * @return the max size, in bytes, of the response content stored in memory
+     */
+    public long getMaxMemorySize()
+    {
+        return maxMemorySize;
+    }
+
+    /**
+     * @param maxMemorySize the max size, in bytes, of the response content stored in memory
+     */
+    public void setMaxMemorySize(long maxMemorySize)
+    {
+        this.maxMemorySize = maxMemorySize;
+    }
+
+    /**
+     * @return the max size, in bytes, of the response content stored on disk
+     */
+    public long getMaxDiskSize()
+    {
+        return maxDiskSize;
+    }
+
+    /**
+     * @param maxDiskSize the max size, in bytes, of the response content stored on disk
+     */
+    public void setMaxDiskSize(long maxDiskSize)
+    {
+        this.maxDiskSize = maxDiskSize;
+    }
+
+    /**
+     * @return the number of entries evicted from the store
+     */
+    public long getEvictions()
+    {
+        return evictions.get();
+    }
+
+    public void resetStatistics()
+    {
+        evictions.set(0);
+    }
+
+    /**
+     * @return the number of entries
+     */
+    public int getSize()
+    {
+        synchronized (this)
+        {
+            return memory.size() + disk.size();
+        }
+    }
+
+    /**
+     * @return the size, in bytes, of the response content stored in memory
+     */
+    public long getMemorySize()
+    {
+        synchronized (this)
+        {
+            return memorySize;
+        }
+    }
+
+    /**
+     * @return the size, in bytes, of the response content stored on disk
+     */
+    public long getDiskSize()
+    {
+        synchronized (this)
+        {
+            return diskSize;
+        }
+    }
+
+    /**
+     * <p>Removes all the entries.</p>
+     */
+    public void clear()
+    {
+        List<Entry> removed;
+        synchronized (this)
+        {
+            removed = new ArrayList<>(disk.values());
+            memory.clear();
+            disk.clear();
+            memorySize = 0;
+            diskSize = 0;
+        }
+        removed.forEach(this::delete);
+    }
+
+    /**
+     * @param key the entry key
+     * @return the entry for the given key, or null
+     */
+    public Entry lookup(String key)
+    {
+        synchronized (this)
+        {
+            Entry entry = memory.get(key);
+            return entry != null ? entry : disk.get(key);
+        }
+    }
+
+    /**
+     * <p>Stores the given entry, replacing the entry with the same key, if any.</p>
+     * <p>Storing an entry forgets that its key is not cacheable.</p>
+     *
+     * @param entry the entry to store
+     */
+    public void store(Entry entry)
+    {
+        pass(entry.key, false);
+        List<Entry> spilled = new ArrayList<>();
+        List<Entry> removed = new ArrayList<>();
+        synchronized (this)
+        {
+            Entry old = memory.remove(entry.key);
+            if (old != null)
+                memorySize -= old.length;
+            old = disk.remove(entry.key);
+            if (old != null)
+            {
+                diskSize -= old.length;
+                // A revalidated entry keeps the file of the old entry.
+                if (!Objects.equals(old.file, entry.file))
+                    removed.add(old);
+            }
+
+            if (entry.content == null)
+            {
+                disk.put(entry.key, entry);
+                diskSize += entry.length;
+                trimDisk(removed);
+            }
+            else
+            {
+                memory.put(entry.key, entry);
+                memorySize += entry.length;
+                for (Iterator<Entry> iterator = memory.values().iterator(); memorySize > maxMemorySize && iterator.hasNext();)
+                {
+                    Entry eldest = iterator.next();
+                    iterator.remove();
+                    memorySize -= eldest.length;
+                    if (directory != null && eldest.length <= maxDiskSize)
+                        spilled.add(eldest);
+                    else
+                        evictions.incrementAndGet();
+                }
+            }
+        }
+        removed.forEach(this::delete);
+        spilled.forEach(this::spill);
+    }
+
+    private void trimDisk(List<Entry> removed)
+    {
+        for (Iterator<Entry> iterator = disk.values().iterator(); diskSize > maxDiskSize && iterator.hasNext();)
+        {
+            Entry eldest = iterator.next();
+            iterator.remove();
+            diskSize -= eldest.length;
+            removed.add(eldest);
+            evictions.incrementAndGet();
+        }
+    }
+
+    private void spill(Entry entry)
+    {
+        Entry spilled;
+        Path file = directory.resolve(ids.incrementAndGet() + ".cache");
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE))
+        {
+            ByteBuffer content = ByteBuffer.wrap(entry.content);
+            while (content.hasRemaining())
+                channel.write(content);
+            spilled = entry.spill(file);
+        }
+        catch (IOException x)
+        {
+            if (LOG.isDebugEnabled())
+                LOG.debug("Could not store cached content " + entry, x);
+            evictions.incrementAndGet();
+            delete(file);
+            return;
+        }
+
+        List<Entry> removed = new ArrayList<>();
+        synchronized (this)
+        {
+            if (memory.containsKey(entry.key) || disk.containsKey(entry.key))
+            {
+                // Replaced while it was written to disk.
+                removed.add(spilled);
+            }
+            else
+            {
+                disk.put(spilled.key, spilled);
+                diskSize += spilled.length;
+                trimDisk(removed);
+            }
+        }
+        removed.forEach(this::delete);
+    }
+
+    /**
+     * @param key the key of the entry to remove
+     */
+    public void remove(String key)
+    {
+        Entry removed;
+        synchronized (this)
+        {
+            Entry entry = memory.remove(key);
+            if (entry != null)
+                memorySize -= entry.length;
+            removed = disk.remove(key);
+            if (removed != null)
+                diskSize -= removed.length;
+        }
+        if (removed != null)
+            delete(removed);
+    }
+
+    private void delete(Entry entry)
+    {
+        if (entry.file != null)
+            delete(entry.file);
+    }
+
+    private void delete(Path file)
+    {
+        try
+        {
+            Files.deleteIfExists(file);
+        }
+        catch (IOException x)
+        {
+            LOG.ignore(x);
+        }
+    }
+
+    /**
+     * @param key the entry key
+     * @return whether the last response for the given key could not be stored
+     * @see #pass(String, boolean)
+     */
+    public boolean isPass(String key)
+    {
+        synchronized (passes)
+        {
+            return passes.containsKey(key);
+        }
+    }
+
+    /**
+     * <p>Records whether the response for the given key could not be stored.</p>
+     * <p>Caches do not make concurrent requests for keys that are not cacheable wait
+     * for each other, until a cacheable response is received.
+     * Only the most recently used keys are remembered.</p>
+     *
+     * @param key the entry key
+     * @param pass whether the response could not be stored
+     */
+    public void pass(String key, boolean pass)
+    {
+        synchronized (passes)
+        {
+            if (pass)
+                passes.put(key, Boolean.TRUE);
+            else
+                passes.remove(key);
+        }
+    }
+
+    /**
+     * <p>Creates a new entry for the given response.</p>
+     * <p>If the given headers do not have the {@code Content-Encoding} of the response,
+     * the content is considered decoded and the {@code Accept-Encoding} request header
+     * does not affect the responses served for the entry.</p>
+     *
+     * @param key the entry key
+     * @param requestHeaders the headers of the request, as given by the application
+     * @param response the response to store
+     * @param headers the response headers to store
+     * @param content the response content
+     * @param credentials whether the request was sent with credentials such as an {@code Authorization} header
+     * @return a new entry
+     */
+    public static Entry newEntry(String key, HttpFields requestHeaders, Response response, HttpFields headers, byte[] content, boolean credentials)
+    {
+        headers = new HttpFields(headers);
+        headers.remove(HttpHeader.TRANSFER_ENCODING);
+        headers.putLongField(HttpHeader.CONTENT_LENGTH, content.length);
+        boolean decoded = response.getHeaders().containsKey(HttpHeader.CONTENT_ENCODING.asString()) &&
+                !headers.containsKey(HttpHeader.CONTENT_ENCODING.asString());
+
+        HttpFields vary = new HttpFields();
+        for (String names : response.getHeaders().getValuesList(HttpHeader.VARY.asString()))
+        {
+            for (String name : names.split(","))
+            {
+                name = name.trim();
+                if (name.isEmpty() || decoded && HttpHeader.ACCEPT_ENCODING.is(name))
+                    continue;
+                vary.put(name, varyValue(requestHeaders, name));
+            }
+        }
+
+        return new Entry(key, response.getVersion(), response.getStatus(), response.getReason(), headers, vary, credentials, content, null, System.currentTimeMillis());
+    }
+
+    private static String varyValue(HttpFields headers, String name)
+    {
+        List<String> values = headers.getValuesList(name);
+        if (values.isEmpty())
+            return "";
+        if (values.size() == 1)
+            return values.get(0);
+        StringBuilder builder = new StringBuilder();
+        for (String value : values)
+        {
+            if (builder.length() > 0)
+                builder.append(",");
+            builder.append(value);
+        }
+        return builder.toString();
+    }
+
+    /**
+     * <p>A stored response, with its content either in memory or in a file.</p>
+     */
+    public static class Entry
+    {
+        private final String key;
+        private final HttpVersion version;
+        private final int status;
+        private final String reason;
+        private final HttpFields headers;
+        private final HttpFields vary;
+        private final boolean credentials;
+        private final byte[] content;
+        private final Path file;
+        private final long length;
+        private final long responseTime;
+        private final long initialAge;
+        private final long expires;
+        private final CacheControl cacheControl;
+
+        private Entry(String key, HttpVersion version, int status, String reason, HttpFields headers, HttpFields vary, boolean credentials, byte[] content, Path file, long responseTime)
+        {
+            this.key = key;
+            this.version = version;
+            this.status = status;
+            this.reason = reason;
+            this.headers = headers;
+            this.vary = vary;
+            this.credentials = credentials;
+            this.content = content;
+            this.file = file;
+            this.length = headers.getLongField(HttpHeader.CONTENT_LENGTH.asString());
+            this.responseTime = responseTime;
+            this.cacheControl = new CacheControl(headers);
+
+            long date = headers.getDateField(HttpHeader.DATE.asString());
+            long apparentAge = date < 0 ? 0 : Math.max(0, responseTime - date) / 1000;
+            long age = headers.getLongField(HttpHeader.AGE.asString());
+            this.initialAge = Math.max(apparentAge, age);
+
+            long lifetime = 0;
+            if (cacheControl.noCache)
+                lifetime = 0;
+            else if (cacheControl.sMaxAge >= 0)
+                lifetime = cacheControl.sMaxAge;
+            else if (cacheControl.maxAge >= 0)
+                lifetime = cacheControl.maxAge;
+            else
+            {
+                long expires = headers.getDateField(HttpHeader.EXPIRES.asString());
+                if (expires >= 0)
+                {
+                    lifetime = Math.max(0, expires - (date < 0 ? responseTime : date)) / 1000;
+                }
+                else
+                {
+                    long lastModified = headers.getDateField(HttpHeader.LAST_MODIFIED.asString());
+                    if (lastModified >= 0 && date >= 0)
+                        // Heuristic freshness, as suggested by RFC 7234, section 4.2.2.
+                        lifetime = Math.max(0, date - lastModified) / 10000;
+                }
+            }
+            this.expires = responseTime + TimeUnit.SECONDS.toMillis(lifetime - initialAge);
+        }
+
+        public String getKey()
+        {
+            return key;
+        }
+
+        public HttpVersion getVersion()
+        {
+            return version;
+        }
+
+        public int getStatus()
+        {
+            return status;
+        }
+
+        public String getReason()
+        {
+            return reason;
+        }
+
+        /**
+         * @return the stored response headers, with the {@code Content-Length} of the stored content
+         */
+        public HttpFields getHeaders()
+        {
+            return headers;
+        }
+
+        /**
+         * @return the content, or null if the content is stored in {@link #getFile() a file}
+         */
+        public byte[] getContent()
+        {
+            return content;
+        }
+
+        /**
+         * @return the file that stores the content, or null if the content is in memory
+         */
+        public Path getFile()
+        {
+            return file;
+        }
+
+        /**
+         * @return the length, in bytes, of the content
+         */
+        public long getLength()
+        {
+            return length;
+        }
+
+        /**
+         * @return whether the response may be stored by a shared cache
+         */
+        public boolean isStorable()
+        {
+            switch (status)
+            {
+                case 200:
+                case 203:
+                case 300:
+                case 301:
+                case 404:
+                case 410:
+                    break;
+                default:
+                    return false;
+            }
+            if (cacheControl.noStore || cacheControl.isPrivate)
+                return false;
+            // Cookies are specific to a client.
+            if (headers.containsKey(HttpHeader.SET_COOKIE.asString()) || headers.containsKey(HttpHeader.SET_COOKIE2.asString()))
+                return false;
+            // RFC 7234, section 3.2.
+            if (credentials && !cacheControl.isPublic && !cacheControl.mustRevalidate && cacheControl.sMaxAge < 0)
+                return false;
+            if (vary.containsKey("*") || headers.contains(HttpHeader.VARY, "*"))
+                return false;
+            return expires > responseTime || hasValidators();
+        }
+
+        /**
+         * @return whether the response can be revalidated with a conditional request
+         */
+        public boolean hasValidators()
+        {
+            return headers.containsKey(HttpHeader.ETAG.asString()) || headers.containsKey(HttpHeader.LAST_MODIFIED.asString());
+        }
+
+        /**
+         * @param now the current time, in milliseconds
+         * @return whether the response is fresh
+         */
+        public boolean isFresh(long now)
+        {
+            return now < expires;
+        }
+
+        /**
+         * @param now the current time, in milliseconds
+         * @return whether the stale response may be served while it is revalidated,
+         * as allowed by the {@code stale-while-revalidate} directive
+         */
+        public boolean isServableWhileRevalidated(long now)
+        {
+            if (cacheControl.noCache || cacheControl.mustRevalidate || cacheControl.sMaxAge >= 0)
+                return false;
+            return now < expires + TimeUnit.SECONDS.toMillis(cacheControl.staleWhileRevalidate);
+        }
+
+        /**
+         * @param now the current time, in milliseconds
+         * @return the value of the {@code Age} header, in seconds
+         */
+        public long getAge(long now)
+        {
+            return initialAge + Math.max(0, now - responseTime) / 1000;
+        }
+
+        /**
+         * @param requestHeaders the headers of a request for the key of this entry
+         * @return whether the request headers listed in the {@code Vary} header
+         * have the values of the request the response was stored for
+         */
+        public boolean matches(HttpFields requestHeaders)
+        {
+            for (HttpField field : vary)
+            {
+                if (!Objects.equals(field.getValue(), varyValue(requestHeaders, field.getName())))
+                    return false;
+            }
+            return true;
+        }
+
+        /**
+         * @param notModified the headers of the {@code 304} response
+         * @return a new entry, with the same content and the headers updated
+         */
+        public Entry revalidate(HttpFields notModified)
+        {
+            HttpFields updated = new HttpFields(headers);
+            for (HttpField field : notModified)
+            {
+                if (isRevalidated(field))
+                    updated.remove(field.getName());
+            }
+            for (HttpField field : notModified)
+            {
+                if (isRevalidated(field))
+                    updated.add(field);
+            }
+            return new Entry(key, version, status, reason, updated, vary, credentials, content, file, System.currentTimeMillis());
+        }
+
+        private boolean isRevalidated(HttpField field)
+        {
+            HttpHeader header = field.getHeader();
+            return header != HttpHeader.CONTENT_LENGTH &&
+                    header != HttpHeader.CONTENT_ENCODING &&
+                    header != HttpHeader.TRANSFER_ENCODING &&
+                    header != HttpHeader.CONNECTION;
+        }
+
+        private Entry spill(Path file)
+        {
+            return new Entry(key, version, status, reason, headers, vary, credentials, null, file, responseTime);
+        }
+
+        @Override
+        public String toString()
+        {
+            return String.format("%s@%x[%s,%d,%s]", getClass().getSimpleName(), hashCode(), key, status, content == null ? file : length + "B");
+        }
+    }
+
+    /**
+     * <p>The directives of the {@code Cache-Control} header of a request or response.</p>
+     */
+    public static class CacheControl
+    {
+        private boolean noStore;
+        private boolean noCache;
+        private boolean isPrivate;
+        private boolean isPublic;
+        private boolean mustRevalidate;
+        private long maxAge = -1;
+        private long sMaxAge = -1;
+        private long staleWhileRevalidate;
+
+        public CacheControl(HttpFields headers)
+        {
+            for (String values : headers.getValuesList(HttpHeader.CACHE_CONTROL.asString()))
+            {
+                for (String directive : values.split(","))
+                {
+                    directive = directive.trim().toLowerCase(Locale.ENGLISH);
+                    if ("no-store".equals(directive))
+                        noStore = true;
+                    else if (directive.startsWith("no-cache"))
+                        noCache = true;
+                    else if (directive.startsWith("private"))
+                        isPrivate = true;
+                    else if ("public".equals(directive))
+                        isPublic = true;
+                    else if ("must-revalidate".equals(directive) || "proxy-revalidate".equals(directive))
+                        mustRevalidate = true;
+                    else if (directive.startsWith("max-age="))
+                        maxAge = parseSeconds(directive.substring("max-age=".length()));
+                    else if (directive.startsWith("s-maxage="))
+                        sMaxAge = parseSeconds(directive.substring("s-maxage=".length()));
+                    else if (directive.startsWith("stale-while-revalidate="))
+                        staleWhileRevalidate = parseSeconds(directive.substring("stale-while-revalidate=".length()));
+                }
+            }
+        }
+
+        public boolean isNoStore()
+        {
+            return noStore;
+        }
+
+        public boolean isNoCache()
+        {
+            return noCache;
+        }
+
+        /**
+         * @return the value of the {@code max-age} directive, in seconds, or -1 if absent
+         */
+        public long getMaxAge()
+        {
+            return maxAge;
+        }
+
+        private static long parseSeconds(String value)
+        {
+            try
+            {
+                return Math.max(0, Long.parseLong(value.replace("\"", "").trim()));
+            }
+            catch (NumberFormatException x)
+            {
+                return 0;
+            }
+        }
+    }
+}
@@ -21,6 +21,7 @@ package org.eclipse.jetty.client.api;
 import java.nio.ByteBuffer;
 import java.util.EventListener;
 import java.util.List;
+import java.util.function.LongConsumer;
 
 import org.eclipse.jetty.client.util.BufferingResponseListener;
 import org.eclipse.jetty.http.HttpField;
@@ -160,6 +161,46 @@ public interface Response
         public void onContent(Response response, ByteBuffer content, Callback callback);
     }
 
+    /**
+     * <p>Asynchronous listener for the response content events, with demand.</p>
+     * <p>Content is only delivered when it has been demanded, and the receiver stops
+     * reading from the network until more content is demanded, so that the memory used
+     * to receive a response is bounded regardless of the response content length.</p>
+     * <p>Demand is expressed by invoking {@code demand.accept(n)}, with {@code n > 0},
+     * to request the delivery of {@code n} more chunks of content, as they are received.
+     * A chunk of content that is decoded (for example, because it is gzipped) may be
+     * delivered by multiple invocations of
+     * {@link #onContent(Response, LongConsumer, ByteBuffer, Callback)}.</p>
+     * <p>The {@code callback} must be completed when the content has been consumed,
+     * since the content buffer may be reused afterwards.</p>
+     * <p>When the same response has multiple listeners of this type, they share the demand.</p>
+     */
+    public interface DemandedContentListener extends ResponseListener
+    {
+        /**
+         * Callback method invoked before the response content is delivered,
+         * typically to express the initial demand.
+         * <p>The default implementation demands one chunk of content.</p>
+         *
+         * @param response the response containing the response line data and the headers
+         * @param demand the object to invoke to demand more content
+         */
+        public default void onBeforeContent(Response response, LongConsumer demand)
+        {
+            demand.accept(1);
+        }
+
+        /**
+         * Callback method invoked when demanded response content has been received.
+         *
+         * @param response the response containing the response line data and the headers
+         * @param demand the object to invoke to demand more content
+         * @param content the content bytes received
+         * @param callback the callback to call when the content is consumed
+         */
+        public void onContent(Response response, LongConsumer demand, ByteBuffer content, Callback callback);
+    }
+
     /**
      * Listener for the response succeeded event.
      */
@@ -0,0 +1,148 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2015 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+package org.eclipse.jetty.client;
+
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import org.eclipse.jetty.client.api.Connection;
+import org.eclipse.jetty.client.api.Destination;
+import org.eclipse.jetty.client.api.Request;
+import org.eclipse.jetty.client.api.Response;
+import org.eclipse.jetty.toolchain.test.AdvancedRunner;
+import org.eclipse.jetty.toolchain.test.annotation.Stress;
+import org.eclipse.jetty.util.Callback;
+import org.eclipse.jetty.util.Promise;
+import org.eclipse.jetty.util.log.Log;
+import org.eclipse.jetty.util.log.Logger;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+@RunWith(AdvancedRunner.class)
+public class ConnectionPoolBenchmarkTest
+{
+    private static final Logger logger = Log.getLogger(ConnectionPoolBenchmarkTest.class);
+
+    @Stress("High CPU")
+    @Test
+    public void testConnectionPools() throws Exception
+    {
+        int cores = Runtime.getRuntime().availableProcessors();
+        Assume.assumeTrue(cores > 1);
+
+        int maxConnections = 64;
+        int iterations = 128 * 1024;
+        int[] threads = new int[]{4, 16, 64, 256};
+
+        for (int count : threads)
+        {
+            testConnectionPool(count, iterations, destination -> new DuplexConnectionPool(destination, maxConnections, Callback.NOOP));
+            testConnectionPool(count, iterations, destination -> new LockFreeConnectionPool(destination, maxConnections, Callback.NOOP));
+        }
+    }
+
+    private void testConnectionPool(int threads, int iterations, Function<Destination, AbstractConnectionPool> factory) throws Exception
+    {
+        int runs = 8;
+        CyclicBarrier barrier = new CyclicBarrier(threads + 1);
+        for (int r = 0; r < runs; ++r)
+        {
+            AbstractConnectionPool pool = factory.apply(new BenchmarkDestination());
+            for (int i = 0; i < threads; ++i)
+            {
+                Thread thread = new Thread(() ->
+                {
+                    await(barrier);
+                    for (int j = 0; j < iterations; ++j)
+                    {
+                        Connection connection = pool.acquire();
+                        if (connection != null)
+                            pool.release(connection);
+                    }
+                    await(barrier);
+                });
+                thread.start();
+            }
+
+            await(barrier);
+            long begin = System.nanoTime();
+            await(barrier);
+            long end = System.nanoTime();
+            long elapsed = TimeUnit.NANOSECONDS.toMillis(end - begin);
+            logger.info("{} threads: {} => {} ms, {} ops/s", pool.getClass().getSimpleName(), threads, elapsed, elapsed == 0 ? "-" : 1000L * threads * iterations / elapsed);
+            pool.close();
+            Assert.assertTrue(pool.isEmpty());
+        }
+    }
+
+    private static void await(CyclicBarrier barrier)
+    {
+        try
+        {
+            barrier.await();
+        }
+        catch (Exception x)
+        {
+            throw new RuntimeException(x);
+        }
+    }
+
+    private static class BenchmarkDestination implements Destination
+    {
+        @Override
+        public String getScheme()
+        {
+            return "http";
+        }
+
+        @Override
+        public String getHost()
+        {
+            return "localhost";
+        }
+
+        @Override
+        public int getPort()
+        {
+            return 80;
+        }
+
+        @Override
+        public void newConnection(Promise<Connection> promise)
+        {
+            promise.succeeded(new BenchmarkConnection());
+        }
+    }
+
+    private static class BenchmarkConnection implements Connection
+    {
+        @Override
+        public void send(Request request, Response.CompleteListener listener)
+        {
+        }
+
+        @Override
+        public void close()
+        {
+        }
+    }
+}
@@ -0,0 +1,281 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2015 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+package org.eclipse.jetty.client;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.eclipse.jetty.client.api.ContentResponse;
+import org.eclipse.jetty.http.HttpMethod;
+import org.eclipse.jetty.server.handler.AbstractHandler;
+import org.eclipse.jetty.util.FuturePromise;
+import org.eclipse.jetty.util.ssl.SslContextFactory;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class HedgedRequestSenderTest extends AbstractHttpClientServerTest
+{
+    public HedgedRequestSenderTest(SslContextFactory sslContextFactory)
+    {
+        super(sslContextFactory);
+    }
+
+    @Test
+    public void testSlowRequestIsHedged() throws Exception
+    {
+        AtomicInteger requests = new AtomicInteger();
+        start(new SlowFirstHandler(requests, 2000));
+
+        HedgedRequestSender sender = new HedgedRequestSender(client);
+        sender.setMaxDelay(100);
+
+        long begin = System.nanoTime();
+        FuturePromise<ContentResponse> promise = new FuturePromise<>();
+        sender.send(client.newRequest("localhost", connector.getLocalPort()).scheme(scheme).path("/slow"),
+                () -> client.newRequest("localhost", connector.getLocalPort()).scheme(scheme).path("/fast"),
+                promise);
+        ContentResponse response = promise.get(5, TimeUnit.SECONDS);
+        long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - begin);
+
+        Assert.assertEquals(200, response.getStatus());
+        Assert.assertEquals("/fast", response.getRequest().getPath());
+        Assert.assertTrue(elapsed < 2000);
+        Assert.assertEquals(1, sender.getRequests());
+        Assert.assertEquals(1, sender.getHedges());
+        Assert.assertEquals(1, sender.getHedgeWins());
+    }
+
+    @Test
+    public void testSlowRequestIsHedgedWithCopy() throws Exception
+    {
+        AtomicInteger requests = new AtomicInteger();
+        start(new SlowFirstHandler(requests, 2000));
+
+        HedgedRequestSender sender = new HedgedRequestSender(client);
+        sender.setMaxDelay(500);
+
+        FuturePromise<ContentResponse> promise = new FuturePromise<>();
+        sender.send(client.newRequest("localhost", connector.getLocalPort())
+                .scheme(scheme)
+                .path("/path")
+                .param("name", "value")
+                .header("X-Test", "test"), promise);
+        ContentResponse response = promise.get(5, TimeUnit.SECONDS);
+
+        Assert.assertEquals(200, response.getStatus());
+        Assert.assertEquals(2, requests.get());
+        Assert.assertEquals("/path", response.getRequest().getPath());
+        Assert.assertEquals("value", response.getRequest().getParams().get("name").getValue());
+        Assert.assertEquals("test", response.getRequest().getHeaders().get("X-Test"));
+        Assert.assertEquals(1, sender.getHedges());
+    }
+
+    @Test
+    public void testFastRequestIsNotHedged() throws Exception
+    {
+        AtomicInteger requests = new AtomicInteger();
+        start(new SlowFirstHandler(requests, 0));
+
+        HedgedRequestSender sender = new HedgedRequestSender(client);
+        sender.setMaxDelay(1000);
+
+        FuturePromise<ContentResponse> promise = new FuturePromise<>();
+        sender.send(client.newRequest("localhost", connector.getLocalPort()).scheme(scheme), promise);
+        Assert.assertEquals(200, promise.get(5, TimeUnit.SECONDS).getStatus());
+
+        // Wait for the hedging delay to make sure no hedge is sent.
+        TimeUnit.MILLISECONDS.sleep(1500);
+        Assert.assertEquals(1, requests.get());
+        Assert.assertEquals(0, sender.getHedges());
+    }
+
+    @Test
+    public void testHedgeIsThrottledWhenBudgetIsExhausted() throws Exception
+    {
+        AtomicInteger requests = new AtomicInteger();
+        start(new SlowFirstHandler(requests, 500));
+
+        HedgedRequestSender sender = new HedgedRequestSender(client);
+        sender.setMaxDelay(100);
+        sender.setBudgetRatio(0);
+        sender.setMaxBudget(0);
+
+        FuturePromise<ContentResponse> promise = new FuturePromise<>();
+        sender.send(client.newRequest("localhost", connector.getLocalPort()).scheme(scheme), promise);
+        ContentResponse response = promise.get(5, TimeUnit.SECONDS);
+
+        Assert.assertEquals("1", response.getContentAsString());
+        Assert.assertEquals(1, requests.get());
+        Assert.assertEquals(0, sender.getHedges());
+        Assert.assertEquals(1, sender.getThrottled());
+    }
+
+    @Test
+    public void testNonIdempotentRequestIsNotHedged() throws Exception
+    {
+        AtomicInteger requests = new AtomicInteger();
+        start(new SlowFirstHandler(requests, 500));
+
+        HedgedRequestSender sender = new HedgedRequestSender(client);
+        sender.setMaxDelay(100);
+
+        FuturePromise<ContentResponse> promise = new FuturePromise<>();
+        sender.send(client.newRequest("localhost", connector.getLocalPort()).scheme(scheme).method(HttpMethod.POST), promise);
+        ContentResponse response = promise.get(5, TimeUnit.SECONDS);
+
+        Assert.assertEquals("1", response.getContentAsString());
+        Assert.assertEquals(1, requests.get());
+        Assert.assertEquals(0, sender.getHedges());
+    }
+
+    @Test
+    public void testFailedRequestIsHedgedImmediately() throws Exception
+    {
+        AtomicInteger requests = new AtomicInteger();
+        start(new SlowFirstHandler(requests, 0));
+
+        int port;
+        try (ServerSocket server = new ServerSocket(0))
+        {
+            port = server.getLocalPort();
+        }
+
+        HedgedRequestSender sender = new HedgedRequestSender(client);
+        sender.setMaxDelay(10000);
+
+        FuturePromise<ContentResponse> promise = new FuturePromise<>();
+        // The request is sent to a closed port, the hedge to the server.
+        sender.send(client.newRequest("localhost", port).scheme(scheme),
+                () -> client.newRequest("localhost", connector.getLocalPort()).scheme(scheme),
+                promise);
+        ContentResponse response = promise.get(5, TimeUnit.SECONDS);
+
+        Assert.assertEquals(200, response.getStatus());
+        Assert.assertEquals(1, sender.getHedges());
+        Assert.assertEquals(1, sender.getHedgeWins());
+    }
+
+    @Test
+    public void testServerErrorDoesNotWinOverSlowerResponse() throws Exception
+    {
+        AtomicInteger requests = new AtomicInteger();
+        start(new AbstractHandler()
+        {
+            @Override
+            public void handle(String target, org.eclipse.jetty.server.Request baseRequest, HttpServletRequest request, HttpServletResponse response) throws IOException, ServletException
+            {
+                baseRequest.setHandled(true);
+                requests.incrementAndGet();
+                try
+                {
+                    // A degraded replica fails fast, a healthy one is slower.
+                    if ("/degraded".equals(target))
+                    {
+                        response.setStatus(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+                        return;
+                    }
+                    Thread.sleep(200);
+                    response.getWriter().print("healthy");
+                }
+                catch (InterruptedException x)
+                {
+                    throw new ServletException(x);
+                }
+            }
+        });
+
+        HedgedRequestSender sender = new HedgedRequestSender(client);
+        sender.setMaxDelay(10000);
+
+        FuturePromise<ContentResponse> promise = new FuturePromise<>();
+        sender.send(client.newRequest("localhost", connector.getLocalPort()).scheme(scheme).path("/degraded"),
+                () -> client.newRequest("localhost", connector.getLocalPort()).scheme(scheme).path("/healthy"),
+                promise);
+        ContentResponse response = promise.get(5, TimeUnit.SECONDS);
+
+        Assert.assertEquals(200, response.getStatus());
+        Assert.assertEquals("healthy", response.getContentAsString());
+        Assert.assertEquals(2, requests.get());
+        Assert.assertEquals(1, sender.getHedges());
+        Assert.assertEquals(1, sender.getHedgeWins());
+    }
+
+    @Test
+    public void testServerErrorIsReturnedWhenNoOtherResponse() throws Exception
+    {
+        AtomicInteger requests = new AtomicInteger();
+        start(new AbstractHandler()
+        {
+            @Override
+            public void handle(String target, org.eclipse.jetty.server.Request baseRequest, HttpServletRequest request, HttpServletResponse response) throws IOException, ServletException
+            {
+                baseRequest.setHandled(true);
+                requests.incrementAndGet();
+                response.setStatus(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+            }
+        });
+
+        HedgedRequestSender sender = new HedgedRequestSender(client);
+        sender.setMaxDelay(10000);
+
+        FuturePromise<ContentResponse> promise = new FuturePromise<>();
+        sender.send(client.newRequest("localhost", connector.getLocalPort()).scheme(scheme), promise);
+        ContentResponse response = promise.get(5, TimeUnit.SECONDS);
+
+        Assert.assertEquals(503, response.getStatus());
+        Assert.assertEquals(2, requests.get());
+        Assert.assertEquals(1, sender.getHedges());
+        Assert.assertEquals(0, sender.getHedgeWins());
+    }
+
+    private static class SlowFirstHandler extends AbstractHandler
+    {
+        private final AtomicInteger requests;
+        private final long delay;
+
+        private SlowFirstHandler(AtomicInteger requests, long delay)
+        {
+            this.requests = requests;
+            this.delay = delay;
+        }
+
+        @Override
+        public void handle(String target, org.eclipse.jetty.server.Request baseRequest, HttpServletRequest request, HttpServletResponse response) throws IOException, ServletException
+        {
+            baseRequest.setHandled(true);
+            int count = requests.incrementAndGet();
+            try
+            {
+                if ("/slow".equals(target) || count == 1 && !"/fast".equals(target))
+                    Thread.sleep(delay);
+                response.getWriter().print(count);
+            }
+            catch (InterruptedException x)
+            {
+                throw new ServletException(x);
+            }
+        }
+    }
+}
@@ -0,0 +1,194 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2015 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+package org.eclipse.jetty.client;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.LongConsumer;
+
+import javax.servlet.ServletException;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.eclipse.jetty.client.api.Response;
+import org.eclipse.jetty.client.api.Result;
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.handler.AbstractHandler;
+import org.eclipse.jetty.util.BufferUtil;
+import org.eclipse.jetty.util.Callback;
+import org.eclipse.jetty.util.ssl.SslContextFactory;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class HttpClientDemandTest extends AbstractHttpClientServerTest
+{
+    public HttpClientDemandTest(SslContextFactory sslContextFactory)
+    {
+        super(sslContextFactory);
+    }
+
+    @Test
+    public void testContentIsDeliveredOnlyWhenDemanded() throws Exception
+    {
+        int chunks = 3;
+        byte[] chunk = new byte[512];
+        start(new AbstractHandler()
+        {
+            @Override
+            public void handle(String target, Request baseRequest, HttpServletRequest request, HttpServletResponse response) throws IOException, ServletException
+            {
+                baseRequest.setHandled(true);
+                ServletOutputStream output = response.getOutputStream();
+                for (int i = 0; i < chunks; ++i)
+                {
+                    output.write(chunk);
+                    output.flush();
+                }
+            }
+        });
+
+        BlockingQueue<LongConsumer> demands = new LinkedBlockingQueue<>();
+        ByteArrayOutputStream received = new ByteArrayOutputStream();
+        AtomicReference<Result> resultRef = new AtomicReference<>();
+        CountDownLatch resultLatch = new CountDownLatch(1);
+        client.newRequest("localhost", connector.getLocalPort())
+                .scheme(scheme)
+                .onResponseContentDemanded(new Response.DemandedContentListener()
+                {
+                    @Override
+                    public void onContent(Response response, LongConsumer demand, ByteBuffer content, Callback callback)
+                    {
+                        received.write(BufferUtil.toArray(content), 0, content.remaining());
+                        // Complete the callback, but do not demand.
+                        callback.succeeded();
+                        demands.offer(demand);
+                    }
+                })
+                .send(result ->
+                {
+                    resultRef.set(result);
+                    resultLatch.countDown();
+                });
+
+        while (received.size() < chunks * chunk.length)
+        {
+            LongConsumer demand = demands.poll(5, TimeUnit.SECONDS);
+            Assert.assertNotNull(demand);
+            // No more content must be delivered until demanded.
+            Assert.assertNull(demands.poll(500, TimeUnit.MILLISECONDS));
+            demand.accept(1);
+        }
+
+        Assert.assertTrue(resultLatch.await(5, TimeUnit.SECONDS));
+        Assert.assertTrue(resultRef.get().isSucceeded());
+        Assert.assertEquals(200, resultRef.get().getResponse().getStatus());
+        Assert.assertEquals(chunks * chunk.length, received.size());
+    }
+
+    @Test
+    public void testUnboundedDemand() throws Exception
+    {
+        byte[] data = new byte[64 * 1024];
+        start(new AbstractHandler()
+        {
+            @Override
+            public void handle(String target, Request baseRequest, HttpServletRequest request, HttpServletResponse response) throws IOException, ServletException
+            {
+                baseRequest.setHandled(true);
+                response.getOutputStream().write(data);
+            }
+        });
+
+        ByteArrayOutputStream received = new ByteArrayOutputStream();
+        CountDownLatch resultLatch = new CountDownLatch(1);
+        client.newRequest("localhost", connector.getLocalPort())
+                .scheme(scheme)
+                .onResponseContentDemanded(new Response.DemandedContentListener()
+                {
+                    @Override
+                    public void onBeforeContent(Response response, LongConsumer demand)
+                    {
+                        demand.accept(Long.MAX_VALUE);
+                    }
+
+                    @Override
+                    public void onContent(Response response, LongConsumer demand, ByteBuffer content, Callback callback)
+                    {
+                        received.write(BufferUtil.toArray(content), 0, content.remaining());
+                        callback.succeeded();
+                    }
+                })
+                .send(result ->
+                {
+                    if (result.isSucceeded())
+                        resultLatch.countDown();
+                });
+
+        Assert.assertTrue(resultLatch.await(5, TimeUnit.SECONDS));
+        Assert.assertEquals(data.length, received.size());
+    }
+
+    @Test
+    public void testInvalidDemandFailsResponse() throws Exception
+    {
+        start(new AbstractHandler()
+        {
+            @Override
+            public void handle(String target, Request baseRequest, HttpServletRequest request, HttpServletResponse response) throws IOException, ServletException
+            {
+                baseRequest.setHandled(true);
+                response.getOutputStream().write(new byte[1024]);
+            }
+        });
+
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        CountDownLatch resultLatch = new CountDownLatch(1);
+        client.newRequest("localhost", connector.getLocalPort())
+                .scheme(scheme)
+                .onResponseContentDemanded(new Response.DemandedContentListener()
+                {
+                    @Override
+                    public void onBeforeContent(Response response, LongConsumer demand)
+                    {
+                        demand.accept(0);
+                    }
+
+                    @Override
+                    public void onContent(Response response, LongConsumer demand, ByteBuffer content, Callback callback)
+                    {
+                        callback.succeeded();
+                    }
+                })
+                .send(result ->
+                {
+                    failure.set(result.getFailure());
+                    resultLatch.countDown();
+                });
+
+        Assert.assertTrue(resultLatch.await(5, TimeUnit.SECONDS));
+        Assert.assertTrue(failure.get() instanceof IllegalArgumentException);
+    }
+}
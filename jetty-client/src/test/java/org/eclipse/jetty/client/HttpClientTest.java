@@ -40,6 +40,7 @@ import java.util.Arrays;
 import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.NoSuchElementException;
 import java.util.Random;
 import java.util.concurrent.CountDownLatch;
@@ -63,6 +64,7 @@ import org.eclipse.jetty.client.api.Destination;
 import org.eclipse.jetty.client.api.Request;
 import org.eclipse.jetty.client.api.Response;
 import org.eclipse.jetty.client.api.Result;
+import org.eclipse.jetty.client.http.HttpClientTransportOverHTTP;
 import org.eclipse.jetty.client.http.HttpConnectionOverHTTP;
 import org.eclipse.jetty.client.http.HttpDestinationOverHTTP;
 import org.eclipse.jetty.client.util.BufferingResponseListener;
@@ -878,6 +880,38 @@ public class HttpClientTest extends AbstractHttpClientServerTest
                 .send();
     }
 
+    @Test
+    public void testConnectAttemptDelayWithUnresponsiveAddress() throws Exception
+    {
+        start(new EmptyServerHandler());
+        client.stop();
+
+        InetAddress unresponsive = InetAddress.getByName("192.0.2.1");
+        startClient(new HttpClientTransportOverHTTP(1)
+        {
+            @Override
+            public void connect(InetSocketAddress address, Map<String, Object> context)
+            {
+                // Simulate a black-holed address, where connect() never completes.
+                if (!address.getAddress().equals(unresponsive))
+                    super.connect(address, context);
+            }
+        });
+
+        SocketAddressResolver.Hosts hosts = new SocketAddressResolver.Hosts();
+        String host = "unresponsive.test";
+        hosts.put(host, unresponsive, InetAddress.getByName("127.0.0.1"));
+        client.setSocketAddressResolver(hosts);
+        client.setConnectAttemptDelay(250);
+
+        ContentResponse response = client.newRequest(host, connector.getLocalPort())
+                .scheme(scheme)
+                .timeout(5, TimeUnit.SECONDS)
+                .send();
+
+        Assert.assertEquals(200, response.getStatus());
+    }
+
     @Test
     public void testCustomUserAgent() throws Exception
     {
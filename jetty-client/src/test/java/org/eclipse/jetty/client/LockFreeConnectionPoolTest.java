@@ -0,0 +1,210 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2015 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+package org.eclipse.jetty.client;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.eclipse.jetty.client.api.Connection;
+import org.eclipse.jetty.client.api.Destination;
+import org.eclipse.jetty.client.api.Request;
+import org.eclipse.jetty.client.api.Response;
+import org.eclipse.jetty.util.Callback;
+import org.eclipse.jetty.util.Promise;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class LockFreeConnectionPoolTest
+{
+    @Test
+    public void testIdleConnectionsAreReusedInLIFOOrder() throws Exception
+    {
+        LockFreeConnectionPool pool = new LockFreeConnectionPool(new TestDestination(), 2, Callback.NOOP);
+
+        Connection connection1 = pool.acquire();
+        Connection connection2 = pool.acquire();
+        Assert.assertNotNull(connection1);
+        Assert.assertNotNull(connection2);
+        Assert.assertNotSame(connection1, connection2);
+        Assert.assertEquals(2, pool.getActiveConnectionCount());
+        Assert.assertTrue(pool.isActive(connection1));
+
+        // Max connections reached.
+        Assert.assertNull(pool.acquire());
+
+        Assert.assertTrue(pool.release(connection1));
+        Assert.assertTrue(pool.release(connection2));
+        Assert.assertFalse(pool.isActive(connection1));
+        Assert.assertEquals(2, pool.getIdleConnectionCount());
+
+        // The last released connection is the first reused.
+        Assert.assertSame(connection2, pool.acquire());
+        Assert.assertSame(connection1, pool.acquire());
+
+        // Releasing twice has no effect.
+        Assert.assertTrue(pool.release(connection1));
+        Assert.assertFalse(pool.release(connection1));
+
+        Assert.assertTrue(pool.remove(connection2));
+        Assert.assertFalse(pool.remove(connection2));
+        Assert.assertEquals(1, pool.getConnectionCount());
+
+        pool.close();
+        Assert.assertTrue(((TestConnection)connection1).closed.get());
+        Assert.assertTrue(pool.isEmpty());
+    }
+
+    @Test
+    public void testConnectionRetiredAfterMaxUsage() throws Exception
+    {
+        LockFreeConnectionPool pool = new LockFreeConnectionPool(new TestDestination(), 1, Callback.NOOP);
+        pool.setMaxUsageCount(2);
+
+        Connection connection1 = pool.acquire();
+        Assert.assertTrue(pool.release(connection1));
+        Assert.assertSame(connection1, pool.acquire());
+
+        // The second release retires the connection, the caller closes and removes it.
+        Assert.assertFalse(pool.release(connection1));
+        Assert.assertEquals(1, pool.getRetiredConnectionCount());
+        Assert.assertFalse(pool.isActive(connection1));
+        Assert.assertTrue(pool.remove(connection1));
+        Assert.assertTrue(pool.isEmpty());
+
+        Connection connection2 = pool.acquire();
+        Assert.assertNotNull(connection2);
+        Assert.assertNotSame(connection1, connection2);
+    }
+
+    @Test
+    public void testConnectionRetiredAfterMaxAge() throws Exception
+    {
+        long maxAge = 500;
+        LockFreeConnectionPool pool = new LockFreeConnectionPool(new TestDestination(), 1, Callback.NOOP);
+        pool.setMaxAge(maxAge);
+
+        Connection connection1 = pool.acquire();
+        Assert.assertTrue(pool.release(connection1));
+
+        TimeUnit.MILLISECONDS.sleep(2 * maxAge);
+
+        // The idle connection is too old, it is closed and a new one is opened.
+        Connection connection2 = pool.acquire();
+        Assert.assertNotNull(connection2);
+        Assert.assertNotSame(connection1, connection2);
+        Assert.assertTrue(((TestConnection)connection1).closed.get());
+        Assert.assertEquals(1, pool.getRetiredConnectionCount());
+        Assert.assertEquals(1, pool.getConnectionCount());
+
+        TimeUnit.MILLISECONDS.sleep(2 * maxAge);
+
+        // The active connection is too old, it is retired when released.
+        Assert.assertFalse(pool.release(connection2));
+        Assert.assertEquals(2, pool.getRetiredConnectionCount());
+    }
+
+    @Test
+    public void testConcurrentAcquireRelease() throws Exception
+    {
+        int maxConnections = 4;
+        LockFreeConnectionPool pool = new LockFreeConnectionPool(new TestDestination(), maxConnections, Callback.NOOP);
+        pool.setMaxUsageCount(16);
+
+        int threads = 16;
+        int iterations = 10000;
+        AtomicInteger failures = new AtomicInteger();
+        CountDownLatch latch = new CountDownLatch(threads);
+        List<Thread> workers = new ArrayList<>();
+        for (int i = 0; i < threads; ++i)
+        {
+            Thread thread = new Thread(() ->
+            {
+                for (int j = 0; j < iterations; ++j)
+                {
+                    TestConnection connection = (TestConnection)pool.acquire();
+                    if (connection == null)
+                        continue;
+                    // A connection must be reserved by one thread only.
+                    if (!connection.active.compareAndSet(false, true))
+                        failures.incrementAndGet();
+                    connection.active.set(false);
+                    if (!pool.release(connection))
+                        pool.remove(connection);
+                }
+                latch.countDown();
+            });
+            workers.add(thread);
+            thread.start();
+        }
+
+        Assert.assertTrue(latch.await(30, TimeUnit.SECONDS));
+        Assert.assertEquals(0, failures.get());
+        Assert.assertEquals(0, pool.getActiveConnectionCount());
+        Assert.assertEquals(pool.getConnectionCount(), pool.getIdleConnectionCount());
+        Assert.assertTrue(pool.getConnectionCount() <= maxConnections);
+    }
+
+    private static class TestDestination implements Destination
+    {
+        @Override
+        public String getScheme()
+        {
+            return "http";
+        }
+
+        @Override
+        public String getHost()
+        {
+            return "localhost";
+        }
+
+        @Override
+        public int getPort()
+        {
+            return 80;
+        }
+
+        @Override
+        public void newConnection(Promise<Connection> promise)
+        {
+            promise.succeeded(new TestConnection());
+        }
+    }
+
+    private static class TestConnection implements Connection
+    {
+        private final AtomicBoolean active = new AtomicBoolean();
+        private final AtomicBoolean closed = new AtomicBoolean();
+
+        @Override
+        public void send(Request request, Response.CompleteListener listener)
+        {
+        }
+
+        @Override
+        public void close()
+        {
+            closed.set(true);
+        }
+    }
+}
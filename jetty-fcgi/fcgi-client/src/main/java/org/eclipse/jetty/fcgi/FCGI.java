@@ -18,6 +18,18 @@
 
 package org.eclipse.jetty.fcgi;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import org.eclipse.jetty.http.HttpField;
+import org.eclipse.jetty.http.HttpHeader;
+
 public class FCGI
 {
     private FCGI()
@@ -129,6 +141,68 @@ public class FCGI
         public static final String SERVER_PROTOCOL = "SERVER_PROTOCOL";
         public static final String SERVER_SOFTWARE = "SERVER_SOFTWARE";
 
+        private static final Map<HttpHeader, String> HTTP_PARAM_NAMES = new EnumMap<>(HttpHeader.class);
+        private static final Map<String, HttpHeader> HTTP_HEADERS = new HashMap<>();
+        private static final List<String> KNOWN_NAMES;
+
+        static
+        {
+            List<String> names = new ArrayList<>(Arrays.asList(AUTH_TYPE, CONTENT_LENGTH, CONTENT_TYPE, DOCUMENT_ROOT,
+                    DOCUMENT_URI, GATEWAY_INTERFACE, HTTPS, PATH_INFO, QUERY_STRING, REMOTE_ADDR, REMOTE_PORT,
+                    REQUEST_METHOD, REQUEST_URI, SCRIPT_FILENAME, SCRIPT_NAME, SERVER_ADDR, SERVER_NAME,
+                    SERVER_PORT, SERVER_PROTOCOL, SERVER_SOFTWARE));
+            for (HttpHeader header : HttpHeader.values())
+            {
+                // Skip the HTTP/2 pseudo headers
+                if (header.asString().startsWith(":"))
+                    continue;
+                String name = toHttpParamName(header.asString());
+                HTTP_PARAM_NAMES.put(header, name);
+                HTTP_HEADERS.put(name, header);
+                names.add(name);
+            }
+            KNOWN_NAMES = Collections.unmodifiableList(names);
+        }
+
+        /**
+         * @return the well-known FastCGI param names, including the {@code HTTP_*}
+         * param names of the known HTTP headers
+         */
+        public static List<String> getKnownNames()
+        {
+            return KNOWN_NAMES;
+        }
+
+        /**
+         * <p>Converts a HTTP header to its FastCGI param name, for example
+         * {@code Accept-Encoding} to {@code HTTP_ACCEPT_ENCODING}.</p>
+         * <p>The param names of the known HTTP headers are computed once.</p>
+         *
+         * @param field the HTTP header
+         * @return the FastCGI param name of the HTTP header
+         */
+        public static String toHttpParamName(HttpField field)
+        {
+            HttpHeader header = field.getHeader();
+            String name = header == null ? null : HTTP_PARAM_NAMES.get(header);
+            return name != null ? name : toHttpParamName(field.getName());
+        }
+
+        /**
+         * @param name the FastCGI param name
+         * @return the known HTTP header for the given {@code HTTP_*} param name,
+         * or null if the param name does not correspond to a known HTTP header
+         */
+        public static HttpHeader toHttpHeader(String name)
+        {
+            return HTTP_HEADERS.get(name);
+        }
+
+        private static String toHttpParamName(String name)
+        {
+            return "HTTP_" + name.replace('-', '_').toUpperCase(Locale.ENGLISH);
+        }
+
         private Headers()
         {
         }
@@ -26,6 +26,7 @@ import org.eclipse.jetty.client.HttpExchange;
 import org.eclipse.jetty.client.HttpReceiver;
 import org.eclipse.jetty.client.HttpSender;
 import org.eclipse.jetty.client.api.Result;
+import org.eclipse.jetty.fcgi.generator.ClientGenerator;
 import org.eclipse.jetty.fcgi.generator.Flusher;
 import org.eclipse.jetty.fcgi.generator.Generator;
 import org.eclipse.jetty.http.HttpField;
@@ -60,6 +61,16 @@ public class HttpChannelOverFCGI extends HttpChannel
         return request;
     }
 
+    protected boolean isKeepAlive()
+    {
+        return connection.isKeepAlive();
+    }
+
+    protected ClientGenerator getClientGenerator()
+    {
+        return connection.getClientGenerator();
+    }
+
     @Override
     protected HttpSender getHttpSender()
     {
@@ -20,8 +20,12 @@ package org.eclipse.jetty.fcgi.client.http;
 
 import java.io.IOException;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.eclipse.jetty.client.AbstractHttpClientTransport;
+import org.eclipse.jetty.client.HttpClient;
 import org.eclipse.jetty.client.HttpDestination;
 import org.eclipse.jetty.client.Origin;
 import org.eclipse.jetty.client.api.Connection;
@@ -33,11 +37,24 @@ import org.eclipse.jetty.util.Promise;
 import org.eclipse.jetty.util.annotation.ManagedAttribute;
 import org.eclipse.jetty.util.annotation.ManagedObject;
 
+/**
+ * <p>The FastCGI/1.0 client transport.</p>
+ * <p>By default connections are {@link #isKeepAlive() kept alive}: the FastCGI server
+ * is asked to not close the connection after each response, and connections are pooled
+ * by the destination, up to {@link HttpClient#getMaxConnectionsPerDestination()} per
+ * FastCGI server. FastCGI servers that do not honor the {@code FCGI_KEEP_CONN} flag
+ * require keep alive to be disabled, so that one connection is used per request.</p>
+ */
 @ManagedObject("The FastCGI/1.0 client transport")
 public class HttpClientTransportOverFCGI extends AbstractHttpClientTransport
 {
+    private final Set<org.eclipse.jetty.io.Connection> connections = ConcurrentHashMap.newKeySet();
+    private final org.eclipse.jetty.io.Connection.Listener connectionListener = new ConnectionListener();
+    private final AtomicLong connectionsOpened = new AtomicLong();
+    private final AtomicLong closedRequests = new AtomicLong();
     private final boolean multiplexed;
     private final String scriptRoot;
+    private boolean keepAlive = true;
 
     public HttpClientTransportOverFCGI(String scriptRoot)
     {
@@ -56,6 +73,52 @@ public class HttpClientTransportOverFCGI extends AbstractHttpClientTransport
         return multiplexed;
     }
 
+    /**
+     * @return whether connections are reused for multiple requests
+     * (multiplexed connections are always reused)
+     */
+    @ManagedAttribute("Whether connections are reused for multiple requests")
+    public boolean isKeepAlive()
+    {
+        return keepAlive;
+    }
+
+    /**
+     * @param keepAlive whether connections are reused for multiple requests
+     */
+    public void setKeepAlive(boolean keepAlive)
+    {
+        this.keepAlive = keepAlive;
+    }
+
+    @ManagedAttribute(value = "The number of connections opened", readonly = true)
+    public long getConnectionsOpened()
+    {
+        return connectionsOpened.get();
+    }
+
+    @ManagedAttribute(value = "The number of connections currently open", readonly = true)
+    public int getConnections()
+    {
+        return connections.size();
+    }
+
+    @ManagedAttribute(value = "The number of requests sent", readonly = true)
+    public long getRequests()
+    {
+        long result = closedRequests.get();
+        for (org.eclipse.jetty.io.Connection connection : connections)
+            result += connection.getMessagesOut();
+        return result;
+    }
+
+    @ManagedAttribute(value = "The mean number of requests sent per connection", readonly = true)
+    public double getRequestsPerConnection()
+    {
+        long opened = getConnectionsOpened();
+        return opened == 0 ? 0 : (double)getRequests() / opened;
+    }
+
     @ManagedAttribute(value = "The scripts root directory", readonly = true)
     public String getScriptRoot()
     {
@@ -76,6 +139,7 @@ public class HttpClientTransportOverFCGI extends AbstractHttpClientTransport
         @SuppressWarnings("unchecked")
         Promise<Connection> promise = (Promise<Connection>)context.get(HTTP_CONNECTION_PROMISE_CONTEXT_KEY);
         HttpConnectionOverFCGI connection = newHttpConnection(endPoint, destination, promise);
+        connection.addListener(connectionListener);
         if (LOG.isDebugEnabled())
             LOG.debug("Created {}", connection);
         return connection;
@@ -90,4 +154,21 @@ public class HttpClientTransportOverFCGI extends AbstractHttpClientTransport
     {
         fastCGIHeaders.put(FCGI.Headers.DOCUMENT_ROOT, getScriptRoot());
     }
+
+    private class ConnectionListener implements org.eclipse.jetty.io.Connection.Listener
+    {
+        @Override
+        public void onOpened(org.eclipse.jetty.io.Connection connection)
+        {
+            connectionsOpened.incrementAndGet();
+            connections.add(connection);
+        }
+
+        @Override
+        public void onClosed(org.eclipse.jetty.io.Connection connection)
+        {
+            if (connections.remove(connection))
+                closedRequests.addAndGet(connection.getMessagesOut());
+        }
+    }
 }
@@ -21,13 +21,15 @@ package org.eclipse.jetty.fcgi.client.http;
 import java.io.EOFException;
 import java.nio.ByteBuffer;
 import java.nio.channels.AsynchronousCloseException;
-import java.util.LinkedList;
+import java.util.BitSet;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.eclipse.jetty.client.HttpClient;
+import org.eclipse.jetty.client.HttpClientTransport;
 import org.eclipse.jetty.client.HttpConnection;
 import org.eclipse.jetty.client.HttpDestination;
 import org.eclipse.jetty.client.HttpExchange;
@@ -35,6 +37,7 @@ import org.eclipse.jetty.client.api.Connection;
 import org.eclipse.jetty.client.api.Request;
 import org.eclipse.jetty.client.api.Response;
 import org.eclipse.jetty.fcgi.FCGI;
+import org.eclipse.jetty.fcgi.generator.ClientGenerator;
 import org.eclipse.jetty.fcgi.generator.Flusher;
 import org.eclipse.jetty.fcgi.parser.ClientParser;
 import org.eclipse.jetty.http.HttpField;
@@ -54,7 +57,8 @@ public class HttpConnectionOverFCGI extends AbstractConnection implements Connec
 {
     private static final Logger LOG = Log.getLogger(HttpConnectionOverFCGI.class);
 
-    private final LinkedList<Integer> requests = new LinkedList<>();
+    private final BitSet requests = new BitSet();
+    private final AtomicInteger messagesOut = new AtomicInteger();
     private final Map<Integer, HttpChannelOverFCGI> channels = new ConcurrentHashMap<>();
     private final AtomicBoolean closed = new AtomicBoolean();
     private final HttpDestination destination;
@@ -63,6 +67,7 @@ public class HttpConnectionOverFCGI extends AbstractConnection implements Connec
     private final Flusher flusher;
     private final Delegate delegate;
     private final ClientParser parser;
+    private final ClientGenerator generator;
     private ByteBuffer buffer;
 
     public HttpConnectionOverFCGI(EndPoint endPoint, HttpDestination destination, Promise<Connection> promise, boolean multiplexed)
@@ -74,7 +79,7 @@ public class HttpConnectionOverFCGI extends AbstractConnection implements Connec
         this.flusher = new Flusher(endPoint);
         this.delegate = new Delegate(destination);
         this.parser = new ClientParser(new ResponseListener());
-        requests.addLast(0);
+        this.generator = new ClientGenerator(destination.getHttpClient().getByteBufferPool());
     }
 
     public HttpDestination getHttpDestination()
@@ -82,6 +87,35 @@ public class HttpConnectionOverFCGI extends AbstractConnection implements Connec
         return destination;
     }
 
+    /**
+     * @return the generator shared by the requests sent over this connection
+     */
+    protected ClientGenerator getClientGenerator()
+    {
+        return generator;
+    }
+
+    /**
+     * @return whether this connection is reused for subsequent requests,
+     * as requested to the FastCGI server via the {@code FCGI_KEEP_CONN} flag
+     */
+    public boolean isKeepAlive()
+    {
+        if (multiplexed)
+            return true;
+        HttpClientTransport transport = destination.getHttpClient().getTransport();
+        return !(transport instanceof HttpClientTransportOverFCGI) || ((HttpClientTransportOverFCGI)transport).isKeepAlive();
+    }
+
+    /**
+     * @return the number of requests sent over this connection
+     */
+    @Override
+    public int getMessagesOut()
+    {
+        return messagesOut.get();
+    }
+
     @Override
     public void send(Request request, Response.CompleteListener listener)
     {
@@ -193,7 +227,11 @@ public class HttpConnectionOverFCGI extends AbstractConnection implements Connec
 
     protected void release(HttpChannelOverFCGI channel)
     {
-        channels.remove(channel.getRequest());
+        // Release the request id before the connection, so that
+        // the next request sent on this connection may reuse it.
+        int request = channel.getRequest();
+        channels.remove(request);
+        releaseRequest(request);
         destination.release(this);
     }
 
@@ -225,6 +263,12 @@ public class HttpConnectionOverFCGI extends AbstractConnection implements Connec
     {
         if (multiplexed)
             return false;
+        if (!isKeepAlive())
+        {
+            // The FastCGI server closes the connection after the response.
+            close();
+            return true;
+        }
         if (!fields.contains(HttpHeader.CONNECTION, HttpHeaderValue.CLOSE.asString()))
             return false;
         close();
@@ -255,9 +299,12 @@ public class HttpConnectionOverFCGI extends AbstractConnection implements Connec
     {
         synchronized (requests)
         {
-            int last = requests.getLast();
-            int request = last + 1;
-            requests.addLast(request);
+            // Reuse the lowest free request id, so that ids stay within the
+            // 16 bits of the FastCGI frame header on long lived connections.
+            int request = requests.nextClearBit(1);
+            if (request > 0xFF_FF)
+                throw new IllegalStateException("No request ids available on " + this);
+            requests.set(request);
             return request;
         }
     }
@@ -266,7 +313,7 @@ public class HttpConnectionOverFCGI extends AbstractConnection implements Connec
     {
         synchronized (requests)
         {
-            requests.removeFirstOccurrence(request);
+            requests.clear(request);
         }
     }
 
@@ -295,6 +342,7 @@ public class HttpConnectionOverFCGI extends AbstractConnection implements Connec
 
             // FCGI may be multiplexed, so create one channel for each request.
             int id = acquireRequest();
+            messagesOut.incrementAndGet();
             HttpChannelOverFCGI channel = new HttpChannelOverFCGI(HttpConnectionOverFCGI.this, flusher, id, request.getIdleTimeout());
             channels.put(id, channel);
             if (channel.associate(exchange))
@@ -403,8 +451,7 @@ public class HttpConnectionOverFCGI extends AbstractConnection implements Connec
             HttpChannelOverFCGI channel = channels.get(request);
             if (channel != null)
             {
-                if (channel.responseSuccess())
-                    releaseRequest(request);
+                channel.responseSuccess();
             }
             else
             {
@@ -418,8 +465,7 @@ public class HttpConnectionOverFCGI extends AbstractConnection implements Connec
             HttpChannelOverFCGI channel = channels.get(request);
             if (channel != null)
             {
-                if (channel.responseFailure(failure))
-                    releaseRequest(request);
+                channel.responseFailure(failure);
             }
             else
             {
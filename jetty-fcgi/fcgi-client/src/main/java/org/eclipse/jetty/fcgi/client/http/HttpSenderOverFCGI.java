@@ -19,7 +19,6 @@
 package org.eclipse.jetty.fcgi.client.http;
 
 import java.net.URI;
-import java.util.Locale;
 
 import org.eclipse.jetty.client.HttpChannel;
 import org.eclipse.jetty.client.HttpContent;
@@ -43,7 +42,7 @@ public class HttpSenderOverFCGI extends HttpSender
     public HttpSenderOverFCGI(HttpChannel channel)
     {
         super(channel);
-        this.generator = new ClientGenerator(channel.getHttpDestination().getHttpClient().getByteBufferPool());
+        this.generator = ((HttpChannelOverFCGI)channel).getClientGenerator();
     }
 
     @Override
@@ -86,11 +85,7 @@ public class HttpSenderOverFCGI extends HttpSender
 
         // Translate remaining HTTP header into the HTTP_* format
         for (HttpField field : headers)
-        {
-            String name = field.getName();
-            String fcgiName = "HTTP_" + name.replaceAll("-", "_").toUpperCase(Locale.ENGLISH);
-            fcgiHeaders.add(fcgiName, field.getValue());
-        }
+            fcgiHeaders.add(FCGI.Headers.toHttpParamName(field), field.getValue());
 
         // Give a chance to the transport implementation to customize the FastCGI headers
         HttpClientTransportOverFCGI transport = (HttpClientTransportOverFCGI)getHttpChannel().getHttpDestination().getHttpClient().getTransport();
@@ -98,7 +93,8 @@ public class HttpSenderOverFCGI extends HttpSender
 
         int id = getHttpChannel().getRequest();
         boolean hasContent = content.hasContent();
-        Generator.Result headersResult = generator.generateRequestHeaders(id, fcgiHeaders,
+        boolean keepAlive = getHttpChannel().isKeepAlive();
+        Generator.Result headersResult = generator.generateRequestHeaders(id, fcgiHeaders, keepAlive,
                 hasContent ? callback : Callback.NOOP);
         if (hasContent)
         {
@@ -22,7 +22,9 @@ import java.nio.ByteBuffer;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import org.eclipse.jetty.fcgi.FCGI;
 import org.eclipse.jetty.http.HttpField;
@@ -38,22 +40,48 @@ public class ClientGenerator extends Generator
     // 0x7F_FF - 4 (the 4 is to make room for the name (or value) length).
     public static final int MAX_PARAM_LENGTH = 0x7F_FF - 4;
 
+    private static final Map<String, byte[]> PRE_ENCODED_NAMES = new HashMap<>();
+
+    static
+    {
+        for (String name : FCGI.Headers.getKnownNames())
+            PRE_ENCODED_NAMES.put(name, name.getBytes(StandardCharsets.US_ASCII));
+    }
+
     public ClientGenerator(ByteBufferPool byteBufferPool)
     {
         super(byteBufferPool);
     }
 
     public Result generateRequestHeaders(int request, HttpFields fields, Callback callback)
+    {
+        return generateRequestHeaders(request, fields, true, callback);
+    }
+
+    /**
+     * @param request the request id
+     * @param fields the FastCGI params
+     * @param keepAlive whether to set the {@code FCGI_KEEP_CONN} flag, asking the
+     * FastCGI server to not close the connection after the response
+     * @param callback the callback to notify when the frames have been written
+     * @return the result containing the FCGI_BEGIN_REQUEST and FCGI_PARAMS frames
+     */
+    public Result generateRequestHeaders(int request, HttpFields fields, boolean keepAlive, Callback callback)
     {
         request &= 0xFF_FF;
 
         final Charset utf8 = StandardCharsets.UTF_8;
         List<byte[]> bytes = new ArrayList<>(fields.size() * 2);
         int fieldsLength = 0;
+        int frames = 0;
+        int frameLength = MAX_CONTENT_LENGTH;
         for (HttpField field : fields)
         {
             String name = field.getName();
-            byte[] nameBytes = name.getBytes(utf8);
+            // Common names are encoded only once
+            byte[] nameBytes = PRE_ENCODED_NAMES.get(name);
+            if (nameBytes == null)
+                nameBytes = name.getBytes(utf8);
             if (nameBytes.length > MAX_PARAM_LENGTH)
                 throw new IllegalArgumentException("Field name " + name + " exceeds max length " + MAX_PARAM_LENGTH);
             bytes.add(nameBytes);
@@ -64,87 +92,70 @@ public class ClientGenerator extends Generator
                 throw new IllegalArgumentException("Field value " + value + " exceeds max length " + MAX_PARAM_LENGTH);
             bytes.add(valueBytes);
 
-            int nameLength = nameBytes.length;
-            fieldsLength += bytesForLength(nameLength);
-
-            int valueLength = valueBytes.length;
-            fieldsLength += bytesForLength(valueLength);
-
-            fieldsLength += nameLength;
-            fieldsLength += valueLength;
+            int required = paramLength(nameBytes.length, valueBytes.length);
+            if (frameLength + required > MAX_CONTENT_LENGTH)
+            {
+                ++frames;
+                frameLength = 0;
+            }
+            frameLength += required;
+            fieldsLength += required;
         }
 
-        // Worst case FCGI_PARAMS frame: long name + long value - both of MAX_PARAM_LENGTH
-        int maxCapacity = 4 + 4 + 2 * MAX_PARAM_LENGTH;
-
-        // One FCGI_BEGIN_REQUEST + N FCGI_PARAMS + one last FCGI_PARAMS
-
-        ByteBuffer beginRequestBuffer = byteBufferPool.acquire(16, false);
-        BufferUtil.clearToFill(beginRequestBuffer);
+        // One FCGI_BEGIN_REQUEST + N FCGI_PARAMS + one last FCGI_PARAMS, all in one buffer
+        int capacity = 16 + 8 * frames + fieldsLength + 8;
+        ByteBuffer buffer = byteBufferPool.acquire(capacity, true);
+        BufferUtil.clearToFill(buffer);
         Result result = new Result(byteBufferPool, callback);
-        result = result.append(beginRequestBuffer, true);
+        result = result.append(buffer, true);
 
         // Generate the FCGI_BEGIN_REQUEST frame
-        beginRequestBuffer.putInt(0x01_01_00_00 + request);
-        beginRequestBuffer.putInt(0x00_08_00_00);
-        // Hardcode RESPONDER role and KEEP_ALIVE flag
-        beginRequestBuffer.putLong(0x00_01_01_00_00_00_00_00L);
-        beginRequestBuffer.flip();
-
-        int index = 0;
-        while (fieldsLength > 0)
+        buffer.putInt(0x01_01_00_00 + request);
+        buffer.putInt(0x00_08_00_00);
+        // Hardcode RESPONDER role, KEEP_ALIVE flag if requested
+        buffer.putLong(keepAlive ? 0x00_01_01_00_00_00_00_00L : 0x00_01_00_00_00_00_00_00L);
+
+        // Generate the FCGI_PARAMS frames
+        int lengthPosition = -1;
+        frameLength = MAX_CONTENT_LENGTH;
+        for (int index = 0; index < bytes.size(); index += 2)
         {
-            int capacity = 8 + Math.min(maxCapacity, fieldsLength);
-            ByteBuffer buffer = byteBufferPool.acquire(capacity, true);
-            BufferUtil.clearToFill(buffer);
-            result = result.append(buffer, true);
-
-            // Generate the FCGI_PARAMS frame
-            buffer.putInt(0x01_04_00_00 + request);
-            buffer.putShort((short)0);
-            buffer.putShort((short)0);
-            capacity -= 8;
-
-            int length = 0;
-            while (index < bytes.size())
+            byte[] nameBytes = bytes.get(index);
+            byte[] valueBytes = bytes.get(index + 1);
+
+            int required = paramLength(nameBytes.length, valueBytes.length);
+            if (frameLength + required > MAX_CONTENT_LENGTH)
             {
-                byte[] nameBytes = bytes.get(index);
-                int nameLength = nameBytes.length;
-                byte[] valueBytes = bytes.get(index + 1);
-                int valueLength = valueBytes.length;
-
-                int required = bytesForLength(nameLength) + bytesForLength(valueLength) + nameLength + valueLength;
-                if (required > capacity)
-                    break;
-
-                putParamLength(buffer, nameLength);
-                putParamLength(buffer, valueLength);
-                buffer.put(nameBytes);
-                buffer.put(valueBytes);
-
-                length += required;
-                fieldsLength -= required;
-                capacity -= required;
-                index += 2;
+                if (lengthPosition >= 0)
+                    buffer.putShort(lengthPosition, (short)frameLength);
+                buffer.putInt(0x01_04_00_00 + request);
+                lengthPosition = buffer.position();
+                buffer.putInt(0x00_00_00_00);
+                frameLength = 0;
             }
 
-            buffer.putShort(4, (short)length);
-            buffer.flip();
+            putParamLength(buffer, nameBytes.length);
+            putParamLength(buffer, valueBytes.length);
+            buffer.put(nameBytes);
+            buffer.put(valueBytes);
+            frameLength += required;
         }
-
-
-        ByteBuffer lastParamsBuffer = byteBufferPool.acquire(8, false);
-        BufferUtil.clearToFill(lastParamsBuffer);
-        result = result.append(lastParamsBuffer, true);
+        if (lengthPosition >= 0)
+            buffer.putShort(lengthPosition, (short)frameLength);
 
         // Generate the last FCGI_PARAMS frame
-        lastParamsBuffer.putInt(0x01_04_00_00 + request);
-        lastParamsBuffer.putInt(0x00_00_00_00);
-        lastParamsBuffer.flip();
+        buffer.putInt(0x01_04_00_00 + request);
+        buffer.putInt(0x00_00_00_00);
+        buffer.flip();
 
         return result;
     }
 
+    private int paramLength(int nameLength, int valueLength)
+    {
+        return bytesForLength(nameLength) + bytesForLength(valueLength) + nameLength + valueLength;
+    }
+
     private int putParamLength(ByteBuffer buffer, int length)
     {
         int result = bytesForLength(length);
@@ -19,15 +19,39 @@
 package org.eclipse.jetty.fcgi.parser;
 
 import java.nio.ByteBuffer;
-import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
 
+import org.eclipse.jetty.fcgi.FCGI;
 import org.eclipse.jetty.http.HttpField;
 import org.eclipse.jetty.util.log.Log;
 import org.eclipse.jetty.util.log.Logger;
 
+/**
+ * <p>The parser for FCGI_PARAMS frames.</p>
+ * <p>The bytes of names and values are accumulated in arrays that are reused
+ * across params, and the well-known param names are looked up in a static
+ * table so that their strings are not allocated for every request.</p>
+ */
 public class ParamsContentParser extends ContentParser
 {
     private static final Logger LOG = Log.getLogger(ParamsContentParser.class);
+    private static final int MAX_RETAINED_LENGTH = 4096;
+    private static final String[] KNOWN_NAMES;
+
+    static
+    {
+        // Open addressing table, indexed by the hash of the name bytes
+        // which, for ASCII names, is the same as String.hashCode().
+        int size = Integer.highestOneBit(FCGI.Headers.getKnownNames().size() * 4);
+        KNOWN_NAMES = new String[size];
+        for (String name : FCGI.Headers.getKnownNames())
+        {
+            int index = index(name.hashCode());
+            while (KNOWN_NAMES[index] != null)
+                index = (index + 1) & (size - 1);
+            KNOWN_NAMES[index] = name;
+        }
+    }
 
     private final ServerParser.Listener listener;
     private State state = State.LENGTH;
@@ -35,8 +59,8 @@ public class ParamsContentParser extends ContentParser
     private int length;
     private int nameLength;
     private int valueLength;
-    private byte[] nameBytes;
-    private byte[] valueBytes;
+    private byte[] nameBytes = new byte[64];
+    private byte[] valueBytes = new byte[256];
 
     public ParamsContentParser(HeaderParser headerParser, ServerParser.Listener listener)
     {
@@ -131,10 +155,10 @@ public class ParamsContentParser extends ContentParser
                 }
                 case NAME:
                 {
-                    nameBytes = new byte[nameLength];
+                    nameBytes = ensureCapacity(nameBytes, nameLength);
                     if (buffer.remaining() >= nameLength)
                     {
-                        buffer.get(nameBytes);
+                        buffer.get(nameBytes, 0, nameLength);
                         state = State.VALUE;
                         length -= nameLength;
                     }
@@ -155,10 +179,10 @@ public class ParamsContentParser extends ContentParser
                 }
                 case VALUE:
                 {
-                    valueBytes = new byte[valueLength];
+                    valueBytes = ensureCapacity(valueBytes, valueLength);
                     if (buffer.remaining() >= valueLength)
                     {
-                        buffer.get(valueBytes);
+                        buffer.get(valueBytes, 0, valueLength);
                         state = State.PARAM;
                         length -= valueLength;
                     }
@@ -179,8 +203,10 @@ public class ParamsContentParser extends ContentParser
                 }
                 case PARAM:
                 {
-                    Charset utf8 = Charset.forName("UTF-8");
-                    onParam(new String(nameBytes, utf8), new String(valueBytes, utf8));
+                    String name = knownName(nameBytes, nameLength);
+                    if (name == null)
+                        name = new String(nameBytes, 0, nameLength, StandardCharsets.UTF_8);
+                    onParam(name, new String(valueBytes, 0, valueLength, StandardCharsets.UTF_8));
                     partialReset();
                     if (length == 0)
                     {
@@ -230,6 +256,45 @@ public class ParamsContentParser extends ContentParser
         }
     }
 
+    private static int index(int hash)
+    {
+        return (hash ^ (hash >>> 16)) & (KNOWN_NAMES.length - 1);
+    }
+
+    private static String knownName(byte[] bytes, int length)
+    {
+        int hash = 0;
+        for (int i = 0; i < length; ++i)
+            hash = 31 * hash + bytes[i];
+        int index = index(hash);
+        while (true)
+        {
+            String candidate = KNOWN_NAMES[index];
+            if (candidate == null)
+                return null;
+            if (matches(candidate, bytes, length))
+                return candidate;
+            index = (index + 1) & (KNOWN_NAMES.length - 1);
+        }
+    }
+
+    private static boolean matches(String name, byte[] bytes, int length)
+    {
+        if (name.length() != length)
+            return false;
+        for (int i = 0; i < length; ++i)
+        {
+            if (bytes[i] != name.charAt(i))
+                return false;
+        }
+        return true;
+    }
+
+    private byte[] ensureCapacity(byte[] bytes, int length)
+    {
+        return bytes.length >= length ? bytes : new byte[length];
+    }
+
     private boolean isLargeLength(ByteBuffer buffer)
     {
         return (buffer.get(buffer.position()) & 0x80) == 0x80;
@@ -241,8 +306,11 @@ public class ParamsContentParser extends ContentParser
         cursor = 0;
         nameLength = 0;
         valueLength = 0;
-        nameBytes = null;
-        valueBytes = null;
+        // Do not retain arrays grown for exceptionally large params
+        if (nameBytes.length > MAX_RETAINED_LENGTH)
+            nameBytes = new byte[64];
+        if (valueBytes.length > MAX_RETAINED_LENGTH)
+            valueBytes = new byte[256];
     }
 
     private void reset()
@@ -41,10 +41,14 @@ import org.eclipse.jetty.util.log.Logger;
  * <p>For this reason, a special HTTP parser is used to parse the frames body.
  * This special HTTP parser is configured to skip the response line, and to
  * parse HTTP headers and HTTP content.</p>
+ * <p>The per-request parsers are reused across requests with the same id, so
+ * that the HTTP parser field cache survives across the responses received on
+ * the same connection, and common response headers are not re-allocated.</p>
  */
 public class ResponseContentParser extends StreamContentParser
 {
     private static final Logger LOG = Log.getLogger(ResponseContentParser.class);
+    private static final int HEADER_CACHE_SIZE = 1024;
 
     private final Map<Integer, ResponseParser> parsers = new ConcurrentHashMap<>();
     private final ClientParser.Listener listener;
@@ -78,7 +82,9 @@ public class ResponseContentParser extends StreamContentParser
     protected void end(int request)
     {
         super.end(request);
-        parsers.remove(request);
+        ResponseParser parser = parsers.get(request);
+        if (parser != null && !parser.reset())
+            parsers.remove(request);
     }
 
     private class ResponseParser implements HttpParser.ResponseHandler
@@ -97,6 +103,18 @@ public class ResponseContentParser extends StreamContentParser
             this.httpParser = new FCGIHttpParser(this);
         }
 
+        private boolean reset()
+        {
+            // A parser that failed is not reused
+            if (httpParser.isClose() || httpParser.isClosed())
+                return false;
+            fields.clear();
+            state = State.HEADERS;
+            seenResponseCode = false;
+            httpParser.reset();
+            return true;
+        }
+
         public boolean parse(ByteBuffer buffer)
         {
             if (LOG.isDebugEnabled())
@@ -152,8 +170,7 @@ public class ResponseContentParser extends StreamContentParser
         @Override
         public int getHeaderCacheSize()
         {
-            // TODO: configure this
-            return 0;
+            return HEADER_CACHE_SIZE;
         }
 
         @Override
@@ -178,13 +195,12 @@ public class ResponseContentParser extends StreamContentParser
                         // Need to set the response status so the
                         // HttpParser can handle the content properly.
                         String value = httpField.getValue();
-                        String[] parts = value.split(" ");
-                        String status = parts[0];
-                        int code = Integer.parseInt(status);
+                        int space = value.indexOf(' ');
+                        int code = Integer.parseInt(space < 0 ? value : value.substring(0, space));
                         httpParser.setResponseStatus(code);
-                        String reason = parts.length > 1 ? value.substring(status.length()) : HttpStatus.getMessage(code);
+                        String reason = space < 0 ? HttpStatus.getMessage(code) : value.substring(space).trim();
 
-                        notifyBegin(code, reason.trim());
+                        notifyBegin(code, reason);
                         notifyHeaders(fields);
                     }
                 }
@@ -325,6 +341,8 @@ public class ResponseContentParser extends StreamContentParser
         {
             super(handler, 65 * 1024, true);
             reset();
+            // There is no response line to trigger the creation of the field cache
+            initFieldCache();
         }
 
         @Override
@@ -0,0 +1,118 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2015 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+package org.eclipse.jetty.fcgi.client.http;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.eclipse.jetty.client.HttpClient;
+import org.eclipse.jetty.toolchain.test.AdvancedRunner;
+import org.eclipse.jetty.toolchain.test.annotation.Stress;
+import org.eclipse.jetty.util.log.Log;
+import org.eclipse.jetty.util.log.Logger;
+import org.eclipse.jetty.util.thread.QueuedThreadPool;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+@RunWith(AdvancedRunner.class)
+public class FastCGIConnectionBenchmarkTest
+{
+    private static final Logger logger = Log.getLogger(FastCGIConnectionBenchmarkTest.class);
+
+    @Stress("High CPU")
+    @Test
+    public void testKeepAliveThroughput() throws Exception
+    {
+        byte[] content = "<html><body>Hello from FastCGI</body></html>".getBytes(StandardCharsets.UTF_8);
+        try (FastCGIResponder responder = new FastCGIResponder(content))
+        {
+            int runs = 4;
+            for (int r = 0; r < runs; ++r)
+            {
+                // One connection per request, as with FastCGI servers that close the connection.
+                testThroughput(responder, false);
+                testThroughput(responder, true);
+            }
+        }
+    }
+
+    private void testThroughput(FastCGIResponder responder, boolean keepAlive) throws Exception
+    {
+        HttpClientTransportOverFCGI transport = new HttpClientTransportOverFCGI(1, false, "");
+        transport.setKeepAlive(keepAlive);
+        HttpClient client = new HttpClient(transport, null);
+        QueuedThreadPool executor = new QueuedThreadPool();
+        executor.setName(executor.getName() + "-client");
+        client.setExecutor(executor);
+        client.setMaxConnectionsPerDestination(16);
+        client.start();
+
+        try
+        {
+            int threads = 16;
+            int iterations = 500;
+            AtomicInteger failures = new AtomicInteger();
+            CountDownLatch latch = new CountDownLatch(threads);
+            long begin = System.nanoTime();
+            for (int i = 0; i < threads; ++i)
+            {
+                new Thread(() ->
+                {
+                    try
+                    {
+                        for (int j = 0; j < iterations; ++j)
+                        {
+                            int status = client.newRequest("localhost", responder.getPort())
+                                    .path("/index.php")
+                                    .timeout(5, TimeUnit.SECONDS)
+                                    .send()
+                                    .getStatus();
+                            if (status != 200)
+                                failures.incrementAndGet();
+                        }
+                    }
+                    catch (Throwable x)
+                    {
+                        logger.warn(x);
+                        failures.incrementAndGet();
+                    }
+                    finally
+                    {
+                        latch.countDown();
+                    }
+                }).start();
+            }
+            Assert.assertTrue(latch.await(60, TimeUnit.SECONDS));
+            long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - begin);
+            Assert.assertEquals(0, failures.get());
+
+            long requests = (long)threads * iterations;
+            logger.info("keepAlive={}: {} requests => {} ms, {} req/s, {} connections, {} requests/connection",
+                    keepAlive, requests, elapsed, elapsed == 0 ? "-" : 1000L * requests / elapsed,
+                    transport.getConnectionsOpened(), String.format("%.1f", transport.getRequestsPerConnection()));
+        }
+        finally
+        {
+            client.stop();
+        }
+    }
+}
@@ -0,0 +1,230 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2015 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+package org.eclipse.jetty.fcgi.client.http;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.eclipse.jetty.fcgi.FCGI;
+import org.eclipse.jetty.fcgi.generator.Generator;
+import org.eclipse.jetty.fcgi.generator.ServerGenerator;
+import org.eclipse.jetty.fcgi.parser.ServerParser;
+import org.eclipse.jetty.http.HttpFields;
+import org.eclipse.jetty.http.HttpHeader;
+import org.eclipse.jetty.io.ByteBufferPool;
+import org.eclipse.jetty.io.MappedByteBufferPool;
+import org.eclipse.jetty.util.BufferUtil;
+import org.eclipse.jetty.util.IO;
+import org.eclipse.jetty.util.log.Log;
+import org.eclipse.jetty.util.log.Logger;
+
+/**
+ * <p>A minimal, blocking, FastCGI responder on a loopback socket, that replies
+ * to every request with the same content and honors the {@code FCGI_KEEP_CONN}
+ * flag, or closes the connection after each response if so configured,
+ * like a PHP-FPM backend would do.</p>
+ */
+public class FastCGIResponder implements Closeable
+{
+    private static final Logger LOG = Log.getLogger(FastCGIResponder.class);
+
+    private final ByteBufferPool bufferPool = new MappedByteBufferPool();
+    private final Set<Socket> sockets = ConcurrentHashMap.newKeySet();
+    private final Set<Integer> requestIds = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger connections = new AtomicInteger();
+    private final AtomicInteger openConnections = new AtomicInteger();
+    private final AtomicInteger maxOpenConnections = new AtomicInteger();
+    private final AtomicInteger requests = new AtomicInteger();
+    private final AtomicBoolean closed = new AtomicBoolean();
+    private final ServerSocket server;
+    private final byte[] content;
+    private volatile boolean honorKeepAlive = true;
+    private volatile long delay;
+
+    public FastCGIResponder(byte[] content) throws IOException
+    {
+        this.server = new ServerSocket(0);
+        this.content = content;
+        Thread thread = new Thread(this::accept, "fcgi-responder");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    public int getPort()
+    {
+        return server.getLocalPort();
+    }
+
+    /**
+     * @param honorKeepAlive false to close the connection after each response
+     */
+    public void setHonorKeepAlive(boolean honorKeepAlive)
+    {
+        this.honorKeepAlive = honorKeepAlive;
+    }
+
+    /**
+     * @param delay the time, in milliseconds, to wait before responding
+     */
+    public void setDelay(long delay)
+    {
+        this.delay = delay;
+    }
+
+    public int getConnections()
+    {
+        return connections.get();
+    }
+
+    public int getMaxOpenConnections()
+    {
+        return maxOpenConnections.get();
+    }
+
+    public int getRequests()
+    {
+        return requests.get();
+    }
+
+    public Set<Integer> getRequestIds()
+    {
+        return requestIds;
+    }
+
+    private void accept()
+    {
+        try
+        {
+            while (!closed.get())
+            {
+                Socket socket = server.accept();
+                socket.setTcpNoDelay(true);
+                connections.incrementAndGet();
+                int open = openConnections.incrementAndGet();
+                maxOpenConnections.accumulateAndGet(open, Math::max);
+                sockets.add(socket);
+                Thread thread = new Thread(() -> serve(socket), "fcgi-responder-" + socket.getPort());
+                thread.setDaemon(true);
+                thread.start();
+            }
+        }
+        catch (IOException x)
+        {
+            LOG.ignore(x);
+        }
+    }
+
+    private void serve(Socket socket)
+    {
+        try
+        {
+            InputStream input = socket.getInputStream();
+            OutputStream output = socket.getOutputStream();
+            ServerGenerator generator = new ServerGenerator(bufferPool);
+            AtomicBoolean keepAlive = new AtomicBoolean();
+            AtomicBoolean close = new AtomicBoolean();
+            ServerParser parser = new ServerParser(new ServerParser.Listener.Adapter()
+            {
+                @Override
+                public void onStart(int request, FCGI.Role role, int flags)
+                {
+                    requestIds.add(request);
+                    keepAlive.set((flags & 0x01) == 0x01);
+                }
+
+                @Override
+                public void onEnd(int request)
+                {
+                    requests.incrementAndGet();
+                    respond(generator, output, request);
+                    if (!keepAlive.get() || !honorKeepAlive)
+                        close.set(true);
+                }
+            });
+
+            byte[] bytes = new byte[8192];
+            while (!close.get())
+            {
+                int read = input.read(bytes);
+                if (read < 0)
+                    break;
+                ByteBuffer buffer = ByteBuffer.wrap(bytes, 0, read);
+                while (buffer.hasRemaining())
+                    parser.parse(buffer);
+            }
+        }
+        catch (Throwable x)
+        {
+            LOG.ignore(x);
+        }
+        finally
+        {
+            openConnections.decrementAndGet();
+            sockets.remove(socket);
+            IO.close(socket);
+        }
+    }
+
+    private void respond(ServerGenerator generator, OutputStream output, int request)
+    {
+        try
+        {
+            long delay = this.delay;
+            if (delay > 0)
+                Thread.sleep(delay);
+
+            HttpFields fields = new HttpFields();
+            fields.put(HttpHeader.CONTENT_LENGTH, String.valueOf(content.length));
+            Generator.Result result = generator.generateResponseHeaders(request, 200, "OK", fields, null);
+            result = result.join(generator.generateResponseContent(request, ByteBuffer.wrap(content), true, false, null));
+            // Write the whole response at once, like FastCGI servers do.
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            for (ByteBuffer buffer : result.getByteBuffers())
+                BufferUtil.writeTo(buffer, bytes);
+            bytes.writeTo(output);
+            output.flush();
+            result.succeeded();
+        }
+        catch (Exception x)
+        {
+            throw new RuntimeException(x);
+        }
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+        if (closed.compareAndSet(false, true))
+        {
+            server.close();
+            for (Socket socket : sockets)
+                IO.close(socket);
+        }
+    }
+}
@@ -0,0 +1,136 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2015 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+package org.eclipse.jetty.fcgi.client.http;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.jetty.client.HttpClient;
+import org.eclipse.jetty.client.api.ContentResponse;
+import org.eclipse.jetty.util.IO;
+import org.eclipse.jetty.util.thread.QueuedThreadPool;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class HttpClientTransportOverFCGITest
+{
+    private static final byte[] CONTENT = "Hello from FastCGI".getBytes(StandardCharsets.UTF_8);
+
+    private FastCGIResponder responder;
+    private HttpClientTransportOverFCGI transport;
+    private HttpClient client;
+
+    private void start(boolean keepAlive) throws Exception
+    {
+        responder = new FastCGIResponder(CONTENT);
+        transport = new HttpClientTransportOverFCGI(1, false, "");
+        transport.setKeepAlive(keepAlive);
+        QueuedThreadPool executor = new QueuedThreadPool();
+        executor.setName(executor.getName() + "-client");
+        client = new HttpClient(transport, null);
+        client.setExecutor(executor);
+        client.start();
+    }
+
+    @After
+    public void dispose() throws Exception
+    {
+        if (client != null)
+            client.stop();
+        IO.close(responder);
+    }
+
+    private ContentResponse send() throws Exception
+    {
+        return client.newRequest("localhost", responder.getPort())
+                .path("/index.php")
+                .timeout(5, TimeUnit.SECONDS)
+                .send();
+    }
+
+    @Test
+    public void testConnectionIsReused() throws Exception
+    {
+        start(true);
+
+        int requests = 10;
+        for (int i = 0; i < requests; ++i)
+        {
+            ContentResponse response = send();
+            Assert.assertEquals(200, response.getStatus());
+            Assert.assertArrayEquals(CONTENT, response.getContent());
+        }
+
+        Assert.assertEquals(1, responder.getConnections());
+        // Request ids are reused on the persistent connection.
+        Assert.assertEquals(Collections.singleton(1), responder.getRequestIds());
+        Assert.assertEquals(1, transport.getConnectionsOpened());
+        Assert.assertEquals(requests, transport.getRequests());
+        Assert.assertEquals(requests, transport.getRequestsPerConnection(), 0.0);
+    }
+
+    @Test
+    public void testConnectionPerRequestWithoutKeepAlive() throws Exception
+    {
+        start(false);
+
+        int requests = 5;
+        for (int i = 0; i < requests; ++i)
+        {
+            ContentResponse response = send();
+            Assert.assertEquals(200, response.getStatus());
+            Assert.assertArrayEquals(CONTENT, response.getContent());
+        }
+
+        Assert.assertEquals(requests, responder.getConnections());
+        Assert.assertEquals(requests, transport.getConnectionsOpened());
+        Assert.assertEquals(requests, transport.getRequests());
+    }
+
+    @Test
+    public void testMaxConnectionsPerBackend() throws Exception
+    {
+        start(true);
+        int maxConnections = 2;
+        client.setMaxConnectionsPerDestination(maxConnections);
+        responder.setDelay(50);
+
+        int requests = 8;
+        CountDownLatch latch = new CountDownLatch(requests);
+        for (int i = 0; i < requests; ++i)
+        {
+            client.newRequest("localhost", responder.getPort())
+                    .path("/index.php")
+                    .timeout(5, TimeUnit.SECONDS)
+                    .send(result ->
+                    {
+                        if (result.isSucceeded() && result.getResponse().getStatus() == 200)
+                            latch.countDown();
+                    });
+        }
+
+        Assert.assertTrue(latch.await(10, TimeUnit.SECONDS));
+        Assert.assertEquals(requests, responder.getRequests());
+        Assert.assertTrue(responder.getMaxOpenConnections() <= maxConnections);
+        Assert.assertTrue(transport.getConnectionsOpened() <= maxConnections);
+    }
+}
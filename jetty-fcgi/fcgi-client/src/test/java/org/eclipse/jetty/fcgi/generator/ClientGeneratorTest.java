@@ -133,6 +133,59 @@ public class ClientGeneratorTest
         Assert.assertEquals(value, params.get());
     }
 
+    @Test
+    public void testGenerateRequestHeadersNonASCIIInManyFrames() throws Exception
+    {
+        HttpFields fields = new HttpFields();
+        // Known name, non-ASCII value with 2, 3 and 4 bytes UTF-8 sequences
+        final String knownName = FCGI.Headers.REQUEST_URI;
+        final String knownValue = "/caf\u00E9/\u20AC/\uD83D\uDE00";
+        fields.put(knownName, knownValue);
+        // Enough params to need more than one FCGI_PARAMS frame
+        char[] chars = new char[1024];
+        Arrays.fill(chars, '\u00E8');
+        final String largeValue = new String(chars);
+        final int count = 64;
+        for (int i = 0; i < count; ++i)
+            fields.put("HTTP_X_\u00C9_" + i, largeValue);
+
+        ByteBufferPool byteBufferPool = new MappedByteBufferPool();
+        ClientGenerator generator = new ClientGenerator(byteBufferPool);
+        final int id = 13;
+        Generator.Result result = generator.generateRequestHeaders(id, fields, null);
+
+        final AtomicInteger params = new AtomicInteger();
+        final AtomicInteger headers = new AtomicInteger();
+        ServerParser parser = new ServerParser(new ServerParser.Listener.Adapter()
+        {
+            @Override
+            public void onHeader(int request, HttpField field)
+            {
+                Assert.assertEquals(id, request);
+                if (knownName.equals(field.getName()))
+                    Assert.assertEquals(knownValue, field.getValue());
+                else
+                    Assert.assertEquals(largeValue, field.getValue());
+                params.incrementAndGet();
+            }
+
+            @Override
+            public void onHeaders(int request)
+            {
+                headers.incrementAndGet();
+            }
+        });
+
+        for (ByteBuffer buffer : result.getByteBuffers())
+        {
+            parser.parse(buffer);
+            Assert.assertFalse(buffer.hasRemaining());
+        }
+
+        Assert.assertEquals(count + 1, params.get());
+        Assert.assertEquals(1, headers.get());
+    }
+
     @Test
     public void testGenerateSmallRequestContent() throws Exception
     {
@@ -0,0 +1,153 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2015 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+package org.eclipse.jetty.fcgi.generator;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.eclipse.jetty.fcgi.FCGI;
+import org.eclipse.jetty.fcgi.parser.ClientParser;
+import org.eclipse.jetty.fcgi.parser.ServerParser;
+import org.eclipse.jetty.http.HttpField;
+import org.eclipse.jetty.http.HttpFields;
+import org.eclipse.jetty.io.ByteBufferPool;
+import org.eclipse.jetty.io.MappedByteBufferPool;
+import org.eclipse.jetty.toolchain.test.AdvancedRunner;
+import org.eclipse.jetty.toolchain.test.annotation.Stress;
+import org.eclipse.jetty.util.log.Log;
+import org.eclipse.jetty.util.log.Logger;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+@RunWith(AdvancedRunner.class)
+public class FastCGICodecBenchmarkTest
+{
+    private static final Logger logger = Log.getLogger(FastCGICodecBenchmarkTest.class);
+
+    @Stress("High CPU")
+    @Test
+    public void testRequestHeadersThroughput() throws Exception
+    {
+        // The params that a typical PHP front tier sends for each request
+        HttpFields fields = new HttpFields();
+        fields.put(FCGI.Headers.DOCUMENT_URI, "/index.php");
+        fields.put(FCGI.Headers.QUERY_STRING, "page=1&sort=desc");
+        fields.put(FCGI.Headers.CONTENT_LENGTH, "");
+        fields.put(FCGI.Headers.CONTENT_TYPE, "");
+        fields.put(FCGI.Headers.REQUEST_METHOD, "GET");
+        fields.put(FCGI.Headers.SERVER_PROTOCOL, "HTTP/1.1");
+        fields.put(FCGI.Headers.GATEWAY_INTERFACE, "CGI/1.1");
+        fields.put(FCGI.Headers.SERVER_SOFTWARE, "Jetty/9.4");
+        fields.put(FCGI.Headers.REQUEST_URI, "/index.php?page=1&sort=desc");
+        fields.put(FCGI.Headers.SCRIPT_FILENAME, "/var/www/html/index.php");
+        fields.put(FCGI.Headers.SCRIPT_NAME, "/index.php");
+        fields.put(FCGI.Headers.DOCUMENT_ROOT, "/var/www/html");
+        fields.put(FCGI.Headers.REMOTE_ADDR, "127.0.0.1");
+        fields.put(FCGI.Headers.REMOTE_PORT, "54321");
+        fields.put(FCGI.Headers.SERVER_NAME, "localhost");
+        fields.put(FCGI.Headers.SERVER_ADDR, "127.0.0.1");
+        fields.put(FCGI.Headers.SERVER_PORT, "8080");
+        fields.put("HTTP_HOST", "localhost:8080");
+        fields.put("HTTP_USER_AGENT", "Mozilla/5.0 (X11; Linux x86_64; rv:45.0) Gecko/20100101 Firefox/45.0");
+        fields.put("HTTP_ACCEPT", "text/html,application/xhtml+xml,application/xml;q=0.9,*/*;q=0.8");
+        fields.put("HTTP_ACCEPT_ENCODING", "gzip, deflate");
+        fields.put("HTTP_ACCEPT_LANGUAGE", "en-US,en;q=0.5");
+        fields.put("HTTP_COOKIE", "PHPSESSID=0123456789abcdef0123456789");
+
+        ByteBufferPool byteBufferPool = new MappedByteBufferPool();
+        ClientGenerator generator = new ClientGenerator(byteBufferPool);
+        AtomicLong params = new AtomicLong();
+        ServerParser parser = new ServerParser(new ServerParser.Listener.Adapter()
+        {
+            @Override
+            public void onHeader(int request, HttpField field)
+            {
+                params.incrementAndGet();
+            }
+        });
+
+        int iterations = 200_000;
+        for (int run = 0; run < 4; ++run)
+        {
+            params.set(0);
+            long begin = System.nanoTime();
+            for (int i = 0; i < iterations; ++i)
+            {
+                Generator.Result result = generator.generateRequestHeaders(1, fields, null);
+                for (ByteBuffer buffer : result.getByteBuffers())
+                    parser.parse(buffer);
+                result.succeeded();
+            }
+            long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - begin);
+            Assert.assertEquals((long)iterations * fields.size(), params.get());
+            logger.info("Request headers: {} requests => {} ms, {} req/s",
+                    iterations, elapsed, elapsed == 0 ? "-" : 1000L * iterations / elapsed);
+        }
+    }
+
+    @Stress("High CPU")
+    @Test
+    public void testResponseHeadersThroughput() throws Exception
+    {
+        // The headers that a typical PHP application sends for each response
+        HttpFields fields = new HttpFields();
+        fields.put("X-Powered-By", "PHP/7.0.4");
+        fields.put("Content-Type", "text/html; charset=UTF-8");
+        fields.put("Cache-Control", "no-cache");
+        fields.put("Vary", "Accept-Encoding");
+        fields.put("Content-Length", "0");
+
+        ByteBufferPool byteBufferPool = new MappedByteBufferPool();
+        ServerGenerator generator = new ServerGenerator(byteBufferPool);
+        Generator.Result headers = generator.generateResponseHeaders(1, 200, "OK", fields, null);
+        Generator.Result end = generator.generateResponseContent(1, null, true, false, null);
+        ByteBuffer[] buffers = headers.join(end).getByteBuffers();
+
+        AtomicLong responses = new AtomicLong();
+        ClientParser parser = new ClientParser(new ClientParser.Listener.Adapter()
+        {
+            @Override
+            public void onEnd(int request)
+            {
+                responses.incrementAndGet();
+            }
+        });
+
+        int iterations = 200_000;
+        for (int run = 0; run < 4; ++run)
+        {
+            responses.set(0);
+            long begin = System.nanoTime();
+            for (int i = 0; i < iterations; ++i)
+            {
+                for (ByteBuffer buffer : buffers)
+                {
+                    ByteBuffer slice = buffer.slice();
+                    parser.parse(slice);
+                }
+            }
+            long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - begin);
+            Assert.assertEquals(iterations, responses.get());
+            logger.info("Response headers: {} responses => {} ms, {} resp/s",
+                    iterations, elapsed, elapsed == 0 ? "-" : 1000L * iterations / elapsed);
+        }
+    }
+}
@@ -19,6 +19,9 @@
 package org.eclipse.jetty.fcgi.parser;
 
 import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 
@@ -101,6 +104,55 @@ public class ClientParserTest
         Assert.assertEquals(value, params.get());
     }
 
+    @Test
+    public void testParseResponsesWithSameIdReusesParser() throws Exception
+    {
+        final int id = 13;
+        HttpFields fields = new HttpFields();
+        fields.put("X-Powered-By", "PHP/7.0");
+        fields.put("Content-Length", "0");
+
+        ByteBufferPool byteBufferPool = new MappedByteBufferPool();
+        ServerGenerator generator = new ServerGenerator(byteBufferPool);
+
+        final List<String> events = new ArrayList<>();
+        ClientParser parser = new ClientParser(new ClientParser.Listener.Adapter()
+        {
+            @Override
+            public void onBegin(int request, int code, String reason)
+            {
+                events.add(code + " " + reason);
+            }
+
+            @Override
+            public void onHeader(int request, HttpField field)
+            {
+                events.add(field.getName() + ": " + field.getValue());
+            }
+
+            @Override
+            public void onEnd(int request)
+            {
+                events.add("end");
+            }
+        });
+
+        for (int i = 0; i < 2; ++i)
+        {
+            int code = i == 0 ? 200 : 404;
+            Generator.Result result1 = generator.generateResponseHeaders(id, code, null, fields, null);
+            Generator.Result result2 = generator.generateResponseContent(id, null, true, false, null);
+            for (ByteBuffer buffer : result1.getByteBuffers())
+                parser.parse(buffer);
+            for (ByteBuffer buffer : result2.getByteBuffers())
+                parser.parse(buffer);
+        }
+
+        Assert.assertEquals(Arrays.asList(
+                "200 OK", "X-Powered-By: PHP/7.0", "Content-Length: 0", "end",
+                "404 Not Found", "X-Powered-By: PHP/7.0", "Content-Length: 0", "end"), events);
+    }
+
     @Test
     public void testParseNoResponseContent() throws Exception
     {
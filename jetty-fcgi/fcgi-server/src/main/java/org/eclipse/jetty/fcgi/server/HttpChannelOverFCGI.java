@@ -95,6 +95,13 @@ public class HttpChannelOverFCGI extends HttpChannel
         String name = field.getName();
         if (name.startsWith("HTTP_"))
         {
+            // Known headers are looked up without rebuilding their names
+            HttpHeader header = FCGI.Headers.toHttpHeader(name);
+            if (header == HttpHeader.HOST)
+                return new HostPortHttpField(field.getValue());
+            if (header != null)
+                return new HttpField(header, field.getValue());
+
             // Converts e.g. "HTTP_ACCEPT_ENCODING" to "Accept-Encoding"
             String[] parts = name.split("_");
             StringBuilder httpName = new StringBuilder();
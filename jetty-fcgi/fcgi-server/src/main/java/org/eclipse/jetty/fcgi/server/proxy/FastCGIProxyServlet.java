@@ -62,7 +62,13 @@ import org.eclipse.jetty.proxy.AsyncProxyServlet;
  *     </ul></li>
  *     <li><code>fastCGI.HTTPS</code>, optional, defaults to false, that specifies whether
  *     to force the FastCGI <code>HTTPS</code> parameter to the value <code>on</code></li>
+ *     <li><code>fastCGI.keepAlive</code>, optional, defaults to true, that specifies whether
+ *     connections to the FastCGI server are reused for multiple requests; it must be set
+ *     to false for FastCGI servers that close the connection after each response</li>
  * </ul>
+ * <p>
+ * The number of concurrent connections to the FastCGI server is limited by the
+ * <code>maxConnections</code> init-param, see {@link org.eclipse.jetty.proxy.AbstractProxyServlet#createHttpClient()}.
  *
  * @see TryFilesFilter
  */
@@ -72,6 +78,7 @@ public class FastCGIProxyServlet extends AsyncProxyServlet.Transparent
     public static final String SCRIPT_PATTERN_INIT_PARAM = "scriptPattern";
     public static final String ORIGINAL_URI_ATTRIBUTE_INIT_PARAM = "originalURIAttribute";
     public static final String FASTCGI_HTTPS_INIT_PARAM = "fastCGI.HTTPS";
+    public static final String FASTCGI_KEEP_ALIVE_INIT_PARAM = "fastCGI.keepAlive";
 
     private static final String REMOTE_ADDR_ATTRIBUTE = FastCGIProxyServlet.class.getName() + ".remoteAddr";
     private static final String REMOTE_PORT_ATTRIBUTE = FastCGIProxyServlet.class.getName() + ".remotePort";
@@ -107,7 +114,11 @@ public class FastCGIProxyServlet extends AsyncProxyServlet.Transparent
         String scriptRoot = config.getInitParameter(SCRIPT_ROOT_INIT_PARAM);
         if (scriptRoot == null)
             throw new IllegalArgumentException("Mandatory parameter '" + SCRIPT_ROOT_INIT_PARAM + "' not configured");
-        return new HttpClient(new ProxyHttpClientTransportOverFCGI(scriptRoot), null);
+        ProxyHttpClientTransportOverFCGI transport = new ProxyHttpClientTransportOverFCGI(scriptRoot);
+        String keepAlive = config.getInitParameter(FASTCGI_KEEP_ALIVE_INIT_PARAM);
+        if (keepAlive != null)
+            transport.setKeepAlive(Boolean.parseBoolean(keepAlive));
+        return new HttpClient(transport, null);
     }
 
     @Override
@@ -738,11 +738,8 @@ public class HttpParser
                             throw new BadMessageException(HttpStatus.BAD_REQUEST_400,"Unknown Version");
                         
                         // Should we try to cache header fields?
-                        if (_connectionFields==null && _version.getVersion()>=HttpVersion.HTTP_1_1.getVersion() && _handler.getHeaderCacheSize()>0)
-                        {
-                            int header_cache = _handler.getHeaderCacheSize();
-                            _connectionFields=new ArrayTernaryTrie<>(header_cache);                            
-                        }
+                        if (_version.getVersion()>=HttpVersion.HTTP_1_1.getVersion())
+                            initFieldCache();
 
                         setState(State.HEADER);
                         
@@ -852,6 +849,9 @@ public class HttpParser
                     case COOKIE:
                     case CACHE_CONTROL:
                     case USER_AGENT:
+                    case SERVER:
+                    case X_POWERED_BY:
+                    case VARY:
                         add_to_connection_trie=_connectionFields!=null && _field==null;
                         break;
                         
@@ -987,13 +987,22 @@ public class HttpParser
                                         // Have to get the fields exactly from the buffer to match case
                                         String fn=field.getName();
                                         String fv=field.getValue();
-                                        n=BufferUtil.toString(buffer,buffer.position()-1,fn.length(),StandardCharsets.US_ASCII);
-                                        if (fv==null)
-                                            v=null;
+                                        if (matchesExactly(buffer,buffer.position()-1,fn) && (fv==null || matchesExactly(buffer,buffer.position()+fn.length()+1,fv)))
+                                        {
+                                            // The cached field already has the exact case
+                                            n=fn;
+                                            v=fv;
+                                        }
                                         else
                                         {
-                                            v=BufferUtil.toString(buffer,buffer.position()+fn.length()+1,fv.length(),StandardCharsets.ISO_8859_1);
-                                            field=new HttpField(field.getHeader(),n,v);
+                                            n=BufferUtil.toString(buffer,buffer.position()-1,fn.length(),StandardCharsets.US_ASCII);
+                                            if (fv==null)
+                                                v=null;
+                                            else
+                                            {
+                                                v=BufferUtil.toString(buffer,buffer.position()+fn.length()+1,fv.length(),StandardCharsets.ISO_8859_1);
+                                                field=new HttpField(field.getHeader(),n,v);
+                                            }
                                         }
                                     }
                                     else
@@ -1543,6 +1552,29 @@ public class HttpParser
         _state=state;
     }
 
+    /* ------------------------------------------------------------------------------- */
+    /**
+     * Creates the per-connection field cache, if not already created and if the
+     * handler asks for one. Called once the version is known to be persistent;
+     * parsers that never see a request line may call it directly.
+     */
+    protected void initFieldCache()
+    {
+        if (_connectionFields==null && _handler.getHeaderCacheSize()>0)
+            _connectionFields=new ArrayTernaryTrie<>(_handler.getHeaderCacheSize());
+    }
+
+    /* ------------------------------------------------------------------------------- */
+    private static boolean matchesExactly(ByteBuffer buffer, int index, String string)
+    {
+        for (int i=0;i<string.length();i++)
+        {
+            if (buffer.get(index+i)!=string.charAt(i))
+                return false;
+        }
+        return true;
+    }
+
     /* ------------------------------------------------------------------------------- */
     public Trie<HttpField> getFieldCache()
     {
@@ -45,6 +45,7 @@ public class HTTP2ClientSession extends HTTP2Session
     {
         if (LOG.isDebugEnabled())
             LOG.debug("Received {}", frame);
+        getStatistics().onFrameReceived(frame);
 
         int streamId = frame.getStreamId();
         IStream stream = getStream(streamId);
@@ -80,6 +81,7 @@ public class HTTP2ClientSession extends HTTP2Session
     {
         if (LOG.isDebugEnabled())
             LOG.debug("Received {}", frame);
+        getStatistics().onFrameReceived(frame);
 
         int streamId = frame.getStreamId();
         int pushStreamId = frame.getPromisedStreamId();
@@ -0,0 +1,170 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2015 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+package org.eclipse.jetty.http2.client;
+
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.eclipse.jetty.http.HttpFields;
+import org.eclipse.jetty.http.HttpHeader;
+import org.eclipse.jetty.http.MetaData;
+import org.eclipse.jetty.http2.ErrorCode;
+import org.eclipse.jetty.http2.api.Session;
+import org.eclipse.jetty.http2.api.Stream;
+import org.eclipse.jetty.http2.frames.DataFrame;
+import org.eclipse.jetty.http2.frames.HeadersFrame;
+import org.eclipse.jetty.http2.frames.PushPromiseFrame;
+import org.eclipse.jetty.http2.frames.ResetFrame;
+import org.eclipse.jetty.http2.server.HTTP2ServerConnectionFactory;
+import org.eclipse.jetty.http2.server.ReferrerPushStrategy;
+import org.eclipse.jetty.server.HttpConfiguration;
+import org.eclipse.jetty.servlet.ServletContextHandler;
+import org.eclipse.jetty.servlet.ServletHolder;
+import org.eclipse.jetty.util.Callback;
+import org.eclipse.jetty.util.Promise;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ReferrerPushStrategyTest extends AbstractTest
+{
+    private final String primaryResource = "/primary.html";
+    private final String secondaryResource = "/secondary.css";
+    private ReferrerPushStrategy strategy;
+
+    private void start() throws Exception
+    {
+        strategy = new ReferrerPushStrategy();
+        HTTP2ServerConnectionFactory connectionFactory = new HTTP2ServerConnectionFactory(new HttpConfiguration());
+        connectionFactory.setPushStrategy(strategy);
+        prepareServer(connectionFactory);
+        ServletContextHandler context = new ServletContextHandler(server, "/", true, false);
+        context.addServlet(new ServletHolder(new HttpServlet()
+        {
+            @Override
+            protected void doGet(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException
+            {
+                if (request.getRequestURI().endsWith(primaryResource))
+                    response.getOutputStream().print("<html><head></head><body>PRIMARY</body></html>");
+                else
+                    response.getOutputStream().print("body {}");
+            }
+        }), servletPath + "/*");
+        server.start();
+
+        client = new HTTP2Client();
+        client.start();
+
+        // Associate the secondary resource to the primary resource.
+        Session session = newClient(new Session.Listener.Adapter());
+        Assert.assertEquals(0, request(session, primaryResource, null, false));
+        String referrer = "http://localhost:" + connector.getLocalPort() + servletPath + primaryResource;
+        Assert.assertEquals(0, request(session, secondaryResource, referrer, false));
+    }
+
+    @Test
+    public void testSecondaryResourceIsPushed() throws Exception
+    {
+        start();
+
+        Session session = newClient(new Session.Listener.Adapter());
+        Assert.assertEquals(1, request(session, primaryResource, null, false));
+        Assert.assertEquals(1, strategy.getPushCount());
+    }
+
+    @Test
+    public void testResourceAvailableToClientIsNotPushedAgain() throws Exception
+    {
+        start();
+
+        Session session = newClient(new Session.Listener.Adapter());
+        Assert.assertEquals(1, request(session, primaryResource, null, false));
+
+        // The connection remembers that the client has the pushed resource.
+        Assert.assertEquals(0, request(session, primaryResource, null, false));
+        Assert.assertEquals(1, strategy.getPushCount());
+
+        // Another connection does not have it.
+        Session otherSession = newClient(new Session.Listener.Adapter());
+        Assert.assertEquals(1, request(otherSession, primaryResource, null, false));
+        Assert.assertEquals(2, strategy.getPushCount());
+    }
+
+    @Test
+    public void testPushResetByClientIsReported() throws Exception
+    {
+        start();
+
+        Session session = newClient(new Session.Listener.Adapter());
+        Assert.assertEquals(1, request(session, primaryResource, null, true));
+
+        long end = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (strategy.getPushCancelCount() == 0 && System.nanoTime() < end)
+            Thread.sleep(10);
+        Assert.assertEquals(1, strategy.getPushResetCount());
+        Assert.assertEquals(1, strategy.getPushCancelCount());
+    }
+
+    /**
+     * @return the number of resources pushed with the response
+     */
+    private int request(Session session, String path, String referrer, final boolean resetPushes) throws Exception
+    {
+        HttpFields fields = new HttpFields();
+        if (referrer != null)
+            fields.put(HttpHeader.REFERER, referrer);
+        MetaData.Request request = newRequest("GET", path, fields);
+        final AtomicInteger pushes = new AtomicInteger();
+        final CountDownLatch latch = new CountDownLatch(1);
+        session.newStream(new HeadersFrame(request, null, true), new Promise.Adapter<Stream>(), new Stream.Listener.Adapter()
+        {
+            @Override
+            public Stream.Listener onPush(Stream stream, PushPromiseFrame frame)
+            {
+                pushes.incrementAndGet();
+                if (resetPushes)
+                    stream.reset(new ResetFrame(stream.getId(), ErrorCode.CANCEL_STREAM_ERROR.code), Callback.NOOP);
+                return new Adapter()
+                {
+                    @Override
+                    public void onData(Stream stream, DataFrame frame, Callback callback)
+                    {
+                        callback.succeeded();
+                    }
+                };
+            }
+
+            @Override
+            public void onData(Stream stream, DataFrame frame, Callback callback)
+            {
+                callback.succeeded();
+                if (frame.isEndStream())
+                    latch.countDown();
+            }
+        });
+        Assert.assertTrue(latch.await(5, TimeUnit.SECONDS));
+        return pushes.get();
+    }
+}
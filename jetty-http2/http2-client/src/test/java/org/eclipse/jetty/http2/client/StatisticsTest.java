@@ -0,0 +1,201 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2015 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+
+package org.eclipse.jetty.http2.client;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.eclipse.jetty.http.HttpFields;
+import org.eclipse.jetty.http.HttpStatus;
+import org.eclipse.jetty.http.HttpVersion;
+import org.eclipse.jetty.http.MetaData;
+import org.eclipse.jetty.http2.ErrorCode;
+import org.eclipse.jetty.http2.HTTP2Session;
+import org.eclipse.jetty.http2.HTTP2Statistics;
+import org.eclipse.jetty.http2.HTTP2Stream;
+import org.eclipse.jetty.http2.IStream;
+import org.eclipse.jetty.http2.api.Session;
+import org.eclipse.jetty.http2.api.Stream;
+import org.eclipse.jetty.http2.api.server.ServerSessionListener;
+import org.eclipse.jetty.http2.frames.DataFrame;
+import org.eclipse.jetty.http2.frames.FrameType;
+import org.eclipse.jetty.http2.frames.HeadersFrame;
+import org.eclipse.jetty.http2.frames.ResetFrame;
+import org.eclipse.jetty.http2.server.HTTP2ConnectorStatistics;
+import org.eclipse.jetty.util.Callback;
+import org.eclipse.jetty.util.FuturePromise;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class StatisticsTest extends AbstractTest
+{
+    @Test
+    public void testFramesAndBytesAreCounted() throws Exception
+    {
+        AtomicReference<Session> serverSessionRef = new AtomicReference<>();
+        start(new ServerSessionListener.Adapter()
+        {
+            @Override
+            public void onAccept(Session session)
+            {
+                serverSessionRef.set(session);
+            }
+
+            @Override
+            public Stream.Listener onNewStream(Stream stream, HeadersFrame frame)
+            {
+                HttpFields fields = new HttpFields();
+                fields.put("X-Statistics", "test");
+                MetaData.Response response = new MetaData.Response(HttpVersion.HTTP_2, HttpStatus.OK_200, fields);
+                stream.headers(new HeadersFrame(stream.getId(), response, null, false), new Callback()
+                {
+                    @Override
+                    public void succeeded()
+                    {
+                        stream.data(new DataFrame(stream.getId(), ByteBuffer.allocate(1024), true), NOOP);
+                    }
+                });
+                return null;
+            }
+        });
+        HTTP2ConnectorStatistics connectorStatistics = new HTTP2ConnectorStatistics();
+        connector.addBean(connectorStatistics);
+        connectorStatistics.start();
+
+        Session session = newClient(new Session.Listener.Adapter());
+        int requests = 3;
+        CountDownLatch latch = new CountDownLatch(requests);
+        for (int i = 0; i < requests; ++i)
+        {
+            MetaData.Request metaData = newRequest("GET", new HttpFields());
+            session.newStream(new HeadersFrame(metaData, null, true), new FuturePromise<>(), new Stream.Listener.Adapter()
+            {
+                @Override
+                public void onData(Stream stream, DataFrame frame, Callback callback)
+                {
+                    callback.succeeded();
+                    if (frame.isEndStream())
+                        latch.countDown();
+                }
+            });
+        }
+        Assert.assertTrue(latch.await(5, TimeUnit.SECONDS));
+
+        HTTP2Statistics clientStatistics = ((HTTP2Session)session).getStatistics();
+        Assert.assertEquals(requests, clientStatistics.getStreams());
+        Assert.assertEquals(requests, clientStatistics.getFramesSent(FrameType.HEADERS));
+        Assert.assertEquals(requests, clientStatistics.getFramesReceived(FrameType.HEADERS));
+        Assert.assertEquals(requests, clientStatistics.getFramesReceived(FrameType.DATA));
+        Assert.assertTrue(clientStatistics.getBytesReceived() > requests * 1024);
+        Assert.assertTrue(clientStatistics.getBytesSent() > 0);
+        Assert.assertTrue(clientStatistics.getHpackDecoderTableSize() > 0);
+
+        HTTP2Statistics serverStatistics = connectorStatistics.getStatistics();
+        Assert.assertEquals(1, connectorStatistics.getSessions());
+        Assert.assertEquals(requests, serverStatistics.getStreams());
+        Assert.assertEquals(requests, serverStatistics.getFramesReceived(FrameType.HEADERS));
+        Assert.assertEquals(requests, serverStatistics.getFramesSent(FrameType.DATA));
+        Assert.assertEquals(clientStatistics.getBytesSent(), serverStatistics.getBytesReceived());
+
+        session.close(ErrorCode.NO_ERROR.code, null, Callback.NOOP);
+        long end = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (connectorStatistics.getSessions() > 0 && System.nanoTime() < end)
+            Thread.sleep(10);
+        Assert.assertEquals(0, connectorStatistics.getSessions());
+        Assert.assertEquals(requests, connectorStatistics.getStreams());
+        Assert.assertEquals(1, connectorStatistics.getStatistics().getFramesReceived(FrameType.GO_AWAY));
+
+        // Resetting the aggregate does not reset the statistics of the sessions.
+        connectorStatistics.reset();
+        Assert.assertEquals(0, connectorStatistics.getStreams());
+        Assert.assertEquals(requests, ((HTTP2Session)serverSessionRef.get()).getStatistics().getStreams());
+    }
+
+    @Test
+    public void testResetsAreCountedByErrorCode() throws Exception
+    {
+        CountDownLatch resetLatch = new CountDownLatch(1);
+        start(new ServerSessionListener.Adapter()
+        {
+            @Override
+            public Stream.Listener onNewStream(Stream stream, HeadersFrame frame)
+            {
+                return new Stream.Listener.Adapter()
+                {
+                    @Override
+                    public void onReset(Stream stream, ResetFrame frame)
+                    {
+                        resetLatch.countDown();
+                    }
+                };
+            }
+        });
+
+        Session session = newClient(new Session.Listener.Adapter());
+        MetaData.Request metaData = newRequest("GET", new HttpFields());
+        FuturePromise<Stream> promise = new FuturePromise<>();
+        session.newStream(new HeadersFrame(metaData, null, false), promise, new Stream.Listener.Adapter());
+        Stream stream = promise.get(5, TimeUnit.SECONDS);
+        stream.reset(new ResetFrame(stream.getId(), ErrorCode.CANCEL_STREAM_ERROR.code), Callback.NOOP);
+        Assert.assertTrue(resetLatch.await(5, TimeUnit.SECONDS));
+
+        HTTP2Statistics statistics = ((HTTP2Session)session).getStatistics();
+        Assert.assertEquals(1, statistics.getResetsSent(ErrorCode.CANCEL_STREAM_ERROR));
+        Assert.assertEquals(0, statistics.getResetsSent(ErrorCode.PROTOCOL_ERROR));
+        Assert.assertEquals(1, statistics.getFramesSent(FrameType.RST_STREAM));
+        Assert.assertEquals(Long.valueOf(1), statistics.getResetsSent().get(ErrorCode.CANCEL_STREAM_ERROR.name()));
+    }
+
+    @Test
+    public void testResetDiscardsStalledTimeBeforeReset() throws Exception
+    {
+        HTTP2Statistics statistics = new HTTP2Statistics();
+        HTTP2Statistics parent = new HTTP2Statistics();
+        statistics.setParent(parent);
+        IStream stream = new HTTP2Stream(null, null, 1);
+
+        statistics.onSessionStalled();
+        statistics.onStreamStalled(stream);
+        Thread.sleep(500);
+        statistics.reset();
+        parent.reset();
+        Thread.sleep(50);
+
+        // Stalls still open are accounted from the reset.
+        Assert.assertTrue(statistics.getSessionStalledTime() < 500);
+        Assert.assertTrue(statistics.getStreamStalledTime() < 500);
+        Assert.assertTrue(statistics.getStreamStalledTime() >= 50);
+
+        statistics.onSessionUnstalled();
+        statistics.onStreamUnstalled(stream);
+        Assert.assertTrue(statistics.getSessionStalledTime() < 500);
+        Assert.assertTrue(statistics.getStreamStalledTime() < 500);
+        Assert.assertTrue(statistics.getStreamStalledTime() >= 50);
+        Assert.assertTrue(parent.getSessionStalledTime() < 500);
+        Assert.assertTrue(parent.getStreamStalledTime() < 500);
+
+        // Unstalling again does not account the stall twice.
+        long streamStalledTime = statistics.getStreamStalledTime();
+        statistics.onStreamUnstalled(stream);
+        Assert.assertEquals(streamStalledTime, statistics.getStreamStalledTime());
+    }
+}
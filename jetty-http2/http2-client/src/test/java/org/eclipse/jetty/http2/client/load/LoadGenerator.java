@@ -0,0 +1,679 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2015 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+
+package org.eclipse.jetty.http2.client.load;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import org.eclipse.jetty.http.HttpFields;
+import org.eclipse.jetty.http.HttpMethod;
+import org.eclipse.jetty.http.HttpScheme;
+import org.eclipse.jetty.http.HttpURI;
+import org.eclipse.jetty.http.HttpVersion;
+import org.eclipse.jetty.http.MetaData;
+import org.eclipse.jetty.http2.ErrorCode;
+import org.eclipse.jetty.http2.api.Session;
+import org.eclipse.jetty.http2.api.Stream;
+import org.eclipse.jetty.http2.client.HTTP2Client;
+import org.eclipse.jetty.http2.client.HTTP2ClientConnectionFactory;
+import org.eclipse.jetty.http2.frames.DataFrame;
+import org.eclipse.jetty.http2.frames.HeadersFrame;
+import org.eclipse.jetty.http2.frames.ResetFrame;
+import org.eclipse.jetty.io.ssl.SslClientConnectionFactory;
+import org.eclipse.jetty.util.Callback;
+import org.eclipse.jetty.util.FuturePromise;
+import org.eclipse.jetty.util.Promise;
+import org.eclipse.jetty.util.ssl.SslContextFactory;
+import org.eclipse.jetty.util.thread.QueuedThreadPool;
+
+/**
+ * <p>A load generator for HTTP/2 servers, built on {@link HTTP2Client}.</p>
+ * <p>In {@link Mode#CLOSED closed-loop} mode, each connection keeps
+ * {@link #getStreamsPerConnection()} streams outstanding: a new request
+ * is sent as soon as a response completes, so that the request rate
+ * adapts to the server throughput.</p>
+ * <p>In {@link Mode#OPEN open-loop} mode, requests are sent at a fixed
+ * {@link #getRate() rate}, independently of the server throughput, and
+ * latencies are measured from the time each request was supposed to be
+ * sent, so that server stalls are not hidden by the load generator
+ * slowing down.</p>
+ * <p>Requests may have a content of {@link #getContentLength()} bytes,
+ * and their headers are taken in turn from the configured header sets.
+ * The {@link Result} of a run reports the throughput, the latency
+ * percentiles and the allocation rate of the JVM.</p>
+ * <p>Running {@link #main(String[])} without a {@code port} argument starts
+ * an embedded {@link LoadServer} on loopback; arguments are in the form
+ * {@code name=value}, where the names are those of the properties of this
+ * class, for example:</p>
+ * <pre>
+ * LoadGenerator mode=OPEN rate=5000 requests=100000 connections=4 tls=true
+ * </pre>
+ */
+public class LoadGenerator
+{
+    public enum Mode
+    {
+        OPEN, CLOSED
+    }
+
+    private final List<HttpFields> headerSets = new ArrayList<>();
+    private String host = "localhost";
+    private int port;
+    private boolean tls;
+    private String path = "/";
+    private Mode mode = Mode.CLOSED;
+    private int connections = 1;
+    private int streamsPerConnection = 16;
+    private int rate = 1000;
+    private int requests = 10000;
+    private int warmupRequests = 0;
+    private int contentLength = 0;
+    private int maxSamples = 1 << 20;
+
+    public String getHost()
+    {
+        return host;
+    }
+
+    public void setHost(String host)
+    {
+        this.host = host;
+    }
+
+    public int getPort()
+    {
+        return port;
+    }
+
+    public void setPort(int port)
+    {
+        this.port = port;
+    }
+
+    public boolean isTLS()
+    {
+        return tls;
+    }
+
+    public void setTLS(boolean tls)
+    {
+        this.tls = tls;
+    }
+
+    public String getPath()
+    {
+        return path;
+    }
+
+    public void setPath(String path)
+    {
+        this.path = path;
+    }
+
+    public Mode getMode()
+    {
+        return mode;
+    }
+
+    public void setMode(Mode mode)
+    {
+        this.mode = mode;
+    }
+
+    public int getConnections()
+    {
+        return connections;
+    }
+
+    public void setConnections(int connections)
+    {
+        this.connections = connections;
+    }
+
+    public int getStreamsPerConnection()
+    {
+        return streamsPerConnection;
+    }
+
+    /**
+     * @param streamsPerConnection the number of concurrent streams per connection
+     * in closed-loop mode; ignored in open-loop mode
+     */
+    public void setStreamsPerConnection(int streamsPerConnection)
+    {
+        this.streamsPerConnection = streamsPerConnection;
+    }
+
+    public int getRate()
+    {
+        return rate;
+    }
+
+    /**
+     * @param rate the number of requests per second sent in open-loop mode;
+     * ignored in closed-loop mode
+     */
+    public void setRate(int rate)
+    {
+        this.rate = rate;
+    }
+
+    public int getRequests()
+    {
+        return requests;
+    }
+
+    public void setRequests(int requests)
+    {
+        this.requests = requests;
+    }
+
+    public int getWarmupRequests()
+    {
+        return warmupRequests;
+    }
+
+    /**
+     * @param warmupRequests the number of requests sent before the measured run,
+     * whose results are discarded
+     */
+    public void setWarmupRequests(int warmupRequests)
+    {
+        this.warmupRequests = warmupRequests;
+    }
+
+    public int getContentLength()
+    {
+        return contentLength;
+    }
+
+    /**
+     * @param contentLength the length of the request content; requests
+     * with content are POSTs, requests without content are GETs
+     */
+    public void setContentLength(int contentLength)
+    {
+        this.contentLength = contentLength;
+    }
+
+    public int getMaxSamples()
+    {
+        return maxSamples;
+    }
+
+    /**
+     * @param maxSamples the max number of latencies recorded to compute the percentiles
+     */
+    public void setMaxSamples(int maxSamples)
+    {
+        this.maxSamples = maxSamples;
+    }
+
+    public List<HttpFields> getHeaderSets()
+    {
+        return headerSets;
+    }
+
+    /**
+     * @param fields a set of request headers; requests take the header sets in turn
+     */
+    public void addHeaderSet(HttpFields fields)
+    {
+        headerSets.add(fields);
+    }
+
+    /**
+     * <p>Runs the load against the configured server, first the warmup
+     * requests and then the measured requests.</p>
+     *
+     * @param client the client used to connect to the server, already started
+     * @return the result of the measured requests
+     * @throws Exception if the connection to the server fails
+     */
+    public Result run(HTTP2Client client) throws Exception
+    {
+        List<Session> sessions = new ArrayList<>();
+        try
+        {
+            for (int i = 0; i < connections; ++i)
+                sessions.add(connect(client));
+            if (warmupRequests > 0)
+                run(client, sessions, warmupRequests);
+            return run(client, sessions, requests);
+        }
+        finally
+        {
+            for (Session session : sessions)
+                session.close(ErrorCode.NO_ERROR.code, null, Callback.NOOP);
+        }
+    }
+
+    private Session connect(HTTP2Client client) throws Exception
+    {
+        FuturePromise<Session> promise = new FuturePromise<>();
+        SslContextFactory sslContextFactory = tls ? client.getBean(SslContextFactory.class) : null;
+        client.connect(sslContextFactory, new InetSocketAddress(host, port), new Session.Listener.Adapter(), promise);
+        return promise.get(5, TimeUnit.SECONDS);
+    }
+
+    private Result run(HTTP2Client client, List<Session> sessions, int count) throws Exception
+    {
+        Run run = new Run(client.getExecutor(), count);
+        long begin = System.nanoTime();
+        long allocated = allocatedBytes();
+        if (mode == Mode.OPEN)
+        {
+            long period = TimeUnit.SECONDS.toNanos(1) / Math.max(1, rate);
+            for (int i = 0; i < count; ++i)
+            {
+                long intended = begin + i * period;
+                long delay = intended - System.nanoTime();
+                if (delay > 0)
+                    LockSupport.parkNanos(delay);
+                send(sessions.get(i % sessions.size()), run, i, intended);
+            }
+        }
+        else
+        {
+            int concurrency = Math.min(count, sessions.size() * streamsPerConnection);
+            for (int i = 0; i < concurrency; ++i)
+                send(sessions.get(i % sessions.size()), run, run.sent.getAndIncrement(), System.nanoTime());
+        }
+        await(run, client.getIdleTimeout());
+        long elapsed = System.nanoTime() - begin;
+        return new Result(run, elapsed, allocatedBytes() - allocated);
+    }
+
+    /**
+     * <p>Waits for the requests of the given run to complete, for as long as
+     * some complete within the idle timeout.</p>
+     * <p>In open-loop mode this method is called once all requests have been
+     * sent, so the run is bounded by its duration plus the idle timeout;
+     * in closed-loop mode it is bounded by a stall of the idle timeout.</p>
+     */
+    private void await(Run run, long idleTimeout) throws InterruptedException
+    {
+        if (idleTimeout <= 0)
+            idleTimeout = 30000;
+        long pending = run.latch.getCount();
+        while (!run.latch.await(idleTimeout, TimeUnit.MILLISECONDS))
+        {
+            long count = run.latch.getCount();
+            // The requests still pending are reported by the result.
+            if (count == pending)
+                return;
+            pending = count;
+        }
+    }
+
+    private void send(final Session session, final Run run, int index, final long start)
+    {
+        boolean content = contentLength > 0;
+        HttpFields fields = headerSets.isEmpty() ? new HttpFields() : headerSets.get(index % headerSets.size());
+        String scheme = (tls ? HttpScheme.HTTPS : HttpScheme.HTTP).asString();
+        HttpURI uri = new HttpURI(scheme, host, port, path);
+        String method = (content ? HttpMethod.POST : HttpMethod.GET).asString();
+        MetaData.Request request = new MetaData.Request(method, uri, HttpVersion.HTTP_2, fields, content ? contentLength : -1);
+        HeadersFrame frame = new HeadersFrame(request, null, !content);
+        session.newStream(frame, new Promise<Stream>()
+        {
+            @Override
+            public void succeeded(Stream stream)
+            {
+                if (content)
+                    stream.data(new DataFrame(stream.getId(), ByteBuffer.wrap(run.content), true), Callback.NOOP);
+            }
+
+            @Override
+            public void failed(Throwable x)
+            {
+                complete(session, run, start, true);
+            }
+        }, new Stream.Listener.Adapter()
+        {
+            @Override
+            public void onHeaders(Stream stream, HeadersFrame frame)
+            {
+                if (frame.isEndStream())
+                    complete(session, run, start, false);
+            }
+
+            @Override
+            public void onData(Stream stream, DataFrame frame, Callback callback)
+            {
+                callback.succeeded();
+                if (frame.isEndStream())
+                    complete(session, run, start, false);
+            }
+
+            @Override
+            public void onReset(Stream stream, ResetFrame frame)
+            {
+                complete(session, run, start, true);
+            }
+
+            @Override
+            public void onTimeout(Stream stream, Throwable x)
+            {
+                complete(session, run, start, true);
+            }
+        });
+    }
+
+    private void complete(Session session, Run run, long start, boolean failed)
+    {
+        run.record(System.nanoTime() - start, failed);
+        if (mode == Mode.CLOSED)
+        {
+            int next = run.sent.getAndIncrement();
+            if (next < run.count)
+            {
+                // A failure may be notified from within send(), so sending
+                // from here would recurse for every request failing immediately.
+                if (failed)
+                    run.executor.execute(() -> send(session, run, next, System.nanoTime()));
+                else
+                    send(session, run, next, System.nanoTime());
+            }
+        }
+    }
+
+    /**
+     * @return the bytes allocated by the live threads of this JVM, or -1 if not supported
+     */
+    private static long allocatedBytes()
+    {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (!(threads instanceof com.sun.management.ThreadMXBean))
+            return -1;
+        com.sun.management.ThreadMXBean sunThreads = (com.sun.management.ThreadMXBean)threads;
+        if (!sunThreads.isThreadAllocatedMemorySupported() || !sunThreads.isThreadAllocatedMemoryEnabled())
+            return -1;
+        long result = 0;
+        for (long allocated : sunThreads.getThreadAllocatedBytes(threads.getAllThreadIds()))
+        {
+            if (allocated > 0)
+                result += allocated;
+        }
+        return result;
+    }
+
+    private class Run
+    {
+        private final AtomicInteger sent = new AtomicInteger();
+        private final AtomicInteger samples = new AtomicInteger();
+        private final AtomicLong failures = new AtomicLong();
+        private final long[] latencies;
+        private final byte[] content;
+        private final int count;
+        private final CountDownLatch latch;
+        private final Executor executor;
+
+        private Run(Executor executor, int count)
+        {
+            this.executor = executor;
+            this.count = count;
+            this.latch = new CountDownLatch(count);
+            this.latencies = new long[Math.min(count, maxSamples)];
+            this.content = new byte[contentLength];
+        }
+
+        private void record(long latency, boolean failed)
+        {
+            if (failed)
+            {
+                failures.incrementAndGet();
+            }
+            else
+            {
+                int sample = samples.getAndIncrement();
+                if (sample < latencies.length)
+                    latencies[sample] = latency;
+            }
+            latch.countDown();
+        }
+    }
+
+    /**
+     * <p>The result of a load run.</p>
+     */
+    public static class Result
+    {
+        private final int requests;
+        private final long incomplete;
+        private final long failures;
+        private final long elapsed;
+        private final long allocated;
+        private final long[] latencies;
+
+        private Result(LoadGenerator.Run run, long elapsed, long allocated)
+        {
+            this.requests = run.count;
+            this.incomplete = run.latch.getCount();
+            this.failures = run.failures.get();
+            this.elapsed = elapsed;
+            this.allocated = allocated;
+            this.latencies = Arrays.copyOf(run.latencies, Math.min(run.samples.get(), run.latencies.length));
+            Arrays.sort(latencies);
+        }
+
+        public int getRequests()
+        {
+            return requests;
+        }
+
+        /**
+         * @return the number of requests that did not complete by the end of the run
+         */
+        public long getIncomplete()
+        {
+            return incomplete;
+        }
+
+        public long getFailures()
+        {
+            return failures;
+        }
+
+        /**
+         * @param unit the time unit to convert the elapsed time to
+         * @return the time taken by the run
+         */
+        public long getElapsed(TimeUnit unit)
+        {
+            return unit.convert(elapsed, TimeUnit.NANOSECONDS);
+        }
+
+        /**
+         * @return the number of requests completed per second
+         */
+        public double getThroughput()
+        {
+            return (requests - incomplete) * (double)TimeUnit.SECONDS.toNanos(1) / elapsed;
+        }
+
+        /**
+         * @param percentile the percentile, between 0 and 100
+         * @param unit the time unit to convert the latency to
+         * @return the latency at the given percentile of the successful requests
+         */
+        public long getLatency(double percentile, TimeUnit unit)
+        {
+            if (latencies.length == 0)
+                return 0;
+            int index = (int)Math.ceil(percentile / 100 * latencies.length) - 1;
+            return unit.convert(latencies[Math.max(0, Math.min(index, latencies.length - 1))], TimeUnit.NANOSECONDS);
+        }
+
+        /**
+         * @return the bytes allocated by the JVM during the run, or -1 if not supported
+         */
+        public long getAllocatedBytes()
+        {
+            return allocated;
+        }
+
+        /**
+         * @return the bytes allocated by the JVM per second during the run, or -1 if not supported
+         */
+        public double getAllocationRate()
+        {
+            if (allocated < 0)
+                return -1;
+            return allocated * (double)TimeUnit.SECONDS.toNanos(1) / elapsed;
+        }
+
+        @Override
+        public String toString()
+        {
+            TimeUnit unit = TimeUnit.MICROSECONDS;
+            return String.format("requests=%d incomplete=%d failures=%d elapsed=%dms throughput=%.1f req/s%n" +
+                            "latency (us): p50=%d p90=%d p99=%d p99.9=%d max=%d%n" +
+                            "allocation: %d bytes, %.1f MiB/s",
+                    getRequests(),
+                    getIncomplete(),
+                    getFailures(),
+                    getElapsed(TimeUnit.MILLISECONDS),
+                    getThroughput(),
+                    getLatency(50, unit),
+                    getLatency(90, unit),
+                    getLatency(99, unit),
+                    getLatency(99.9, unit),
+                    getLatency(100, unit),
+                    getAllocatedBytes(),
+                    getAllocationRate() / (1024 * 1024));
+        }
+    }
+
+    public static void main(String[] args) throws Exception
+    {
+        LoadGenerator generator = new LoadGenerator();
+        int responseContentLength = 1024;
+        for (String arg : args)
+        {
+            int equals = arg.indexOf('=');
+            String name = arg.substring(0, equals);
+            String value = arg.substring(equals + 1);
+            switch (name)
+            {
+                case "host":
+                    generator.setHost(value);
+                    break;
+                case "port":
+                    generator.setPort(Integer.parseInt(value));
+                    break;
+                case "tls":
+                    generator.setTLS(Boolean.parseBoolean(value));
+                    break;
+                case "path":
+                    generator.setPath(value);
+                    break;
+                case "mode":
+                    generator.setMode(Mode.valueOf(value.toUpperCase()));
+                    break;
+                case "connections":
+                    generator.setConnections(Integer.parseInt(value));
+                    break;
+                case "streamsPerConnection":
+                    generator.setStreamsPerConnection(Integer.parseInt(value));
+                    break;
+                case "rate":
+                    generator.setRate(Integer.parseInt(value));
+                    break;
+                case "requests":
+                    generator.setRequests(Integer.parseInt(value));
+                    break;
+                case "warmupRequests":
+                    generator.setWarmupRequests(Integer.parseInt(value));
+                    break;
+                case "contentLength":
+                    generator.setContentLength(Integer.parseInt(value));
+                    break;
+                case "responseContentLength":
+                    responseContentLength = Integer.parseInt(value);
+                    break;
+                case "header":
+                    // Format is header=Name:Value, each header makes its own set.
+                    HttpFields fields = new HttpFields();
+                    int colon = value.indexOf(':');
+                    fields.put(value.substring(0, colon).trim(), value.substring(colon + 1).trim());
+                    generator.addHeaderSet(fields);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown argument " + arg);
+            }
+        }
+
+        LoadServer server = null;
+        if (generator.getPort() == 0)
+        {
+            server = new LoadServer(generator.isTLS(), responseContentLength);
+            server.start();
+            generator.setPort(server.getLocalPort());
+        }
+
+        HTTP2Client client = newHTTP2Client(generator.isTLS() ? LoadServer.newSslContextFactory() : null);
+        client.start();
+        try
+        {
+            System.err.println(generator.run(client));
+        }
+        finally
+        {
+            client.stop();
+            if (server != null)
+                server.stop();
+        }
+    }
+
+    /**
+     * <p>Creates a client that speaks HTTP/2 with prior knowledge also on TLS,
+     * without ALPN negotiation, to match {@link LoadServer}.</p>
+     *
+     * @param sslContextFactory the TLS configuration, or null for cleartext
+     * @return a new, not yet started, client
+     */
+    public static HTTP2Client newHTTP2Client(final SslContextFactory sslContextFactory)
+    {
+        final HTTP2Client client = new HTTP2Client();
+        QueuedThreadPool clientExecutor = new QueuedThreadPool();
+        clientExecutor.setName("client");
+        client.setExecutor(clientExecutor);
+        if (sslContextFactory != null)
+        {
+            client.addBean(sslContextFactory);
+            final HTTP2ClientConnectionFactory h2 = new HTTP2ClientConnectionFactory();
+            client.setClientConnectionFactory((endPoint, context) ->
+                    new SslClientConnectionFactory(sslContextFactory, client.getByteBufferPool(), client.getExecutor(), h2).newConnection(endPoint, context));
+        }
+        return client;
+    }
+}
@@ -0,0 +1,145 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2015 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+
+package org.eclipse.jetty.http2.client.load;
+
+import java.net.ServerSocket;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.jetty.http.HttpFields;
+import org.eclipse.jetty.http2.client.HTTP2Client;
+import org.eclipse.jetty.toolchain.test.TestTracker;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+
+public class LoadGeneratorTest
+{
+    @Rule
+    public TestTracker tracker = new TestTracker();
+    private LoadServer server;
+    private HTTP2Client client;
+
+    private LoadGenerator start(boolean tls, int responseContentLength) throws Exception
+    {
+        server = new LoadServer(tls, responseContentLength);
+        server.start();
+        client = LoadGenerator.newHTTP2Client(tls ? LoadServer.newSslContextFactory() : null);
+        client.start();
+
+        LoadGenerator generator = new LoadGenerator();
+        generator.setTLS(tls);
+        generator.setPort(server.getLocalPort());
+        return generator;
+    }
+
+    @After
+    public void dispose() throws Exception
+    {
+        if (client != null)
+            client.stop();
+        if (server != null)
+            server.stop();
+    }
+
+    @Test
+    public void testClosedLoop() throws Exception
+    {
+        LoadGenerator generator = start(false, 1024);
+        generator.setMode(LoadGenerator.Mode.CLOSED);
+        generator.setConnections(2);
+        generator.setStreamsPerConnection(8);
+        generator.setRequests(500);
+        generator.setWarmupRequests(100);
+
+        LoadGenerator.Result result = generator.run(client);
+
+        Assert.assertEquals(500, result.getRequests());
+        Assert.assertEquals(0, result.getFailures());
+        Assert.assertTrue(result.getThroughput() > 0);
+        assertPercentiles(result);
+    }
+
+    @Test
+    public void testOpenLoop() throws Exception
+    {
+        LoadGenerator generator = start(false, 0);
+        generator.setMode(LoadGenerator.Mode.OPEN);
+        generator.setRate(1000);
+        generator.setRequests(200);
+        generator.setContentLength(512);
+        HttpFields fields1 = new HttpFields();
+        fields1.put("X-Load", "1");
+        generator.addHeaderSet(fields1);
+        HttpFields fields2 = new HttpFields();
+        fields2.put("X-Load", "2");
+        fields2.put("Accept", "*/*");
+        generator.addHeaderSet(fields2);
+
+        LoadGenerator.Result result = generator.run(client);
+
+        Assert.assertEquals(0, result.getFailures());
+        // At 1000 requests/s, 200 requests take at least 199 ms.
+        Assert.assertTrue(result.getElapsed(TimeUnit.MILLISECONDS) >= 199);
+        assertPercentiles(result);
+    }
+
+    @Test
+    public void testTLS() throws Exception
+    {
+        LoadGenerator generator = start(true, 4096);
+        generator.setRequests(100);
+
+        LoadGenerator.Result result = generator.run(client);
+
+        Assert.assertEquals(0, result.getFailures());
+        assertPercentiles(result);
+    }
+
+    @Test
+    public void testStalledServerDoesNotHangTheRun() throws Exception
+    {
+        // The server accepts the connection but never reads or replies.
+        try (ServerSocket server = new ServerSocket(0))
+        {
+            client = LoadGenerator.newHTTP2Client(null);
+            client.setIdleTimeout(500);
+            client.start();
+
+            LoadGenerator generator = new LoadGenerator();
+            generator.setPort(server.getLocalPort());
+            generator.setRequests(10);
+
+            long begin = System.nanoTime();
+            LoadGenerator.Result result = generator.run(client);
+
+            Assert.assertTrue(TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - begin) < 10);
+            Assert.assertEquals(10, result.getIncomplete() + result.getFailures());
+        }
+    }
+
+    private void assertPercentiles(LoadGenerator.Result result)
+    {
+        TimeUnit unit = TimeUnit.NANOSECONDS;
+        Assert.assertTrue(result.getLatency(50, unit) > 0);
+        Assert.assertTrue(result.getLatency(50, unit) <= result.getLatency(99, unit));
+        Assert.assertTrue(result.getLatency(99, unit) <= result.getLatency(100, unit));
+    }
+}
@@ -0,0 +1,151 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2015 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+
+package org.eclipse.jetty.http2.client.load;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.eclipse.jetty.http2.server.HTTP2CServerConnectionFactory;
+import org.eclipse.jetty.http2.server.HTTP2ServerConnectionFactory;
+import org.eclipse.jetty.server.HttpConfiguration;
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.SecureRequestCustomizer;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
+import org.eclipse.jetty.server.SslConnectionFactory;
+import org.eclipse.jetty.server.handler.AbstractHandler;
+import org.eclipse.jetty.util.component.ContainerLifeCycle;
+import org.eclipse.jetty.util.ssl.SslContextFactory;
+import org.eclipse.jetty.util.thread.QueuedThreadPool;
+
+/**
+ * <p>An embedded HTTP/2 server, either cleartext or TLS, that is the
+ * target of a {@link LoadGenerator} running on the same host.</p>
+ * <p>Requests are served by a handler that discards the request content
+ * and replies with a response content of the configured length.</p>
+ * <p>Since the server runs on loopback, the TLS connector expects the
+ * client to speak HTTP/2 with prior knowledge, without ALPN negotiation,
+ * so that the ALPN boot library is not needed.</p>
+ */
+public class LoadServer extends ContainerLifeCycle
+{
+    private final boolean tls;
+    private final int contentLength;
+    private Server server;
+    private ServerConnector connector;
+
+    public LoadServer(boolean tls, int contentLength)
+    {
+        this.tls = tls;
+        this.contentLength = contentLength;
+    }
+
+    public boolean isTLS()
+    {
+        return tls;
+    }
+
+    public int getLocalPort()
+    {
+        return connector.getLocalPort();
+    }
+
+    public Server getServer()
+    {
+        return server;
+    }
+
+    @Override
+    protected void doStart() throws Exception
+    {
+        QueuedThreadPool serverExecutor = new QueuedThreadPool();
+        serverExecutor.setName("server");
+        server = new Server(serverExecutor);
+
+        HttpConfiguration httpConfig = new HttpConfiguration();
+        if (tls)
+        {
+            httpConfig.addCustomizer(new SecureRequestCustomizer());
+            HTTP2ServerConnectionFactory h2 = new HTTP2ServerConnectionFactory(httpConfig);
+            SslConnectionFactory ssl = new SslConnectionFactory(newSslContextFactory(), h2.getProtocol());
+            connector = new ServerConnector(server, ssl, h2);
+        }
+        else
+        {
+            connector = new ServerConnector(server, new HTTP2CServerConnectionFactory(httpConfig));
+        }
+        connector.setHost("localhost");
+        server.addConnector(connector);
+        server.setHandler(new LoadHandler(contentLength));
+        addBean(server);
+
+        super.doStart();
+    }
+
+    @Override
+    protected void doStop() throws Exception
+    {
+        super.doStop();
+        removeBean(server);
+    }
+
+    public static SslContextFactory newSslContextFactory()
+    {
+        SslContextFactory sslContextFactory = new SslContextFactory();
+        sslContextFactory.setKeyStorePath("src/test/resources/keystore.jks");
+        sslContextFactory.setKeyStorePassword("storepwd");
+        sslContextFactory.setTrustStorePath("src/test/resources/keystore.jks");
+        sslContextFactory.setTrustStorePassword("storepwd");
+        return sslContextFactory;
+    }
+
+    private static class LoadHandler extends AbstractHandler
+    {
+        private final byte[] content;
+
+        private LoadHandler(int contentLength)
+        {
+            this.content = new byte[contentLength];
+            Arrays.fill(content, (byte)'X');
+        }
+
+        @Override
+        public void handle(String target, Request jettyRequest, HttpServletRequest request, HttpServletResponse response) throws IOException, ServletException
+        {
+            jettyRequest.setHandled(true);
+            InputStream input = request.getInputStream();
+            byte[] buffer = new byte[4096];
+            while (true)
+            {
+                int read = input.read(buffer);
+                if (read < 0)
+                    break;
+            }
+            response.setContentLength(content.length);
+            if (content.length > 0)
+                response.getOutputStream().write(content);
+        }
+    }
+}
@@ -54,6 +54,7 @@ public class HTTP2Connection extends AbstractConnection
         this.session = session;
         this.bufferSize = bufferSize;
         this.executionStrategy = ExecutionStrategy.Factory.instanceFor(producer, executor);
+        session.getStatistics().setHpackDecoder(parser.getHpackDecoder());
     }
 
     public ISession getSession()
@@ -191,6 +192,8 @@ public class HTTP2Connection extends AbstractConnection
                     return null;
                 }
 
+                session.getStatistics().onBytesReceived(filled);
+
                 looping = true;
             }
         }
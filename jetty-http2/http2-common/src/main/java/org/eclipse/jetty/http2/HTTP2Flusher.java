@@ -49,6 +49,7 @@ public class HTTP2Flusher extends IteratingCallback
     private final Queue<Entry> completes = new ArrayDeque<>();
     private final HTTP2Session session;
     private final ByteBufferPool.Lease lease;
+    private long writing;
 
     public HTTP2Flusher(HTTP2Session session)
     {
@@ -174,9 +175,11 @@ public class HTTP2Flusher extends IteratingCallback
                 if (remaining > 0)
                 {
                     FlowControlStrategy flowControl = session.getFlowControlStrategy();
+                    HTTP2Statistics statistics = session.getStatistics();
                     if (sessionWindow <= 0)
                     {
                         flowControl.onSessionStalled(session);
+                        statistics.onSessionStalled();
                         ++index;
                         // There may be *non* flow controlled frames to send.
                         continue;
@@ -196,6 +199,7 @@ public class HTTP2Flusher extends IteratingCallback
                         if (streamWindow <= 0)
                         {
                             flowControl.onStreamStalled(stream);
+                            statistics.onStreamStalled(stream);
                             ++index;
                             // There may be *non* flow controlled frames to send.
                             continue;
@@ -203,9 +207,13 @@ public class HTTP2Flusher extends IteratingCallback
                     }
 
                     // The frame fits both flow control windows, reduce them.
+                    statistics.onSessionUnstalled();
                     sessionWindow -= remaining;
                     if (stream != null)
+                    {
+                        statistics.onStreamUnstalled(stream);
                         streams.put(stream, streams.get(stream) - remaining);
+                    }
                 }
 
                 // The frame will be written, remove it from the queue.
@@ -251,8 +259,9 @@ public class HTTP2Flusher extends IteratingCallback
         }
 
         List<ByteBuffer> byteBuffers = lease.getByteBuffers();
+        writing = lease.getTotalLength();
         if (LOG.isDebugEnabled())
-            LOG.debug("Writing {} buffers ({} bytes) for {} frames {}", byteBuffers.size(), lease.getTotalLength(), actives.size(), actives);
+            LOG.debug("Writing {} buffers ({} bytes) for {} frames {}", byteBuffers.size(), writing, actives.size(), actives);
         session.getEndPoint().write(this, byteBuffers.toArray(new ByteBuffer[byteBuffers.size()]));
         return Action.SCHEDULED;
     }
@@ -260,6 +269,7 @@ public class HTTP2Flusher extends IteratingCallback
     @Override
     public void succeeded()
     {
+        session.getStatistics().onBytesSent(writing);
         lease.recycle();
 
         // Transfer active items to avoid reentrancy.
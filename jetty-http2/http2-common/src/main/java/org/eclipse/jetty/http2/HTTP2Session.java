@@ -76,6 +76,7 @@ public abstract class HTTP2Session implements ISession, Parser.Listener
     private final Listener listener;
     private final FlowControlStrategy flowControl;
     private final HTTP2Flusher flusher;
+    private final HTTP2Statistics statistics = new HTTP2Statistics();
     private int maxLocalStreams;
     private int maxRemoteStreams;
     private long streamIdleTimeout;
@@ -96,6 +97,7 @@ public abstract class HTTP2Session implements ISession, Parser.Listener
         this.sendWindow.set(FlowControlStrategy.DEFAULT_WINDOW_SIZE);
         this.recvWindow.set(FlowControlStrategy.DEFAULT_WINDOW_SIZE);
         this.pushEnabled = true; // SPEC: by default, push is enabled.
+        this.statistics.setHpackEncoder(generator.getHpackEncoder());
     }
 
     public FlowControlStrategy getFlowControlStrategy()
@@ -143,11 +145,18 @@ public abstract class HTTP2Session implements ISession, Parser.Listener
         return generator;
     }
 
+    @Override
+    public HTTP2Statistics getStatistics()
+    {
+        return statistics;
+    }
+
     @Override
     public void onData(final DataFrame frame)
     {
         if (LOG.isDebugEnabled())
             LOG.debug("Received {}", frame);
+        statistics.onFrameReceived(frame);
 
         int streamId = frame.getStreamId();
         final IStream stream = getStream(streamId);
@@ -201,6 +210,7 @@ public abstract class HTTP2Session implements ISession, Parser.Listener
     {
         if (LOG.isDebugEnabled())
             LOG.debug("Received {}", frame);
+        statistics.onFrameReceived(frame);
     }
 
     @Override
@@ -208,6 +218,8 @@ public abstract class HTTP2Session implements ISession, Parser.Listener
     {
         if (LOG.isDebugEnabled())
             LOG.debug("Received {}", frame);
+        statistics.onFrameReceived(frame);
+        statistics.onResetReceived(frame.getError());
 
         IStream stream = getStream(frame.getStreamId());
         if (stream != null)
@@ -227,6 +239,7 @@ public abstract class HTTP2Session implements ISession, Parser.Listener
     {
         if (LOG.isDebugEnabled())
             LOG.debug("Received {}", frame);
+        statistics.onFrameReceived(frame);
 
         if (frame.isReply())
             return;
@@ -310,6 +323,7 @@ public abstract class HTTP2Session implements ISession, Parser.Listener
     {
         if (LOG.isDebugEnabled())
             LOG.debug("Received {}", frame);
+        statistics.onFrameReceived(frame);
 
         if (frame.isReply())
         {
@@ -344,6 +358,7 @@ public abstract class HTTP2Session implements ISession, Parser.Listener
     {
         if (LOG.isDebugEnabled())
             LOG.debug("Received {}", frame);
+        statistics.onFrameReceived(frame);
 
         while (true)
         {
@@ -389,6 +404,7 @@ public abstract class HTTP2Session implements ISession, Parser.Listener
     {
         if (LOG.isDebugEnabled())
             LOG.debug("Received {}", frame);
+        statistics.onFrameReceived(frame);
 
         int streamId = frame.getStreamId();
         if (streamId > 0)
@@ -621,6 +637,7 @@ public abstract class HTTP2Session implements ISession, Parser.Listener
         IStream stream = newStream(streamId);
         if (streams.putIfAbsent(streamId, stream) == null)
         {
+            statistics.onStreamOpened(streams.size());
             stream.setIdleTimeout(getStreamIdleTimeout());
             flowControl.onStreamCreated(stream, true);
             if (LOG.isDebugEnabled())
@@ -655,6 +672,7 @@ public abstract class HTTP2Session implements ISession, Parser.Listener
         // SPEC: duplicate stream is treated as connection error.
         if (streams.putIfAbsent(streamId, stream) == null)
         {
+            statistics.onStreamOpened(streams.size());
             updateLastStreamId(streamId);
             stream.setIdleTimeout(getStreamIdleTimeout());
             flowControl.onStreamCreated(stream, false);
@@ -688,6 +706,7 @@ public abstract class HTTP2Session implements ISession, Parser.Listener
                 remoteStreamCount.decrementAndGet();
 
             flowControl.onStreamDestroyed(stream, local);
+            statistics.onStreamClosed(stream);
 
             if (LOG.isDebugEnabled())
                 LOG.debug("Removed {}", stream);
@@ -1052,6 +1071,9 @@ public abstract class HTTP2Session implements ISession, Parser.Listener
         @Override
         public void succeeded()
         {
+            if (frame.getType() != FrameType.DISCONNECT)
+                statistics.onFrameSent(frame);
+
             switch (frame.getType())
             {
                 case HEADERS:
@@ -1063,6 +1085,7 @@ public abstract class HTTP2Session implements ISession, Parser.Listener
                 }
                 case RST_STREAM:
                 {
+                    statistics.onResetSent(((ResetFrame)frame).getError());
                     if (stream != null)
                     {
                         stream.close();
@@ -1158,6 +1181,7 @@ public abstract class HTTP2Session implements ISession, Parser.Listener
         @Override
         public void succeeded()
         {
+            statistics.onFrameSent(frame);
             flowControl.onDataSent(stream, length);
             // Do we have more to send ?
             DataFrame dataFrame = (DataFrame)frame;
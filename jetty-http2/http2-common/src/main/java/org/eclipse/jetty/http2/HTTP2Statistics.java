@@ -0,0 +1,393 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2015 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+package org.eclipse.jetty.http2;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.eclipse.jetty.http2.frames.Frame;
+import org.eclipse.jetty.http2.frames.FrameType;
+import org.eclipse.jetty.http2.hpack.HpackDecoder;
+import org.eclipse.jetty.http2.hpack.HpackEncoder;
+import org.eclipse.jetty.util.Atomics;
+import org.eclipse.jetty.util.annotation.ManagedAttribute;
+import org.eclipse.jetty.util.annotation.ManagedObject;
+
+/**
+ * <p>Statistics of a HTTP/2 session and of its streams.</p>
+ * <p>Records the number of frames received and sent by frame type,
+ * the number of bytes received and sent, the time spent with data
+ * blocked by the session and by the stream flow control windows,
+ * the max number of concurrent streams, the number of streams reset
+ * by error code and the HPACK dynamic table occupancy.</p>
+ * <p>The statistics of many sessions may be aggregated by setting a
+ * {@link #setParent(HTTP2Statistics) parent}, to which every update
+ * is forwarded as it happens, so that the aggregate is always up to
+ * date without the need to walk the sessions.</p>
+ */
+@ManagedObject("HTTP/2 session statistics")
+public class HTTP2Statistics
+{
+    private static final int FRAME_TYPES = FrameType.values().length;
+    private static final int ERROR_CODES = ErrorCode.values().length + 1;
+
+    private final AtomicLongArray framesIn = new AtomicLongArray(FRAME_TYPES);
+    private final AtomicLongArray framesOut = new AtomicLongArray(FRAME_TYPES);
+    private final AtomicLongArray resetsIn = new AtomicLongArray(ERROR_CODES);
+    private final AtomicLongArray resetsOut = new AtomicLongArray(ERROR_CODES);
+    private final AtomicLong bytesIn = new AtomicLong();
+    private final AtomicLong bytesOut = new AtomicLong();
+    private final AtomicLong streams = new AtomicLong();
+    private final AtomicLong maxConcurrentStreams = new AtomicLong();
+    private final AtomicLong sessionStalledTime = new AtomicLong();
+    private final AtomicLong streamStalledTime = new AtomicLong();
+    private final AtomicLong sessionStalled = new AtomicLong();
+    private final AtomicLong streamsStalled = new AtomicLong();
+    private final AtomicLong streamsStalledSince = new AtomicLong();
+    private volatile long epoch = System.nanoTime();
+    private volatile HpackEncoder hpackEncoder;
+    private volatile HpackDecoder hpackDecoder;
+    private volatile HTTP2Statistics parent;
+
+    /**
+     * @param parent the statistics that aggregate these statistics with
+     * those of other sessions, or null to stop forwarding updates
+     */
+    public void setParent(HTTP2Statistics parent)
+    {
+        this.parent = parent;
+    }
+
+    public void setHpackEncoder(HpackEncoder hpackEncoder)
+    {
+        this.hpackEncoder = hpackEncoder;
+    }
+
+    public void setHpackDecoder(HpackDecoder hpackDecoder)
+    {
+        this.hpackDecoder = hpackDecoder;
+    }
+
+    public void onFrameReceived(Frame frame)
+    {
+        framesIn.incrementAndGet(frame.getType().ordinal());
+        HTTP2Statistics parent = this.parent;
+        if (parent != null)
+            parent.onFrameReceived(frame);
+    }
+
+    public void onFrameSent(Frame frame)
+    {
+        framesOut.incrementAndGet(frame.getType().ordinal());
+        HTTP2Statistics parent = this.parent;
+        if (parent != null)
+            parent.onFrameSent(frame);
+    }
+
+    public void onBytesReceived(long bytes)
+    {
+        bytesIn.addAndGet(bytes);
+        HTTP2Statistics parent = this.parent;
+        if (parent != null)
+            parent.onBytesReceived(bytes);
+    }
+
+    public void onBytesSent(long bytes)
+    {
+        bytesOut.addAndGet(bytes);
+        HTTP2Statistics parent = this.parent;
+        if (parent != null)
+            parent.onBytesSent(bytes);
+    }
+
+    public void onResetReceived(int error)
+    {
+        resetsIn.incrementAndGet(errorIndex(error));
+        HTTP2Statistics parent = this.parent;
+        if (parent != null)
+            parent.onResetReceived(error);
+    }
+
+    public void onResetSent(int error)
+    {
+        resetsOut.incrementAndGet(errorIndex(error));
+        HTTP2Statistics parent = this.parent;
+        if (parent != null)
+            parent.onResetSent(error);
+    }
+
+    private static int errorIndex(int error)
+    {
+        return error >= 0 && error < ERROR_CODES - 1 ? error : ERROR_CODES - 1;
+    }
+
+    public void onStreamOpened(int concurrentStreams)
+    {
+        streams.incrementAndGet();
+        Atomics.updateMax(maxConcurrentStreams, concurrentStreams);
+        HTTP2Statistics parent = this.parent;
+        if (parent != null)
+            parent.onStreamOpened(concurrentStreams);
+    }
+
+    public void onStreamClosed(IStream stream)
+    {
+        onStreamUnstalled(stream);
+    }
+
+    public void onSessionStalled()
+    {
+        sessionStalled.compareAndSet(0, System.nanoTime());
+    }
+
+    public void onSessionUnstalled()
+    {
+        long stalled = sessionStalled.getAndSet(0);
+        if (stalled != 0)
+            onSessionStalledTime(stalled, System.nanoTime());
+    }
+
+    private void onSessionStalledTime(long stalled, long now)
+    {
+        sessionStalledTime.addAndGet(now - since(stalled));
+        HTTP2Statistics parent = this.parent;
+        if (parent != null)
+            parent.onSessionStalledTime(stalled, now);
+    }
+
+    public void onStreamStalled(IStream stream)
+    {
+        // The stall time is kept by the stream, to avoid
+        // a map update for every stall on the send path.
+        long now = System.nanoTime();
+        if (stream.stall(now))
+        {
+            streamsStalled.incrementAndGet();
+            streamsStalledSince.addAndGet(now);
+        }
+    }
+
+    public void onStreamUnstalled(IStream stream)
+    {
+        long stalled = stream.unstall();
+        if (stalled != 0)
+        {
+            streamsStalled.decrementAndGet();
+            streamsStalledSince.addAndGet(-since(stalled));
+            onStreamStalledTime(stalled, System.nanoTime());
+        }
+    }
+
+    private void onStreamStalledTime(long stalled, long now)
+    {
+        streamStalledTime.addAndGet(now - since(stalled));
+        HTTP2Statistics parent = this.parent;
+        if (parent != null)
+            parent.onStreamStalledTime(stalled, now);
+    }
+
+    /**
+     * @param stalled the {@link System#nanoTime()} at which a stall began
+     * @return the time from which the stall is accounted, not before the last {@link #reset()}
+     */
+    private long since(long stalled)
+    {
+        long epoch = this.epoch;
+        return stalled - epoch < 0 ? epoch : stalled;
+    }
+
+    public long getFramesReceived(FrameType frameType)
+    {
+        return framesIn.get(frameType.ordinal());
+    }
+
+    public long getFramesSent(FrameType frameType)
+    {
+        return framesOut.get(frameType.ordinal());
+    }
+
+    @ManagedAttribute("The number of frames received, by frame type")
+    public Map<String, Long> getFramesReceived()
+    {
+        return toFrameMap(framesIn);
+    }
+
+    @ManagedAttribute("The number of frames sent, by frame type")
+    public Map<String, Long> getFramesSent()
+    {
+        return toFrameMap(framesOut);
+    }
+
+    private static Map<String, Long> toFrameMap(AtomicLongArray frames)
+    {
+        Map<String, Long> result = new LinkedHashMap<>();
+        for (FrameType frameType : FrameType.values())
+        {
+            long count = frames.get(frameType.ordinal());
+            if (count > 0)
+                result.put(frameType.name(), count);
+        }
+        return result;
+    }
+
+    @ManagedAttribute("The number of bytes received")
+    public long getBytesReceived()
+    {
+        return bytesIn.get();
+    }
+
+    @ManagedAttribute("The number of bytes sent")
+    public long getBytesSent()
+    {
+        return bytesOut.get();
+    }
+
+    public long getResetsReceived(ErrorCode error)
+    {
+        return resetsIn.get(error.code);
+    }
+
+    public long getResetsSent(ErrorCode error)
+    {
+        return resetsOut.get(error.code);
+    }
+
+    @ManagedAttribute("The number of streams reset by the remote peer, by error code")
+    public Map<String, Long> getResetsReceived()
+    {
+        return toErrorMap(resetsIn);
+    }
+
+    @ManagedAttribute("The number of streams reset by the local peer, by error code")
+    public Map<String, Long> getResetsSent()
+    {
+        return toErrorMap(resetsOut);
+    }
+
+    private static Map<String, Long> toErrorMap(AtomicLongArray resets)
+    {
+        Map<String, Long> result = new LinkedHashMap<>();
+        for (int i = 0; i < resets.length(); ++i)
+        {
+            long count = resets.get(i);
+            if (count > 0)
+            {
+                ErrorCode error = ErrorCode.from(i);
+                result.put(error == null ? "UNKNOWN" : error.name(), count);
+            }
+        }
+        return result;
+    }
+
+    @ManagedAttribute("The number of streams opened")
+    public long getStreams()
+    {
+        return streams.get();
+    }
+
+    @ManagedAttribute("The max number of concurrent streams")
+    public long getMaxConcurrentStreams()
+    {
+        return maxConcurrentStreams.get();
+    }
+
+    @ManagedAttribute("The time in ms data was blocked by the session flow control window")
+    public long getSessionStalledTime()
+    {
+        long result = sessionStalledTime.get();
+        long stalled = sessionStalled.get();
+        if (stalled != 0)
+            result += System.nanoTime() - since(stalled);
+        return TimeUnit.NANOSECONDS.toMillis(result);
+    }
+
+    @ManagedAttribute("The time in ms data was blocked by the stream flow control windows")
+    public long getStreamStalledTime()
+    {
+        // The streams still stalled add the time since they stalled.
+        long result = streamStalledTime.get();
+        result += streamsStalled.get() * System.nanoTime() - streamsStalledSince.get();
+        return TimeUnit.NANOSECONDS.toMillis(result);
+    }
+
+    @ManagedAttribute("The size in bytes of the HPACK encoder dynamic table")
+    public int getHpackEncoderTableSize()
+    {
+        HpackEncoder encoder = hpackEncoder;
+        return encoder == null ? 0 : encoder.getHpackContext().getDynamicTableSize();
+    }
+
+    @ManagedAttribute("The size in bytes of the HPACK decoder dynamic table")
+    public int getHpackDecoderTableSize()
+    {
+        HpackDecoder decoder = hpackDecoder;
+        return decoder == null ? 0 : decoder.getHpackContext().getDynamicTableSize();
+    }
+
+    public void reset()
+    {
+        for (int i = 0; i < FRAME_TYPES; ++i)
+        {
+            framesIn.set(i, 0);
+            framesOut.set(i, 0);
+        }
+        for (int i = 0; i < ERROR_CODES; ++i)
+        {
+            resetsIn.set(i, 0);
+            resetsOut.set(i, 0);
+        }
+        bytesIn.set(0);
+        bytesOut.set(0);
+        streams.set(0);
+        maxConcurrentStreams.set(0);
+        sessionStalledTime.set(0);
+        streamStalledTime.set(0);
+        // Stalls still open are accounted only from now on.
+        long now = System.nanoTime();
+        epoch = now;
+        streamsStalledSince.set(streamsStalled.get() * now);
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("%s@%x[in=%d/%dB,out=%d/%dB,streams=%d,maxConcurrent=%d,stalled=%d/%dms]",
+                getClass().getSimpleName(),
+                hashCode(),
+                sum(framesIn),
+                getBytesReceived(),
+                sum(framesOut),
+                getBytesSent(),
+                getStreams(),
+                getMaxConcurrentStreams(),
+                getSessionStalledTime(),
+                getStreamStalledTime());
+    }
+
+    private static long sum(AtomicLongArray array)
+    {
+        long result = 0;
+        for (int i = 0; i < array.length(); ++i)
+            result += array.get(i);
+        return result;
+    }
+}
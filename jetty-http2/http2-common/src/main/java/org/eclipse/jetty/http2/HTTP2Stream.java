@@ -24,6 +24,7 @@ import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
 
 import org.eclipse.jetty.http2.api.Stream;
@@ -47,6 +48,7 @@ public class HTTP2Stream extends IdleTimeout implements IStream
     private final AtomicReference<CloseState> closeState = new AtomicReference<>(CloseState.NOT_CLOSED);
     private final AtomicInteger sendWindow = new AtomicInteger();
     private final AtomicInteger recvWindow = new AtomicInteger();
+    private final AtomicLong stalled = new AtomicLong();
     private final ISession session;
     private final int streamId;
     private volatile Listener listener;
@@ -339,6 +341,18 @@ public class HTTP2Stream extends IdleTimeout implements IStream
         return sendWindow.getAndAdd(delta);
     }
 
+    @Override
+    public boolean stall(long nanoTime)
+    {
+        return stalled.compareAndSet(0, nanoTime);
+    }
+
+    @Override
+    public long unstall()
+    {
+        return stalled.getAndSet(0);
+    }
+
     @Override
     public int updateRecvWindow(int delta)
     {
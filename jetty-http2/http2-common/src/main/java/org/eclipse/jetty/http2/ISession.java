@@ -105,6 +105,11 @@ public interface ISession extends Session
      */
     public boolean isPushEnabled();
 
+    /**
+     * @return the statistics of this session and of its streams
+     */
+    public HTTP2Statistics getStatistics();
+
     /**
      * <p>Callback invoked when the connection reads -1.</p>
      *
@@ -94,4 +94,20 @@ public interface IStream extends Stream, Closeable
      * @return the previous value of the stream receive window
      */
     public int updateRecvWindow(int delta);
+
+    /**
+     * <p>Records the time at which this stream stalled on its send window,
+     * unless it is already stalled.</p>
+     *
+     * @param nanoTime the {@link System#nanoTime()} at which this stream stalled
+     * @return true if this stream was not already stalled
+     */
+    public boolean stall(long nanoTime);
+
+    /**
+     * <p>Marks this stream as no longer stalled on its send window.</p>
+     *
+     * @return the {@link System#nanoTime()} at which this stream stalled, or 0 if it was not stalled
+     */
+    public long unstall();
 }
@@ -50,6 +50,7 @@ public class Parser
     private final Listener listener;
     private final HeaderParser headerParser;
     private final BodyParser[] bodyParsers;
+    private final HpackDecoder hpackDecoder;
     private boolean continuation;
     private State state = State.HEADER;
 
@@ -59,7 +60,9 @@ public class Parser
         this.headerParser = new HeaderParser();
         this.bodyParsers = new BodyParser[FrameType.values().length];
 
-        HeaderBlockParser headerBlockParser = new HeaderBlockParser(byteBufferPool, new HpackDecoder(maxDynamicTableSize, maxHeaderSize));
+        this.hpackDecoder = new HpackDecoder(maxDynamicTableSize, maxHeaderSize);
+
+        HeaderBlockParser headerBlockParser = new HeaderBlockParser(byteBufferPool, hpackDecoder);
         HeaderBlockFragments headerBlockFragments = new HeaderBlockFragments();
 
         bodyParsers[FrameType.DATA.getType()] = new DataBodyParser(headerParser, listener);
@@ -74,6 +77,11 @@ public class Parser
         bodyParsers[FrameType.CONTINUATION.getType()] = new ContinuationBodyParser(headerParser, listener, headerBlockParser, headerBlockFragments);
     }
 
+    public HpackDecoder getHpackDecoder()
+    {
+        return hpackDecoder;
+    }
+
     private void reset()
     {
         headerParser.reset();
@@ -18,3 +18,9 @@ etc/jetty-http2.xml
 
 ## Initial stream send (server to client) window
 # jetty.http2.initialStreamSendWindow=65535
+
+## Max number of streams of all connections processed concurrently (-1 for no limit)
+# jetty.http2.maxConcurrentDispatches=-1
+
+## Max number of streams per connection processed concurrently (-1 for no limit)
+# jetty.http2.maxSessionConcurrentDispatches=-1
@@ -20,3 +20,9 @@ etc/jetty-http2c.xml
 
 ## Initial stream send (server to client) window
 # jetty.http2c.initialStreamSendWindow=65535
+
+## Max number of streams of all connections processed concurrently (-1 for no limit)
+# jetty.http2c.maxConcurrentDispatches=-1
+
+## Max number of streams per connection processed concurrently (-1 for no limit)
+# jetty.http2c.maxSessionConcurrentDispatches=-1
@@ -18,11 +18,12 @@
 
 package org.eclipse.jetty.http2.server;
 
+import java.util.HashMap;
+import java.util.Map;
 import java.util.Objects;
 
 import org.eclipse.jetty.http2.BufferingFlowControlStrategy;
 import org.eclipse.jetty.http2.FlowControlStrategy;
-import org.eclipse.jetty.http2.HTTP2Connection;
 import org.eclipse.jetty.http2.api.server.ServerSessionListener;
 import org.eclipse.jetty.http2.generator.Generator;
 import org.eclipse.jetty.http2.parser.ServerParser;
@@ -39,6 +40,11 @@ public abstract class AbstractHTTP2ServerConnectionFactory extends AbstractConne
     private int initialStreamSendWindow = FlowControlStrategy.DEFAULT_WINDOW_SIZE;
     private int maxConcurrentStreams = -1;
     private int maxHeaderBlockFragment = 0;
+    private int maxPushDigestSize = 256;
+    private PushStrategy pushStrategy = new PushStrategy.None();
+    private int maxConcurrentDispatches = -1;
+    private int maxSessionConcurrentDispatches = -1;
+    private final Map<Connector, FairDispatcher> dispatchers = new HashMap<>();
     private final HttpConfiguration httpConfiguration;
 
     public AbstractHTTP2ServerConnectionFactory(@Name("config") HttpConfiguration httpConfiguration)
@@ -92,6 +98,62 @@ public abstract class AbstractHTTP2ServerConnectionFactory extends AbstractConne
         this.maxHeaderBlockFragment = maxHeaderBlockFragment;
     }
 
+    public int getMaxPushDigestSize()
+    {
+        return maxPushDigestSize;
+    }
+
+    /**
+     * @param maxPushDigestSize the max number of resource paths remembered per connection
+     * as being already available to the client, and therefore not pushed again
+     */
+    public void setMaxPushDigestSize(int maxPushDigestSize)
+    {
+        this.maxPushDigestSize = maxPushDigestSize;
+    }
+
+    public PushStrategy getPushStrategy()
+    {
+        return pushStrategy;
+    }
+
+    public void setPushStrategy(PushStrategy pushStrategy)
+    {
+        Objects.requireNonNull(pushStrategy);
+        updateBean(this.pushStrategy, pushStrategy);
+        this.pushStrategy = pushStrategy;
+    }
+
+    public int getMaxConcurrentDispatches()
+    {
+        return maxConcurrentDispatches;
+    }
+
+    /**
+     * @param maxConcurrentDispatches the max number of streams of all the connections
+     * of a connector that are processed concurrently, or a non-positive value for no limit
+     * @see FairDispatcher
+     */
+    public void setMaxConcurrentDispatches(int maxConcurrentDispatches)
+    {
+        this.maxConcurrentDispatches = maxConcurrentDispatches;
+    }
+
+    public int getMaxSessionConcurrentDispatches()
+    {
+        return maxSessionConcurrentDispatches;
+    }
+
+    /**
+     * @param maxSessionConcurrentDispatches the max number of streams of a single
+     * connection that are processed concurrently, or a non-positive value for no limit
+     * @see FairDispatcher
+     */
+    public void setMaxSessionConcurrentDispatches(int maxSessionConcurrentDispatches)
+    {
+        this.maxSessionConcurrentDispatches = maxSessionConcurrentDispatches;
+    }
+
     public HttpConfiguration getHttpConfiguration()
     {
         return httpConfiguration;
@@ -114,12 +176,46 @@ public abstract class AbstractHTTP2ServerConnectionFactory extends AbstractConne
         session.setStreamIdleTimeout(endPoint.getIdleTimeout());
 
         ServerParser parser = newServerParser(connector, session);
-        HTTP2Connection connection = new HTTP2ServerConnection(connector.getByteBufferPool(), connector.getExecutor(),
+        HTTP2ServerConnection connection = new HTTP2ServerConnection(connector.getByteBufferPool(), connector.getExecutor(),
                         endPoint, httpConfiguration, parser, session, getInputBufferSize(), listener);
+        connection.setPushStrategy(getPushStrategy(), getMaxPushDigestSize());
+        FairDispatcher dispatcher = getDispatcher(connector);
+        if (dispatcher != null)
+            connection.setDispatchLane(dispatcher.newLane());
 
         return configure(connection, connector, endPoint);
     }
 
+    private FairDispatcher getDispatcher(Connector connector)
+    {
+        if (getMaxConcurrentDispatches() <= 0 && getMaxSessionConcurrentDispatches() <= 0)
+            return null;
+        synchronized (this)
+        {
+            // Each connector dispatches to its own executor.
+            FairDispatcher dispatcher = dispatchers.get(connector);
+            if (dispatcher == null)
+            {
+                dispatcher = new FairDispatcher(connector.getExecutor(), getMaxConcurrentDispatches(), getMaxSessionConcurrentDispatches());
+                dispatchers.put(connector, dispatcher);
+                addBean(dispatcher);
+            }
+            return dispatcher;
+        }
+    }
+
+    @Override
+    protected void doStop() throws Exception
+    {
+        super.doStop();
+        synchronized (this)
+        {
+            for (FairDispatcher dispatcher : dispatchers.values())
+                removeBean(dispatcher);
+            dispatchers.clear();
+        }
+    }
+
     protected FlowControlStrategy newFlowControlStrategy()
     {
         return new BufferingFlowControlStrategy(getInitialStreamSendWindow(), 0.5F);
@@ -0,0 +1,353 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2015 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+
+package org.eclipse.jetty.http2.server;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.eclipse.jetty.util.Callback;
+import org.eclipse.jetty.util.annotation.ManagedAttribute;
+import org.eclipse.jetty.util.annotation.ManagedObject;
+import org.eclipse.jetty.util.log.Log;
+import org.eclipse.jetty.util.log.Logger;
+
+/**
+ * <p>Dispatches the processing of HTTP/2 streams to an {@link Executor},
+ * limiting the number of streams that are processed concurrently.</p>
+ * <p>Each session obtains a {@link Lane} via {@link #newLane()} and
+ * {@link Lane#offer(Runnable) offers} its tasks to it.
+ * A task is executed only if both the total number of tasks in execution
+ * is less than {@link #getMaxConcurrency()} and the number of tasks of the
+ * same lane in execution is less than {@link #getMaxLaneConcurrency()};
+ * otherwise the task is queued.
+ * A task is in execution from when it is dispatched until it is
+ * {@link Lane#complete(Runnable) completed}, which may happen after
+ * the task returns, for example when the processing is asynchronous;
+ * only a task that throws is completed automatically.
+ * When a task completes, queued tasks are executed taking one task from
+ * each lane in round-robin order, so that a single session with many
+ * concurrent streams cannot monopolize the executor at the expense of
+ * other sessions.</p>
+ * <p>Tasks that cannot be executed, because the executor rejected them or
+ * because their lane has been {@link Lane#close(Throwable) closed}, are
+ * failed if they implement {@link Callback}, and discarded otherwise.</p>
+ * <p>A non-positive limit means that there is no limit.</p>
+ */
+@ManagedObject("Fair dispatcher of HTTP/2 streams")
+public class FairDispatcher
+{
+    private static final Logger LOG = Log.getLogger(FairDispatcher.class);
+
+    private final Queue<Lane> ready = new ArrayDeque<>();
+    private final AtomicLong dispatched = new AtomicLong();
+    private final AtomicLong delayed = new AtomicLong();
+    private final Executor executor;
+    private final int maxConcurrency;
+    private final int maxLaneConcurrency;
+    private int active;
+    private int queued;
+
+    public FairDispatcher(Executor executor, int maxConcurrency, int maxLaneConcurrency)
+    {
+        this.executor = executor;
+        this.maxConcurrency = maxConcurrency > 0 ? maxConcurrency : Integer.MAX_VALUE;
+        this.maxLaneConcurrency = maxLaneConcurrency > 0 ? maxLaneConcurrency : Integer.MAX_VALUE;
+    }
+
+    @ManagedAttribute("The max number of tasks in execution")
+    public int getMaxConcurrency()
+    {
+        return maxConcurrency;
+    }
+
+    @ManagedAttribute("The max number of tasks of a single session in execution")
+    public int getMaxLaneConcurrency()
+    {
+        return maxLaneConcurrency;
+    }
+
+    @ManagedAttribute("The number of tasks in execution")
+    public int getActiveTasks()
+    {
+        synchronized (this)
+        {
+            return active;
+        }
+    }
+
+    @ManagedAttribute("The number of tasks waiting to be executed")
+    public int getQueuedTasks()
+    {
+        synchronized (this)
+        {
+            return queued;
+        }
+    }
+
+    @ManagedAttribute("The number of tasks executed")
+    public long getDispatchedTasks()
+    {
+        return dispatched.get();
+    }
+
+    @ManagedAttribute("The number of tasks that have been queued before being executed")
+    public long getDelayedTasks()
+    {
+        return delayed.get();
+    }
+
+    /**
+     * @return a new lane, typically one per session
+     */
+    public Lane newLane()
+    {
+        return new Lane();
+    }
+
+    private void offer(Lane lane, Runnable task)
+    {
+        boolean closed;
+        List<Dispatch> dispatches = null;
+        synchronized (this)
+        {
+            closed = lane.closed;
+            if (!closed)
+            {
+                lane.tasks.offer(task);
+                ++queued;
+                ready(lane);
+                dispatches = poll();
+                if (lane.tasks.peekLast() == task)
+                    delayed.incrementAndGet();
+            }
+        }
+        if (closed)
+            fail(task, new RejectedExecutionException("Closed " + lane));
+        else
+            execute(dispatches);
+    }
+
+    private void complete(Lane lane, Runnable task)
+    {
+        List<Dispatch> dispatches;
+        synchronized (this)
+        {
+            if (!lane.running.remove(task))
+                return;
+            --active;
+            ready(lane);
+            dispatches = poll();
+        }
+        execute(dispatches);
+    }
+
+    private void close(Lane lane, Throwable failure)
+    {
+        List<Runnable> tasks;
+        synchronized (this)
+        {
+            if (lane.closed)
+                return;
+            lane.closed = true;
+            ready.remove(lane);
+            lane.ready = false;
+            tasks = new ArrayList<>(lane.tasks);
+            lane.tasks.clear();
+            queued -= tasks.size();
+        }
+        for (Runnable task : tasks)
+            fail(task, failure);
+    }
+
+    private void ready(Lane lane)
+    {
+        // Must be called with the lock held.
+        if (!lane.ready && !lane.closed && !lane.tasks.isEmpty() && lane.running.size() < maxLaneConcurrency)
+        {
+            lane.ready = true;
+            ready.offer(lane);
+        }
+    }
+
+    private List<Dispatch> poll()
+    {
+        // Must be called with the lock held.
+        List<Dispatch> result = null;
+        while (active < maxConcurrency)
+        {
+            Lane lane = ready.poll();
+            if (lane == null)
+                break;
+            lane.ready = false;
+            Runnable task = lane.tasks.poll();
+            --queued;
+            ++active;
+            lane.running.add(task);
+            // Move the lane to the back of the queue, for fairness.
+            ready(lane);
+            if (result == null)
+                result = new ArrayList<>();
+            result.add(new Dispatch(lane, task));
+        }
+        return result;
+    }
+
+    private void execute(List<Dispatch> dispatches)
+    {
+        if (dispatches == null)
+            return;
+        for (Dispatch dispatch : dispatches)
+        {
+            try
+            {
+                if (LOG.isDebugEnabled())
+                    LOG.debug("Dispatching {}", dispatch.task);
+                dispatched.incrementAndGet();
+                executor.execute(dispatch);
+            }
+            catch (RejectedExecutionException x)
+            {
+                LOG.warn("Rejected execution of " + dispatch.task, x);
+                complete(dispatch.lane, dispatch.task);
+                fail(dispatch.task, x);
+            }
+        }
+    }
+
+    private void fail(Runnable task, Throwable failure)
+    {
+        if (LOG.isDebugEnabled())
+            LOG.debug("Failing " + task, failure);
+        if (task instanceof Callback)
+        {
+            try
+            {
+                ((Callback)task).failed(failure);
+            }
+            catch (Throwable x)
+            {
+                LOG.ignore(x);
+            }
+        }
+    }
+
+    @Override
+    public String toString()
+    {
+        synchronized (this)
+        {
+            return String.format("%s@%x[active=%d/%d,queued=%d,lanes=%d]",
+                    getClass().getSimpleName(),
+                    hashCode(),
+                    active,
+                    maxConcurrency,
+                    queued,
+                    ready.size());
+        }
+    }
+
+    /**
+     * <p>A queue of tasks dispatched fairly with respect to other lanes.</p>
+     */
+    public class Lane
+    {
+        private final ArrayDeque<Runnable> tasks = new ArrayDeque<>();
+        private final Set<Runnable> running = Collections.newSetFromMap(new IdentityHashMap<Runnable, Boolean>());
+        private boolean ready;
+        private boolean closed;
+
+        private Lane()
+        {
+        }
+
+        /**
+         * @param task the task to execute, possibly after other tasks have completed
+         */
+        public void offer(Runnable task)
+        {
+            FairDispatcher.this.offer(this, task);
+        }
+
+        /**
+         * <p>Releases the execution slot held by the given task, which must
+         * be called when the processing started by the task is complete.</p>
+         * <p>Completing a task that is not in execution has no effect.</p>
+         *
+         * @param task the task that has been dispatched
+         */
+        public void complete(Runnable task)
+        {
+            FairDispatcher.this.complete(this, task);
+        }
+
+        /**
+         * <p>Closes this lane, failing the tasks that are still queued and
+         * any task offered afterwards; tasks in execution must still be
+         * {@link #complete(Runnable) completed}.</p>
+         *
+         * @param failure the failure to notify to the queued tasks
+         */
+        public void close(Throwable failure)
+        {
+            FairDispatcher.this.close(this, failure);
+        }
+
+        @Override
+        public String toString()
+        {
+            return String.format("%s@%x", getClass().getSimpleName(), hashCode());
+        }
+    }
+
+    private class Dispatch implements Runnable
+    {
+        private final Lane lane;
+        private final Runnable task;
+
+        private Dispatch(Lane lane, Runnable task)
+        {
+            this.lane = lane;
+            this.task = task;
+        }
+
+        @Override
+        public void run()
+        {
+            try
+            {
+                task.run();
+            }
+            catch (Throwable x)
+            {
+                // The task will not complete itself.
+                complete(lane, task);
+                throw x;
+            }
+        }
+    }
+}
@@ -0,0 +1,160 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2015 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+
+package org.eclipse.jetty.http2.server;
+
+import java.util.Map;
+import java.util.Set;
+
+import org.eclipse.jetty.http2.HTTP2Connection;
+import org.eclipse.jetty.http2.HTTP2Statistics;
+import org.eclipse.jetty.io.Connection;
+import org.eclipse.jetty.util.ConcurrentHashSet;
+import org.eclipse.jetty.util.annotation.ManagedAttribute;
+import org.eclipse.jetty.util.annotation.ManagedObject;
+import org.eclipse.jetty.util.annotation.ManagedOperation;
+import org.eclipse.jetty.util.component.AbstractLifeCycle;
+
+/**
+ * <p>A {@link Connection.Listener} that aggregates the {@link HTTP2Statistics}
+ * of the HTTP/2 sessions of a connector.</p>
+ * <p>Adding an instance of this class as a bean to a connector will register
+ * the listener with all connections accepted by that connector; the statistics
+ * of each session are forwarded to running aggregate counters as they are
+ * updated, so retrieving the statistics does not need to walk the sessions.</p>
+ */
+@ManagedObject("HTTP/2 connector statistics")
+public class HTTP2ConnectorStatistics extends AbstractLifeCycle implements Connection.Listener
+{
+    private final Set<HTTP2Connection> connections = new ConcurrentHashSet<>();
+    private final HTTP2Statistics statistics = new HTTP2Statistics();
+
+    @Override
+    public void onOpened(Connection connection)
+    {
+        if (isStarted() && connection instanceof HTTP2Connection)
+        {
+            HTTP2Connection http2Connection = (HTTP2Connection)connection;
+            if (connections.add(http2Connection))
+                http2Connection.getSession().getStatistics().setParent(statistics);
+        }
+    }
+
+    @Override
+    public void onClosed(Connection connection)
+    {
+        if (connection instanceof HTTP2Connection && connections.remove(connection))
+            ((HTTP2Connection)connection).getSession().getStatistics().setParent(null);
+    }
+
+    @Override
+    protected void doStop() throws Exception
+    {
+        for (HTTP2Connection connection : connections)
+            connection.getSession().getStatistics().setParent(null);
+        connections.clear();
+        super.doStop();
+    }
+
+    /**
+     * @return the aggregated statistics of the sessions
+     */
+    public HTTP2Statistics getStatistics()
+    {
+        return statistics;
+    }
+
+    @ManagedAttribute("The number of open HTTP/2 sessions")
+    public int getSessions()
+    {
+        return connections.size();
+    }
+
+    @ManagedAttribute("The number of frames received, by frame type")
+    public Map<String, Long> getFramesReceived()
+    {
+        return statistics.getFramesReceived();
+    }
+
+    @ManagedAttribute("The number of frames sent, by frame type")
+    public Map<String, Long> getFramesSent()
+    {
+        return statistics.getFramesSent();
+    }
+
+    @ManagedAttribute("The number of bytes received")
+    public long getBytesReceived()
+    {
+        return statistics.getBytesReceived();
+    }
+
+    @ManagedAttribute("The number of bytes sent")
+    public long getBytesSent()
+    {
+        return statistics.getBytesSent();
+    }
+
+    @ManagedAttribute("The number of streams reset by the remote peers, by error code")
+    public Map<String, Long> getResetsReceived()
+    {
+        return statistics.getResetsReceived();
+    }
+
+    @ManagedAttribute("The number of streams reset by the local peer, by error code")
+    public Map<String, Long> getResetsSent()
+    {
+        return statistics.getResetsSent();
+    }
+
+    @ManagedAttribute("The number of streams opened")
+    public long getStreams()
+    {
+        return statistics.getStreams();
+    }
+
+    @ManagedAttribute("The max number of concurrent streams of a session")
+    public long getMaxConcurrentStreams()
+    {
+        return statistics.getMaxConcurrentStreams();
+    }
+
+    @ManagedAttribute("The time in ms data was blocked by the session flow control windows")
+    public long getSessionStalledTime()
+    {
+        return statistics.getSessionStalledTime();
+    }
+
+    @ManagedAttribute("The time in ms data was blocked by the stream flow control windows")
+    public long getStreamStalledTime()
+    {
+        return statistics.getStreamStalledTime();
+    }
+
+    @ManagedOperation(value = "Resets the aggregated statistics; the statistics of each session are not affected", impact = "ACTION")
+    public void reset()
+    {
+        statistics.reset();
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("%s@%x[sessions=%d,%s]", getClass().getSimpleName(), hashCode(), getSessions(), statistics);
+    }
+}
@@ -19,17 +19,25 @@
 package org.eclipse.jetty.http2.server;
 
 import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Queue;
+import java.util.Set;
 import java.util.concurrent.Executor;
 
 import org.eclipse.jetty.http.BadMessageException;
 import org.eclipse.jetty.http.HttpField;
+import org.eclipse.jetty.http.HttpFields;
 import org.eclipse.jetty.http.HttpHeader;
 import org.eclipse.jetty.http.HttpMethod;
+import org.eclipse.jetty.http.HttpURI;
+import org.eclipse.jetty.http.HttpVersion;
 import org.eclipse.jetty.http.MetaData;
 import org.eclipse.jetty.http.MetaData.Request;
+import org.eclipse.jetty.http2.ErrorCode;
 import org.eclipse.jetty.http2.HTTP2Connection;
 import org.eclipse.jetty.http2.ISession;
 import org.eclipse.jetty.http2.IStream;
@@ -38,6 +46,7 @@ import org.eclipse.jetty.http2.frames.DataFrame;
 import org.eclipse.jetty.http2.frames.Frame;
 import org.eclipse.jetty.http2.frames.HeadersFrame;
 import org.eclipse.jetty.http2.frames.PrefaceFrame;
+import org.eclipse.jetty.http2.frames.ResetFrame;
 import org.eclipse.jetty.http2.frames.SettingsFrame;
 import org.eclipse.jetty.http2.parser.ServerParser;
 import org.eclipse.jetty.http2.parser.SettingsBodyParser;
@@ -54,10 +63,13 @@ import org.eclipse.jetty.util.TypeUtil;
 
 public class HTTP2ServerConnection extends HTTP2Connection implements Connection.UpgradeTo
 {
-    private final Queue<HttpChannelOverHTTP2> channels = new ConcurrentArrayQueue<>();
+    private final Queue<ServerHttpChannelOverHTTP2> channels = new ConcurrentArrayQueue<>();
     private final ServerSessionListener listener;
     private final HttpConfiguration httpConfig;
     private final List<Frame> upgradeFrames = new ArrayList<>();
+    private PushStrategy pushStrategy = new PushStrategy.None();
+    private Map<String, Boolean> pushDigest;
+    private FairDispatcher.Lane dispatchLane;
 
     public HTTP2ServerConnection(ByteBufferPool byteBufferPool, Executor executor, EndPoint endPoint, HttpConfiguration httpConfig, ServerParser parser, ISession session, int inputBufferSize, ServerSessionListener listener)
     {
@@ -66,6 +78,44 @@ public class HTTP2ServerConnection extends HTTP2Connection implements Connection
         this.httpConfig = httpConfig;
     }
 
+    public PushStrategy getPushStrategy()
+    {
+        return pushStrategy;
+    }
+
+    /**
+     * @param pushStrategy the strategy that decides the resources to push
+     * @param maxPushDigestSize the max number of resource paths remembered as being
+     * already available to the client, and therefore not pushed again
+     */
+    public void setPushStrategy(PushStrategy pushStrategy, final int maxPushDigestSize)
+    {
+        this.pushStrategy = pushStrategy;
+        // No need to remember what the client has if nothing is ever pushed.
+        if (pushStrategy instanceof PushStrategy.None)
+        {
+            this.pushDigest = null;
+            return;
+        }
+        this.pushDigest = new LinkedHashMap<String, Boolean>(16, 0.75F, true)
+        {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest)
+            {
+                return size() > maxPushDigestSize;
+            }
+        };
+    }
+
+    /**
+     * @param dispatchLane the lane used to dispatch the processing of streams,
+     * or null to process streams with the execution strategy of this connection
+     */
+    public void setDispatchLane(FairDispatcher.Lane dispatchLane)
+    {
+        this.dispatchLane = dispatchLane;
+    }
+
     @Override
     protected ServerParser getParser()
     {
@@ -105,10 +155,102 @@ public class HTTP2ServerConnection extends HTTP2Connection implements Connection
     {
         if (LOG.isDebugEnabled())
             LOG.debug("Processing {} on {}", frame, stream);
-        HttpChannelOverHTTP2 channel = provideHttpChannel(connector, stream);
+        ServerHttpChannelOverHTTP2 channel = provideHttpChannel(connector, stream);
         Runnable task = channel.onRequest(frame);
+        push(channel, (MetaData.Request)frame.getMetaData());
         if (task != null)
-            offerTask(task, false);
+            dispatch(channel, stream, task, false);
+    }
+
+    private void push(HttpChannelOverHTTP2 channel, MetaData.Request request)
+    {
+        if (pushDigest == null)
+            return;
+        String primary = request.getURI().getPath();
+        if (primary == null)
+            return;
+        // The client now has the primary resource.
+        digest(primary);
+
+        ISession session = getSession();
+        Set<String> paths = pushStrategy.apply(session, request);
+        if (paths.isEmpty() || !session.isPushEnabled())
+            return;
+
+        HttpURI uri = request.getURI();
+        HttpFields fields = null;
+        for (String path : paths)
+        {
+            if (!digest(path))
+            {
+                if (LOG.isDebugEnabled())
+                    LOG.debug("Not pushing {} for {}, already available to the client", path, primary);
+                continue;
+            }
+            if (fields == null)
+                fields = newPushFields(request.getFields());
+            HttpURI pushURI = HttpURI.createHttpURI(uri.getScheme(), uri.getHost(), uri.getPort(), path, null, null, null);
+            channel.getHttpTransport().push(new MetaData.Request(HttpMethod.GET.asString(), pushURI, HttpVersion.HTTP_2, fields));
+        }
+    }
+
+    /**
+     * @param path the path of a resource that is available to the client
+     * @return true if the client did not have the resource, false if it already had it
+     */
+    private boolean digest(String path)
+    {
+        Map<String, Boolean> digest = pushDigest;
+        synchronized (digest)
+        {
+            return digest.put(path, Boolean.TRUE) == null;
+        }
+    }
+
+    private HttpFields newPushFields(HttpFields requestFields)
+    {
+        HttpFields fields = new HttpFields(requestFields.size());
+        for (HttpField field : requestFields)
+        {
+            HttpHeader header = field.getHeader();
+            if (header != null)
+            {
+                switch (header)
+                {
+                    case IF_MATCH:
+                    case IF_NONE_MATCH:
+                    case IF_MODIFIED_SINCE:
+                    case IF_UNMODIFIED_SINCE:
+                    case IF_RANGE:
+                    case RANGE:
+                    case EXPECT:
+                    case REFERER:
+                    case COOKIE:
+                    case AUTHORIZATION:
+                    case CONTENT_LENGTH:
+                    case CONTENT_TYPE:
+                        continue;
+                    default:
+                        break;
+                }
+            }
+            fields.add(field);
+        }
+        return fields;
+    }
+
+    public void onPushed(String primary, String path)
+    {
+        if (primary != null && path != null)
+            pushStrategy.onPushed(getSession(), primary, path);
+    }
+
+    public void onPushReset(String primary, String path, int error)
+    {
+        if (LOG.isDebugEnabled())
+            LOG.debug("Pushed resource {} for {} reset by client, error {}", path, primary, error);
+        if (primary != null && path != null)
+            pushStrategy.onPushReset(getSession(), primary, path, error);
     }
 
     public void onData(IStream stream, DataFrame frame, Callback callback)
@@ -125,15 +267,44 @@ public class HTTP2ServerConnection extends HTTP2Connection implements Connection
     {
         if (LOG.isDebugEnabled())
             LOG.debug("Processing push {} on {}", request, stream);
-        HttpChannelOverHTTP2 channel = provideHttpChannel(connector, stream);
+        ServerHttpChannelOverHTTP2 channel = provideHttpChannel(connector, stream);
         Runnable task = channel.onPushRequest(request);
         if (task != null)
-            offerTask(task, true);
+            dispatch(channel, stream, task, true);
     }
 
-    private HttpChannelOverHTTP2 provideHttpChannel(Connector connector, IStream stream)
+    private void dispatch(ServerHttpChannelOverHTTP2 channel, IStream stream, Runnable task, boolean dispatch)
     {
-        HttpChannelOverHTTP2 channel = channels.poll();
+        // Only the tasks that start the processing of a stream are
+        // subject to the dispatch limits; content tasks must not be
+        // delayed, since they may be awaited by an active stream.
+        FairDispatcher.Lane lane = dispatchLane;
+        if (lane == null)
+        {
+            offerTask(task, dispatch);
+        }
+        else
+        {
+            // The slot is held until the exchange completes,
+            // which may be well after the task returns.
+            StreamDispatch streamDispatch = new StreamDispatch(stream, task);
+            channel.dispatch = streamDispatch;
+            lane.offer(streamDispatch);
+        }
+    }
+
+    @Override
+    public void onClose()
+    {
+        FairDispatcher.Lane lane = dispatchLane;
+        if (lane != null)
+            lane.close(new ClosedChannelException());
+        super.onClose();
+    }
+
+    private ServerHttpChannelOverHTTP2 provideHttpChannel(Connector connector, IStream stream)
+    {
+        ServerHttpChannelOverHTTP2 channel = channels.poll();
         if (channel != null)
         {
             channel.getHttpTransport().setStream(stream);
@@ -188,6 +359,8 @@ public class HTTP2ServerConnection extends HTTP2Connection implements Connection
 
     private class ServerHttpChannelOverHTTP2 extends HttpChannelOverHTTP2
     {
+        private StreamDispatch dispatch;
+
         public ServerHttpChannelOverHTTP2(Connector connector, HttpConfiguration configuration, EndPoint endPoint, HttpTransportOverHTTP2 transport)
         {
             super(connector, configuration, endPoint, transport);
@@ -197,8 +370,48 @@ public class HTTP2ServerConnection extends HTTP2Connection implements Connection
         public void onCompleted()
         {
             super.onCompleted();
+            StreamDispatch streamDispatch = dispatch;
+            if (streamDispatch != null)
+            {
+                dispatch = null;
+                dispatchLane.complete(streamDispatch);
+            }
             recycle();
             channels.offer(this);
         }
     }
+
+    private class StreamDispatch implements Runnable, Callback
+    {
+        private final IStream stream;
+        private final Runnable task;
+
+        private StreamDispatch(IStream stream, Runnable task)
+        {
+            this.stream = stream;
+            this.task = task;
+        }
+
+        @Override
+        public void run()
+        {
+            task.run();
+        }
+
+        @Override
+        public void failed(Throwable x)
+        {
+            // The stream could not be processed, so the
+            // client may safely retry it on another connection.
+            if (LOG.isDebugEnabled())
+                LOG.debug("Refusing " + stream, x);
+            stream.reset(new ResetFrame(stream.getId(), ErrorCode.REFUSED_STREAM_ERROR.code), Callback.NOOP);
+        }
+
+        @Override
+        public String toString()
+        {
+            return String.format("%s@%x[%s]", getClass().getSimpleName(), hashCode(), stream);
+        }
+    }
 }
@@ -70,6 +70,7 @@ public class HTTP2ServerSession extends HTTP2Session implements ServerParser.Lis
     {
         if (LOG.isDebugEnabled())
             LOG.debug("Received {}", frame);
+        getStatistics().onFrameReceived(frame);
 
         MetaData metaData = frame.getMetaData();
         if (metaData.isRequest())
@@ -91,6 +92,7 @@ public class HTTP2ServerSession extends HTTP2Session implements ServerParser.Lis
     @Override
     public void onPushPromise(PushPromiseFrame frame)
     {
+        getStatistics().onFrameReceived(frame);
         onConnectionFailure(ErrorCode.PROTOCOL_ERROR.code, "push_promise");
     }
 
@@ -146,11 +146,15 @@ public class HttpTransportOverHTTP2 implements HttpTransport
         if (LOG.isDebugEnabled())
             LOG.debug("HTTP/2 Push {}",request);
         
+        HttpChannel channel = (HttpChannel)stream.getAttribute(IStream.CHANNEL_ATTRIBUTE);
+        final String primary = channel == null ? null : channel.getRequest().getHttpURI().getPath();
+        final String path = request.getURI().getPath();
         stream.push(new PushPromiseFrame(stream.getId(), 0, request), new Promise<Stream>()
         {
             @Override
             public void succeeded(Stream pushStream)
             {
+                connection.onPushed(primary, path);
                 connection.push(connector, (IStream)pushStream, request);
             }
 
@@ -160,7 +164,14 @@ public class HttpTransportOverHTTP2 implements HttpTransport
                 if (LOG.isDebugEnabled())
                     LOG.debug("Could not push " + request, x);
             }
-        }, new Stream.Listener.Adapter()); // TODO: handle reset from the client ?
+        }, new Stream.Listener.Adapter()
+        {
+            @Override
+            public void onReset(Stream stream, ResetFrame frame)
+            {
+                connection.onPushReset(primary, path, frame.getError());
+            }
+        });
     }
 
     private void commit(MetaData.Response info, boolean endStream, Callback callback)
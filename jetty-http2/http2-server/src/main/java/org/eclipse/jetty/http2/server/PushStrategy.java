@@ -0,0 +1,89 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2015 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+
+package org.eclipse.jetty.http2.server;
+
+import java.util.Collections;
+import java.util.Set;
+
+import org.eclipse.jetty.http.MetaData;
+import org.eclipse.jetty.http2.api.Session;
+
+/**
+ * <p>A server push strategy decides which secondary resources should be
+ * pushed to the client when a primary resource is requested.</p>
+ * <p>Implementations are shared among all the connections of a connector,
+ * and therefore must be thread-safe.</p>
+ *
+ * @see ReferrerPushStrategy
+ */
+public interface PushStrategy
+{
+    /**
+     * <p>Applies the strategy to the given request, possibly learning
+     * from it, and returns the paths of the resources to push.</p>
+     *
+     * @param session the session the request arrived on
+     * @param request the request for a primary resource
+     * @return the paths of the resources to push, never null
+     */
+    public Set<String> apply(Session session, MetaData.Request request);
+
+    /**
+     * <p>Callback method invoked when a resource has been pushed.</p>
+     *
+     * @param session the session the resource has been pushed on
+     * @param primary the path of the primary resource
+     * @param path the path of the pushed resource
+     */
+    public void onPushed(Session session, String primary, String path);
+
+    /**
+     * <p>Callback method invoked when a pushed resource has been reset
+     * by the client, typically because the client already had it.</p>
+     *
+     * @param session the session the resource has been pushed on
+     * @param primary the path of the primary resource
+     * @param path the path of the pushed resource
+     * @param error the error code of the reset
+     */
+    public void onPushReset(Session session, String primary, String path, int error);
+
+    /**
+     * <p>A strategy that never pushes resources.</p>
+     */
+    public static class None implements PushStrategy
+    {
+        @Override
+        public Set<String> apply(Session session, MetaData.Request request)
+        {
+            return Collections.emptySet();
+        }
+
+        @Override
+        public void onPushed(Session session, String primary, String path)
+        {
+        }
+
+        @Override
+        public void onPushReset(Session session, String primary, String path, int error)
+        {
+        }
+    }
+}
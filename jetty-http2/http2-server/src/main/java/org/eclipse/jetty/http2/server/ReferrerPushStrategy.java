@@ -0,0 +1,462 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2015 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+
+package org.eclipse.jetty.http2.server;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.eclipse.jetty.http.HttpField;
+import org.eclipse.jetty.http.HttpFields;
+import org.eclipse.jetty.http.HttpHeader;
+import org.eclipse.jetty.http.HttpMethod;
+import org.eclipse.jetty.http.HttpScheme;
+import org.eclipse.jetty.http.HttpURI;
+import org.eclipse.jetty.http.MetaData;
+import org.eclipse.jetty.http2.ErrorCode;
+import org.eclipse.jetty.http2.api.Session;
+import org.eclipse.jetty.util.annotation.ManagedAttribute;
+import org.eclipse.jetty.util.annotation.ManagedObject;
+import org.eclipse.jetty.util.annotation.ManagedOperation;
+import org.eclipse.jetty.util.log.Log;
+import org.eclipse.jetty.util.log.Logger;
+
+/**
+ * <p>A {@link PushStrategy} that learns the secondary resources associated
+ * to primary resources from the {@code Referer} header.</p>
+ * <p>A request for a primary resource such as {@code /index.html} is typically
+ * followed by requests for secondary resources that carry a {@code Referer}
+ * header pointing to {@code /index.html}. Secondary resources requested within
+ * the {@link #getAssociatePeriod() associate period} of the primary resource
+ * request are associated to the primary resource.</p>
+ * <p>Each association has a confidence that is incremented every time the
+ * association is observed, that halves every {@link #getConfidenceHalfLife()
+ * confidence half life}, and that is halved every time the client resets a
+ * pushed resource. Only secondary resources whose confidence is at least
+ * {@link #getMinConfidence()} are pushed, so that resources that are not
+ * referenced anymore, or that clients refuse, are eventually forgotten.</p>
+ * <p>The number of primary resources and the number of associations per
+ * primary resource are bounded; the least recently requested primary
+ * resources and the least confident associations are evicted first.</p>
+ * <p>Requests for primary resources carrying conditional headers such as
+ * {@code If-None-Match} hint that the client has the resources in its cache,
+ * and do not trigger pushes.</p>
+ */
+@ManagedObject("Push strategy based on the HTTP 'Referer' header")
+public class ReferrerPushStrategy implements PushStrategy
+{
+    private static final Logger LOG = Log.getLogger(ReferrerPushStrategy.class);
+
+    private final ConcurrentMap<String, PrimaryResource> cache = new ConcurrentHashMap<>();
+    private final AtomicLong pushes = new AtomicLong();
+    private final AtomicLong resets = new AtomicLong();
+    private final AtomicLong cancels = new AtomicLong();
+    private long associatePeriod = 4000;
+    private int maxAssociations = 16;
+    private int maxPrimaryResources = 1024;
+    private long confidenceHalfLife = TimeUnit.HOURS.toMillis(1);
+    private double minConfidence = 0.5;
+
+    @ManagedAttribute("The period in ms within which secondary resources are associated to the primary resource")
+    public long getAssociatePeriod()
+    {
+        return associatePeriod;
+    }
+
+    public void setAssociatePeriod(long associatePeriod)
+    {
+        this.associatePeriod = associatePeriod;
+    }
+
+    @ManagedAttribute("The max number of secondary resources associated to a primary resource")
+    public int getMaxAssociations()
+    {
+        return maxAssociations;
+    }
+
+    public void setMaxAssociations(int maxAssociations)
+    {
+        this.maxAssociations = maxAssociations;
+    }
+
+    @ManagedAttribute("The max number of primary resources")
+    public int getMaxPrimaryResources()
+    {
+        return maxPrimaryResources;
+    }
+
+    public void setMaxPrimaryResources(int maxPrimaryResources)
+    {
+        this.maxPrimaryResources = maxPrimaryResources;
+    }
+
+    @ManagedAttribute("The time in ms after which the confidence of an association halves")
+    public long getConfidenceHalfLife()
+    {
+        return confidenceHalfLife;
+    }
+
+    public void setConfidenceHalfLife(long confidenceHalfLife)
+    {
+        this.confidenceHalfLife = confidenceHalfLife;
+    }
+
+    @ManagedAttribute("The min confidence of an association for the secondary resource to be pushed")
+    public double getMinConfidence()
+    {
+        return minConfidence;
+    }
+
+    public void setMinConfidence(double minConfidence)
+    {
+        this.minConfidence = minConfidence;
+    }
+
+    @ManagedAttribute("The number of pushed resources")
+    public long getPushCount()
+    {
+        return pushes.get();
+    }
+
+    @ManagedAttribute("The number of pushed resources reset by clients")
+    public long getPushResetCount()
+    {
+        return resets.get();
+    }
+
+    @ManagedAttribute("The number of pushed resources cancelled or refused by clients")
+    public long getPushCancelCount()
+    {
+        return cancels.get();
+    }
+
+    @ManagedAttribute("The number of primary resources")
+    public int getPrimaryResourceCount()
+    {
+        return cache.size();
+    }
+
+    @Override
+    public Set<String> apply(Session session, MetaData.Request request)
+    {
+        if (!HttpMethod.GET.is(request.getMethod()))
+            return Collections.emptySet();
+
+        HttpURI uri = request.getURI();
+        String path = uri.getPath();
+        if (path == null)
+            return Collections.emptySet();
+
+        long now = System.nanoTime();
+
+        // Iterating over fields is more efficient than multiple gets.
+        HttpFields fields = request.getFields();
+        boolean conditional = false;
+        String referrer = null;
+        for (int i = 0; i < fields.size(); i++)
+        {
+            HttpField field = fields.getField(i);
+            HttpHeader header = field.getHeader();
+            if (header == null)
+                continue;
+
+            switch (header)
+            {
+                case IF_MATCH:
+                case IF_MODIFIED_SINCE:
+                case IF_NONE_MATCH:
+                case IF_UNMODIFIED_SINCE:
+                    conditional = true;
+                    break;
+
+                case REFERER:
+                    referrer = field.getValue();
+                    break;
+
+                default:
+                    break;
+            }
+        }
+
+        if (LOG.isDebugEnabled())
+            LOG.debug("{} {} referrer={} conditional={}", request.getMethod(), uri, referrer, conditional);
+
+        if (referrer != null)
+            associate(uri, path, referrer, now);
+
+        PrimaryResource primary = cache.get(path);
+        if (primary == null)
+        {
+            evict();
+            PrimaryResource resource = new PrimaryResource();
+            primary = cache.putIfAbsent(path, resource);
+            if (primary == null)
+            {
+                primary = resource;
+                if (LOG.isDebugEnabled())
+                    LOG.debug("Cached primary resource {}", path);
+            }
+        }
+
+        Set<String> result = primary.access(now);
+        if (conditional || result.isEmpty())
+            return Collections.emptySet();
+
+        if (LOG.isDebugEnabled())
+            LOG.debug("Pushing {} for {}", result, path);
+        return result;
+    }
+
+    private void associate(HttpURI uri, String path, String referrer, long now)
+    {
+        HttpURI referrerURI = new HttpURI(referrer);
+        String host = referrerURI.getHost();
+        if (host == null || !host.equalsIgnoreCase(uri.getHost()) || port(referrerURI) != port(uri))
+        {
+            if (LOG.isDebugEnabled())
+                LOG.debug("External referrer {}", referrer);
+            return;
+        }
+
+        String referrerPath = referrerURI.getPath();
+        if (referrerPath == null)
+            referrerPath = "/";
+        if (referrerPath.equals(path))
+        {
+            if (LOG.isDebugEnabled())
+                LOG.debug("Not associated {} to {}, referring to self", path, referrerPath);
+            return;
+        }
+
+        PrimaryResource primary = cache.get(referrerPath);
+        if (primary != null)
+            primary.associate(referrerPath, path, now);
+    }
+
+    private static int port(HttpURI uri)
+    {
+        int port = uri.getPort();
+        if (port > 0)
+            return port;
+        return HttpScheme.HTTPS.is(uri.getScheme()) ? 443 : 80;
+    }
+
+    private void evict()
+    {
+        int excess = cache.size() - getMaxPrimaryResources() + 1;
+        if (excess <= 0)
+            return;
+
+        // Evict the least recently requested primary resources.
+        TreeMap<Long, String> oldest = new TreeMap<>();
+        for (Map.Entry<String, PrimaryResource> entry : cache.entrySet())
+        {
+            oldest.put(entry.getValue().timestamp, entry.getKey());
+            if (oldest.size() > excess)
+                oldest.pollLastEntry();
+        }
+        for (String path : oldest.values())
+        {
+            cache.remove(path);
+            if (LOG.isDebugEnabled())
+                LOG.debug("Evicted primary resource {}", path);
+        }
+    }
+
+    @Override
+    public void onPushed(Session session, String primary, String path)
+    {
+        pushes.incrementAndGet();
+    }
+
+    @Override
+    public void onPushReset(Session session, String primary, String path, int error)
+    {
+        resets.incrementAndGet();
+        if (error == ErrorCode.CANCEL_STREAM_ERROR.code || error == ErrorCode.REFUSED_STREAM_ERROR.code)
+            cancels.incrementAndGet();
+
+        PrimaryResource resource = cache.get(primary);
+        if (resource != null)
+            resource.penalize(path, System.nanoTime());
+    }
+
+    @ManagedAttribute("The push cache contents")
+    public Map<String, String> getPushCache()
+    {
+        long now = System.nanoTime();
+        Map<String, String> result = new HashMap<>();
+        for (Map.Entry<String, PrimaryResource> entry : cache.entrySet())
+            result.put(entry.getKey(), entry.getValue().dump(now));
+        return result;
+    }
+
+    @ManagedOperation(value = "Clears the push cache contents", impact = "ACTION")
+    public void clearPushCache()
+    {
+        cache.clear();
+    }
+
+    @ManagedOperation(value = "Resets the push statistics", impact = "ACTION")
+    public void resetStatistics()
+    {
+        pushes.set(0);
+        resets.set(0);
+        cancels.set(0);
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("%s@%x[primaries=%d,pushes=%d,resets=%d]",
+                getClass().getSimpleName(), hashCode(), getPrimaryResourceCount(), getPushCount(), getPushResetCount());
+    }
+
+    private class PrimaryResource
+    {
+        private final Map<String, Association> associations = new HashMap<>();
+        private volatile long timestamp = System.nanoTime();
+
+        private synchronized Set<String> access(long now)
+        {
+            timestamp = now;
+            Set<String> result = null;
+            for (Iterator<Association> iterator = associations.values().iterator(); iterator.hasNext();)
+            {
+                Association association = iterator.next();
+                double confidence = association.confidence(now);
+                if (confidence < getMinConfidence() / 2)
+                {
+                    // Forget associations that are not confident anymore.
+                    iterator.remove();
+                }
+                else if (confidence >= getMinConfidence())
+                {
+                    if (result == null)
+                        result = new HashSet<>();
+                    result.add(association.path);
+                }
+            }
+            return result == null ? Collections.<String>emptySet() : result;
+        }
+
+        private synchronized void associate(String primary, String path, long now)
+        {
+            if (now - timestamp > TimeUnit.MILLISECONDS.toNanos(getAssociatePeriod()))
+            {
+                if (LOG.isDebugEnabled())
+                    LOG.debug("Not associated {} to {}, outside associate period of {}ms", path, primary, getAssociatePeriod());
+                return;
+            }
+
+            Association association = associations.get(path);
+            if (association == null)
+            {
+                if (associations.size() >= getMaxAssociations() && !evictLeastConfident(now))
+                {
+                    if (LOG.isDebugEnabled())
+                        LOG.debug("Not associated {} to {}, exceeded max associations of {}", path, primary, getMaxAssociations());
+                    return;
+                }
+                association = new Association(path, now);
+                associations.put(path, association);
+            }
+            association.reinforce(now);
+
+            if (LOG.isDebugEnabled())
+                LOG.debug("Associated {} to {}, confidence {}", path, primary, association.confidence);
+        }
+
+        private boolean evictLeastConfident(long now)
+        {
+            Association weakest = null;
+            double min = 1;
+            for (Association association : associations.values())
+            {
+                double confidence = association.confidence(now);
+                if (confidence < min)
+                {
+                    min = confidence;
+                    weakest = association;
+                }
+            }
+            if (weakest == null)
+                return false;
+            associations.remove(weakest.path);
+            return true;
+        }
+
+        private synchronized void penalize(String path, long now)
+        {
+            Association association = associations.get(path);
+            if (association != null)
+                association.penalize(now);
+        }
+
+        private synchronized String dump(long now)
+        {
+            Map<String, String> result = new TreeMap<>();
+            for (Association association : associations.values())
+                result.put(association.path, String.format("%.2f", association.confidence(now)));
+            return String.format("size=%d: %s", result.size(), result);
+        }
+    }
+
+    private class Association
+    {
+        private final String path;
+        private double confidence;
+        private long timestamp;
+
+        private Association(String path, long now)
+        {
+            this.path = path;
+            this.timestamp = now;
+        }
+
+        private double confidence(long now)
+        {
+            long halfLife = TimeUnit.MILLISECONDS.toNanos(getConfidenceHalfLife());
+            if (halfLife <= 0)
+                return confidence;
+            return confidence * Math.pow(0.5, (double)(now - timestamp) / halfLife);
+        }
+
+        private void reinforce(long now)
+        {
+            confidence = confidence(now) + 1;
+            timestamp = now;
+        }
+
+        private void penalize(long now)
+        {
+            confidence = confidence(now) / 2;
+            timestamp = now;
+        }
+    }
+}
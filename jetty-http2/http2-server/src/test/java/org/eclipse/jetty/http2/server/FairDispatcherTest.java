@@ -0,0 +1,220 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2015 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+
+package org.eclipse.jetty.http2.server;
+
+import java.nio.channels.ClosedChannelException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.eclipse.jetty.util.Callback;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class FairDispatcherTest
+{
+    private final List<Runnable> executed = new ArrayList<>();
+    private final List<String> order = new ArrayList<>();
+    private final FairDispatcher dispatcher = new FairDispatcher(executed::add, 2, 1);
+    private Task last;
+
+    private void runNext()
+    {
+        executed.remove(0).run();
+        last.lane.complete(last);
+    }
+
+    @Test
+    public void testLaneConcurrencyIsLimited() throws Exception
+    {
+        FairDispatcher.Lane lane = dispatcher.newLane();
+        lane.offer(new Task(lane, "a1"));
+        lane.offer(new Task(lane, "a2"));
+
+        Assert.assertEquals(1, executed.size());
+        Assert.assertEquals(1, dispatcher.getActiveTasks());
+        Assert.assertEquals(1, dispatcher.getQueuedTasks());
+        Assert.assertEquals(1, dispatcher.getDelayedTasks());
+
+        runNext();
+        Assert.assertEquals(1, executed.size());
+        runNext();
+        Assert.assertEquals(0, executed.size());
+        Assert.assertEquals(0, dispatcher.getActiveTasks());
+        Assert.assertEquals(0, dispatcher.getQueuedTasks());
+        Assert.assertEquals(2, dispatcher.getDispatchedTasks());
+        Assert.assertEquals("[a1, a2]", order.toString());
+    }
+
+    @Test
+    public void testLanesAreServedRoundRobin() throws Exception
+    {
+        FairDispatcher dispatcher = new FairDispatcher(executed::add, 1, 0);
+        FairDispatcher.Lane laneA = dispatcher.newLane();
+        FairDispatcher.Lane laneB = dispatcher.newLane();
+        laneA.offer(new Task(laneA, "a1"));
+        laneA.offer(new Task(laneA, "a2"));
+        laneA.offer(new Task(laneA, "a3"));
+        laneB.offer(new Task(laneB, "b1"));
+        laneB.offer(new Task(laneB, "b2"));
+
+        while (!executed.isEmpty())
+            runNext();
+
+        // Lane A was already waiting when lane B offered its
+        // first task, then the lanes alternate.
+        Assert.assertEquals("[a1, a2, b1, a3, b2]", order.toString());
+    }
+
+    @Test
+    public void testChattyLaneDoesNotStarveOtherLanes() throws Exception
+    {
+        FairDispatcher.Lane chatty = dispatcher.newLane();
+        for (int i = 0; i < 10; ++i)
+            chatty.offer(new Task(chatty, "chatty" + i));
+        // The chatty lane is limited to one task in execution,
+        // so there is capacity left for the other lane.
+        Assert.assertEquals(1, executed.size());
+
+        FairDispatcher.Lane other = dispatcher.newLane();
+        other.offer(new Task(other, "other"));
+        Assert.assertEquals(2, executed.size());
+
+        runNext();
+        runNext();
+        Assert.assertTrue(order.contains("other"));
+        Assert.assertEquals(9, dispatcher.getQueuedTasks() + executed.size());
+    }
+
+    @Test
+    public void testSlotIsHeldUntilTaskCompletes() throws Exception
+    {
+        FairDispatcher.Lane lane = dispatcher.newLane();
+        Task task1 = new Task(lane, "a1");
+        lane.offer(task1);
+        lane.offer(new Task(lane, "a2"));
+
+        // The task returns, but its processing is not complete,
+        // for example because it is asynchronous.
+        executed.remove(0).run();
+        Assert.assertEquals(0, executed.size());
+        Assert.assertEquals(1, dispatcher.getActiveTasks());
+        Assert.assertEquals(1, dispatcher.getQueuedTasks());
+
+        lane.complete(task1);
+        Assert.assertEquals(1, executed.size());
+        // Completing twice has no effect.
+        lane.complete(task1);
+        Assert.assertEquals(1, dispatcher.getActiveTasks());
+
+        runNext();
+        Assert.assertEquals(0, dispatcher.getActiveTasks());
+        Assert.assertEquals("[a1, a2]", order.toString());
+    }
+
+    @Test
+    public void testFailingTaskReleasesSlot() throws Exception
+    {
+        FairDispatcher.Lane lane = dispatcher.newLane();
+        lane.offer(() -> { throw new IllegalStateException(); });
+        lane.offer(new Task(lane, "a1"));
+        try
+        {
+            executed.remove(0).run();
+            Assert.fail();
+        }
+        catch (IllegalStateException x)
+        {
+            // Expected.
+        }
+        Assert.assertEquals(1, executed.size());
+        runNext();
+        Assert.assertEquals(0, dispatcher.getActiveTasks());
+    }
+
+    @Test
+    public void testRejectedTaskIsFailed() throws Exception
+    {
+        FairDispatcher dispatcher = new FairDispatcher(task ->
+        {
+            throw new RejectedExecutionException();
+        }, 1, 1);
+        FairDispatcher.Lane lane = dispatcher.newLane();
+        Task task = new Task(lane, "a1");
+        lane.offer(task);
+
+        Assert.assertTrue(task.failure instanceof RejectedExecutionException);
+        Assert.assertEquals(0, dispatcher.getActiveTasks());
+        Assert.assertEquals(0, dispatcher.getQueuedTasks());
+    }
+
+    @Test
+    public void testCloseFailsQueuedTasks() throws Exception
+    {
+        FairDispatcher.Lane lane = dispatcher.newLane();
+        Task task1 = new Task(lane, "a1");
+        Task task2 = new Task(lane, "a2");
+        lane.offer(task1);
+        lane.offer(task2);
+        Assert.assertEquals(1, dispatcher.getQueuedTasks());
+
+        lane.close(new ClosedChannelException());
+        Assert.assertTrue(task2.failure instanceof ClosedChannelException);
+        Assert.assertEquals(0, dispatcher.getQueuedTasks());
+
+        // Tasks offered after the close are failed.
+        Task task3 = new Task(lane, "a3");
+        lane.offer(task3);
+        Assert.assertTrue(task3.failure instanceof RejectedExecutionException);
+
+        // The task in execution still holds its slot until completed.
+        Assert.assertEquals(1, dispatcher.getActiveTasks());
+        runNext();
+        Assert.assertEquals(0, dispatcher.getActiveTasks());
+        Assert.assertNull(task1.failure);
+        Assert.assertEquals("[a1]", order.toString());
+    }
+
+    private class Task implements Runnable, Callback
+    {
+        private final FairDispatcher.Lane lane;
+        private final String name;
+        private Throwable failure;
+
+        private Task(FairDispatcher.Lane lane, String name)
+        {
+            this.lane = lane;
+            this.name = name;
+        }
+
+        @Override
+        public void run()
+        {
+            order.add(name);
+            last = this;
+        }
+
+        @Override
+        public void failed(Throwable x)
+        {
+            failure = x;
+        }
+    }
+}
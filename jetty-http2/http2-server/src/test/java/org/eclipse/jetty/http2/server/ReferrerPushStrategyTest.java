@@ -0,0 +1,172 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2015 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+
+package org.eclipse.jetty.http2.server;
+
+import java.util.Set;
+
+import org.eclipse.jetty.http.HttpFields;
+import org.eclipse.jetty.http.HttpHeader;
+import org.eclipse.jetty.http.HttpURI;
+import org.eclipse.jetty.http.HttpVersion;
+import org.eclipse.jetty.http.MetaData;
+import org.eclipse.jetty.http2.ErrorCode;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ReferrerPushStrategyTest
+{
+    private static final String ORIGIN = "https://localhost:8443";
+
+    @Test
+    public void testSecondaryResourceIsPushedAfterAssociation() throws Exception
+    {
+        ReferrerPushStrategy strategy = new ReferrerPushStrategy();
+
+        Assert.assertTrue(strategy.apply(null, newRequest("/index.html", null)).isEmpty());
+        Assert.assertTrue(strategy.apply(null, newRequest("/style.css", ORIGIN + "/index.html")).isEmpty());
+
+        Set<String> pushes = strategy.apply(null, newRequest("/index.html", null));
+        Assert.assertEquals(1, pushes.size());
+        Assert.assertTrue(pushes.contains("/style.css"));
+    }
+
+    @Test
+    public void testExternalReferrerIsNotAssociated() throws Exception
+    {
+        ReferrerPushStrategy strategy = new ReferrerPushStrategy();
+
+        strategy.apply(null, newRequest("/index.html", null));
+        strategy.apply(null, newRequest("/style.css", "https://example.com/index.html"));
+
+        Assert.assertTrue(strategy.apply(null, newRequest("/index.html", null)).isEmpty());
+    }
+
+    @Test
+    public void testDefaultPortReferrerIsAssociated() throws Exception
+    {
+        ReferrerPushStrategy strategy = new ReferrerPushStrategy();
+
+        strategy.apply(null, newRequest("https://localhost:443", "/index.html", null));
+        strategy.apply(null, newRequest("https://localhost:443", "/style.css", "https://localhost/index.html"));
+
+        Assert.assertEquals(1, strategy.apply(null, newRequest("https://localhost:443", "/index.html", null)).size());
+    }
+
+    @Test
+    public void testConditionalRequestDoesNotPush() throws Exception
+    {
+        ReferrerPushStrategy strategy = new ReferrerPushStrategy();
+
+        strategy.apply(null, newRequest("/index.html", null));
+        strategy.apply(null, newRequest("/style.css", ORIGIN + "/index.html"));
+
+        MetaData.Request request = newRequest("/index.html", null);
+        request.getFields().put(HttpHeader.IF_NONE_MATCH, "\"1234\"");
+        Assert.assertTrue(strategy.apply(null, request).isEmpty());
+    }
+
+    @Test
+    public void testAssociationOutsideAssociatePeriod() throws Exception
+    {
+        ReferrerPushStrategy strategy = new ReferrerPushStrategy();
+        strategy.setAssociatePeriod(0);
+
+        strategy.apply(null, newRequest("/index.html", null));
+        Thread.sleep(10);
+        strategy.apply(null, newRequest("/style.css", ORIGIN + "/index.html"));
+
+        Assert.assertTrue(strategy.apply(null, newRequest("/index.html", null)).isEmpty());
+    }
+
+    @Test
+    public void testConfidenceDecays() throws Exception
+    {
+        ReferrerPushStrategy strategy = new ReferrerPushStrategy();
+        long halfLife = 100;
+        strategy.setConfidenceHalfLife(halfLife);
+
+        strategy.apply(null, newRequest("/index.html", null));
+        strategy.apply(null, newRequest("/style.css", ORIGIN + "/index.html"));
+
+        // Wait for the confidence to decay below the min confidence.
+        Thread.sleep(3 * halfLife);
+
+        Assert.assertTrue(strategy.apply(null, newRequest("/index.html", null)).isEmpty());
+    }
+
+    @Test
+    public void testResetPushIsPenalized() throws Exception
+    {
+        ReferrerPushStrategy strategy = new ReferrerPushStrategy();
+        strategy.setMinConfidence(0.75);
+
+        strategy.apply(null, newRequest("/index.html", null));
+        strategy.apply(null, newRequest("/style.css", ORIGIN + "/index.html"));
+        Assert.assertEquals(1, strategy.apply(null, newRequest("/index.html", null)).size());
+
+        strategy.onPushed(null, "/index.html", "/style.css");
+        strategy.onPushReset(null, "/index.html", "/style.css", ErrorCode.CANCEL_STREAM_ERROR.code);
+
+        Assert.assertEquals(1, strategy.getPushCount());
+        Assert.assertEquals(1, strategy.getPushResetCount());
+        Assert.assertEquals(1, strategy.getPushCancelCount());
+        Assert.assertTrue(strategy.apply(null, newRequest("/index.html", null)).isEmpty());
+    }
+
+    @Test
+    public void testMaxAssociations() throws Exception
+    {
+        ReferrerPushStrategy strategy = new ReferrerPushStrategy();
+        int maxAssociations = 2;
+        strategy.setMaxAssociations(maxAssociations);
+
+        strategy.apply(null, newRequest("/index.html", null));
+        for (int i = 0; i < maxAssociations + 1; ++i)
+            strategy.apply(null, newRequest("/style" + i + ".css", ORIGIN + "/index.html"));
+
+        Assert.assertEquals(maxAssociations, strategy.apply(null, newRequest("/index.html", null)).size());
+    }
+
+    @Test
+    public void testMaxPrimaryResources() throws Exception
+    {
+        ReferrerPushStrategy strategy = new ReferrerPushStrategy();
+        int maxPrimaryResources = 4;
+        strategy.setMaxPrimaryResources(maxPrimaryResources);
+
+        for (int i = 0; i < 2 * maxPrimaryResources; ++i)
+            strategy.apply(null, newRequest("/page" + i + ".html", null));
+
+        Assert.assertEquals(maxPrimaryResources, strategy.getPrimaryResourceCount());
+    }
+
+    private MetaData.Request newRequest(String path, String referrer)
+    {
+        return newRequest(ORIGIN, path, referrer);
+    }
+
+    private MetaData.Request newRequest(String origin, String path, String referrer)
+    {
+        HttpFields fields = new HttpFields();
+        if (referrer != null)
+            fields.put(HttpHeader.REFERER, referrer);
+        return new MetaData.Request("GET", new HttpURI(origin + path), HttpVersion.HTTP_2, fields);
+    }
+}
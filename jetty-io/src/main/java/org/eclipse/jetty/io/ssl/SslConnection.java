@@ -21,13 +21,17 @@ package org.eclipse.jetty.io.ssl;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.channels.ClosedChannelException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
 
 import javax.net.ssl.SSLEngine;
 import javax.net.ssl.SSLEngineResult;
 import javax.net.ssl.SSLEngineResult.HandshakeStatus;
 import javax.net.ssl.SSLEngineResult.Status;
 import javax.net.ssl.SSLException;
+import javax.net.ssl.SSLSession;
 
 import org.eclipse.jetty.io.AbstractConnection;
 import org.eclipse.jetty.io.AbstractEndPoint;
@@ -80,6 +84,8 @@ public class SslConnection extends AbstractConnection
     private static final boolean DEBUG = LOG.isDebugEnabled(); // Easy for the compiler to remove the code if DEBUG==false
     private static final ByteBuffer __FILL_CALLED_FLUSH= BufferUtil.allocate(0);
     private static final ByteBuffer __FLUSH_CALLED_FILL= BufferUtil.allocate(0);
+    private static final String HANDSHAKEN_ATTRIBUTE = SslConnection.class.getName() + ".handshaken";
+    private final List<SslHandshakeListener> handshakeListeners = new ArrayList<>();
     private final ByteBufferPool _bufferPool;
     private final SSLEngine _sslEngine;
     private final DecryptedEndPoint _decryptedEndPoint;
@@ -89,6 +95,7 @@ public class SslConnection extends AbstractConnection
     private final boolean _encryptedDirectBuffers = true;
     private final boolean _decryptedDirectBuffers = false;
     private boolean _renegotiationAllowed;
+    private Executor _delegatedTaskExecutor;
     private final Runnable _runCompletWrite = new Runnable()
     {
         @Override
@@ -121,6 +128,16 @@ public class SslConnection extends AbstractConnection
         return new DecryptedEndPoint();
     }
 
+    public void addHandshakeListener(SslHandshakeListener listener)
+    {
+        handshakeListeners.add(listener);
+    }
+
+    public boolean removeHandshakeListener(SslHandshakeListener listener)
+    {
+        return handshakeListeners.remove(listener);
+    }
+
     public SSLEngine getSSLEngine()
     {
         return _sslEngine;
@@ -141,6 +158,29 @@ public class SslConnection extends AbstractConnection
         this._renegotiationAllowed = renegotiationAllowed;
     }
 
+    /**
+     * @return the executor that runs the {@link SSLEngine#getDelegatedTask() delegated tasks}
+     * of the SSLEngine, or null if delegated tasks are run by the thread calling fill or flush.
+     */
+    public Executor getDelegatedTaskExecutor()
+    {
+        return _delegatedTaskExecutor;
+    }
+
+    /**
+     * <p>Sets the executor that runs the {@link SSLEngine#getDelegatedTask() delegated tasks}
+     * of the SSLEngine, typically the expensive key exchange computations of the TLS handshake.</p>
+     * <p>When set, fill and flush do not block while a delegated task runs; they report no
+     * progress and are resumed when the task completes.
+     * If the executor rejects a task, the handshake fails and the connection is closed.</p>
+     *
+     * @param delegatedTaskExecutor the executor for delegated tasks, or null to run them inline
+     */
+    public void setDelegatedTaskExecutor(Executor delegatedTaskExecutor)
+    {
+        this._delegatedTaskExecutor = delegatedTaskExecutor;
+    }
+
     @Override
     public void onOpen()
     {
@@ -163,6 +203,7 @@ public class SslConnection extends AbstractConnection
     {
         _decryptedEndPoint.getConnection().onClose();
         super.onClose();
+        _decryptedEndPoint.releaseBuffers();
     }
 
     @Override
@@ -249,8 +290,12 @@ public class SslConnection extends AbstractConnection
     {
         private boolean _fillRequiresFlushToProgress;
         private boolean _flushRequiresFillToProgress;
+        private boolean _fillRequiresTaskToProgress;
+        private boolean _flushRequiresTaskToProgress;
+        private boolean _delegatedTaskPending;
         private boolean _cannotAcceptMoreAppDataToFlush;
         private boolean _handshaken;
+        private boolean _handshakeFailed;
         private boolean _underFlown;
 
         private final Callback _writeCallback = new Callback()
@@ -364,6 +409,12 @@ public class SslConnection extends AbstractConnection
                     _cannotAcceptMoreAppDataToFlush = true;
                     getEndPoint().write(_writeCallback, _encryptedOutput);
                 }
+                // If we are waiting for a delegated task, its completion will complete the write
+                else if (_flushRequiresTaskToProgress && _delegatedTaskPending)
+                {
+                    if (DEBUG)
+                        LOG.debug("{} flush waiting for delegated task", SslConnection.this);
+                }
                 // If we are handshaking and need to read,
                 else if (_sslEngine.getHandshakeStatus() == HandshakeStatus.NEED_UNWRAP)
                 {
@@ -417,6 +468,17 @@ public class SslConnection extends AbstractConnection
                         // or if we have encryptedInput and have not underflowed yet, the it is worth trying a fill
                         || BufferUtil.hasContent(_encryptedInput) && !_underFlown;
 
+                // Are we waiting for a delegated task?
+                if (_fillRequiresTaskToProgress)
+                {
+                    // If the task is still running, its completion will make us fillable,
+                    // otherwise it has already completed and it is worth trying a fill
+                    if (_delegatedTaskPending)
+                        return;
+                    _fillRequiresTaskToProgress = false;
+                    fillable = true;
+                }
+
                 // If we have no encrypted data to decrypt OR we have some, but it is not enough
                 if (!fillable)
                 {
@@ -471,6 +533,7 @@ public class SslConnection extends AbstractConnection
         @Override
         public synchronized int fill(ByteBuffer buffer) throws IOException
         {
+            _fillRequiresTaskToProgress = false;
             try
             {
                 // Do we already have some decrypted data?
@@ -500,6 +563,13 @@ public class SslConnection extends AbstractConnection
 
                     decryption: while (true)
                     {
+                        // Are we waiting for a delegated task to complete?
+                        if (_delegatedTaskPending)
+                        {
+                            _fillRequiresTaskToProgress = true;
+                            return 0;
+                        }
+
                         // Let's unwrap even if we have no net data because in that
                         // case we want to fall through to the handshake handling
                         int pos = BufferUtil.flipToFill(app_in);
@@ -530,7 +600,9 @@ public class SslConnection extends AbstractConnection
                         {
                             if (net_filled < 0)
                                 closeInbound();
-                            if (net_filled <= 0)
+                            // Unless we need to wrap, for example after a delegated task
+                            // has completed asynchronously, we need more encrypted data
+                            if (net_filled < 0 || net_filled == 0 && handshakeStatus != HandshakeStatus.NEED_WRAP)
                                 return net_filled;
                         }
 
@@ -547,8 +619,10 @@ public class SslConnection extends AbstractConnection
                                     }
                                     case NEED_TASK:
                                     {
-                                        _sslEngine.getDelegatedTask().run();
-                                        continue;
+                                        if (runDelegatedTasks())
+                                            continue;
+                                        _fillRequiresTaskToProgress = true;
+                                        return 0;
                                     }
                                     case NEED_WRAP:
                                     {
@@ -579,6 +653,7 @@ public class SslConnection extends AbstractConnection
                                         LOG.debug("{} {} handshook {}/{}", SslConnection.this,
                                                 _sslEngine.getUseClientMode() ? "client" : "resumed server",
                                                 _sslEngine.getSession().getProtocol(),_sslEngine.getSession().getCipherSuite());
+                                    notifyHandshakeSucceeded(_sslEngine);
                                 }
 
                                 // Check whether renegotiation is allowed
@@ -610,8 +685,10 @@ public class SslConnection extends AbstractConnection
                                     }
                                     case NEED_TASK:
                                     {
-                                        _sslEngine.getDelegatedTask().run();
-                                        continue;
+                                        if (runDelegatedTasks())
+                                            continue;
+                                        _fillRequiresTaskToProgress = true;
+                                        return 0;
                                     }
                                     case NEED_WRAP:
                                     {
@@ -659,11 +736,13 @@ public class SslConnection extends AbstractConnection
             {
                 // Some internal error in SSLEngine
                 LOG.debug(e);
+                notifyHandshakeFailed(_sslEngine, e);
                 getEndPoint().close();
                 throw new EofException(e);
             }
             catch (Exception e)
             {
+                notifyHandshakeFailed(_sslEngine, e);
                 getEndPoint().close();
                 throw e;
             }
@@ -732,6 +811,13 @@ public class SslConnection extends AbstractConnection
 
                 while (true)
                 {
+                    // Are we waiting for a delegated task to complete?
+                    if (_delegatedTaskPending)
+                    {
+                        _flushRequiresTaskToProgress = true;
+                        return false;
+                    }
+
                     // We call sslEngine.wrap to try to take bytes from appOut buffers and encrypt them into the _netOut buffer
                     BufferUtil.compact(_encryptedOutput);
                     int pos = BufferUtil.flipToFill(_encryptedOutput);
@@ -790,6 +876,7 @@ public class SslConnection extends AbstractConnection
                                 _handshaken = true;
                                 if (DEBUG)
                                     LOG.debug("{} server handshook complete {}/{}", SslConnection.this, _sslEngine.getSession().getProtocol(),_sslEngine.getSession().getCipherSuite());
+                                notifyHandshakeSucceeded(_sslEngine);
                             }
 
                             HandshakeStatus handshakeStatus = _sslEngine.getHandshakeStatus();
@@ -822,9 +909,11 @@ public class SslConnection extends AbstractConnection
                                     return allConsumed && BufferUtil.isEmpty(_encryptedOutput);
 
                                 case NEED_TASK:
-                                    // run the task and continue
-                                    _sslEngine.getDelegatedTask().run();
-                                    continue;
+                                    // run the task and continue, or wait for it to complete
+                                    if (runDelegatedTasks())
+                                        continue;
+                                    _flushRequiresTaskToProgress = true;
+                                    return false;
 
                                 case NEED_WRAP:
                                     // Hey we just wrapped! Oh well who knows what the sslEngine is thinking, so continue and we will wrap again
@@ -850,12 +939,157 @@ public class SslConnection extends AbstractConnection
                     }
                 }
             }
+            catch (Exception x)
+            {
+                notifyHandshakeFailed(_sslEngine, x);
+                throw x;
+            }
             finally
             {
                 releaseEncryptedOutputBuffer();
             }
         }
 
+        /**
+         * @return true if the delegated tasks have been run, false if they are running asynchronously
+         * @throws SSLException if the delegated task executor rejected the tasks
+         */
+        private boolean runDelegatedTasks() throws SSLException
+        {
+            Executor executor = getDelegatedTaskExecutor();
+            if (executor == null)
+            {
+                Runnable task;
+                while ((task = _sslEngine.getDelegatedTask()) != null)
+                    task.run();
+                return true;
+            }
+
+            if (_delegatedTaskPending)
+                return false;
+
+            _delegatedTaskPending = true;
+            try
+            {
+                executor.execute(_runDelegatedTasks);
+                return false;
+            }
+            catch (RejectedExecutionException x)
+            {
+                _delegatedTaskPending = false;
+                SSLException failure = new SSLException("Delegated task rejected");
+                failure.initCause(x);
+                throw failure;
+            }
+        }
+
+        private final Runnable _runDelegatedTasks = new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                try
+                {
+                    Runnable task;
+                    while ((task = _sslEngine.getDelegatedTask()) != null)
+                        task.run();
+                }
+                finally
+                {
+                    boolean fillable;
+                    boolean completeWrite;
+                    synchronized (DecryptedEndPoint.this)
+                    {
+                        _delegatedTaskPending = false;
+                        fillable = _fillRequiresTaskToProgress;
+                        completeWrite = _flushRequiresTaskToProgress;
+                        _flushRequiresTaskToProgress = false;
+                        if (DEBUG)
+                            LOG.debug("{} delegated tasks completed", SslConnection.this);
+                    }
+                    // Resume the fill and flush state machines on the connection executor
+                    if (fillable)
+                        getExecutor().execute(_runFillable);
+                    if (completeWrite)
+                        getExecutor().execute(_runCompletWrite);
+                }
+            }
+
+            @Override
+            public String toString()
+            {
+                return String.format("SSLDelegatedTasks@%x{%s}", hashCode(), SslConnection.this);
+            }
+        };
+
+        private void notifyHandshakeSucceeded(SSLEngine sslEngine)
+        {
+            if (handshakeListeners.isEmpty())
+                return;
+            // A resumed handshake reuses the session of a previous handshake, which
+            // has been marked; creation timestamps cannot tell them apart reliably.
+            SSLSession session = sslEngine.getSession();
+            boolean resumed = session.getValue(HANDSHAKEN_ATTRIBUTE) != null;
+            if (!resumed)
+                session.putValue(HANDSHAKEN_ATTRIBUTE, Boolean.TRUE);
+            SslHandshakeListener.Event event = new SslHandshakeListener.Event(sslEngine, resumed);
+            for (SslHandshakeListener listener : handshakeListeners)
+            {
+                try
+                {
+                    listener.handshakeSucceeded(event);
+                }
+                catch (Throwable x)
+                {
+                    LOG.info("Exception while notifying listener " + listener, x);
+                }
+            }
+        }
+
+        private void notifyHandshakeFailed(SSLEngine sslEngine, Throwable failure)
+        {
+            if (_handshaken || _handshakeFailed)
+                return;
+            _handshakeFailed = true;
+            if (handshakeListeners.isEmpty())
+                return;
+            SslHandshakeListener.Event event = new SslHandshakeListener.Event(sslEngine, false);
+            for (SslHandshakeListener listener : handshakeListeners)
+            {
+                try
+                {
+                    listener.handshakeFailed(event, failure);
+                }
+                catch (Throwable x)
+                {
+                    LOG.info("Exception while notifying listener " + listener, x);
+                }
+            }
+        }
+
+        /**
+         * <p>Releases the buffers that are still held when the connection is closed,
+         * except the encrypted output buffer if a write is still in progress.</p>
+         */
+        private synchronized void releaseBuffers()
+        {
+            if (_encryptedInput != null)
+            {
+                _bufferPool.release(_encryptedInput);
+                _encryptedInput = null;
+            }
+            if (_decryptedInput != null)
+            {
+                _bufferPool.release(_decryptedInput);
+                _decryptedInput = null;
+            }
+            if (_encryptedOutput != null && !_cannotAcceptMoreAppDataToFlush)
+            {
+                _bufferPool.release(_encryptedOutput);
+                _encryptedOutput = null;
+            }
+        }
+
         private void releaseEncryptedOutputBuffer()
         {
             if (!Thread.holdsLock(DecryptedEndPoint.this))
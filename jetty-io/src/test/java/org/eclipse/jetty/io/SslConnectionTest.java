@@ -29,6 +29,7 @@ import java.nio.channels.ServerSocketChannel;
 import java.nio.channels.SocketChannel;
 import java.nio.charset.StandardCharsets;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 
@@ -43,6 +44,7 @@ import org.eclipse.jetty.util.ssl.SslContextFactory;
 import org.eclipse.jetty.util.thread.QueuedThreadPool;
 import org.eclipse.jetty.util.thread.Scheduler;
 import org.eclipse.jetty.util.thread.TimerScheduler;
+import org.hamcrest.Matchers;
 import org.junit.After;
 import org.junit.Assert;
 import org.junit.Before;
@@ -58,6 +60,7 @@ public class SslConnectionTest
     protected volatile EndPoint _lastEndp;
     private volatile boolean _testFill=true;
     private volatile FutureCallback _writeCallback;
+    private volatile Executor _delegatedTaskExecutor;
     protected ServerSocketChannel _connector;
     final AtomicInteger _dispatches = new AtomicInteger();
     protected QueuedThreadPool _threadPool = new QueuedThreadPool()
@@ -80,6 +83,7 @@ public class SslConnectionTest
             engine.setUseClientMode(false);
             SslConnection sslConnection = new SslConnection(__byteBufferPool, getExecutor(), endpoint, engine);
             sslConnection.setRenegotiationAllowed(__sslCtxFactory.isRenegotiationAllowed());
+            sslConnection.setDelegatedTaskExecutor(_delegatedTaskExecutor);
             Connection appConnection = new TestConnection(sslConnection.getDecryptedEndPoint());
             sslConnection.getDecryptedEndPoint().setConnection(appConnection);
             return sslConnection;
@@ -143,6 +147,7 @@ public class SslConnectionTest
     {
         _testFill=true;
         _writeCallback=null;
+        _delegatedTaskExecutor=null;
         _lastEndp=null;
         _connector = ServerSocketChannel.open();
         _connector.socket().bind(null);
@@ -281,6 +286,58 @@ public class SslConnectionTest
     }
 
 
+    @Test
+    public void testHelloWorldWithDelegatedTasks() throws Exception
+    {
+        final AtomicInteger tasks = new AtomicInteger();
+        _delegatedTaskExecutor = new Executor()
+        {
+            @Override
+            public void execute(Runnable task)
+            {
+                tasks.incrementAndGet();
+                new Thread(task).start();
+            }
+        };
+
+        Socket client = newClient();
+        client.setSoTimeout(10000);
+
+        SocketChannel server = _connector.accept();
+        server.configureBlocking(false);
+        _manager.accept(server);
+
+        client.getOutputStream().write("Hello".getBytes(StandardCharsets.UTF_8));
+        byte[] buffer = new byte[1024];
+        int len=client.getInputStream().read(buffer);
+        Assert.assertEquals(5, len);
+        Assert.assertEquals("Hello",new String(buffer,0,len,StandardCharsets.UTF_8));
+        Assert.assertThat(tasks.get(), Matchers.greaterThan(0));
+
+        client.close();
+    }
+
+    @Test
+    public void testWriteOnConnectWithDelegatedTasks() throws Exception
+    {
+        _testFill=false;
+        _delegatedTaskExecutor = _threadPool;
+
+        _writeCallback = new FutureCallback();
+        Socket client = newClient();
+        client.setSoTimeout(10000);
+
+        SocketChannel server = _connector.accept();
+        server.configureBlocking(false);
+        _manager.accept(server);
+
+        byte[] buffer = new byte[1024];
+        int len=client.getInputStream().read(buffer);
+        Assert.assertEquals("Hello Client",new String(buffer,0,len,StandardCharsets.UTF_8));
+        Assert.assertEquals(null,_writeCallback.get(100,TimeUnit.MILLISECONDS));
+        client.close();
+    }
+
     @Test
     public void testWriteOnConnect() throws Exception
     {
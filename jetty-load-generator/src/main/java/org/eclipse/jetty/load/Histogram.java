@@ -0,0 +1,209 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2015 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+
+package org.eclipse.jetty.load;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.eclipse.jetty.util.Atomics;
+
+/**
+ * <p>A histogram of non-negative long values, typically latencies in nanoseconds.</p>
+ * <p>Values are counted in buckets whose width grows with the magnitude of the
+ * values, so that the histogram has a fixed memory footprint, recording is
+ * allocation-free and lock-free, and the relative error of the reported
+ * percentiles is less than 1/64, about 1.6%.</p>
+ * <p>The min, max and total of the recorded values are tracked exactly.</p>
+ */
+public class Histogram
+{
+    private static final int SUB_BUCKET_BITS = 7;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int HALF_SUB_BUCKETS = SUB_BUCKETS / 2;
+    private static final int BUCKETS = Long.SIZE - SUB_BUCKET_BITS;
+
+    private final AtomicLongArray counts = new AtomicLongArray((BUCKETS + 1) * HALF_SUB_BUCKETS);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong total = new AtomicLong();
+    private final AtomicLong min = new AtomicLong(Long.MAX_VALUE);
+    private final AtomicLong max = new AtomicLong(Long.MIN_VALUE);
+
+    /**
+     * @param value the value to record, must be non-negative
+     */
+    public void record(long value)
+    {
+        if (value < 0)
+            throw new IllegalArgumentException("Negative value " + value);
+        counts.incrementAndGet(indexOf(value));
+        count.incrementAndGet();
+        total.addAndGet(value);
+        updateMin(value);
+        Atomics.updateMax(max, value);
+    }
+
+    private void updateMin(long value)
+    {
+        while (true)
+        {
+            long current = min.get();
+            if (value >= current || min.compareAndSet(current, value))
+                return;
+        }
+    }
+
+    private static int indexOf(long value)
+    {
+        int bucket = Math.max(0, Long.SIZE - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS);
+        int subBucket = (int)(value >>> bucket);
+        return bucket * HALF_SUB_BUCKETS + subBucket;
+    }
+
+    private static long highestValueAt(int index)
+    {
+        int bucket = Math.max(0, index / HALF_SUB_BUCKETS - 1);
+        long subBucket = index - bucket * HALF_SUB_BUCKETS;
+        long result = ((subBucket + 1) << bucket) - 1;
+        return result < 0 ? Long.MAX_VALUE : result;
+    }
+
+    /**
+     * @return the number of recorded values
+     */
+    public long getCount()
+    {
+        return count.get();
+    }
+
+    /**
+     * @return the min recorded value, or 0 if no values have been recorded
+     */
+    public long getMin()
+    {
+        return getCount() == 0 ? 0 : min.get();
+    }
+
+    /**
+     * @return the max recorded value, or 0 if no values have been recorded
+     */
+    public long getMax()
+    {
+        return getCount() == 0 ? 0 : max.get();
+    }
+
+    /**
+     * @return the mean of the recorded values, or 0 if no values have been recorded
+     */
+    public double getMean()
+    {
+        long count = getCount();
+        return count == 0 ? 0 : (double)total.get() / count;
+    }
+
+    /**
+     * <p>Returns the value at the given percentile: the given percentage
+     * of the recorded values are less than or equal to the returned value,
+     * within the precision of this histogram.</p>
+     *
+     * @param percentile the percentile, between 0 and 100
+     * @return the value at the given percentile, or 0 if no values have been recorded
+     */
+    public long getValueAtPercentile(double percentile)
+    {
+        long count = getCount();
+        if (count == 0)
+            return 0;
+        // Subtract a small amount to avoid that floating point
+        // errors (e.g. 99.9 / 100 * 1000 = 999.0000000000001)
+        // move the target to the next value.
+        long target = Math.max(1, (long)Math.ceil(Math.min(100, percentile) / 100 * count - 1E-6));
+        long cumulated = 0;
+        for (int i = 0; i < counts.length(); ++i)
+        {
+            cumulated += counts.get(i);
+            if (cumulated >= target)
+                return Math.min(highestValueAt(i), getMax());
+        }
+        return getMax();
+    }
+
+    /**
+     * @param that the histogram whose values are added to this histogram
+     */
+    public void add(Histogram that)
+    {
+        for (int i = 0; i < counts.length(); ++i)
+        {
+            long value = that.counts.get(i);
+            if (value > 0)
+                counts.addAndGet(i, value);
+        }
+        count.addAndGet(that.count.get());
+        total.addAndGet(that.total.get());
+        if (that.getCount() > 0)
+        {
+            updateMin(that.min.get());
+            Atomics.updateMax(max, that.max.get());
+        }
+    }
+
+    public void reset()
+    {
+        for (int i = 0; i < counts.length(); ++i)
+            counts.set(i, 0);
+        count.set(0);
+        total.set(0);
+        min.set(Long.MAX_VALUE);
+        max.set(Long.MIN_VALUE);
+    }
+
+    /**
+     * @param unit the time unit of the recorded values
+     * @param outputUnit the time unit of the reported values
+     * @return a summary of the percentiles of this histogram
+     */
+    public String toString(TimeUnit unit, TimeUnit outputUnit)
+    {
+        return String.format("count=%d min=%d p50=%d p90=%d p99=%d p99.9=%d max=%d mean=%.1f (%s)",
+                getCount(),
+                outputUnit.convert(getMin(), unit),
+                outputUnit.convert(getValueAtPercentile(50), unit),
+                outputUnit.convert(getValueAtPercentile(90), unit),
+                outputUnit.convert(getValueAtPercentile(99), unit),
+                outputUnit.convert(getValueAtPercentile(99.9), unit),
+                outputUnit.convert(getMax(), unit),
+                getMean() / unit.convert(1, outputUnit),
+                outputUnit.name().toLowerCase());
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("%s@%x[count=%d,min=%d,p50=%d,p99=%d,max=%d]",
+                getClass().getSimpleName(),
+                hashCode(),
+                getCount(),
+                getMin(),
+                getValueAtPercentile(50),
+                getValueAtPercentile(99),
+                getMax());
+    }
+}
@@ -0,0 +1,504 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2015 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+
+package org.eclipse.jetty.load;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import org.eclipse.jetty.client.HttpClient;
+import org.eclipse.jetty.client.api.Request;
+import org.eclipse.jetty.client.api.Response;
+import org.eclipse.jetty.client.util.BytesContentProvider;
+import org.eclipse.jetty.http.HttpField;
+import org.eclipse.jetty.http.HttpFields;
+import org.eclipse.jetty.http.HttpMethod;
+import org.eclipse.jetty.http.HttpScheme;
+import org.eclipse.jetty.util.Atomics;
+import org.eclipse.jetty.util.log.Log;
+import org.eclipse.jetty.util.log.Logger;
+import org.eclipse.jetty.util.ssl.SslContextFactory;
+import org.eclipse.jetty.util.thread.QueuedThreadPool;
+
+/**
+ * <p>An open-loop HTTP load generator, built on the asynchronous API of {@link HttpClient}.</p>
+ * <p>Requests are sent at a fixed {@link #getRate() rate}, independently of how fast the
+ * server responds: the {@code N}-th request is intended to be sent at time
+ * {@code begin + N / rate}, whether or not previous requests have completed.</p>
+ * <p>For each request, two latencies are recorded:</p>
+ * <ul>
+ * <li>the <em>response time</em>, from the time the request was intended to be sent
+ * to the time the response completed;</li>
+ * <li>the <em>service time</em>, from the time the request began to be sent over a
+ * connection to the time the response completed.</li>
+ * </ul>
+ * <p>When the server stalls, a closed-loop load generator stops sending requests,
+ * so the requests that would have been sent during the stall, and that would have
+ * experienced the stall, are never measured: this is known as <em>coordinated
+ * omission</em>. Measuring the response time from the intended send time corrects
+ * for it, since requests delayed by the stall account for the whole delay.
+ * A large difference between the response time and the service time percentiles
+ * indicates that requests have been queued, either in the client or in the server.</p>
+ * <p>The number of connections is configured with
+ * {@link HttpClient#setMaxConnectionsPerDestination(int)}; requests that cannot be
+ * sent immediately are queued by {@link HttpClient} up to
+ * {@link HttpClient#getMaxRequestsQueuedPerDestination()}, and fail beyond that.</p>
+ */
+public class LoadGenerator
+{
+    private static final Logger LOG = Log.getLogger(LoadGenerator.class);
+
+    private final HttpFields headers = new HttpFields();
+    private String scheme = HttpScheme.HTTP.asString();
+    private String host = "localhost";
+    private int port = 8080;
+    private String path = "/";
+    private int rate = 1000;
+    private int requests = 10000;
+    private int warmupRequests = 0;
+    private int contentLength = 0;
+    private long timeout = 30000;
+
+    public String getScheme()
+    {
+        return scheme;
+    }
+
+    public void setScheme(String scheme)
+    {
+        this.scheme = scheme;
+    }
+
+    public String getHost()
+    {
+        return host;
+    }
+
+    public void setHost(String host)
+    {
+        this.host = host;
+    }
+
+    public int getPort()
+    {
+        return port;
+    }
+
+    public void setPort(int port)
+    {
+        this.port = port;
+    }
+
+    public String getPath()
+    {
+        return path;
+    }
+
+    public void setPath(String path)
+    {
+        this.path = path;
+    }
+
+    /**
+     * @return the number of requests sent per second
+     */
+    public int getRate()
+    {
+        return rate;
+    }
+
+    public void setRate(int rate)
+    {
+        this.rate = rate;
+    }
+
+    public int getRequests()
+    {
+        return requests;
+    }
+
+    public void setRequests(int requests)
+    {
+        this.requests = requests;
+    }
+
+    public int getWarmupRequests()
+    {
+        return warmupRequests;
+    }
+
+    /**
+     * @param warmupRequests the number of requests sent, at the same rate, before
+     * the measured requests, and whose latencies are discarded
+     */
+    public void setWarmupRequests(int warmupRequests)
+    {
+        this.warmupRequests = warmupRequests;
+    }
+
+    public int getContentLength()
+    {
+        return contentLength;
+    }
+
+    /**
+     * @param contentLength the length of the request content; requests
+     * with content are POSTs, requests without content are GETs
+     */
+    public void setContentLength(int contentLength)
+    {
+        this.contentLength = contentLength;
+    }
+
+    public long getTimeout()
+    {
+        return timeout;
+    }
+
+    /**
+     * @param timeout the total timeout, in milliseconds, of each request
+     */
+    public void setTimeout(long timeout)
+    {
+        this.timeout = timeout;
+    }
+
+    /**
+     * @return the headers added to each request
+     */
+    public HttpFields getHeaders()
+    {
+        return headers;
+    }
+
+    /**
+     * <p>Sends the warmup requests and then the measured requests to the configured server.</p>
+     *
+     * @param client the client used to send the requests, already started
+     * @return the result of the measured requests, including the number of requests
+     * that did not complete within the timeouts after the last one was sent
+     * @throws InterruptedException if interrupted while waiting for the responses
+     */
+    public Result run(HttpClient client) throws InterruptedException
+    {
+        if (warmupRequests > 0)
+            run(client, warmupRequests);
+        return run(client, requests);
+    }
+
+    private Result run(HttpClient client, int count) throws InterruptedException
+    {
+        Result result = new Result(count);
+        byte[] content = new byte[contentLength];
+        long period = TimeUnit.SECONDS.toNanos(1) / Math.max(1, rate);
+        long begin = System.nanoTime();
+        for (int i = 0; i < count; ++i)
+        {
+            long intended = begin + i * period;
+            long delay = intended - System.nanoTime();
+            if (delay > 0)
+                LockSupport.parkNanos(delay);
+            send(client, result, content, intended);
+        }
+
+        // Every request completes within its timeout; a stalled connection
+        // is also bounded by the idle timeout, so wait no longer than that.
+        long wait = Math.max(0, timeout) + Math.max(0, client.getIdleTimeout());
+        if (wait == 0)
+            wait = 30000;
+        if (!result.latch.await(wait, TimeUnit.MILLISECONDS))
+            LOG.warn("{} requests not completed {} ms after the end of the run", result.latch.getCount(), wait);
+        result.elapsed = System.nanoTime() - begin;
+        result.incomplete = result.latch.getCount();
+        return result;
+    }
+
+    private void send(HttpClient client, Result result, byte[] content, long intended)
+    {
+        Request request = client.newRequest(host, port)
+                .scheme(scheme)
+                .path(path)
+                .timeout(timeout, TimeUnit.MILLISECONDS);
+        for (HttpField header : headers)
+            request.header(header.getName(), header.getValue());
+        if (content.length > 0)
+            request.method(HttpMethod.POST).content(new BytesContentProvider(content));
+
+        long sent = System.nanoTime();
+        Atomics.updateMax(result.maxSendLag, sent - intended);
+        Exchange exchange = new Exchange(result, intended);
+        request.onRequestBegin(exchange).send(exchange);
+    }
+
+    private static class Exchange extends Response.Listener.Adapter implements Request.BeginListener
+    {
+        private final Result result;
+        private final long intended;
+        private volatile long begin;
+
+        private Exchange(Result result, long intended)
+        {
+            this.result = result;
+            this.intended = intended;
+        }
+
+        @Override
+        public void onBegin(Request request)
+        {
+            begin = System.nanoTime();
+        }
+
+        @Override
+        public void onComplete(org.eclipse.jetty.client.api.Result complete)
+        {
+            long now = System.nanoTime();
+            if (complete.isSucceeded())
+            {
+                result.responseTimes.record(now - intended);
+                result.serviceTimes.record(now - begin);
+                if (complete.getResponse().getStatus() >= 500)
+                    result.errors.incrementAndGet();
+            }
+            else
+            {
+                if (LOG.isDebugEnabled())
+                    LOG.debug("Request failed", complete.getFailure());
+                result.failures.incrementAndGet();
+            }
+            result.latch.countDown();
+        }
+    }
+
+    /**
+     * <p>The result of a load run.</p>
+     */
+    public static class Result
+    {
+        private final Histogram responseTimes = new Histogram();
+        private final Histogram serviceTimes = new Histogram();
+        private final AtomicLong failures = new AtomicLong();
+        private final AtomicLong errors = new AtomicLong();
+        private final AtomicLong maxSendLag = new AtomicLong();
+        private final CountDownLatch latch;
+        private final int requests;
+        private volatile long elapsed;
+        private volatile long incomplete;
+
+        private Result(int requests)
+        {
+            this.requests = requests;
+            this.latch = new CountDownLatch(requests);
+        }
+
+        public int getRequests()
+        {
+            return requests;
+        }
+
+        /**
+         * @return the number of requests that did not complete by the end of the run
+         */
+        public long getIncomplete()
+        {
+            return incomplete;
+        }
+
+        /**
+         * @return the number of requests that failed without a response
+         */
+        public long getFailures()
+        {
+            return failures.get();
+        }
+
+        /**
+         * @return the number of responses with a 5xx status code
+         */
+        public long getErrors()
+        {
+            return errors.get();
+        }
+
+        public long getElapsed(TimeUnit unit)
+        {
+            return unit.convert(elapsed, TimeUnit.NANOSECONDS);
+        }
+
+        /**
+         * @return the number of responses received per second
+         */
+        public double getThroughput()
+        {
+            return responseTimes.getCount() * (double)TimeUnit.SECONDS.toNanos(1) / elapsed;
+        }
+
+        /**
+         * @return the histogram, in nanoseconds, of the latencies from the intended send times
+         */
+        public Histogram getResponseTimes()
+        {
+            return responseTimes;
+        }
+
+        /**
+         * @return the histogram, in nanoseconds, of the latencies from the times the requests
+         * began to be sent over a connection
+         */
+        public Histogram getServiceTimes()
+        {
+            return serviceTimes;
+        }
+
+        /**
+         * @param unit the unit to convert the lag to
+         * @return the max delay between the intended and the actual send time of a request
+         */
+        public long getMaxSendLag(TimeUnit unit)
+        {
+            return unit.convert(maxSendLag.get(), TimeUnit.NANOSECONDS);
+        }
+
+        @Override
+        public String toString()
+        {
+            TimeUnit unit = TimeUnit.MICROSECONDS;
+            return String.format("requests=%d incomplete=%d failures=%d errors=%d elapsed=%dms throughput=%.1f req/s max_send_lag=%dus%n" +
+                            "response time: %s%n" +
+                            "service time:  %s",
+                    getRequests(),
+                    getIncomplete(),
+                    getFailures(),
+                    getErrors(),
+                    getElapsed(TimeUnit.MILLISECONDS),
+                    getThroughput(),
+                    getMaxSendLag(unit),
+                    responseTimes.toString(TimeUnit.NANOSECONDS, unit),
+                    serviceTimes.toString(TimeUnit.NANOSECONDS, unit));
+        }
+    }
+
+    /**
+     * <p>Runs the load generator from the command line.</p>
+     * <p>Arguments are in the form {@code name=value}, where the names are those of
+     * the properties of this class, plus {@code connections}, the max number of
+     * connections to the server, and {@code header}, in the form {@code Name:Value}.
+     * If the {@code port} argument is missing, a {@link LoadServer} is started on
+     * loopback, configured with the {@code responseContentLength} and
+     * {@code responseDelay} arguments.</p>
+     *
+     * @param args the arguments
+     * @throws Exception if the run fails
+     */
+    public static void main(String[] args) throws Exception
+    {
+        LoadGenerator generator = new LoadGenerator();
+        int connections = 8;
+        int responseContentLength = 1024;
+        long responseDelay = 0;
+        boolean embedded = true;
+        List<String> unknown = new ArrayList<>();
+        for (String arg : args)
+        {
+            int equals = arg.indexOf('=');
+            String name = equals < 0 ? arg : arg.substring(0, equals);
+            String value = equals < 0 ? "" : arg.substring(equals + 1);
+            switch (name)
+            {
+                case "scheme":
+                    generator.setScheme(value);
+                    break;
+                case "host":
+                    generator.setHost(value);
+                    break;
+                case "port":
+                    generator.setPort(Integer.parseInt(value));
+                    embedded = false;
+                    break;
+                case "path":
+                    generator.setPath(value);
+                    break;
+                case "rate":
+                    generator.setRate(Integer.parseInt(value));
+                    break;
+                case "requests":
+                    generator.setRequests(Integer.parseInt(value));
+                    break;
+                case "warmupRequests":
+                    generator.setWarmupRequests(Integer.parseInt(value));
+                    break;
+                case "contentLength":
+                    generator.setContentLength(Integer.parseInt(value));
+                    break;
+                case "timeout":
+                    generator.setTimeout(Long.parseLong(value));
+                    break;
+                case "connections":
+                    connections = Integer.parseInt(value);
+                    break;
+                case "header":
+                    int colon = value.indexOf(':');
+                    generator.getHeaders().add(value.substring(0, colon).trim(), value.substring(colon + 1).trim());
+                    break;
+                case "responseContentLength":
+                    responseContentLength = Integer.parseInt(value);
+                    break;
+                case "responseDelay":
+                    responseDelay = Long.parseLong(value);
+                    break;
+                default:
+                    unknown.add(arg);
+                    break;
+            }
+        }
+        if (!unknown.isEmpty())
+            throw new IllegalArgumentException("Unknown arguments " + unknown);
+
+        LoadServer server = null;
+        if (embedded)
+        {
+            server = new LoadServer(responseContentLength, responseDelay);
+            server.start();
+            generator.setHost("localhost");
+            generator.setPort(server.getLocalPort());
+        }
+
+        QueuedThreadPool clientExecutor = new QueuedThreadPool();
+        clientExecutor.setName("client");
+        // Load tests typically target servers with self-signed certificates.
+        HttpClient client = new HttpClient(new SslContextFactory(true));
+        client.setExecutor(clientExecutor);
+        client.setMaxConnectionsPerDestination(connections);
+        client.setMaxRequestsQueuedPerDestination(Math.max(client.getMaxRequestsQueuedPerDestination(), generator.getRate()));
+        client.start();
+        try
+        {
+            System.err.println(generator.run(client));
+        }
+        finally
+        {
+            client.stop();
+            if (server != null)
+                server.stop();
+        }
+    }
+}
@@ -0,0 +1,137 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2015 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+
+package org.eclipse.jetty.load;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
+import org.eclipse.jetty.server.handler.AbstractHandler;
+import org.eclipse.jetty.util.component.ContainerLifeCycle;
+import org.eclipse.jetty.util.thread.QueuedThreadPool;
+
+/**
+ * <p>An embedded HTTP/1.1 server listening on loopback, that is the
+ * target of a {@link LoadGenerator} running on the same host.</p>
+ * <p>Requests are served by a handler that discards the request content
+ * and replies with a response content of the configured length, optionally
+ * after a configured delay, to simulate the service time of an application.</p>
+ */
+public class LoadServer extends ContainerLifeCycle
+{
+    private final int contentLength;
+    private final long delay;
+    private Server server;
+    private ServerConnector connector;
+
+    public LoadServer(int contentLength)
+    {
+        this(contentLength, 0);
+    }
+
+    /**
+     * @param contentLength the length of the response content
+     * @param delay the time, in milliseconds, the server waits before responding
+     */
+    public LoadServer(int contentLength, long delay)
+    {
+        this.contentLength = contentLength;
+        this.delay = delay;
+    }
+
+    public int getLocalPort()
+    {
+        return connector.getLocalPort();
+    }
+
+    public Server getServer()
+    {
+        return server;
+    }
+
+    @Override
+    protected void doStart() throws Exception
+    {
+        QueuedThreadPool serverExecutor = new QueuedThreadPool();
+        serverExecutor.setName("server");
+        server = new Server(serverExecutor);
+        connector = new ServerConnector(server);
+        connector.setHost("localhost");
+        server.addConnector(connector);
+        server.setHandler(new LoadHandler(contentLength, delay));
+        addBean(server);
+        super.doStart();
+    }
+
+    @Override
+    protected void doStop() throws Exception
+    {
+        super.doStop();
+        removeBean(server);
+    }
+
+    private static class LoadHandler extends AbstractHandler
+    {
+        private final byte[] content;
+        private final long delay;
+
+        private LoadHandler(int contentLength, long delay)
+        {
+            this.content = new byte[contentLength];
+            Arrays.fill(content, (byte)'X');
+            this.delay = delay;
+        }
+
+        @Override
+        public void handle(String target, Request jettyRequest, HttpServletRequest request, HttpServletResponse response) throws IOException, ServletException
+        {
+            jettyRequest.setHandled(true);
+            InputStream input = request.getInputStream();
+            byte[] buffer = new byte[4096];
+            while (true)
+            {
+                int read = input.read(buffer);
+                if (read < 0)
+                    break;
+            }
+            if (delay > 0)
+            {
+                try
+                {
+                    Thread.sleep(delay);
+                }
+                catch (InterruptedException x)
+                {
+                    throw new ServletException(x);
+                }
+            }
+            response.setContentLength(content.length);
+            if (content.length > 0)
+                response.getOutputStream().write(content);
+        }
+    }
+}
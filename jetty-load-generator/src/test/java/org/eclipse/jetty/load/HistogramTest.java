@@ -0,0 +1,111 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2015 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+
+package org.eclipse.jetty.load;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class HistogramTest
+{
+    @Test
+    public void testEmpty() throws Exception
+    {
+        Histogram histogram = new Histogram();
+        Assert.assertEquals(0, histogram.getCount());
+        Assert.assertEquals(0, histogram.getMin());
+        Assert.assertEquals(0, histogram.getMax());
+        Assert.assertEquals(0, histogram.getValueAtPercentile(99));
+    }
+
+    @Test
+    public void testSmallValuesAreExact() throws Exception
+    {
+        Histogram histogram = new Histogram();
+        for (int i = 1; i <= 100; ++i)
+            histogram.record(i);
+
+        Assert.assertEquals(100, histogram.getCount());
+        Assert.assertEquals(1, histogram.getMin());
+        Assert.assertEquals(100, histogram.getMax());
+        Assert.assertEquals(50, histogram.getValueAtPercentile(50));
+        Assert.assertEquals(90, histogram.getValueAtPercentile(90));
+        Assert.assertEquals(100, histogram.getValueAtPercentile(100));
+        Assert.assertEquals(50.5, histogram.getMean(), 0.001);
+    }
+
+    @Test
+    public void testLargeValuesHaveBoundedRelativeError() throws Exception
+    {
+        Histogram histogram = new Histogram();
+        long base = TimeUnit.MILLISECONDS.toNanos(1);
+        for (int i = 1; i <= 1000; ++i)
+            histogram.record(i * base);
+
+        for (double percentile : new double[]{10, 50, 90, 99, 99.9})
+        {
+            long expected = (long)(percentile * 10) * base;
+            long actual = histogram.getValueAtPercentile(percentile);
+            Assert.assertTrue(actual >= expected);
+            Assert.assertTrue((actual - expected) / (double)expected < 1D / 64);
+        }
+        Assert.assertEquals(1000 * base, histogram.getMax());
+        Assert.assertEquals(1000 * base, histogram.getValueAtPercentile(100));
+    }
+
+    @Test
+    public void testOutlierDominatesHighPercentiles() throws Exception
+    {
+        Histogram histogram = new Histogram();
+        for (int i = 0; i < 999; ++i)
+            histogram.record(1000);
+        histogram.record(1_000_000_000L);
+
+        Assert.assertTrue(histogram.getValueAtPercentile(99.9) < 1100);
+        Assert.assertEquals(1_000_000_000L, histogram.getValueAtPercentile(99.99));
+    }
+
+    @Test
+    public void testAddAndReset() throws Exception
+    {
+        Histogram histogram1 = new Histogram();
+        histogram1.record(10);
+        Histogram histogram2 = new Histogram();
+        histogram2.record(5);
+        histogram2.record(Long.MAX_VALUE);
+
+        histogram1.add(histogram2);
+        Assert.assertEquals(3, histogram1.getCount());
+        Assert.assertEquals(5, histogram1.getMin());
+        Assert.assertEquals(Long.MAX_VALUE, histogram1.getMax());
+        Assert.assertEquals(Long.MAX_VALUE, histogram1.getValueAtPercentile(100));
+
+        histogram1.reset();
+        Assert.assertEquals(0, histogram1.getCount());
+        Assert.assertEquals(0, histogram1.getMax());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNegativeValue() throws Exception
+    {
+        new Histogram().record(-1);
+    }
+}
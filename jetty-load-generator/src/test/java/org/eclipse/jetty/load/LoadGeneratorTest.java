@@ -0,0 +1,129 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2015 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+
+package org.eclipse.jetty.load;
+
+import java.net.ServerSocket;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.jetty.client.HttpClient;
+import org.eclipse.jetty.toolchain.test.TestTracker;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+
+public class LoadGeneratorTest
+{
+    @Rule
+    public TestTracker tracker = new TestTracker();
+    private LoadServer server;
+    private HttpClient client;
+
+    private LoadGenerator start(int responseContentLength, long responseDelay, int connections) throws Exception
+    {
+        server = new LoadServer(responseContentLength, responseDelay);
+        server.start();
+        client = new HttpClient();
+        client.setMaxConnectionsPerDestination(connections);
+        client.start();
+
+        LoadGenerator generator = new LoadGenerator();
+        generator.setPort(server.getLocalPort());
+        return generator;
+    }
+
+    @After
+    public void dispose() throws Exception
+    {
+        if (client != null)
+            client.stop();
+        if (server != null)
+            server.stop();
+    }
+
+    @Test
+    public void testRequestsAreSentAtFixedRate() throws Exception
+    {
+        LoadGenerator generator = start(1024, 0, 4);
+        generator.setRate(500);
+        generator.setRequests(250);
+        generator.setWarmupRequests(50);
+        generator.setContentLength(256);
+        generator.getHeaders().put("X-Load", "test");
+
+        LoadGenerator.Result result = generator.run(client);
+
+        Assert.assertEquals(250, result.getRequests());
+        Assert.assertEquals(0, result.getIncomplete());
+        Assert.assertEquals(0, result.getFailures());
+        Assert.assertEquals(0, result.getErrors());
+        Assert.assertEquals(250, result.getResponseTimes().getCount());
+        // At 500 requests/s, 250 requests take at least 498 ms.
+        Assert.assertTrue(result.getElapsed(TimeUnit.MILLISECONDS) >= 498);
+        Assert.assertTrue(result.getServiceTimes().getMin() > 0);
+    }
+
+    @Test
+    public void testStalledServerDoesNotHangTheRun() throws Exception
+    {
+        // The server accepts the connection but never reads or replies,
+        // and requests have no total timeout: only the idle timeout applies.
+        try (ServerSocket server = new ServerSocket(0))
+        {
+            client = new HttpClient();
+            client.setIdleTimeout(500);
+            client.start();
+
+            LoadGenerator generator = new LoadGenerator();
+            generator.setPort(server.getLocalPort());
+            generator.setTimeout(0);
+            generator.setRequests(10);
+
+            long begin = System.nanoTime();
+            LoadGenerator.Result result = generator.run(client);
+
+            Assert.assertTrue(TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - begin) < 10);
+            Assert.assertEquals(10, result.getIncomplete() + result.getFailures());
+        }
+    }
+
+    @Test
+    public void testResponseTimeAccountsForQueueing() throws Exception
+    {
+        // A single connection serving requests that take 20 ms each can
+        // only sustain 50 requests/s: at 200 requests/s, requests queue up.
+        long delay = 20;
+        LoadGenerator generator = start(0, delay, 1);
+        generator.setRate(200);
+        generator.setRequests(40);
+
+        LoadGenerator.Result result = generator.run(client);
+
+        Assert.assertEquals(0, result.getFailures());
+        Histogram responseTimes = result.getResponseTimes();
+        Histogram serviceTimes = result.getServiceTimes();
+        Assert.assertTrue(serviceTimes.getMin() >= TimeUnit.MILLISECONDS.toNanos(delay));
+        // The last request waits for the previous 39 to be served,
+        // so its response time is much larger than the service time
+        // measured by a closed-loop generator would suggest.
+        Assert.assertTrue(responseTimes.getMax() >= TimeUnit.MILLISECONDS.toNanos(30 * delay));
+        Assert.assertTrue(responseTimes.getValueAtPercentile(50) > TimeUnit.MILLISECONDS.toNanos(5 * delay));
+    }
+}
@@ -22,6 +22,7 @@ import java.io.IOException;
 import java.net.InetAddress;
 import java.net.URI;
 import java.net.UnknownHostException;
+import java.nio.file.Paths;
 import java.util.Collections;
 import java.util.Enumeration;
 import java.util.HashSet;
@@ -69,7 +70,9 @@ import org.eclipse.jetty.util.thread.QueuedThreadPool;
  * <li>blackList - comma-separated list of forbidden proxy hosts</li>
  * </ul>
  * <p>In addition, see {@link #createHttpClient()} for init parameters
- * used to configure the {@link HttpClient} instance.</p>
+ * used to configure the {@link HttpClient} instance, and
+ * {@link #createResponseCache()} for init parameters used to configure
+ * the {@link ProxyResponseCache} instance.</p>
  * <p>NOTE: By default the Host header sent to the server by this proxy
  * servlet is the server's host name. However, this breaks redirects.
  * Set {@code preserveHost} to {@code true} to make redirects working,
@@ -103,6 +106,7 @@ public abstract class AbstractProxyServlet extends HttpServlet
     private String _hostHeader;
     private String _viaHost;
     private HttpClient _client;
+    private ProxyResponseCache _responseCache;
     private long _timeout;
 
     @Override
@@ -127,6 +131,10 @@ public abstract class AbstractProxyServlet extends HttpServlet
             // Put the HttpClient in the context to leverage ContextHandler.MANAGED_ATTRIBUTES
             getServletContext().setAttribute(config.getServletName() + ".HttpClient", _client);
 
+            _responseCache = createResponseCache();
+            if (_responseCache != null)
+                getServletContext().setAttribute(config.getServletName() + ".ProxyResponseCache", _responseCache);
+
             String whiteList = config.getInitParameter("whiteList");
             if (whiteList != null)
                 getWhiteListHosts().addAll(parseList(whiteList));
@@ -144,6 +152,8 @@ public abstract class AbstractProxyServlet extends HttpServlet
     @Override
     public void destroy()
     {
+        if (_responseCache != null)
+            _responseCache.clear();
         try
         {
             _client.stop();
@@ -348,6 +358,84 @@ public abstract class AbstractProxyServlet extends HttpServlet
         return _client;
     }
 
+    /**
+     * <p>Creates a {@link ProxyResponseCache} instance, configured with init parameters of this servlet.</p>
+     * <p>The init parameters used to configure the {@link ProxyResponseCache} instance are:</p>
+     * <table>
+     * <caption>Init Parameters</caption>
+     * <thead>
+     * <tr>
+     * <th>init-param</th>
+     * <th>default</th>
+     * <th>description</th>
+     * </tr>
+     * </thead>
+     * <tbody>
+     * <tr>
+     * <td>responseCache</td>
+     * <td>false</td>
+     * <td>Whether proxied responses are cached</td>
+     * </tr>
+     * <tr>
+     * <td>responseCacheDirectory</td>
+     * <td>none</td>
+     * <td>The directory where responses evicted from memory are stored, see {@link ProxyResponseCache#getDirectory()}</td>
+     * </tr>
+     * <tr>
+     * <td>responseCacheMaxMemorySize</td>
+     * <td>ProxyResponseCache's default</td>
+     * <td>The max size in bytes of the content stored in memory, see {@link ProxyResponseCache#setMaxMemorySize(long)}</td>
+     * </tr>
+     * <tr>
+     * <td>responseCacheMaxDiskSize</td>
+     * <td>ProxyResponseCache's default</td>
+     * <td>The max size in bytes of the content stored on disk, see {@link ProxyResponseCache#setMaxDiskSize(long)}</td>
+     * </tr>
+     * <tr>
+     * <td>responseCacheMaxEntrySize</td>
+     * <td>ProxyResponseCache's default</td>
+     * <td>The max size in bytes of the content of a cacheable response, see {@link ProxyResponseCache#setMaxEntrySize(int)}</td>
+     * </tr>
+     * </tbody>
+     * </table>
+     *
+     * @return a {@link ProxyResponseCache} configured from the {@link #getServletConfig() servlet configuration},
+     * or null if responses are not cached
+     * @throws ServletException if the {@link ProxyResponseCache} cannot be created
+     */
+    protected ProxyResponseCache createResponseCache() throws ServletException
+    {
+        ServletConfig config = getServletConfig();
+
+        if (!Boolean.parseBoolean(config.getInitParameter("responseCache")))
+            return null;
+
+        String value = config.getInitParameter("responseCacheDirectory");
+        ProxyResponseCache cache = new ProxyResponseCache(this, value == null ? null : Paths.get(value));
+
+        value = config.getInitParameter("responseCacheMaxMemorySize");
+        if (value != null)
+            cache.setMaxMemorySize(Long.parseLong(value));
+
+        value = config.getInitParameter("responseCacheMaxDiskSize");
+        if (value != null)
+            cache.setMaxDiskSize(Long.parseLong(value));
+
+        value = config.getInitParameter("responseCacheMaxEntrySize");
+        if (value != null)
+            cache.setMaxEntrySize(Integer.parseInt(value));
+
+        return cache;
+    }
+
+    /**
+     * @return the cache of the proxied responses, or null if responses are not cached
+     */
+    protected ProxyResponseCache getResponseCache()
+    {
+        return _responseCache;
+    }
+
     private Set<String> parseList(String list)
     {
         Set<String> result = new HashSet<>();
@@ -18,16 +18,17 @@
 
 package org.eclipse.jetty.proxy;
 
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.nio.ByteBuffer;
 import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Queue;
 import java.util.concurrent.TimeUnit;
-import java.util.zip.GZIPOutputStream;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
 
 import javax.servlet.AsyncContext;
 import javax.servlet.ReadListener;
@@ -48,7 +49,7 @@ import org.eclipse.jetty.client.api.Result;
 import org.eclipse.jetty.client.util.DeferredContentProvider;
 import org.eclipse.jetty.http.HttpHeader;
 import org.eclipse.jetty.http.HttpVersion;
-import org.eclipse.jetty.io.RuntimeIOException;
+import org.eclipse.jetty.io.ByteBufferPool;
 import org.eclipse.jetty.util.BufferUtil;
 import org.eclipse.jetty.util.Callback;
 import org.eclipse.jetty.util.CountingCallback;
@@ -102,6 +103,10 @@ public class AsyncMiddleManServlet extends AbstractProxyServlet
         asyncContext.setTimeout(0);
         proxyRequest.timeout(getTimeout(), TimeUnit.MILLISECONDS);
 
+        ProxyResponseCache responseCache = getResponseCache();
+        if (responseCache != null && responseCache.serve(clientRequest, proxyResponse, proxyRequest))
+            return;
+
         // If there is content, the send of the proxy request
         // is delayed and performed when the content arrives,
         // to allow optimization of the Content-Length header.
@@ -166,6 +171,28 @@ public class AsyncMiddleManServlet extends AbstractProxyServlet
         }
     }
 
+    private static Callback releasing(final ContentTransformer transformer, final ByteBuffer buffer, final Callback callback)
+    {
+        if (!(transformer instanceof ContentTransformer.Releasable))
+            return callback;
+        return new Callback()
+        {
+            @Override
+            public void succeeded()
+            {
+                ((ContentTransformer.Releasable)transformer).release(buffer);
+                callback.succeeded();
+            }
+
+            @Override
+            public void failed(Throwable x)
+            {
+                // The buffer may still be in use, let it be garbage collected.
+                callback.failed(x);
+            }
+        };
+    }
+
     int readClientRequestContent(ServletInputStream input, byte[] buffer) throws IOException
     {
         return input.read(buffer);
@@ -349,7 +376,7 @@ public class AsyncMiddleManServlet extends AbstractProxyServlet
                 {
                     ByteBuffer buffer = buffers.get(i);
                     newContentBytes += buffer.remaining();
-                    provider.offer(buffer, counter);
+                    provider.offer(buffer, releasing(transformer, buffer, counter));
                 }
                 buffers.clear();
             }
@@ -450,7 +477,7 @@ public class AsyncMiddleManServlet extends AbstractProxyServlet
                     {
                         ByteBuffer buffer = buffers.get(i);
                         newContentBytes += buffer.remaining();
-                        proxyWriter.offer(buffer, counter);
+                        proxyWriter.offer(buffer, releasing(transformer, buffer, counter));
                     }
                     buffers.clear();
                 }
@@ -514,7 +541,7 @@ public class AsyncMiddleManServlet extends AbstractProxyServlet
                             {
                                 ByteBuffer buffer = buffers.get(i);
                                 newContentBytes += buffer.remaining();
-                                proxyWriter.offer(buffer, callback);
+                                proxyWriter.offer(buffer, releasing(transformer, buffer, callback));
                             }
                             buffers.clear();
                         }
@@ -682,6 +709,13 @@ public class AsyncMiddleManServlet extends AbstractProxyServlet
          * <p>The input buffer will be cleared and reused after the call to this method.
          * Implementations that want to buffer aside the input (or part of it) must copy
          * the input bytes that they want to buffer.</p>
+         * <p>The content is only read as fast as the transformed content is written,
+         * so streaming transformations that produce output as soon as they receive
+         * input only need memory for the buffers of a few calls.
+         * The output buffers may still be waiting to be written when this method is
+         * called again, for example when this transformer is part of a
+         * {@link ChainedContentTransformer}; implementations that recycle their output
+         * buffers must implement {@link Releasable} to know when they have been written.</p>
          * <p>Typical implementations:</p>
          * <pre>
          * // Identity transformation (no transformation, the input is copied to the output)
@@ -717,6 +751,20 @@ public class AsyncMiddleManServlet extends AbstractProxyServlet
          * @throws IOException in case of transformation failures
          */
         public void transform(ByteBuffer input, boolean finished, List<ByteBuffer> output) throws IOException;
+
+        /**
+         * <p>A {@link ContentTransformer} that owns its output buffers, for example because
+         * they are acquired from a {@link ByteBufferPool}, and that is notified when each
+         * of them has been written.</p>
+         * <p>Output buffers that cannot be written because of a failure are not released.</p>
+         */
+        public interface Releasable extends ContentTransformer
+        {
+            /**
+             * @param buffer an output buffer that has been written; it may not be owned by this transformer
+             */
+            public void release(ByteBuffer buffer);
+        }
     }
 
     private static class IdentityContentTransformer implements ContentTransformer
@@ -728,28 +776,149 @@ public class AsyncMiddleManServlet extends AbstractProxyServlet
         }
     }
 
-    public static class GZIPContentTransformer implements ContentTransformer
+    /**
+     * <p>A {@link ContentTransformer} that applies a sequence of transformers, feeding the
+     * output of each transformer to the next one as soon as it is produced.</p>
+     * <p>No stage is required to see the whole content, so a chain of streaming
+     * transformers does not buffer the content; each stage may still buffer
+     * if it needs to, see for example {@link AfterContentTransformer}.</p>
+     */
+    public static class ChainedContentTransformer implements ContentTransformer.Releasable, Destroyable
     {
-        private final List<ByteBuffer> buffers = new ArrayList<>(2);
-        private final ContentDecoder decoder = new GZIPContentDecoder();
-        private final ContentTransformer transformer;
-        private final ByteArrayOutputStream out;
-        private final GZIPOutputStream gzipOut;
+        private final List<ByteBuffer> input = new ArrayList<>();
+        private final List<ByteBuffer> output = new ArrayList<>();
+        private final ContentTransformer[] transformers;
 
-        public GZIPContentTransformer(ContentTransformer transformer)
+        public ChainedContentTransformer(ContentTransformer... transformers)
         {
+            this.transformers = transformers;
+        }
+
+        @Override
+        public void transform(ByteBuffer input, boolean finished, List<ByteBuffer> output) throws IOException
+        {
+            List<ByteBuffer> buffers = this.input;
+            buffers.add(input);
             try
             {
-                this.transformer = transformer;
-                this.out = new ByteArrayOutputStream();
-                this.gzipOut = new GZIPOutputStream(out);
+                for (int i = 0; i < transformers.length; ++i)
+                {
+                    ContentTransformer transformer = transformers[i];
+                    List<ByteBuffer> result = i == transformers.length - 1 ? output : this.output;
+                    int size = buffers.size();
+                    if (size == 0)
+                    {
+                        // The previous stage produced nothing, but the
+                        // following stages must know that the content is finished.
+                        if (!finished)
+                            break;
+                        transformer.transform(BufferUtil.EMPTY_BUFFER, true, result);
+                    }
+                    else
+                    {
+                        for (int j = 0; j < size; ++j)
+                            transformer.transform(buffers.get(j), finished && j == size - 1, result);
+                        // This stage has consumed the outputs of the previous stages.
+                        for (int j = 0; j < size; ++j)
+                            release(i, buffers.get(j), result);
+                    }
+                    buffers.clear();
+                    if (result != output)
+                    {
+                        buffers.addAll(result);
+                        result.clear();
+                    }
+                }
+            }
+            finally
+            {
+                this.input.clear();
+                this.output.clear();
             }
-            catch (IOException x)
+        }
+
+        @Override
+        public void release(ByteBuffer buffer)
+        {
+            for (ContentTransformer transformer : transformers)
             {
-                throw new RuntimeIOException(x);
+                if (transformer instanceof Releasable)
+                    ((Releasable)transformer).release(buffer);
+            }
+        }
+
+        private void release(int stage, ByteBuffer buffer, List<ByteBuffer> result)
+        {
+            // A buffer passed through unchanged is released once it has been written.
+            for (ByteBuffer output : result)
+            {
+                if (output == buffer)
+                    return;
+            }
+            for (int i = 0; i < stage; ++i)
+            {
+                if (transformers[i] instanceof Releasable)
+                    ((Releasable)transformers[i]).release(buffer);
             }
         }
 
+        @Override
+        public void destroy()
+        {
+            for (ContentTransformer transformer : transformers)
+            {
+                if (transformer instanceof Destroyable)
+                    ((Destroyable)transformer).destroy();
+            }
+        }
+    }
+
+    /**
+     * <p>A {@link ContentTransformer} that gunzips the content, transforms it with the given
+     * transformer, and gzips the transformed content.</p>
+     * <p>Both the decompression and the compression are incremental: the transformed
+     * content is compressed as soon as it is produced by the given transformer, into
+     * buffers acquired from the {@link ByteBufferPool} given at construction, that are
+     * recycled once they have been written.</p>
+     */
+    public static class GZIPContentTransformer implements ContentTransformer.Releasable, Destroyable
+    {
+        private static final byte[] GZIP_HEADER = new byte[]{(byte)0x1F, (byte)0x8B, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, 0};
+
+        private final List<ByteBuffer> buffers = new ArrayList<>(2);
+        private final List<ByteBuffer> acquired = new ArrayList<>(2);
+        private final ContentDecoder decoder = new GZIPContentDecoder();
+        private final Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        private final CRC32 crc = new CRC32();
+        private final ByteBufferPool bufferPool;
+        private final ContentTransformer transformer;
+        private final int bufferSize;
+        private boolean headerWritten;
+        private ByteBuffer buffer;
+        private byte[] bytes;
+
+        public GZIPContentTransformer(ContentTransformer transformer)
+        {
+            this(null, transformer);
+        }
+
+        public GZIPContentTransformer(ByteBufferPool bufferPool, ContentTransformer transformer)
+        {
+            this(bufferPool, transformer, 4096);
+        }
+
+        /**
+         * @param bufferPool the pool to acquire the gzipped output buffers from, or null to allocate them
+         * @param transformer the transformer of the gunzipped content
+         * @param bufferSize the size of the gzipped output buffers
+         */
+        public GZIPContentTransformer(ByteBufferPool bufferPool, ContentTransformer transformer, int bufferSize)
+        {
+            this.bufferPool = bufferPool;
+            this.transformer = transformer;
+            this.bufferSize = bufferSize;
+        }
+
         @Override
         public void transform(ByteBuffer input, boolean finished, List<ByteBuffer> output) throws IOException
         {
@@ -768,23 +937,178 @@ public class AsyncMiddleManServlet extends AbstractProxyServlet
                 }
             }
 
-            if (!buffers.isEmpty() || finished)
+            try
+            {
+                for (ByteBuffer buffer : buffers)
+                {
+                    gzip(buffer, output);
+                    // The content has been copied by the deflater.
+                    if (transformer instanceof Releasable)
+                        ((Releasable)transformer).release(buffer);
+                }
+                if (finished)
+                    finish(output);
+                flush(output);
+            }
+            finally
             {
-                ByteBuffer result = gzip(buffers, finished);
                 buffers.clear();
-                output.add(result);
             }
         }
 
-        private ByteBuffer gzip(List<ByteBuffer> buffers, boolean finished) throws IOException
+        private void gzip(ByteBuffer input, List<ByteBuffer> output)
         {
-            for (ByteBuffer buffer : buffers)
-                write(gzipOut, buffer);
-            if (finished)
-                gzipOut.close();
-            byte[] gzipBytes = out.toByteArray();
-            out.reset();
-            return ByteBuffer.wrap(gzipBytes);
+            if (!input.hasRemaining())
+                return;
+
+            if (!headerWritten)
+            {
+                headerWritten = true;
+                put(GZIP_HEADER, 0, GZIP_HEADER.length, output);
+            }
+
+            byte[] array;
+            int offset;
+            int length = input.remaining();
+            if (input.hasArray())
+            {
+                array = input.array();
+                offset = input.arrayOffset() + input.position();
+            }
+            else
+            {
+                if (bytes == null || bytes.length < length)
+                    bytes = new byte[length];
+                array = bytes;
+                offset = 0;
+                input.slice().get(array, 0, length);
+            }
+            input.position(input.limit());
+
+            crc.update(array, offset, length);
+            deflater.setInput(array, offset, length);
+            while (!deflater.needsInput())
+                deflate(output);
+        }
+
+        private void finish(List<ByteBuffer> output)
+        {
+            if (!headerWritten)
+            {
+                headerWritten = true;
+                put(GZIP_HEADER, 0, GZIP_HEADER.length, output);
+            }
+            deflater.finish();
+            while (!deflater.finished())
+                deflate(output);
+            byte[] trailer = new byte[8];
+            writeInt(trailer, 0, (int)crc.getValue());
+            writeInt(trailer, 4, (int)deflater.getBytesRead());
+            put(trailer, 0, trailer.length, output);
+        }
+
+        private void deflate(List<ByteBuffer> output)
+        {
+            ByteBuffer buffer = space(output);
+            int limit = buffer.limit();
+            int deflated = deflater.deflate(buffer.array(), buffer.arrayOffset() + limit, buffer.capacity() - limit);
+            buffer.limit(limit + deflated);
+        }
+
+        private void put(byte[] bytes, int offset, int length, List<ByteBuffer> output)
+        {
+            while (length > 0)
+            {
+                ByteBuffer buffer = space(output);
+                int limit = buffer.limit();
+                int chunk = Math.min(length, buffer.capacity() - limit);
+                System.arraycopy(bytes, offset, buffer.array(), buffer.arrayOffset() + limit, chunk);
+                buffer.limit(limit + chunk);
+                offset += chunk;
+                length -= chunk;
+            }
+        }
+
+        private ByteBuffer space(List<ByteBuffer> output)
+        {
+            ByteBuffer buffer = this.buffer;
+            if (buffer != null && buffer.limit() == buffer.capacity())
+            {
+                output.add(buffer);
+                buffer = null;
+            }
+            if (buffer == null)
+            {
+                if (bufferPool == null)
+                {
+                    buffer = BufferUtil.allocate(bufferSize);
+                }
+                else
+                {
+                    buffer = bufferPool.acquire(bufferSize, false);
+                    BufferUtil.clear(buffer);
+                    synchronized (acquired)
+                    {
+                        acquired.add(buffer);
+                    }
+                }
+                this.buffer = buffer;
+            }
+            return buffer;
+        }
+
+        private void flush(List<ByteBuffer> output)
+        {
+            ByteBuffer buffer = this.buffer;
+            this.buffer = null;
+            if (BufferUtil.hasContent(buffer))
+                output.add(buffer);
+            else if (buffer != null && bufferPool != null)
+                release(buffer);
+        }
+
+        private void writeInt(byte[] bytes, int offset, int value)
+        {
+            bytes[offset] = (byte)value;
+            bytes[offset + 1] = (byte)(value >> 8);
+            bytes[offset + 2] = (byte)(value >> 16);
+            bytes[offset + 3] = (byte)(value >> 24);
+        }
+
+        @Override
+        public void release(ByteBuffer buffer)
+        {
+            synchronized (acquired)
+            {
+                // Buffers are compared by identity, not by content.
+                boolean owned = false;
+                for (Iterator<ByteBuffer> iterator = acquired.iterator(); iterator.hasNext();)
+                {
+                    if (iterator.next() == buffer)
+                    {
+                        iterator.remove();
+                        owned = true;
+                        break;
+                    }
+                }
+                if (!owned)
+                    return;
+            }
+            bufferPool.release(buffer);
+        }
+
+        @Override
+        public void destroy()
+        {
+            // The buffers not yet released may still be written,
+            // so they are left to the garbage collector.
+            synchronized (acquired)
+            {
+                acquired.clear();
+            }
+            deflater.end();
+            if (transformer instanceof Destroyable)
+                ((Destroyable)transformer).destroy();
         }
     }
 }
@@ -25,15 +25,50 @@ import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 import javax.servlet.ServletException;
 import javax.servlet.UnavailableException;
 import javax.servlet.http.Cookie;
 import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
 
+import org.eclipse.jetty.client.api.Request;
 import org.eclipse.jetty.client.api.Response;
+import org.eclipse.jetty.util.Loader;
 import org.eclipse.jetty.util.URIUtil;
-
+import org.eclipse.jetty.util.annotation.ManagedAttribute;
+import org.eclipse.jetty.util.annotation.ManagedObject;
+import org.eclipse.jetty.util.thread.Scheduler;
+
+/**
+ * <p>A {@link ProxyServlet} that balances requests among a set of balancer members.</p>
+ * <p>The following init parameters may be used to configure the servlet, in addition to those of
+ * {@link AbstractProxyServlet}:</p>
+ * <ul>
+ * <li>balancerMember.&lt;name&gt;.proxyTo - the URI of the balancer member with the given name</li>
+ * <li>balancerMember.&lt;name&gt;.weight - the weight of the balancer member, used by the weighted strategy, defaults to 1</li>
+ * <li>stickySessions - whether requests with a session are sent to the balancer member that created it</li>
+ * <li>proxyPassReverse - whether the backend URIs in the Location headers are rewritten</li>
+ * <li>strategy - the {@link Strategy} used to select balancer members: {@code roundRobin} (the default),
+ * {@code leastRequests}, {@code powerOfTwoChoices}, {@code weighted} or the name of a class that
+ * implements {@link Strategy}</li>
+ * <li>maxConsecutiveFailures - the number of consecutive failures after which a balancer member is ejected,
+ * defaults to 5, 0 to disable ejection</li>
+ * <li>ejectionTime - the time, in milliseconds, a balancer member stays ejected, defaults to 30000</li>
+ * <li>healthCheckPath - the path requested to check the health of the balancer members,
+ * by default health checks are disabled</li>
+ * <li>healthCheckInterval - the interval, in milliseconds, between health checks, defaults to 10000</li>
+ * <li>healthCheckTimeout - the timeout, in milliseconds, of health checks, defaults to 5000</li>
+ * </ul>
+ * <p>Requests are balanced only among the balancer members that passed the last health check and
+ * that are not ejected; if no balancer member is available, requests are balanced among all of them.
+ * Failed requests and responses with a 5xx status code count as failures.</p>
+ * <p>The balancer members are set as ServletContext attributes, named with this servlet's name followed
+ * by {@code .balancerMember.<name>}, so that they can be exposed via JMX.</p>
+ */
 public class BalancerServlet extends ProxyServlet
 {
     private static final String BALANCER_MEMBER_PREFIX = "balancerMember.";
@@ -61,11 +96,15 @@ public class BalancerServlet extends ProxyServlet
 
     private static final String JSESSIONID = "jsessionid";
     private static final String JSESSIONID_URL_PREFIX = JSESSIONID + "=";
+    private static final String BALANCER_MEMBER_ATTRIBUTE = BalancerServlet.class.getName() + ".balancerMember";
 
     private final List<BalancerMember> _balancerMembers = new ArrayList<>();
-    private final AtomicLong counter = new AtomicLong();
+    private final List<HealthCheck> _healthChecks = new ArrayList<>();
+    private Strategy _strategy;
     private boolean _stickySessions;
     private boolean _proxyPassReverse;
+    private int _maxConsecutiveFailures;
+    private long _ejectionTime;
 
     @Override
     public void init() throws ServletException
@@ -75,6 +114,18 @@ public class BalancerServlet extends ProxyServlet
         initStickySessions();
         initBalancers();
         initProxyPassReverse();
+        initStrategy();
+        initEjection();
+        initHealthChecks();
+    }
+
+    @Override
+    public void destroy()
+    {
+        for (HealthCheck healthCheck : _healthChecks)
+            healthCheck.cancel();
+        _healthChecks.clear();
+        super.destroy();
     }
 
     private void validateConfig() throws ServletException
@@ -102,9 +153,17 @@ public class BalancerServlet extends ProxyServlet
             String proxyTo = getServletConfig().getInitParameter(memberProxyToParam);
             if (proxyTo == null || proxyTo.trim().length() == 0)
                 throw new UnavailableException(memberProxyToParam + " parameter is empty.");
-            members.add(new BalancerMember(balancerName, proxyTo));
+            BalancerMember member = new BalancerMember(balancerName, proxyTo);
+            String weight = getServletConfig().getInitParameter(BALANCER_MEMBER_PREFIX + balancerName + ".weight");
+            if (weight != null)
+                member.setWeight(Integer.parseInt(weight));
+            members.add(member);
         }
         _balancerMembers.addAll(members);
+
+        // Put the balancer members in the context to leverage ContextHandler.MANAGED_ATTRIBUTES.
+        for (BalancerMember member : _balancerMembers)
+            getServletContext().setAttribute(getServletConfig().getServletName() + ".balancerMember." + member.getName(), member);
     }
 
     private void initProxyPassReverse()
@@ -112,6 +171,68 @@ public class BalancerServlet extends ProxyServlet
         _proxyPassReverse = Boolean.parseBoolean(getServletConfig().getInitParameter("proxyPassReverse"));
     }
 
+    private void initStrategy() throws ServletException
+    {
+        String strategy = getServletConfig().getInitParameter("strategy");
+        _strategy = newStrategy(strategy == null ? "roundRobin" : strategy);
+    }
+
+    /**
+     * @param name the name of the strategy, or the name of a class that implements {@link Strategy}
+     * @return a new {@link Strategy}
+     * @throws ServletException if the strategy cannot be created
+     */
+    protected Strategy newStrategy(String name) throws ServletException
+    {
+        switch (name)
+        {
+            case "roundRobin":
+                return new RoundRobinStrategy();
+            case "leastRequests":
+                return new LeastRequestsStrategy();
+            case "powerOfTwoChoices":
+                return new PowerOfTwoChoicesStrategy();
+            case "weighted":
+                return new WeightedStrategy();
+            default:
+            {
+                try
+                {
+                    return (Strategy)Loader.loadClass(getClass(), name).newInstance();
+                }
+                catch (Exception x)
+                {
+                    throw new UnavailableException("Invalid strategy " + name);
+                }
+            }
+        }
+    }
+
+    private void initEjection()
+    {
+        String value = getServletConfig().getInitParameter("maxConsecutiveFailures");
+        _maxConsecutiveFailures = value == null ? 5 : Integer.parseInt(value);
+        value = getServletConfig().getInitParameter("ejectionTime");
+        _ejectionTime = value == null ? 30000 : Long.parseLong(value);
+    }
+
+    private void initHealthChecks()
+    {
+        String path = getServletConfig().getInitParameter("healthCheckPath");
+        if (path == null)
+            return;
+        String value = getServletConfig().getInitParameter("healthCheckInterval");
+        long interval = value == null ? 10000 : Long.parseLong(value);
+        value = getServletConfig().getInitParameter("healthCheckTimeout");
+        long timeout = value == null ? 5000 : Long.parseLong(value);
+        for (BalancerMember member : _balancerMembers)
+        {
+            HealthCheck healthCheck = new HealthCheck(member, path, interval, timeout);
+            _healthChecks.add(healthCheck);
+            healthCheck.schedule();
+        }
+    }
+
     private Set<String> getBalancerNames() throws ServletException
     {
         Set<String> names = new HashSet<>();
@@ -135,6 +256,7 @@ public class BalancerServlet extends ProxyServlet
         BalancerMember balancerMember = selectBalancerMember(request);
         if (_log.isDebugEnabled())
             _log.debug("Selected {}", balancerMember);
+        request.setAttribute(BALANCER_MEMBER_ATTRIBUTE, balancerMember);
         String path = request.getRequestURI();
         String query = request.getQueryString();
         if (query != null)
@@ -142,20 +264,60 @@ public class BalancerServlet extends ProxyServlet
         return URI.create(balancerMember.getProxyTo() + "/" + path).normalize().toString();
     }
 
+    @Override
+    protected void sendProxyRequest(HttpServletRequest clientRequest, HttpServletResponse proxyResponse, Request proxyRequest)
+    {
+        BalancerMember balancerMember = (BalancerMember)clientRequest.getAttribute(BALANCER_MEMBER_ATTRIBUTE);
+        if (balancerMember != null)
+        {
+            long begin = System.nanoTime();
+            balancerMember.begin();
+            proxyRequest.onComplete(result ->
+            {
+                boolean failed = result.isFailed() || result.getResponse().getStatus() >= 500;
+                balancerMember.complete(System.nanoTime() - begin, failed, _maxConsecutiveFailures, _ejectionTime);
+            });
+        }
+        super.sendProxyRequest(clientRequest, proxyResponse, proxyRequest);
+    }
+
     private BalancerMember selectBalancerMember(HttpServletRequest request)
     {
+        long now = System.nanoTime();
         if (_stickySessions)
         {
             String name = getBalancerMemberNameFromSessionId(request);
             if (name != null)
             {
                 BalancerMember balancerMember = findBalancerMemberByName(name);
-                if (balancerMember != null)
+                if (balancerMember != null && balancerMember.isAvailable(now))
                     return balancerMember;
             }
         }
-        int index = (int)(counter.getAndIncrement() % _balancerMembers.size());
-        return _balancerMembers.get(index);
+        return _strategy.select(getAvailableBalancerMembers(now));
+    }
+
+    private List<BalancerMember> getAvailableBalancerMembers(long now)
+    {
+        // Avoid allocating a new list in the common case where all the members are available.
+        List<BalancerMember> available = null;
+        for (int i = 0; i < _balancerMembers.size(); ++i)
+        {
+            BalancerMember balancerMember = _balancerMembers.get(i);
+            if (balancerMember.isAvailable(now))
+            {
+                if (available != null)
+                    available.add(balancerMember);
+            }
+            else if (available == null)
+            {
+                available = new ArrayList<>(_balancerMembers.subList(0, i));
+            }
+        }
+        if (available == null)
+            return _balancerMembers;
+        // No member is available, rather than rejecting all requests use all members.
+        return available.isEmpty() ? _balancerMembers : available;
     }
 
     private BalancerMember findBalancerMemberByName(String name)
@@ -259,11 +421,181 @@ public class BalancerServlet extends ProxyServlet
         return true;
     }
 
-    private static class BalancerMember
+    /**
+     * <p>A strategy to select the balancer member that receives a request.</p>
+     */
+    public interface Strategy
+    {
+        /**
+         * @param balancerMembers the available balancer members, never empty
+         * @return the balancer member that receives the request
+         */
+        BalancerMember select(List<BalancerMember> balancerMembers);
+    }
+
+    /**
+     * <p>Selects the balancer members in turn.</p>
+     */
+    public static class RoundRobinStrategy implements Strategy
+    {
+        private final AtomicLong counter = new AtomicLong();
+
+        @Override
+        public BalancerMember select(List<BalancerMember> balancerMembers)
+        {
+            int index = (int)(counter.getAndIncrement() % balancerMembers.size());
+            return balancerMembers.get(index);
+        }
+    }
+
+    /**
+     * <p>Selects the balancer member with the least outstanding requests.</p>
+     */
+    public static class LeastRequestsStrategy implements Strategy
+    {
+        private final AtomicLong counter = new AtomicLong();
+
+        @Override
+        public BalancerMember select(List<BalancerMember> balancerMembers)
+        {
+            int size = balancerMembers.size();
+            // Start from a different member every time to spread ties.
+            int start = (int)(counter.getAndIncrement() % size);
+            BalancerMember result = null;
+            for (int i = 0; i < size; ++i)
+            {
+                BalancerMember balancerMember = balancerMembers.get((start + i) % size);
+                if (result == null || balancerMember.getOutstandingRequests() < result.getOutstandingRequests())
+                    result = balancerMember;
+            }
+            return result;
+        }
+    }
+
+    /**
+     * <p>Selects two random balancer members and picks the one with the lower cost,
+     * computed from its average latency and its outstanding requests.</p>
+     * <p>Slow balancer members receive less requests, without the cost of
+     * scanning all the balancer members for every request.</p>
+     */
+    public static class PowerOfTwoChoicesStrategy implements Strategy
+    {
+        @Override
+        public BalancerMember select(List<BalancerMember> balancerMembers)
+        {
+            int size = balancerMembers.size();
+            if (size == 1)
+                return balancerMembers.get(0);
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            int first = random.nextInt(size);
+            int second = random.nextInt(size - 1);
+            if (second >= first)
+                ++second;
+            BalancerMember member1 = balancerMembers.get(first);
+            BalancerMember member2 = balancerMembers.get(second);
+            return cost(member1) <= cost(member2) ? member1 : member2;
+        }
+
+        private double cost(BalancerMember balancerMember)
+        {
+            return (balancerMember.getLatencyNanos() + 1) * (balancerMember.getOutstandingRequests() + 1);
+        }
+    }
+
+    /**
+     * <p>Selects the balancer members in proportion to their weight,
+     * interleaving them smoothly rather than in bursts.</p>
+     */
+    public static class WeightedStrategy implements Strategy
+    {
+        @Override
+        public BalancerMember select(List<BalancerMember> balancerMembers)
+        {
+            synchronized (this)
+            {
+                BalancerMember result = null;
+                int total = 0;
+                for (int i = 0; i < balancerMembers.size(); ++i)
+                {
+                    BalancerMember balancerMember = balancerMembers.get(i);
+                    int weight = balancerMember.getWeight();
+                    total += weight;
+                    balancerMember._currentWeight += weight;
+                    if (result == null || balancerMember._currentWeight > result._currentWeight)
+                        result = balancerMember;
+                }
+                result._currentWeight -= total;
+                return result;
+            }
+        }
+    }
+
+    private class HealthCheck implements Runnable
     {
+        private final BalancerMember balancerMember;
+        private final String uri;
+        private final long interval;
+        private final long timeout;
+        private volatile Scheduler.Task task;
+        private volatile boolean cancelled;
+
+        private HealthCheck(BalancerMember balancerMember, String path, long interval, long timeout)
+        {
+            this.balancerMember = balancerMember;
+            this.uri = URI.create(balancerMember.getProxyTo() + (path.startsWith("/") ? path : "/" + path)).normalize().toString();
+            this.interval = interval;
+            this.timeout = timeout;
+        }
+
+        private void schedule()
+        {
+            if (!cancelled)
+                task = getHttpClient().getScheduler().schedule(this, interval, TimeUnit.MILLISECONDS);
+        }
+
+        private void cancel()
+        {
+            cancelled = true;
+            Scheduler.Task task = this.task;
+            if (task != null)
+                task.cancel();
+        }
+
+        @Override
+        public void run()
+        {
+            getHttpClient().newRequest(uri)
+                    .timeout(timeout, TimeUnit.MILLISECONDS)
+                    .send(result ->
+                    {
+                        int status = result.getResponse().getStatus();
+                        boolean healthy = result.isSucceeded() && status >= 200 && status < 400;
+                        if (_log.isDebugEnabled())
+                            _log.debug("Health check {} for {}", healthy ? "succeeded" : "failed", balancerMember);
+                        balancerMember.setHealthy(healthy);
+                        schedule();
+                    });
+        }
+    }
+
+    @ManagedObject("A balancer member")
+    public static class BalancerMember
+    {
+        // Weight of the most recent latency sample in the moving average.
+        private static final double ALPHA = 0.2;
+
+        private final AtomicInteger _outstanding = new AtomicInteger();
+        private final AtomicLong _requests = new AtomicLong();
+        private final AtomicLong _failures = new AtomicLong();
+        private final AtomicInteger _consecutiveFailures = new AtomicInteger();
         private final String _name;
         private final String _proxyTo;
         private final URI _backendURI;
+        private volatile int _weight = 1;
+        private volatile double _latency;
+        private volatile boolean _healthy = true;
+        private volatile long _ejectedUntil = System.nanoTime();
+        private int _currentWeight;
 
         public BalancerMember(String name, String proxyTo)
         {
@@ -272,11 +604,13 @@ public class BalancerServlet extends ProxyServlet
             _backendURI = URI.create(_proxyTo).normalize();
         }
 
+        @ManagedAttribute(value = "The name of this balancer member", readonly = true)
         public String getName()
         {
             return _name;
         }
 
+        @ManagedAttribute(value = "The URI requests are proxied to", readonly = true)
         public String getProxyTo()
         {
             return _proxyTo;
@@ -287,6 +621,109 @@ public class BalancerServlet extends ProxyServlet
             return _backendURI;
         }
 
+        @ManagedAttribute("The weight of this balancer member")
+        public int getWeight()
+        {
+            return _weight;
+        }
+
+        public void setWeight(int weight)
+        {
+            if (weight < 1)
+                throw new IllegalArgumentException("Invalid weight " + weight);
+            _weight = weight;
+        }
+
+        @ManagedAttribute(value = "The number of outstanding requests", readonly = true)
+        public int getOutstandingRequests()
+        {
+            return _outstanding.get();
+        }
+
+        @ManagedAttribute(value = "The number of completed requests", readonly = true)
+        public long getRequests()
+        {
+            return _requests.get();
+        }
+
+        @ManagedAttribute(value = "The number of failed requests", readonly = true)
+        public long getFailures()
+        {
+            return _failures.get();
+        }
+
+        @ManagedAttribute(value = "The number of consecutive failed requests", readonly = true)
+        public int getConsecutiveFailures()
+        {
+            return _consecutiveFailures.get();
+        }
+
+        /**
+         * @return the exponentially weighted moving average of the latency of successful requests, in nanoseconds
+         */
+        public double getLatencyNanos()
+        {
+            return _latency;
+        }
+
+        @ManagedAttribute(value = "The moving average of the latency of successful requests, in milliseconds", readonly = true)
+        public long getLatency()
+        {
+            return TimeUnit.NANOSECONDS.toMillis((long)_latency);
+        }
+
+        @ManagedAttribute(value = "Whether the last health check succeeded", readonly = true)
+        public boolean isHealthy()
+        {
+            return _healthy;
+        }
+
+        public void setHealthy(boolean healthy)
+        {
+            _healthy = healthy;
+        }
+
+        @ManagedAttribute(value = "Whether this balancer member is ejected because of consecutive failures", readonly = true)
+        public boolean isEjected()
+        {
+            return System.nanoTime() - _ejectedUntil < 0;
+        }
+
+        private boolean isAvailable(long now)
+        {
+            return _healthy && now - _ejectedUntil >= 0;
+        }
+
+        private void begin()
+        {
+            _outstanding.incrementAndGet();
+        }
+
+        private void complete(long latency, boolean failed, int maxConsecutiveFailures, long ejectionTime)
+        {
+            _outstanding.decrementAndGet();
+            _requests.incrementAndGet();
+            if (failed)
+            {
+                _failures.incrementAndGet();
+                int failures = _consecutiveFailures.incrementAndGet();
+                if (maxConsecutiveFailures > 0 && failures >= maxConsecutiveFailures)
+                {
+                    _consecutiveFailures.set(0);
+                    _ejectedUntil = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(ejectionTime);
+                }
+            }
+            else
+            {
+                _consecutiveFailures.set(0);
+                synchronized (this)
+                {
+                    double average = _latency;
+                    _latency = average == 0 ? latency : average + ALPHA * (latency - average);
+                }
+            }
+        }
+
         @Override
         public String toString()
         {
@@ -28,6 +28,7 @@ import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.servlet.AsyncContext;
 import javax.servlet.ServletException;
@@ -52,14 +53,24 @@ import org.eclipse.jetty.server.handler.HandlerWrapper;
 import org.eclipse.jetty.util.BufferUtil;
 import org.eclipse.jetty.util.Callback;
 import org.eclipse.jetty.util.TypeUtil;
+import org.eclipse.jetty.util.annotation.ManagedAttribute;
+import org.eclipse.jetty.util.annotation.ManagedObject;
+import org.eclipse.jetty.util.annotation.ManagedOperation;
 import org.eclipse.jetty.util.log.Log;
 import org.eclipse.jetty.util.log.Logger;
+import org.eclipse.jetty.util.statistic.CounterStatistic;
+import org.eclipse.jetty.util.statistic.SampleStatistic;
 import org.eclipse.jetty.util.thread.ScheduledExecutorScheduler;
 import org.eclipse.jetty.util.thread.Scheduler;
 
 /**
  * <p>Implementation of a {@link Handler} that supports HTTP CONNECT.</p>
+ * <p>Tunnelled bytes are relayed by filling and flushing the same buffer,
+ * whose size adapts between {@link #getBufferSize()} and {@link #getMaxBufferSize()};
+ * bytes read by the HTTP connection past the CONNECT request are handed
+ * over to the tunnel without being copied.</p>
  */
+@ManagedObject("Handler that supports HTTP CONNECT")
 public class ConnectHandler extends HandlerWrapper
 {
     protected static final Logger LOG = Log.getLogger(ConnectHandler.class);
@@ -73,6 +84,11 @@ public class ConnectHandler extends HandlerWrapper
     private long connectTimeout = 15000;
     private long idleTimeout = 30000;
     private int bufferSize = 4096;
+    private int maxBufferSize = 65536;
+    private final CounterStatistic tunnels = new CounterStatistic();
+    private final SampleStatistic tunnelTimes = new SampleStatistic();
+    private final AtomicLong bytesUpstream = new AtomicLong();
+    private final AtomicLong bytesDownstream = new AtomicLong();
 
     public ConnectHandler()
     {
@@ -156,6 +172,80 @@ public class ConnectHandler extends HandlerWrapper
         this.bufferSize = bufferSize;
     }
 
+    /**
+     * @return the max size of the buffer used to relay tunnelled bytes
+     */
+    @ManagedAttribute("The max size of the buffer used to relay tunnelled bytes")
+    public int getMaxBufferSize()
+    {
+        return maxBufferSize;
+    }
+
+    /**
+     * @param maxBufferSize the max size of the buffer used to relay tunnelled bytes
+     */
+    public void setMaxBufferSize(int maxBufferSize)
+    {
+        this.maxBufferSize = maxBufferSize;
+    }
+
+    @ManagedAttribute(value = "The number of tunnels currently open", readonly = true)
+    public long getTunnels()
+    {
+        return tunnels.getCurrent();
+    }
+
+    @ManagedAttribute(value = "The max number of tunnels open at the same time", readonly = true)
+    public long getTunnelsMax()
+    {
+        return tunnels.getMax();
+    }
+
+    @ManagedAttribute(value = "The total number of tunnels opened", readonly = true)
+    public long getTunnelsTotal()
+    {
+        return tunnels.getTotal();
+    }
+
+    @ManagedAttribute(value = "The max time, in milliseconds, a tunnel has been open", readonly = true)
+    public long getTunnelTimeMax()
+    {
+        return tunnelTimes.getMax();
+    }
+
+    @ManagedAttribute(value = "The mean time, in milliseconds, tunnels have been open", readonly = true)
+    public double getTunnelTimeMean()
+    {
+        return tunnelTimes.getMean();
+    }
+
+    /**
+     * @return the number of bytes relayed from clients to servers by closed tunnels
+     */
+    @ManagedAttribute(value = "The number of bytes relayed from clients to servers", readonly = true)
+    public long getBytesUpstream()
+    {
+        return bytesUpstream.get();
+    }
+
+    /**
+     * @return the number of bytes relayed from servers to clients by closed tunnels
+     */
+    @ManagedAttribute(value = "The number of bytes relayed from servers to clients", readonly = true)
+    public long getBytesDownstream()
+    {
+        return bytesDownstream.get();
+    }
+
+    @ManagedOperation(value = "Resets the tunnel statistics", impact = "ACTION")
+    public void resetStatistics()
+    {
+        tunnels.reset();
+        tunnelTimes.reset();
+        bytesUpstream.set(0);
+        bytesDownstream.set(0);
+    }
+
     @Override
     protected void doStart() throws Exception
     {
@@ -296,24 +386,19 @@ public class ConnectHandler extends HandlerWrapper
     protected void onConnectSuccess(ConnectContext connectContext, UpstreamConnection upstreamConnection)
     {
         HttpConnection httpConnection = connectContext.getHttpConnection();
-        ByteBuffer requestBuffer = httpConnection.getRequestBuffer();
-        ByteBuffer buffer = BufferUtil.EMPTY_BUFFER;
-        int remaining = requestBuffer.remaining();
-        if (remaining > 0)
-        {
-            buffer = bufferPool.acquire(remaining, requestBuffer.isDirect());
-            BufferUtil.flipToFill(buffer);
-            buffer.put(requestBuffer);
-            buffer.flip();
-        }
 
         ConcurrentMap<String, Object> context = connectContext.getContext();
         HttpServletRequest request = connectContext.getRequest();
         prepareContext(request, context);
 
         EndPoint downstreamEndPoint = httpConnection.getEndPoint();
-        DownstreamConnection downstreamConnection = newDownstreamConnection(downstreamEndPoint, context, buffer);
+        // The bytes already read by the HttpConnection are passed to the
+        // DownstreamConnection when the connection is upgraded.
+        DownstreamConnection downstreamConnection = newDownstreamConnection(downstreamEndPoint, context, BufferUtil.EMPTY_BUFFER);
         downstreamConnection.setInputBufferSize(getBufferSize());
+        downstreamConnection.setMaxInputBufferSize(getMaxBufferSize());
+        // The bytes read by the HttpConnection are in a buffer of the connector's pool.
+        downstreamConnection.prefilledBufferPool = httpConnection.getConnector().getByteBufferPool();
 
         upstreamConnection.setConnection(downstreamConnection);
         downstreamConnection.setConnection(upstreamConnection);
@@ -488,6 +573,7 @@ public class ConnectHandler extends HandlerWrapper
             ConnectContext connectContext = (ConnectContext)attachment;
             UpstreamConnection connection = newUpstreamConnection(endpoint, connectContext);
             connection.setInputBufferSize(getBufferSize());
+            connection.setMaxInputBufferSize(getMaxBufferSize());
             return connection;
         }
 
@@ -571,6 +657,13 @@ public class ConnectHandler extends HandlerWrapper
             });
         }
 
+        @Override
+        public void onClose()
+        {
+            super.onClose();
+            bytesDownstream.addAndGet(getBytesIn());
+        }
+
         @Override
         protected int read(EndPoint endPoint, ByteBuffer buffer) throws IOException
         {
@@ -584,9 +677,12 @@ public class ConnectHandler extends HandlerWrapper
         }
     }
 
-    public class DownstreamConnection extends ProxyConnection
+    public class DownstreamConnection extends ProxyConnection implements Connection.UpgradeTo
     {
-        private final ByteBuffer buffer;
+        private ByteBuffer buffer;
+        private boolean prefilled;
+        private ByteBufferPool prefilledBufferPool;
+        private int initialBytes;
 
         public DownstreamConnection(EndPoint endPoint, Executor executor, ByteBufferPool bufferPool, ConcurrentMap<String, Object> context, ByteBuffer buffer)
         {
@@ -594,11 +690,24 @@ public class ConnectHandler extends HandlerWrapper
             this.buffer = buffer;
         }
 
+        @Override
+        public void onUpgradeTo(ByteBuffer prefilled)
+        {
+            // Relay the bytes that the HttpConnection read after the
+            // CONNECT request directly from its buffer, without copying them.
+            if (BufferUtil.hasContent(prefilled))
+            {
+                this.buffer = prefilled;
+                this.prefilled = true;
+            }
+        }
+
         @Override
         public void onOpen()
         {
             super.onOpen();
-            final int remaining = buffer.remaining();
+            tunnels.increment();
+            final int remaining = initialBytes = buffer.remaining();
             write(getConnection().getEndPoint(), buffer, new Callback()
             {
                 @Override
@@ -606,6 +715,7 @@ public class ConnectHandler extends HandlerWrapper
                 {
                     if (LOG.isDebugEnabled())
                         LOG.debug("{} wrote initial {} bytes to server", DownstreamConnection.this, remaining);
+                    releaseInitialBuffer();
                     fillInterested();
                 }
 
@@ -614,12 +724,46 @@ public class ConnectHandler extends HandlerWrapper
                 {
                     if (LOG.isDebugEnabled())
                         LOG.debug(this + " failed to write initial " + remaining + " bytes to server", x);
+                    releaseInitialBuffer();
                     close();
                     getConnection().close();
                 }
             });
         }
 
+        private void releaseInitialBuffer()
+        {
+            if (prefilled)
+            {
+                prefilled = false;
+                ByteBufferPool bufferPool = prefilledBufferPool;
+                if (bufferPool == null)
+                    bufferPool = getByteBufferPool();
+                bufferPool.release(buffer);
+            }
+            buffer = BufferUtil.EMPTY_BUFFER;
+        }
+
+        @Override
+        public long getBytesIn()
+        {
+            return initialBytes + super.getBytesIn();
+        }
+
+        @Override
+        public void onClose()
+        {
+            super.onClose();
+            long bytesIn = getBytesIn();
+            long bytesOut = getBytesOut();
+            long elapsed = System.currentTimeMillis() - getCreatedTimeStamp();
+            bytesUpstream.addAndGet(bytesIn);
+            tunnels.decrement();
+            tunnelTimes.set(elapsed);
+            if (LOG.isDebugEnabled())
+                LOG.debug("{} tunnel closed after {} ms, {} bytes upstream, {} bytes downstream", this, elapsed, bytesIn, bytesOut);
+        }
+
         @Override
         protected int read(EndPoint endPoint, ByteBuffer buffer) throws IOException
         {
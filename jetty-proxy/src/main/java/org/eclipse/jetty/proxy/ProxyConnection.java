@@ -22,22 +22,37 @@ import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.eclipse.jetty.io.AbstractConnection;
 import org.eclipse.jetty.io.ByteBufferPool;
 import org.eclipse.jetty.io.Connection;
 import org.eclipse.jetty.io.EndPoint;
+import org.eclipse.jetty.util.BufferUtil;
 import org.eclipse.jetty.util.Callback;
 import org.eclipse.jetty.util.IteratingCallback;
 import org.eclipse.jetty.util.log.Logger;
 
+/**
+ * <p>A {@link Connection} that relays the bytes read from its {@link EndPoint}
+ * to the {@link EndPoint} of its peer connection.</p>
+ * <p>The same buffer is filled from one endpoint and flushed to the other,
+ * and it is kept while bytes flow, so that busy tunnels do not acquire and
+ * release a buffer for every read; it is returned to the pool when the
+ * tunnel is idle.
+ * The buffer size adapts to the traffic: it grows up to
+ * {@link #getMaxInputBufferSize()} when reads fill the buffer,
+ * and shrinks down to {@link #getInputBufferSize()} when reads are small.</p>
+ */
 public abstract class ProxyConnection extends AbstractConnection
 {
     protected static final Logger LOG = ConnectHandler.LOG;
     private final IteratingCallback pipe = new ProxyIteratingCallback();
+    private final AtomicLong bytesIn = new AtomicLong();
     private final ByteBufferPool bufferPool;
     private final ConcurrentMap<String, Object> context;
     private Connection connection;
+    private int maxInputBufferSize;
 
     protected ProxyConnection(EndPoint endp, Executor executor, ByteBufferPool bufferPool, ConcurrentMap<String, Object> context)
     {
@@ -66,6 +81,41 @@ public abstract class ProxyConnection extends AbstractConnection
         this.connection = connection;
     }
 
+    /**
+     * @return the max size of the buffer used to relay bytes, at least the {@link #getInputBufferSize() input buffer size}
+     */
+    public int getMaxInputBufferSize()
+    {
+        return Math.max(maxInputBufferSize, getInputBufferSize());
+    }
+
+    /**
+     * @param maxInputBufferSize the max size of the buffer used to relay bytes
+     */
+    public void setMaxInputBufferSize(int maxInputBufferSize)
+    {
+        this.maxInputBufferSize = maxInputBufferSize;
+    }
+
+    /**
+     * @return the number of bytes read from this connection's {@link EndPoint}
+     */
+    @Override
+    public long getBytesIn()
+    {
+        return bytesIn.get();
+    }
+
+    /**
+     * @return the number of bytes written to this connection's {@link EndPoint} by the peer connection
+     */
+    @Override
+    public long getBytesOut()
+    {
+        Connection connection = getConnection();
+        return connection == null ? 0 : connection.getBytesIn();
+    }
+
     @Override
     public void onFillable()
     {
@@ -88,12 +138,18 @@ public abstract class ProxyConnection extends AbstractConnection
     private class ProxyIteratingCallback extends IteratingCallback
     {
         private ByteBuffer buffer;
+        private int size;
         private int filled;
 
         @Override
         protected Action process() throws Exception
         {
-            buffer = bufferPool.acquire(getInputBufferSize(), true);
+            if (buffer == null)
+            {
+                if (size == 0)
+                    size = getInputBufferSize();
+                buffer = bufferPool.acquire(size, true);
+            }
             try
             {
                 int filled = this.filled = read(getEndPoint(), buffer);
@@ -101,18 +157,21 @@ public abstract class ProxyConnection extends AbstractConnection
                     LOG.debug("{} filled {} bytes", ProxyConnection.this, filled);
                 if (filled > 0)
                 {
+                    bytesIn.addAndGet(filled);
+                    adapt(filled);
                     write(connection.getEndPoint(), buffer, this);
                     return Action.SCHEDULED;
                 }
                 else if (filled == 0)
                 {
-                    bufferPool.release(buffer);
+                    // Do not hold a buffer while the tunnel is idle.
+                    release();
                     fillInterested();
                     return Action.IDLE;
                 }
                 else
                 {
-                    bufferPool.release(buffer);
+                    release();
                     connection.getEndPoint().shutdownOutput();
                     return Action.SUCCEEDED;
                 }
@@ -121,18 +180,31 @@ public abstract class ProxyConnection extends AbstractConnection
             {
                 if (LOG.isDebugEnabled())
                     LOG.debug(ProxyConnection.this + " could not fill", x);
-                bufferPool.release(buffer);
                 disconnect();
                 return Action.SUCCEEDED;
             }
         }
 
+        private void adapt(int filled)
+        {
+            int capacity = buffer.capacity();
+            if (filled == capacity)
+                size = Math.min(capacity * 2, getMaxInputBufferSize());
+            else if (filled <= capacity / 4)
+                size = Math.max(capacity / 2, getInputBufferSize());
+        }
+
         @Override
         public void succeeded()
         {
             if (LOG.isDebugEnabled())
                 LOG.debug("{} wrote {} bytes", ProxyConnection.this, filled);
-            bufferPool.release(buffer);
+            // The buffer has been flushed, reuse it unless it must be resized.
+            int capacity = buffer.capacity();
+            if (capacity < size || capacity >= 2 * size)
+                release();
+            else
+                BufferUtil.clear(buffer);
             super.succeeded();
         }
 
@@ -149,9 +221,17 @@ public abstract class ProxyConnection extends AbstractConnection
             disconnect();
         }
 
+        private void release()
+        {
+            ByteBuffer buffer = this.buffer;
+            this.buffer = null;
+            if (buffer != null)
+                bufferPool.release(buffer);
+        }
+
         private void disconnect()
         {
-            bufferPool.release(buffer);
+            release();
             ProxyConnection.this.close();
             connection.close();
         }
@@ -0,0 +1,571 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2015 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+package org.eclipse.jetty.proxy;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.URI;
+import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.ReadListener;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.eclipse.jetty.client.HttpClient;
+import org.eclipse.jetty.client.api.Result;
+import org.eclipse.jetty.client.util.DeferredContentProvider;
+import org.eclipse.jetty.http.HttpField;
+import org.eclipse.jetty.http.HttpFields;
+import org.eclipse.jetty.http.HttpHeader;
+import org.eclipse.jetty.http.HttpHeaderValue;
+import org.eclipse.jetty.http.HttpStatus;
+import org.eclipse.jetty.io.ByteBufferPool;
+import org.eclipse.jetty.server.Handler;
+import org.eclipse.jetty.server.HttpInput;
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.Response;
+import org.eclipse.jetty.server.handler.HandlerWrapper;
+import org.eclipse.jetty.util.Callback;
+import org.eclipse.jetty.util.HttpCookieStore;
+import org.eclipse.jetty.util.IteratingCallback;
+import org.eclipse.jetty.util.log.Log;
+import org.eclipse.jetty.util.log.Logger;
+
+/**
+ * <p>Implementation of a {@link Handler} that is an asynchronous reverse proxy.</p>
+ * <p>Differently from {@link AsyncProxyServlet}, this handler does not need a servlet
+ * context: it forwards the {@link HttpField}s of the client request and of the server
+ * response as they are, without copying their names and values, and writes the server
+ * response content {@link ByteBuffer}s directly to the {@link Response} output interceptors,
+ * without aggregating them.</p>
+ * <p>Requests whose path starts with {@link #getPrefix() prefix} are forwarded to the
+ * {@link #getProxyTo() proxyTo} URI, with the prefix removed; for example, if a request
+ * is received at {@code /foo/bar}, the {@code proxyTo} URI is {@code http://host:80/context}
+ * and the prefix is {@code /foo}, then the request is forwarded to
+ * {@code http://host:80/context/bar}.
+ * Applications may override {@link #rewriteTarget(Request)} to compute the target URI.
+ * Requests that are not forwarded are handled by the wrapped handler, if any.</p>
+ */
+public class ProxyHandler extends HandlerWrapper
+{
+    protected static final Logger LOG = Log.getLogger(ProxyHandler.class);
+
+    private HttpClient httpClient;
+    private boolean defaultHttpClient;
+    private String proxyTo;
+    private String prefix;
+    private boolean preserveHost;
+    private String viaHost;
+    private HttpField viaField;
+    private long timeout = 60000;
+
+    public ProxyHandler()
+    {
+        this(null);
+    }
+
+    /**
+     * @param proxyTo the URI to which requests are forwarded
+     */
+    public ProxyHandler(String proxyTo)
+    {
+        this.proxyTo = proxyTo;
+    }
+
+    public HttpClient getHttpClient()
+    {
+        return httpClient;
+    }
+
+    /**
+     * <p>A {@link HttpClient} set by the application is used as it is configured;
+     * it should not follow redirects, store cookies, decode content or handle protocols
+     * such as authentication, since the responses are forwarded as they are to the clients.</p>
+     *
+     * @param httpClient the {@link HttpClient} used to forward requests, or null to create a default one
+     */
+    public void setHttpClient(HttpClient httpClient)
+    {
+        updateBean(this.httpClient, httpClient);
+        this.httpClient = httpClient;
+        this.defaultHttpClient = false;
+    }
+
+    /**
+     * @return the URI to which requests are forwarded
+     */
+    public String getProxyTo()
+    {
+        return proxyTo;
+    }
+
+    /**
+     * @param proxyTo the URI to which requests are forwarded
+     */
+    public void setProxyTo(String proxyTo)
+    {
+        this.proxyTo = proxyTo;
+    }
+
+    /**
+     * @return the path prefix of the requests that are forwarded, removed from the forwarded URI
+     */
+    public String getPrefix()
+    {
+        return prefix;
+    }
+
+    /**
+     * @param prefix the path prefix of the requests that are forwarded, removed from the forwarded URI
+     */
+    public void setPrefix(String prefix)
+    {
+        if (prefix != null && !prefix.startsWith("/"))
+            throw new IllegalArgumentException("Prefix must start with '/': " + prefix);
+        this.prefix = prefix;
+    }
+
+    /**
+     * @return whether the Host header of the client request is forwarded to the server
+     */
+    public boolean isPreserveHost()
+    {
+        return preserveHost;
+    }
+
+    /**
+     * @param preserveHost whether the Host header of the client request is forwarded to the server
+     */
+    public void setPreserveHost(boolean preserveHost)
+    {
+        this.preserveHost = preserveHost;
+    }
+
+    /**
+     * @return the host name used in the Via header
+     */
+    public String getViaHost()
+    {
+        return viaHost;
+    }
+
+    /**
+     * @param viaHost the host name used in the Via header
+     */
+    public void setViaHost(String viaHost)
+    {
+        this.viaHost = viaHost;
+    }
+
+    /**
+     * @return the total timeout, in milliseconds, of the forwarded requests
+     */
+    public long getTimeout()
+    {
+        return timeout;
+    }
+
+    /**
+     * @param timeout the total timeout, in milliseconds, of the forwarded requests
+     */
+    public void setTimeout(long timeout)
+    {
+        this.timeout = timeout;
+    }
+
+    @Override
+    protected void doStart() throws Exception
+    {
+        if (viaHost == null)
+            viaHost = viaHost();
+        viaField = new HttpField(HttpHeader.VIA, "http/1.1 " + viaHost);
+
+        if (httpClient == null)
+        {
+            setHttpClient(newHttpClient());
+            defaultHttpClient = true;
+        }
+
+        super.doStart();
+
+        if (defaultHttpClient)
+        {
+            // Content must not be decoded, otherwise the client gets confused.
+            httpClient.getContentDecoderFactories().clear();
+
+            // No protocol handlers, pass everything to the client.
+            httpClient.getProtocolHandlers().clear();
+        }
+    }
+
+    private static String viaHost()
+    {
+        try
+        {
+            return InetAddress.getLocalHost().getHostName();
+        }
+        catch (UnknownHostException x)
+        {
+            return "localhost";
+        }
+    }
+
+    /**
+     * @return a new {@link HttpClient} configured to forward requests
+     */
+    protected HttpClient newHttpClient()
+    {
+        HttpClient client = new HttpClient();
+        // Redirects must be proxied as is, not followed.
+        client.setFollowRedirects(false);
+        // Must not store cookies, otherwise cookies of different clients will mix.
+        client.setCookieStore(new HttpCookieStore.Empty());
+        client.setExecutor(getServer().getThreadPool());
+        client.setMaxConnectionsPerDestination(256);
+        client.setIdleTimeout(30000);
+        return client;
+    }
+
+    @Override
+    public void handle(String target, Request baseRequest, HttpServletRequest request, HttpServletResponse response) throws IOException, ServletException
+    {
+        String rewrittenTarget = rewriteTarget(baseRequest);
+        if (rewrittenTarget == null)
+        {
+            super.handle(target, baseRequest, request, response);
+            return;
+        }
+
+        baseRequest.setHandled(true);
+        if (LOG.isDebugEnabled())
+            LOG.debug("{} proxying to {}", baseRequest, rewrittenTarget);
+
+        org.eclipse.jetty.client.api.Request proxyRequest = getHttpClient().newRequest(rewrittenTarget)
+                .method(baseRequest.getMethod())
+                .version(baseRequest.getHttpVersion());
+        copyRequestHeaders(baseRequest, proxyRequest);
+        addProxyHeaders(baseRequest, proxyRequest);
+        long timeout = getTimeout();
+        if (timeout > 0)
+            proxyRequest.timeout(timeout, TimeUnit.MILLISECONDS);
+
+        AsyncContext asyncContext = baseRequest.startAsync();
+        // We do not want the async context to timeout on us.
+        asyncContext.setTimeout(0);
+
+        if (hasContent(baseRequest))
+        {
+            DeferredContentProvider provider = new DeferredContentProvider();
+            proxyRequest.content(provider);
+            baseRequest.getHttpInput().setReadListener(new ProxyRequestContent(baseRequest, proxyRequest, provider));
+        }
+
+        proxyRequest.send(new ProxyResponseListener(baseRequest));
+    }
+
+    /**
+     * @param clientRequest the client request
+     * @return the URI to which the client request is forwarded, or null if the request is not forwarded
+     */
+    protected String rewriteTarget(Request clientRequest)
+    {
+        String proxyTo = getProxyTo();
+        if (proxyTo == null)
+            return null;
+
+        String path = clientRequest.getHttpURI().getPath();
+        String prefix = getPrefix();
+        if (prefix != null && !path.startsWith(prefix))
+            return null;
+
+        StringBuilder uri = new StringBuilder(proxyTo);
+        if (proxyTo.endsWith("/"))
+            uri.setLength(uri.length() - 1);
+        String rest = prefix == null ? path : path.substring(prefix.length());
+        if (!rest.isEmpty())
+        {
+            if (!rest.startsWith("/"))
+                uri.append("/");
+            uri.append(rest);
+        }
+
+        String query = clientRequest.getHttpURI().getQuery();
+        if (query != null)
+        {
+            // Is there at least one path segment ?
+            String separator = "://";
+            if (uri.indexOf("/", uri.indexOf(separator) + separator.length()) < 0)
+                uri.append("/");
+            uri.append("?").append(query);
+        }
+        return URI.create(uri.toString()).normalize().toString();
+    }
+
+    protected boolean hasContent(Request clientRequest)
+    {
+        return clientRequest.getContentLengthLong() > 0 ||
+                clientRequest.getContentType() != null ||
+                clientRequest.getHttpFields().containsKey(HttpHeader.TRANSFER_ENCODING.asString());
+    }
+
+    protected void copyRequestHeaders(Request clientRequest, org.eclipse.jetty.client.api.Request proxyRequest)
+    {
+        // First clear possibly existing headers, as we are going to copy those from the client request.
+        HttpFields proxyHeaders = proxyRequest.getHeaders();
+        proxyHeaders.clear();
+
+        HttpFields clientHeaders = clientRequest.getHttpFields();
+        Set<String> connectionHeaders = findConnectionHeaders(clientHeaders);
+        for (HttpField field : clientHeaders)
+        {
+            HttpHeader header = field.getHeader();
+            if (header == HttpHeader.HOST && !isPreserveHost())
+                continue;
+            if (isHopHeader(header, field, connectionHeaders))
+                continue;
+            proxyHeaders.add(field);
+        }
+    }
+
+    protected void addProxyHeaders(Request clientRequest, org.eclipse.jetty.client.api.Request proxyRequest)
+    {
+        HttpFields proxyHeaders = proxyRequest.getHeaders();
+        proxyHeaders.add(viaField);
+        proxyHeaders.add(new HttpField(HttpHeader.X_FORWARDED_FOR, clientRequest.getRemoteAddr()));
+        proxyHeaders.add(new HttpField(HttpHeader.X_FORWARDED_PROTO, clientRequest.getScheme()));
+        String host = clientRequest.getHttpFields().get(HttpHeader.HOST);
+        if (host != null)
+            proxyHeaders.add(new HttpField(HttpHeader.X_FORWARDED_HOST, host));
+        proxyHeaders.add(new HttpField(HttpHeader.X_FORWARDED_SERVER, clientRequest.getLocalName()));
+    }
+
+    protected void onServerResponseHeaders(Request clientRequest, org.eclipse.jetty.client.api.Response serverResponse)
+    {
+        Response response = clientRequest.getResponse();
+        response.setStatus(serverResponse.getStatus());
+
+        HttpFields serverHeaders = serverResponse.getHeaders();
+        HttpFields headers = response.getHttpFields();
+        Set<String> connectionHeaders = findConnectionHeaders(serverHeaders);
+        for (HttpField field : serverHeaders)
+        {
+            HttpHeader header = field.getHeader();
+            if (isHopHeader(header, field, connectionHeaders))
+                continue;
+            if (header == HttpHeader.CONTENT_LENGTH)
+                response.setLongContentLength(field.getLongValue());
+            else
+                headers.add(field);
+        }
+    }
+
+    protected void onClientRequestFailure(Request clientRequest, org.eclipse.jetty.client.api.Request proxyRequest, Throwable failure)
+    {
+        if (LOG.isDebugEnabled())
+            LOG.debug(clientRequest + " client request failed", failure);
+        // The proxy response listener completes the client request.
+        proxyRequest.abort(failure);
+    }
+
+    protected void onProxyResponseFailure(Request clientRequest, Throwable failure)
+    {
+        if (LOG.isDebugEnabled())
+            LOG.debug(clientRequest + " proxying failed", failure);
+
+        Response response = clientRequest.getResponse();
+        if (response.isCommitted())
+        {
+            // The response cannot be completed, close the connection.
+            clientRequest.getHttpChannel().abort(failure);
+        }
+        else
+        {
+            response.reset();
+            if (failure instanceof TimeoutException)
+                response.setStatus(HttpStatus.GATEWAY_TIMEOUT_504);
+            else
+                response.setStatus(HttpStatus.BAD_GATEWAY_502);
+            response.getHttpFields().put(HttpHeader.CONNECTION, HttpHeaderValue.CLOSE.asString());
+        }
+        clientRequest.getAsyncContext().complete();
+    }
+
+    private Set<String> findConnectionHeaders(HttpFields fields)
+    {
+        // Any header listed by the Connection header must be removed:
+        // http://tools.ietf.org/html/rfc7230#section-6.1.
+        Set<String> hopHeaders = null;
+        for (String value : fields.getValuesList(HttpHeader.CONNECTION.asString()))
+        {
+            for (String name : value.split(","))
+            {
+                if (hopHeaders == null)
+                    hopHeaders = new HashSet<>();
+                hopHeaders.add(name.trim().toLowerCase(Locale.ENGLISH));
+            }
+        }
+        return hopHeaders;
+    }
+
+    private boolean isHopHeader(HttpHeader header, HttpField field, Set<String> connectionHeaders)
+    {
+        if (header != null)
+        {
+            switch (header)
+            {
+                case CONNECTION:
+                case KEEP_ALIVE:
+                case PROXY_AUTHORIZATION:
+                case PROXY_AUTHENTICATE:
+                case PROXY_CONNECTION:
+                case TRANSFER_ENCODING:
+                case TE:
+                case TRAILER:
+                case UPGRADE:
+                    return true;
+                default:
+                    break;
+            }
+        }
+        return connectionHeaders != null && connectionHeaders.contains(field.getName().toLowerCase(Locale.ENGLISH));
+    }
+
+    protected class ProxyResponseListener extends org.eclipse.jetty.client.api.Response.Listener.Adapter
+    {
+        private final Request clientRequest;
+
+        protected ProxyResponseListener(Request clientRequest)
+        {
+            this.clientRequest = clientRequest;
+        }
+
+        @Override
+        public void onHeaders(org.eclipse.jetty.client.api.Response serverResponse)
+        {
+            onServerResponseHeaders(clientRequest, serverResponse);
+        }
+
+        @Override
+        public void onContent(org.eclipse.jetty.client.api.Response serverResponse, ByteBuffer content, Callback callback)
+        {
+            if (LOG.isDebugEnabled())
+                LOG.debug("{} proxying content to downstream: {} bytes", clientRequest, content.remaining());
+            // Write the buffer as is, without aggregation in the HttpOutput.
+            clientRequest.getResponse().getHttpOutput().getInterceptor().write(content, false, callback);
+        }
+
+        @Override
+        public void onComplete(Result result)
+        {
+            if (result.isSucceeded())
+            {
+                if (LOG.isDebugEnabled())
+                    LOG.debug("{} proxying successful", clientRequest);
+                clientRequest.getAsyncContext().complete();
+            }
+            else
+            {
+                onProxyResponseFailure(clientRequest, result.getFailure());
+            }
+        }
+    }
+
+    protected class ProxyRequestContent extends IteratingCallback implements ReadListener
+    {
+        private final Request clientRequest;
+        private final org.eclipse.jetty.client.api.Request proxyRequest;
+        private final DeferredContentProvider provider;
+        private final ByteBufferPool bufferPool;
+        private final ByteBuffer buffer;
+
+        protected ProxyRequestContent(Request clientRequest, org.eclipse.jetty.client.api.Request proxyRequest, DeferredContentProvider provider)
+        {
+            this.clientRequest = clientRequest;
+            this.proxyRequest = proxyRequest;
+            this.provider = provider;
+            this.bufferPool = clientRequest.getHttpChannel().getByteBufferPool();
+            // The same buffer is reused, since the provider holds one buffer at a time.
+            this.buffer = bufferPool.acquire(getHttpClient().getRequestBufferSize(), false);
+        }
+
+        @Override
+        public void onDataAvailable() throws IOException
+        {
+            iterate();
+        }
+
+        @Override
+        public void onAllDataRead() throws IOException
+        {
+            iterate();
+        }
+
+        @Override
+        public void onError(Throwable failure)
+        {
+            failed(failure);
+        }
+
+        @Override
+        protected Action process() throws Exception
+        {
+            HttpInput input = clientRequest.getHttpInput();
+            // First check for isReady() because it has
+            // side effects, and then for isFinished().
+            while (input.isReady() && !input.isFinished())
+            {
+                int read = input.read(buffer.array(), buffer.arrayOffset(), buffer.capacity());
+                if (read > 0)
+                {
+                    buffer.clear();
+                    buffer.limit(read);
+                    if (LOG.isDebugEnabled())
+                        LOG.debug("{} proxying content to upstream: {} bytes", clientRequest, read);
+                    provider.offer(buffer, this);
+                    return Action.SCHEDULED;
+                }
+            }
+            return input.isFinished() ? Action.SUCCEEDED : Action.IDLE;
+        }
+
+        @Override
+        protected void onCompleteSuccess()
+        {
+            if (LOG.isDebugEnabled())
+                LOG.debug("{} proxying content to upstream completed", clientRequest);
+            provider.close();
+            bufferPool.release(buffer);
+        }
+
+        @Override
+        protected void onCompleteFailure(Throwable failure)
+        {
+            // The buffer is not released because the provider may still reference it.
+            onClientRequestFailure(clientRequest, proxyRequest, failure);
+        }
+    }
+}
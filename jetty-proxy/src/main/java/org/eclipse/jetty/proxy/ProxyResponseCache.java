@@ -0,0 +1,738 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2015 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+
+package org.eclipse.jetty.proxy;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.eclipse.jetty.client.HttpClient;
+import org.eclipse.jetty.client.HttpResponse;
+import org.eclipse.jetty.client.ResponseNotifier;
+import org.eclipse.jetty.client.ResponseStore;
+import org.eclipse.jetty.client.api.Request;
+import org.eclipse.jetty.client.api.Response;
+import org.eclipse.jetty.client.api.Result;
+import org.eclipse.jetty.client.util.BufferingResponseListener;
+import org.eclipse.jetty.http.HttpField;
+import org.eclipse.jetty.http.HttpFields;
+import org.eclipse.jetty.http.HttpHeader;
+import org.eclipse.jetty.http.HttpMethod;
+import org.eclipse.jetty.io.ByteBufferPool;
+import org.eclipse.jetty.util.BufferUtil;
+import org.eclipse.jetty.util.IteratingCallback;
+import org.eclipse.jetty.util.annotation.ManagedAttribute;
+import org.eclipse.jetty.util.annotation.ManagedObject;
+import org.eclipse.jetty.util.annotation.ManagedOperation;
+import org.eclipse.jetty.util.log.Log;
+import org.eclipse.jetty.util.log.Logger;
+
+/**
+ * <p>A shared HTTP cache for the responses proxied by {@link AbstractProxyServlet}.</p>
+ * <p>The proxy servlets consult the cache before sending the proxy request, so that
+ * the responses served from the cache do not use the {@link HttpClient} at all.
+ * The cache stores the responses to {@code GET} requests, keyed by the proxied URI and
+ * by the {@code Host} header sent to the server, following the {@code Cache-Control}
+ * and {@code Expires} response headers with the rules of a shared cache: responses
+ * that are {@code private} or that carry a {@code Set-Cookie} header are not stored,
+ * and responses to requests with an {@code Authorization} header are stored only if
+ * explicitly allowed.</p>
+ * <p>Responses are stored as received from the server and are served through the
+ * proxy response listener, so that header filters and content transformers apply
+ * to cached responses as they do to proxied ones. Responses that vary on request
+ * headers are served only to requests that carry the same values.</p>
+ * <p>Stale responses are revalidated with a conditional request that carries the
+ * {@code If-None-Match} and {@code If-Modified-Since} headers; stale responses with the
+ * {@code stale-while-revalidate} directive are served immediately while they are
+ * revalidated in background.
+ * Concurrent requests for the same key that miss the cache are coalesced: only one
+ * request is sent to the server, and the others are served with its response when it
+ * is cacheable, or sent to the server as soon as its response headers show that it is
+ * not; in that case the key is remembered as not cacheable, and later requests for it
+ * are not coalesced until a cacheable response is received.
+ * Requests with unsafe methods invalidate the cached response for their key.</p>
+ * <p>Responses are kept in a {@link ResponseStore}, in memory up to
+ * {@link #getMaxMemorySize()} bytes of content;
+ * if a directory is configured, responses evicted from memory are moved to files in
+ * that directory, up to {@link #getMaxDiskSize()} bytes of content, and are served
+ * from the files in chunks.
+ * Responses whose content is larger than {@link #getMaxEntrySize()} are not cached.</p>
+ */
+@ManagedObject("Proxy response cache")
+public class ProxyResponseCache
+{
+    private static final Logger LOG = Log.getLogger(ProxyResponseCache.class);
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong staleHits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong revalidations = new AtomicLong();
+    private final AtomicLong coalesced = new AtomicLong();
+    private final ResponseNotifier notifier = new ResponseNotifier();
+    private final ConcurrentMap<String, Fetch> pending = new ConcurrentHashMap<>();
+    private final AbstractProxyServlet proxyServlet;
+    private final ResponseStore store;
+    private volatile int maxEntrySize = 2 * 1024 * 1024;
+
+    /**
+     * @param proxyServlet the proxy servlet that uses this cache
+     * @param directory the directory where responses evicted from memory are stored, or null to only use memory
+     */
+    public ProxyResponseCache(AbstractProxyServlet proxyServlet, Path directory)
+    {
+        this.proxyServlet = proxyServlet;
+        this.store = new ResponseStore(directory);
+    }
+
+    /**
+     * @return the directory where responses evicted from memory are stored, or null
+     */
+    public Path getDirectory()
+    {
+        return store.getDirectory();
+    }
+
+    /**
+     * @return the max size, in bytes, of the response content stored in memory
+     */
+    @ManagedAttribute("The max size, in bytes, of the response content stored in memory")
+    public long getMaxMemorySize()
+    {
+        return store.getMaxMemorySize();
+    }
+
+    /**
+     * @param maxMemorySize the max size, in bytes, of the response content stored in memory
+     */
+    public void setMaxMemorySize(long maxMemorySize)
+    {
+        store.setMaxMemorySize(maxMemorySize);
+    }
+
+    /**
+     * @return the max size, in bytes, of the response content stored on disk
+     */
+    @ManagedAttribute("The max size, in bytes, of the response content stored on disk")
+    public long getMaxDiskSize()
+    {
+        return store.getMaxDiskSize();
+    }
+
+    /**
+     * @param maxDiskSize the max size, in bytes, of the response content stored on disk
+     */
+    public void setMaxDiskSize(long maxDiskSize)
+    {
+        store.setMaxDiskSize(maxDiskSize);
+    }
+
+    /**
+     * @return the max size, in bytes, of the content of a cacheable response
+     */
+    @ManagedAttribute("The max size, in bytes, of the content of a cacheable response")
+    public int getMaxEntrySize()
+    {
+        return maxEntrySize;
+    }
+
+    /**
+     * @param maxEntrySize the max size, in bytes, of the content of a cacheable response
+     */
+    public void setMaxEntrySize(int maxEntrySize)
+    {
+        this.maxEntrySize = maxEntrySize;
+    }
+
+    @ManagedAttribute(value = "The number of requests served with a fresh cached response", readonly = true)
+    public long getHits()
+    {
+        return hits.get();
+    }
+
+    @ManagedAttribute(value = "The number of requests served with a stale cached response while it is revalidated", readonly = true)
+    public long getStaleHits()
+    {
+        return staleHits.get();
+    }
+
+    @ManagedAttribute(value = "The number of cacheable requests sent to the server", readonly = true)
+    public long getMisses()
+    {
+        return misses.get();
+    }
+
+    @ManagedAttribute(value = "The number of stale responses revalidated by the server", readonly = true)
+    public long getRevalidations()
+    {
+        return revalidations.get();
+    }
+
+    @ManagedAttribute(value = "The number of requests coalesced with a concurrent request", readonly = true)
+    public long getCoalesced()
+    {
+        return coalesced.get();
+    }
+
+    @ManagedAttribute(value = "The number of responses evicted from the cache", readonly = true)
+    public long getEvictions()
+    {
+        return store.getEvictions();
+    }
+
+    @ManagedAttribute(value = "The number of cached responses", readonly = true)
+    public int getSize()
+    {
+        return store.getSize();
+    }
+
+    @ManagedAttribute(value = "The size, in bytes, of the response content stored in memory", readonly = true)
+    public long getMemorySize()
+    {
+        return store.getMemorySize();
+    }
+
+    @ManagedAttribute(value = "The size, in bytes, of the response content stored on disk", readonly = true)
+    public long getDiskSize()
+    {
+        return store.getDiskSize();
+    }
+
+    @ManagedOperation(value = "Resets the statistics", impact = "ACTION")
+    public void resetStatistics()
+    {
+        hits.set(0);
+        staleHits.set(0);
+        misses.set(0);
+        revalidations.set(0);
+        coalesced.set(0);
+        store.resetStatistics();
+    }
+
+    @ManagedOperation(value = "Removes all the cached responses", impact = "ACTION")
+    public void clear()
+    {
+        store.clear();
+    }
+
+    /**
+     * <p>Serves the given request from the cache, if possible.</p>
+     * <p>If this method returns false, the caller must send the proxy request;
+     * its response will be stored in the cache if it is cacheable.
+     * If this method returns true, the request is served by the cache, either
+     * immediately or when a concurrent request for the same resource completes,
+     * and the caller must not send the proxy request.</p>
+     *
+     * @param clientRequest the client request
+     * @param proxyResponse the response to the client
+     * @param proxyRequest the proxy request, ready to be sent
+     * @return whether the request is served by the cache
+     */
+    public boolean serve(HttpServletRequest clientRequest, HttpServletResponse proxyResponse, Request proxyRequest)
+    {
+        String method = proxyRequest.getMethod();
+        if (!HttpMethod.GET.is(method))
+        {
+            if (!HttpMethod.HEAD.is(method) && !HttpMethod.OPTIONS.is(method) && !HttpMethod.TRACE.is(method))
+                store.remove(keyFor(proxyRequest));
+            return false;
+        }
+
+        HttpFields headers = proxyRequest.getHeaders();
+        ResponseStore.CacheControl cacheControl = new ResponseStore.CacheControl(headers);
+        if (proxyServlet.hasContent(clientRequest) ||
+                cacheControl.isNoStore() ||
+                headers.containsKey(HttpHeader.IF_NONE_MATCH.asString()) ||
+                headers.containsKey(HttpHeader.IF_MODIFIED_SINCE.asString()) ||
+                headers.containsKey(HttpHeader.RANGE.asString()))
+            return false;
+
+        String key = keyFor(proxyRequest);
+        Exchange exchange = new Exchange(clientRequest, proxyResponse, proxyRequest);
+        ResponseStore.Entry entry = store.lookup(key);
+        if (entry != null && entry.matches(headers))
+        {
+            long now = System.currentTimeMillis();
+            boolean noCache = cacheControl.isNoCache() || cacheControl.getMaxAge() == 0 || headers.contains(HttpHeader.PRAGMA, "no-cache");
+            if (!noCache)
+            {
+                if (entry.isFresh(now))
+                {
+                    if (LOG.isDebugEnabled())
+                        LOG.debug("Cache hit {} for {}", entry, proxyRequest);
+                    hits.incrementAndGet();
+                    serve(entry, exchange);
+                    return true;
+                }
+
+                if (entry.isServableWhileRevalidated(now))
+                {
+                    if (LOG.isDebugEnabled())
+                        LOG.debug("Cache stale hit {} for {}", entry, proxyRequest);
+                    staleHits.incrementAndGet();
+                    // Only one background revalidation at a time.
+                    Revalidation revalidation = new Revalidation(entry);
+                    if (pending.putIfAbsent(key, revalidation) == null)
+                        revalidation.send(proxyRequest);
+                    serve(entry, exchange);
+                    return true;
+                }
+            }
+
+            if (entry.hasValidators())
+            {
+                Revalidation revalidation = new Revalidation(entry);
+                if (!coalesce(key, revalidation, exchange))
+                {
+                    // The request is served like the coalesced ones:
+                    // if the response cannot be stored, for example
+                    // because it is private, it is sent to the server.
+                    revalidation.join(exchange);
+                    revalidation.send(proxyRequest);
+                }
+                return true;
+            }
+        }
+
+        Miss miss = new Miss(key, proxyRequest);
+        // Requests for keys that are not cacheable are not made to wait for each other.
+        if (!store.isPass(key) && coalesce(key, miss, exchange))
+            return true;
+
+        if (LOG.isDebugEnabled())
+            LOG.debug("Cache miss {} for {}", key, proxyRequest);
+        misses.incrementAndGet();
+        proxyRequest.onResponseHeaders(miss).onResponseContent(miss).onResponseSuccess(miss).onComplete(miss);
+        return false;
+    }
+
+    /**
+     * @return true if the exchange joined a concurrent fetch of the same key,
+     * false if the given fetch was registered and must be performed
+     */
+    private boolean coalesce(String key, Fetch fetch, Exchange exchange)
+    {
+        while (true)
+        {
+            Fetch existing = pending.putIfAbsent(key, fetch);
+            if (existing == null)
+                return false;
+            if (existing.join(exchange))
+            {
+                if (LOG.isDebugEnabled())
+                    LOG.debug("Cache request coalesced with {} for {}", existing, exchange.proxyRequest);
+                coalesced.incrementAndGet();
+                return true;
+            }
+            // The existing fetch completed, retry.
+            pending.remove(key, existing);
+        }
+    }
+
+    private String keyFor(Request request)
+    {
+        String scheme = request.getScheme().toLowerCase(Locale.ENGLISH);
+        int port = request.getPort();
+        if (port <= 0)
+            port = "https".equals(scheme) ? 443 : 80;
+        StringBuilder key = new StringBuilder(scheme).append("://")
+                .append(request.getHost().toLowerCase(Locale.ENGLISH))
+                .append(":").append(port)
+                .append(request.getPath());
+        String query = request.getQuery();
+        if (query != null)
+            key.append("?").append(query);
+        // The server may host multiple virtual hosts.
+        String host = request.getHeaders().get(HttpHeader.HOST);
+        if (host != null)
+            key.append(" ").append(host.toLowerCase(Locale.ENGLISH));
+        return key.toString();
+    }
+
+    private void serve(ResponseStore.Entry entry, Exchange exchange)
+    {
+        FileChannel channel = null;
+        if (entry.getContent() == null)
+        {
+            try
+            {
+                channel = FileChannel.open(entry.getFile(), StandardOpenOption.READ);
+            }
+            catch (IOException x)
+            {
+                if (LOG.isDebugEnabled())
+                    LOG.debug("Could not read cached content " + entry, x);
+                store.remove(entry.getKey());
+                send(exchange);
+                return;
+            }
+        }
+
+        Response.CompleteListener listener = proxyServlet.newProxyResponseListener(exchange.clientRequest, exchange.proxyResponse);
+        List<Response.ResponseListener> listeners = Collections.singletonList(listener);
+        HttpResponse response = new HttpResponse(exchange.proxyRequest, listeners)
+                .version(entry.getVersion())
+                .status(entry.getStatus())
+                .reason(entry.getReason());
+        HttpFields headers = response.getHeaders();
+        headers.add(entry.getHeaders());
+        long now = System.currentTimeMillis();
+        headers.putLongField(HttpHeader.AGE, entry.getAge(now));
+        if (!entry.isFresh(now))
+            headers.add(HttpHeader.WARNING, "110 - \"Response is Stale\"");
+
+        notifier.notifyBegin(listeners, response);
+        notifier.notifyHeaders(listeners, response);
+        new Delivery(entry, channel, exchange.proxyRequest, response, listeners).iterate();
+    }
+
+    private void send(Exchange exchange)
+    {
+        proxyServlet.sendProxyRequest(exchange.clientRequest, exchange.proxyResponse, exchange.proxyRequest);
+    }
+
+    private ResponseStore.Entry newEntry(String key, HttpFields requestHeaders, Response response, byte[] content)
+    {
+        // The content is stored as received, so the Accept-Encoding matters.
+        boolean credentials = requestHeaders.containsKey(HttpHeader.AUTHORIZATION.asString());
+        return ResponseStore.newEntry(key, requestHeaders, response, response.getHeaders(), content, credentials);
+    }
+
+    private static class Exchange
+    {
+        private final HttpServletRequest clientRequest;
+        private final HttpServletResponse proxyResponse;
+        private final Request proxyRequest;
+
+        private Exchange(HttpServletRequest clientRequest, HttpServletResponse proxyResponse, Request proxyRequest)
+        {
+            this.clientRequest = clientRequest;
+            this.proxyResponse = proxyResponse;
+            this.proxyRequest = proxyRequest;
+        }
+    }
+
+    /**
+     * <p>A request to the server that concurrent requests for the same key wait for.</p>
+     */
+    private abstract class Fetch
+    {
+        private final List<Exchange> exchanges = new ArrayList<>();
+        protected final String key;
+        private boolean complete;
+
+        private Fetch(String key)
+        {
+            this.key = key;
+        }
+
+        protected boolean join(Exchange exchange)
+        {
+            synchronized (this)
+            {
+                if (complete)
+                    return false;
+                exchanges.add(exchange);
+                return true;
+            }
+        }
+
+        /**
+         * @param entry the cached response to serve to the waiting requests that match it, or null
+         */
+        protected void complete(ResponseStore.Entry entry)
+        {
+            List<Exchange> exchanges;
+            synchronized (this)
+            {
+                complete = true;
+                exchanges = new ArrayList<>(this.exchanges);
+                this.exchanges.clear();
+            }
+            pending.remove(key, this);
+
+            for (Exchange exchange : exchanges)
+            {
+                if (entry != null && entry.matches(exchange.proxyRequest.getHeaders()))
+                    serve(entry, exchange);
+                else
+                    send(exchange);
+            }
+        }
+
+        @Override
+        public String toString()
+        {
+            return String.format("%s@%x[%s]", getClass().getSimpleName(), hashCode(), key);
+        }
+    }
+
+    /**
+     * <p>Captures the response to a proxy request that missed the cache,
+     * while the proxy servlet forwards it to the client.</p>
+     */
+    private class Miss extends Fetch implements Response.HeadersListener, Response.ContentListener, Response.SuccessListener, Response.CompleteListener
+    {
+        private final Request request;
+        private final HttpFields requestHeaders;
+        private ByteBuffer content = BufferUtil.EMPTY_BUFFER;
+        private boolean storable;
+        private boolean overflow;
+        private ResponseStore.Entry entry;
+
+        private Miss(String key, Request request)
+        {
+            super(key);
+            this.request = request;
+            // Snapshot the headers before they are modified to send the request.
+            this.requestHeaders = new HttpFields(request.getHeaders());
+        }
+
+        @Override
+        public void onHeaders(Response response)
+        {
+            storable = response.getHeaders().getLongField(HttpHeader.CONTENT_LENGTH.asString()) <= getMaxEntrySize() &&
+                    newEntry(key, requestHeaders, response, new byte[0]).isStorable();
+            if (!storable)
+            {
+                // Do not make the coalesced requests wait for a
+                // response that will not be stored: send them now.
+                if (LOG.isDebugEnabled())
+                    LOG.debug("Cache pass {} for {}", key, response);
+                store.pass(key, true);
+                complete(null);
+            }
+        }
+
+        @Override
+        public void onContent(Response response, ByteBuffer buffer)
+        {
+            if (!storable || overflow)
+                return;
+            int length = content.remaining() + buffer.remaining();
+            if (length > getMaxEntrySize())
+            {
+                overflow = true;
+                content = null;
+                store.pass(key, true);
+                complete(null);
+                return;
+            }
+            if (BufferUtil.space(content) < buffer.remaining())
+            {
+                ByteBuffer copy = BufferUtil.allocate(Math.min(Math.max(2 * length, 1024), getMaxEntrySize()));
+                BufferUtil.append(copy, content);
+                content = copy;
+            }
+            BufferUtil.append(content, buffer);
+        }
+
+        @Override
+        public void onSuccess(Response response)
+        {
+            // Store the response before the proxy servlet completes the response to the client.
+            if (storable && !overflow)
+            {
+                entry = newEntry(key, requestHeaders, response, BufferUtil.toArray(content));
+                store.store(entry);
+            }
+        }
+
+        @Override
+        public void onComplete(Result result)
+        {
+            complete(result.isSucceeded() ? entry : null);
+        }
+    }
+
+    /**
+     * <p>Revalidates a stale response with a conditional request, either on behalf
+     * of a client request, or in background while the stale response is served.</p>
+     */
+    private class Revalidation extends Fetch
+    {
+        private final ResponseStore.Entry entry;
+
+        private Revalidation(ResponseStore.Entry entry)
+        {
+            super(entry.getKey());
+            this.entry = entry;
+        }
+
+        private void send(Request template)
+        {
+            if (LOG.isDebugEnabled())
+                LOG.debug("Cache revalidate {} for {}", entry, template);
+
+            HttpFields requestHeaders = new HttpFields(template.getHeaders());
+            Request request = proxyServlet.getHttpClient().newRequest(template.getURI())
+                    .version(template.getVersion())
+                    .timeout(template.getTimeout(), TimeUnit.MILLISECONDS);
+            for (HttpField field : requestHeaders)
+                request.header(field.getName(), field.getValue());
+            String etag = entry.getHeaders().get(HttpHeader.ETAG);
+            if (etag != null)
+                request.header(HttpHeader.IF_NONE_MATCH, etag);
+            String lastModified = entry.getHeaders().get(HttpHeader.LAST_MODIFIED);
+            if (lastModified != null)
+                request.header(HttpHeader.IF_MODIFIED_SINCE, lastModified);
+
+            request.send(new BufferingResponseListener(getMaxEntrySize())
+            {
+                @Override
+                public void onComplete(Result result)
+                {
+                    ResponseStore.Entry updated = null;
+                    if (result.isSucceeded())
+                    {
+                        Response response = result.getResponse();
+                        if (response.getStatus() == 304)
+                        {
+                            revalidations.incrementAndGet();
+                            updated = entry.revalidate(response.getHeaders());
+                        }
+                        else
+                        {
+                            misses.incrementAndGet();
+                            updated = newEntry(key, requestHeaders, response, getContent());
+                        }
+
+                        if (updated.isStorable())
+                        {
+                            store.store(updated);
+                        }
+                        else
+                        {
+                            store.remove(key);
+                            updated = null;
+                        }
+                    }
+                    complete(updated);
+                }
+            });
+        }
+    }
+
+    /**
+     * <p>Notifies the proxy response listener of the content of a cached response,
+     * reading the content from disk in chunks if the response is stored on disk.</p>
+     */
+    private class Delivery extends IteratingCallback
+    {
+        private final ResponseStore.Entry entry;
+        private final FileChannel channel;
+        private final Request request;
+        private final HttpResponse response;
+        private final List<Response.ResponseListener> listeners;
+        private ByteBuffer buffer;
+        private long position;
+        private boolean delivered;
+
+        private Delivery(ResponseStore.Entry entry, FileChannel channel, Request request, HttpResponse response, List<Response.ResponseListener> listeners)
+        {
+            this.entry = entry;
+            this.channel = channel;
+            this.request = request;
+            this.response = response;
+            this.listeners = listeners;
+        }
+
+        @Override
+        protected Action process() throws Exception
+        {
+            if (channel == null)
+            {
+                if (delivered || entry.getLength() == 0)
+                    return Action.SUCCEEDED;
+                delivered = true;
+                notifier.notifyContent(listeners, response, ByteBuffer.wrap(entry.getContent()), this);
+                return Action.SCHEDULED;
+            }
+
+            if (position == entry.getLength())
+                return Action.SUCCEEDED;
+
+            if (buffer == null)
+                buffer = getByteBufferPool().acquire((int)Math.min(entry.getLength(), proxyServlet.getHttpClient().getResponseBufferSize()), false);
+            BufferUtil.clearToFill(buffer);
+            int read = channel.read(buffer, position);
+            BufferUtil.flipToFlush(buffer, 0);
+            if (read < 0)
+                throw new IOException("Truncated cached content " + entry);
+            position += read;
+            notifier.notifyContent(listeners, response, buffer, this);
+            return Action.SCHEDULED;
+        }
+
+        @Override
+        protected void onCompleteSuccess()
+        {
+            release();
+            notifier.notifySuccess(listeners, response);
+            notifier.notifyComplete(listeners, new Result(request, response));
+        }
+
+        @Override
+        protected void onCompleteFailure(Throwable failure)
+        {
+            if (LOG.isDebugEnabled())
+                LOG.debug("Could not serve cached content " + entry, failure);
+            release();
+            notifier.notifyFailure(listeners, response, failure);
+            notifier.notifyComplete(listeners, new Result(request, response, failure));
+        }
+
+        private void release()
+        {
+            if (buffer != null)
+            {
+                getByteBufferPool().release(buffer);
+                buffer = null;
+            }
+            if (channel != null)
+            {
+                try
+                {
+                    channel.close();
+                }
+                catch (IOException x)
+                {
+                    LOG.ignore(x);
+                }
+            }
+        }
+
+        private ByteBufferPool getByteBufferPool()
+        {
+            return proxyServlet.getHttpClient().getByteBufferPool();
+        }
+    }
+}
@@ -85,6 +85,10 @@ public class ProxyServlet extends AbstractProxyServlet
         if (hasContent(request))
             proxyRequest.content(proxyRequestContent(request, response, proxyRequest));
 
+        ProxyResponseCache responseCache = getResponseCache();
+        if (responseCache != null && responseCache.serve(request, response, proxyRequest))
+            return;
+
         sendProxyRequest(request, response, proxyRequest);
     }
 
@@ -39,6 +39,7 @@ import java.util.Random;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.zip.GZIPInputStream;
 import java.util.zip.GZIPOutputStream;
 
@@ -62,6 +63,7 @@ import org.eclipse.jetty.client.util.FutureResponseListener;
 import org.eclipse.jetty.http.HttpHeader;
 import org.eclipse.jetty.http.HttpHeaderValue;
 import org.eclipse.jetty.http.HttpStatus;
+import org.eclipse.jetty.io.MappedByteBufferPool;
 import org.eclipse.jetty.io.RuntimeIOException;
 import org.eclipse.jetty.server.HttpConfiguration;
 import org.eclipse.jetty.server.HttpConnectionFactory;
@@ -438,6 +440,167 @@ public class AsyncMiddleManServletTest
         Assert.assertArrayEquals(bytes, response.getContent());
     }
 
+    @Test
+    public void testDownstreamTransformationChainedGzippedIsStreamed() throws Exception
+    {
+        final byte[] bytes = new byte[512 * 1024];
+        new Random().nextBytes(bytes);
+        final byte[] gzipBytes = gzip(bytes);
+        startServer(new HttpServlet()
+        {
+            @Override
+            protected void service(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException
+            {
+                response.setHeader(HttpHeader.CONTENT_ENCODING.asString(), "gzip");
+                ServletOutputStream output = response.getOutputStream();
+                int chunk = 16 * 1024;
+                for (int i = 0; i < gzipBytes.length; i += chunk)
+                {
+                    output.write(gzipBytes, i, Math.min(chunk, gzipBytes.length - i));
+                    output.flush();
+                }
+            }
+        });
+        final CountingByteBufferPool bufferPool = new CountingByteBufferPool();
+        final AtomicInteger stageCalls = new AtomicInteger();
+        final AtomicInteger streamedBuffers = new AtomicInteger();
+        startProxy(new AsyncMiddleManServlet()
+        {
+            @Override
+            protected ContentTransformer newServerResponseContentTransformer(HttpServletRequest clientRequest, HttpServletResponse proxyResponse, Response serverResponse)
+            {
+                ContentTransformer stage = (input, finished, output) ->
+                {
+                    if (!finished)
+                        stageCalls.incrementAndGet();
+                    output.add(input);
+                };
+                return new GZIPContentTransformer(bufferPool, new ChainedContentTransformer(stage, ContentTransformer.IDENTITY))
+                {
+                    @Override
+                    public void transform(ByteBuffer input, boolean finished, List<ByteBuffer> output) throws IOException
+                    {
+                        super.transform(input, finished, output);
+                        if (!finished)
+                            streamedBuffers.addAndGet(output.size());
+                    }
+                };
+            }
+        });
+        startClient();
+
+        ContentResponse response = client.newRequest("localhost", serverConnector.getLocalPort())
+                .timeout(5, TimeUnit.SECONDS)
+                .send();
+
+        Assert.assertEquals(200, response.getStatus());
+        Assert.assertArrayEquals(bytes, response.getContent());
+        // The content went through the chain and was gzipped before it was all received.
+        Assert.assertTrue(stageCalls.get() > 1);
+        Assert.assertTrue(streamedBuffers.get() > 1);
+        // All the gzipped buffers have been returned to the pool.
+        Assert.assertTrue(bufferPool.acquired.get() > 0);
+        long end = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (bufferPool.released.get() < bufferPool.acquired.get() && System.nanoTime() < end)
+            sleep(10);
+        Assert.assertEquals(bufferPool.acquired.get(), bufferPool.released.get());
+    }
+
+    @Test
+    public void testDownstreamGzipStageCalledManyTimesPerChunkDoesNotRecycleUnwrittenBuffers() throws Exception
+    {
+        final byte[] bytes = new byte[128 * 1024];
+        new Random().nextBytes(bytes);
+        final byte[] gzipBytes = gzip(bytes);
+        startServer(new HttpServlet()
+        {
+            @Override
+            protected void service(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException
+            {
+                response.setHeader(HttpHeader.CONTENT_ENCODING.asString(), "gzip");
+                response.getOutputStream().write(gzipBytes);
+            }
+        });
+        final CountingByteBufferPool bufferPool = new CountingByteBufferPool();
+        startProxy(new AsyncMiddleManServlet()
+        {
+            @Override
+            protected ContentTransformer newServerResponseContentTransformer(HttpServletRequest clientRequest, HttpServletResponse proxyResponse, Response serverResponse)
+            {
+                // Split the input so that the gzip stage is called many
+                // times, with its output buffers not yet written.
+                ContentTransformer splitter = (input, finished, output) ->
+                {
+                    while (input.remaining() > 256)
+                    {
+                        ByteBuffer slice = input.slice();
+                        slice.limit(256);
+                        output.add(slice);
+                        input.position(input.position() + 256);
+                    }
+                    output.add(input);
+                };
+                return new ChainedContentTransformer(splitter, new GZIPContentTransformer(bufferPool, ContentTransformer.IDENTITY, 512));
+            }
+        });
+        startClient();
+
+        ContentResponse response = client.newRequest("localhost", serverConnector.getLocalPort())
+                .timeout(5, TimeUnit.SECONDS)
+                .send();
+
+        Assert.assertEquals(200, response.getStatus());
+        Assert.assertArrayEquals(bytes, response.getContent());
+        long end = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (bufferPool.released.get() < bufferPool.acquired.get() && System.nanoTime() < end)
+            sleep(10);
+        Assert.assertEquals(bufferPool.acquired.get(), bufferPool.released.get());
+    }
+
+    @Test
+    public void testGzipStageFollowedByCopyingStageReleasesBuffers() throws Exception
+    {
+        final byte[] bytes = new byte[128 * 1024];
+        new Random().nextBytes(bytes);
+        final byte[] gzipBytes = gzip(bytes);
+        startServer(new HttpServlet()
+        {
+            @Override
+            protected void service(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException
+            {
+                response.setHeader(HttpHeader.CONTENT_ENCODING.asString(), "gzip");
+                response.getOutputStream().write(gzipBytes);
+            }
+        });
+        final CountingByteBufferPool bufferPool = new CountingByteBufferPool();
+        startProxy(new AsyncMiddleManServlet()
+        {
+            @Override
+            protected ContentTransformer newServerResponseContentTransformer(HttpServletRequest clientRequest, HttpServletResponse proxyResponse, Response serverResponse)
+            {
+                // The gzip stage is not the last one, so its output
+                // buffers are consumed by the copying stage.
+                ContentTransformer copier = (input, finished, output) ->
+                {
+                    ByteBuffer copy = ByteBuffer.allocate(input.remaining());
+                    copy.put(input).flip();
+                    output.add(copy);
+                };
+                return new ChainedContentTransformer(new GZIPContentTransformer(bufferPool, ContentTransformer.IDENTITY, 512), copier);
+            }
+        });
+        startClient();
+
+        ContentResponse response = client.newRequest("localhost", serverConnector.getLocalPort())
+                .timeout(5, TimeUnit.SECONDS)
+                .send();
+
+        Assert.assertEquals(200, response.getStatus());
+        Assert.assertArrayEquals(bytes, response.getContent());
+        Assert.assertTrue(bufferPool.acquired.get() > 0);
+        Assert.assertEquals(bufferPool.acquired.get(), bufferPool.released.get());
+    }
+
     @Test
     public void testDiscardUpstreamAndDownstreamKnownContentLengthGzipped() throws Exception
     {
@@ -1714,6 +1877,26 @@ public class AsyncMiddleManServletTest
         }
     }
 
+    private static class CountingByteBufferPool extends MappedByteBufferPool
+    {
+        private final AtomicInteger acquired = new AtomicInteger();
+        private final AtomicInteger released = new AtomicInteger();
+
+        @Override
+        public ByteBuffer acquire(int size, boolean direct)
+        {
+            acquired.incrementAndGet();
+            return super.acquire(size, direct);
+        }
+
+        @Override
+        public void release(ByteBuffer buffer)
+        {
+            released.incrementAndGet();
+            super.release(buffer);
+        }
+    }
+
     private static class DiscardContentTransformer implements AsyncMiddleManServlet.ContentTransformer
     {
         @Override
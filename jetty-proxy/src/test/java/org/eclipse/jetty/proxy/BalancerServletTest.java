@@ -22,6 +22,8 @@ import java.io.BufferedReader;
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 
@@ -48,10 +50,12 @@ public class BalancerServletTest
     private static final String CONTEXT_PATH = "/context";
     private static final String SERVLET_PATH = "/mapping";
 
+    private final Map<String, String> initParameters = new HashMap<>();
     private boolean stickySessions;
     private Server server1;
     private Server server2;
     private Server balancer;
+    private ServletHolder balancerServletHolder;
     private HttpClient client;
 
     @Before
@@ -78,11 +82,13 @@ public class BalancerServletTest
         server2 = createServer(new ServletHolder(servletClass), "node2");
         server2.start();
 
-        ServletHolder balancerServletHolder = new ServletHolder(BalancerServlet.class);
+        balancerServletHolder = new ServletHolder(BalancerServlet.class);
         balancerServletHolder.setInitParameter("stickySessions", String.valueOf(stickySessions));
         balancerServletHolder.setInitParameter("proxyPassReverse", "true");
         balancerServletHolder.setInitParameter("balancerMember." + "node1" + ".proxyTo", "http://localhost:" + getServerPort(server1));
         balancerServletHolder.setInitParameter("balancerMember." + "node2" + ".proxyTo", "http://localhost:" + getServerPort(server2));
+        for (Map.Entry<String, String> entry : initParameters.entrySet())
+            balancerServletHolder.setInitParameter(entry.getKey(), entry.getValue());
 
         balancer = createServer(balancerServletHolder, null);
         balancer.start();
@@ -114,11 +120,21 @@ public class BalancerServletTest
 
     protected byte[] sendRequestToBalancer(String path) throws Exception
     {
-        ContentResponse response = client.newRequest("localhost", getServerPort(balancer))
+        return sendToBalancer(path).getContent();
+    }
+
+    private ContentResponse sendToBalancer(String path) throws Exception
+    {
+        return client.newRequest("localhost", getServerPort(balancer))
                 .path(CONTEXT_PATH + SERVLET_PATH + path)
                 .timeout(5, TimeUnit.SECONDS)
                 .send();
-        return response.getContent();
+    }
+
+    private BalancerServlet.BalancerMember getBalancerMember(String name)
+    {
+        String attribute = balancerServletHolder.getName() + ".balancerMember." + name;
+        return (BalancerServlet.BalancerMember)balancerServletHolder.getServletHandler().getServletContext().getAttribute(attribute);
     }
 
     @Test
@@ -161,6 +177,81 @@ public class BalancerServletTest
         Assert.assertEquals("success", msg);
     }
 
+    @Test
+    public void testWeightedBalancer() throws Exception
+    {
+        initParameters.put("strategy", "weighted");
+        initParameters.put("balancerMember.node1.weight", "3");
+        startBalancer(PortServlet.class);
+
+        int requests1 = 0;
+        for (int i = 0; i < 8; i++)
+        {
+            String port = readFirstLine(sendRequestToBalancer("/weighted"));
+            if (String.valueOf(getServerPort(server1)).equals(port))
+                ++requests1;
+        }
+        Assert.assertEquals(6, requests1);
+        Assert.assertEquals(6, getBalancerMember("node1").getRequests());
+        Assert.assertEquals(2, getBalancerMember("node2").getRequests());
+    }
+
+    @Test
+    public void testLeastRequestsBalancer() throws Exception
+    {
+        initParameters.put("strategy", "leastRequests");
+        startBalancer(PortServlet.class);
+
+        // Without outstanding requests the members are selected in turn.
+        for (int i = 0; i < 4; i++)
+            Assert.assertEquals(200, sendToBalancer("/leastRequests").getStatus());
+        Assert.assertEquals(2, getBalancerMember("node1").getRequests());
+        Assert.assertEquals(2, getBalancerMember("node2").getRequests());
+        Assert.assertEquals(0, getBalancerMember("node1").getOutstandingRequests());
+    }
+
+    @Test
+    public void testFailingMemberIsEjected() throws Exception
+    {
+        initParameters.put("maxConsecutiveFailures", "2");
+        startBalancer(PortServlet.class);
+        server2.stop();
+
+        int successes = 0;
+        for (int i = 0; i < 10; i++)
+        {
+            if (sendToBalancer("/eject").getStatus() == 200)
+                ++successes;
+        }
+        Assert.assertEquals(8, successes);
+        BalancerServlet.BalancerMember member2 = getBalancerMember("node2");
+        Assert.assertTrue(member2.isEjected());
+        Assert.assertEquals(2, member2.getFailures());
+    }
+
+    @Test
+    public void testHealthCheckExcludesUnhealthyMember() throws Exception
+    {
+        initParameters.put("healthCheckPath", CONTEXT_PATH + SERVLET_PATH + "/health");
+        initParameters.put("healthCheckInterval", "100");
+        startBalancer(PortServlet.class);
+        // The first request initializes the balancer servlet, which starts the health checks.
+        Assert.assertEquals(200, sendToBalancer("/health").getStatus());
+        server2.stop();
+
+        BalancerServlet.BalancerMember member2 = getBalancerMember("node2");
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (member2.isHealthy() && System.nanoTime() < deadline)
+            Thread.sleep(50);
+        Assert.assertFalse(member2.isHealthy());
+        Assert.assertTrue(getBalancerMember("node1").isHealthy());
+
+        long requests2 = member2.getRequests();
+        for (int i = 0; i < 4; i++)
+            Assert.assertEquals(200, sendToBalancer("/health").getStatus());
+        Assert.assertEquals(requests2, member2.getRequests());
+    }
+
     private String readFirstLine(byte[] responseBytes) throws IOException
     {
         BufferedReader reader = new BufferedReader(new InputStreamReader(new ByteArrayInputStream(responseBytes)));
@@ -181,6 +272,16 @@ public class BalancerServletTest
         }
     }
 
+    public static final class PortServlet extends HttpServlet
+    {
+        @Override
+        protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException
+        {
+            resp.setContentType("text/plain");
+            resp.getWriter().print(req.getLocalPort());
+        }
+    }
+
     public static final class RelocationServlet extends HttpServlet
     {
         @Override
@@ -0,0 +1,143 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2015 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+package org.eclipse.jetty.proxy;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
+import org.eclipse.jetty.toolchain.test.AdvancedRunner;
+import org.eclipse.jetty.toolchain.test.annotation.Stress;
+import org.eclipse.jetty.util.log.Log;
+import org.eclipse.jetty.util.log.Logger;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+@RunWith(AdvancedRunner.class)
+public class ConnectHandlerBenchmarkTest
+{
+    private static final Logger logger = Log.getLogger(ConnectHandlerBenchmarkTest.class);
+
+    @Stress("High CPU")
+    @Test
+    public void testTunnelThroughput() throws Exception
+    {
+        long length = 256 * 1024 * 1024;
+        try (ServerSocket server = new ServerSocket(0))
+        {
+            Thread sink = new Thread(() -> sink(server));
+            sink.setDaemon(true);
+            sink.start();
+
+            // Fixed size buffers first, then adaptive buffers.
+            testTunnelThroughput(server.getLocalPort(), 4096, length);
+            testTunnelThroughput(server.getLocalPort(), 64 * 1024, length);
+        }
+    }
+
+    private void testTunnelThroughput(int serverPort, int maxBufferSize, long length) throws Exception
+    {
+        Server proxy = new Server();
+        ServerConnector proxyConnector = new ServerConnector(proxy);
+        proxy.addConnector(proxyConnector);
+        ConnectHandler connectHandler = new ConnectHandler();
+        connectHandler.setMaxBufferSize(maxBufferSize);
+        proxy.setHandler(connectHandler);
+        proxy.start();
+
+        try
+        {
+            int runs = 4;
+            for (int r = 0; r < runs; ++r)
+            {
+                try (Socket socket = new Socket("localhost", proxyConnector.getLocalPort()))
+                {
+                    socket.setSoTimeout(30000);
+                    OutputStream output = socket.getOutputStream();
+                    InputStream input = socket.getInputStream();
+
+                    String hostPort = "localhost:" + serverPort;
+                    String request = "" +
+                            "CONNECT " + hostPort + " HTTP/1.1\r\n" +
+                            "Host: " + hostPort + "\r\n" +
+                            "\r\n";
+                    output.write(request.getBytes(StandardCharsets.UTF_8));
+                    output.flush();
+                    readResponseHead(input);
+
+                    byte[] chunk = new byte[64 * 1024];
+                    long begin = System.nanoTime();
+                    for (long written = 0; written < length; written += chunk.length)
+                        output.write(chunk);
+                    socket.shutdownOutput();
+                    // The sink replies with a single byte after reading all the content.
+                    Assert.assertEquals(1, input.read());
+                    long end = System.nanoTime();
+
+                    long elapsed = TimeUnit.NANOSECONDS.toMillis(end - begin);
+                    logger.info("max buffer size {}: {} MiB => {} ms, {} MiB/s", maxBufferSize, length / 1024 / 1024, elapsed, elapsed == 0 ? "-" : 1000L * length / 1024 / 1024 / elapsed);
+                }
+            }
+        }
+        finally
+        {
+            proxy.stop();
+        }
+    }
+
+    private void readResponseHead(InputStream input) throws Exception
+    {
+        int crlfs = 0;
+        while (crlfs < 4)
+        {
+            int read = input.read();
+            Assert.assertTrue(read >= 0);
+            crlfs = (read == '\r' || read == '\n') ? crlfs + 1 : 0;
+        }
+    }
+
+    private void sink(ServerSocket server)
+    {
+        try
+        {
+            byte[] buffer = new byte[64 * 1024];
+            while (true)
+            {
+                try (Socket socket = server.accept())
+                {
+                    InputStream input = socket.getInputStream();
+                    while (input.read(buffer) >= 0)
+                    {
+                    }
+                    socket.getOutputStream().write(1);
+                }
+            }
+        }
+        catch (Exception x)
+        {
+            logger.ignore(x);
+        }
+    }
+}
@@ -27,15 +27,22 @@ import java.io.OutputStream;
 import java.net.InetAddress;
 import java.net.Socket;
 import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.Locale;
+import java.util.Set;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.servlet.ServletException;
 import javax.servlet.ServletOutputStream;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
+import org.eclipse.jetty.io.MappedByteBufferPool;
 import org.eclipse.jetty.server.Request;
 import org.eclipse.jetty.server.Server;
 import org.eclipse.jetty.server.ServerConnector;
@@ -739,6 +746,118 @@ public class ConnectHandlerTest extends AbstractConnectHandlerTest
         }
     }
 
+    @Test
+    public void testTunnelStatistics() throws Exception
+    {
+        String hostPort = "localhost:" + serverConnector.getLocalPort();
+        String get = "" +
+                "GET /echo HTTP/1.1\r\n" +
+                "Host: " + hostPort + "\r\n" +
+                "\r\n";
+        String request = "" +
+                "CONNECT " + hostPort + " HTTP/1.1\r\n" +
+                "Host: " + hostPort + "\r\n" +
+                "\r\n" +
+                get;
+        try (Socket socket = newSocket())
+        {
+            OutputStream output = socket.getOutputStream();
+            BufferedReader input = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+
+            // The GET request is pipelined and relayed from the HttpConnection buffer.
+            output.write(request.getBytes(StandardCharsets.UTF_8));
+            output.flush();
+
+            SimpleHttpResponse response = readResponse(input);
+            Assert.assertEquals("200", response.getCode());
+            response = readResponse(input);
+            Assert.assertEquals("200", response.getCode());
+            Assert.assertEquals("GET /echo", response.getBody());
+
+            Assert.assertEquals(1, connectHandler.getTunnels());
+        }
+
+        long end = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while ((connectHandler.getTunnels() > 0 || connectHandler.getBytesDownstream() == 0) && System.nanoTime() < end)
+            Thread.sleep(10);
+
+        Assert.assertEquals(0, connectHandler.getTunnels());
+        Assert.assertEquals(1, connectHandler.getTunnelsTotal());
+        Assert.assertEquals(get.length(), connectHandler.getBytesUpstream());
+        Assert.assertTrue(connectHandler.getBytesDownstream() > 0);
+
+        connectHandler.resetStatistics();
+        Assert.assertEquals(0, connectHandler.getTunnelsTotal());
+        Assert.assertEquals(0, connectHandler.getBytesUpstream());
+    }
+
+    @Test
+    public void testPrefilledBufferIsReleasedToConnectorPool() throws Exception
+    {
+        disposeProxy();
+        AtomicInteger foreign = new AtomicInteger();
+        connectHandler = new ConnectHandler();
+        connectHandler.setByteBufferPool(new MappedByteBufferPool()
+        {
+            private final Set<ByteBuffer> acquired = Collections.newSetFromMap(new IdentityHashMap<>());
+
+            @Override
+            public ByteBuffer acquire(int size, boolean direct)
+            {
+                ByteBuffer buffer = super.acquire(size, direct);
+                synchronized (acquired)
+                {
+                    acquired.add(buffer);
+                }
+                return buffer;
+            }
+
+            @Override
+            public void release(ByteBuffer buffer)
+            {
+                synchronized (acquired)
+                {
+                    if (!acquired.remove(buffer))
+                        foreign.incrementAndGet();
+                }
+                super.release(buffer);
+            }
+        });
+        proxy.setHandler(connectHandler);
+        proxy.start();
+
+        String hostPort = "localhost:" + serverConnector.getLocalPort();
+        String request = "" +
+                "CONNECT " + hostPort + " HTTP/1.1\r\n" +
+                "Host: " + hostPort + "\r\n" +
+                "\r\n" +
+                "GET /echo HTTP/1.1\r\n" +
+                "Host: " + hostPort + "\r\n" +
+                "\r\n";
+        try (Socket socket = newSocket())
+        {
+            OutputStream output = socket.getOutputStream();
+            BufferedReader input = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+
+            output.write(request.getBytes(StandardCharsets.UTF_8));
+            output.flush();
+
+            SimpleHttpResponse response = readResponse(input);
+            Assert.assertEquals("200", response.getCode());
+            response = readResponse(input);
+            Assert.assertEquals("200", response.getCode());
+            Assert.assertEquals("GET /echo", response.getBody());
+        }
+
+        long end = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (connectHandler.getTunnels() > 0 && System.nanoTime() < end)
+            Thread.sleep(10);
+        Assert.assertEquals(0, connectHandler.getTunnels());
+
+        // The buffer with the pipelined request belongs to the connector's pool.
+        Assert.assertEquals(0, foreign.get());
+    }
+
     private static class ServerHandler extends AbstractHandler
     {
         public void handle(String target, Request request, HttpServletRequest httpRequest, HttpServletResponse httpResponse) throws IOException, ServletException
@@ -0,0 +1,277 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2015 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+package org.eclipse.jetty.proxy;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import javax.servlet.ServletException;
+import javax.servlet.ServletInputStream;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.eclipse.jetty.client.HttpClient;
+import org.eclipse.jetty.client.api.ContentResponse;
+import org.eclipse.jetty.client.util.BytesContentProvider;
+import org.eclipse.jetty.http.HttpHeader;
+import org.eclipse.jetty.http.HttpMethod;
+import org.eclipse.jetty.http.HttpStatus;
+import org.eclipse.jetty.server.Handler;
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
+import org.eclipse.jetty.server.handler.AbstractHandler;
+import org.eclipse.jetty.toolchain.test.TestTracker;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+
+public class ProxyHandlerTest
+{
+    @Rule
+    public final TestTracker tracker = new TestTracker();
+    private Server server;
+    private ServerConnector serverConnector;
+    private Server proxy;
+    private ServerConnector proxyConnector;
+    private ProxyHandler proxyHandler;
+    private HttpClient client;
+
+    private void startServer(Handler handler) throws Exception
+    {
+        server = new Server();
+        serverConnector = new ServerConnector(server);
+        server.addConnector(serverConnector);
+        server.setHandler(handler);
+        server.start();
+    }
+
+    private void startProxy(String prefix, Handler next) throws Exception
+    {
+        startProxy(prefix, next, null);
+    }
+
+    private void startProxy(String prefix, Handler next, HttpClient httpClient) throws Exception
+    {
+        proxy = new Server();
+        proxyConnector = new ServerConnector(proxy);
+        proxy.addConnector(proxyConnector);
+        proxyHandler = new ProxyHandler("http://localhost:" + serverConnector.getLocalPort() + "/app");
+        proxyHandler.setPrefix(prefix);
+        proxyHandler.setHandler(next);
+        proxyHandler.setHttpClient(httpClient);
+        proxy.setHandler(proxyHandler);
+        proxy.start();
+    }
+
+    private void startClient() throws Exception
+    {
+        client = new HttpClient();
+        client.start();
+    }
+
+    @After
+    public void dispose() throws Exception
+    {
+        if (client != null)
+            client.stop();
+        if (proxy != null)
+            proxy.stop();
+        if (server != null)
+            server.stop();
+    }
+
+    @Test
+    public void testRequestIsForwarded() throws Exception
+    {
+        startServer(new AbstractHandler()
+        {
+            @Override
+            public void handle(String target, Request baseRequest, HttpServletRequest request, HttpServletResponse response) throws IOException, ServletException
+            {
+                baseRequest.setHandled(true);
+                response.setHeader("X-Target", target);
+                response.setHeader("X-Query", request.getQueryString());
+                response.setHeader("X-Via", request.getHeader(HttpHeader.VIA.asString()));
+                response.setHeader("X-Forwarded", request.getHeader(HttpHeader.X_FORWARDED_FOR.asString()));
+                response.setHeader("X-Custom", request.getHeader("X-Custom"));
+                response.setHeader("X-Hop", request.getHeader("X-Hop"));
+                response.getOutputStream().print("hello");
+            }
+        });
+        startProxy("/proxy", null);
+        startClient();
+
+        ContentResponse response = client.newRequest("localhost", proxyConnector.getLocalPort())
+                .path("/proxy/path?a=b")
+                .header("X-Custom", "custom")
+                .header("X-Hop", "hop")
+                .header(HttpHeader.CONNECTION, "X-Hop")
+                .timeout(5, TimeUnit.SECONDS)
+                .send();
+
+        Assert.assertEquals(200, response.getStatus());
+        Assert.assertEquals("hello", response.getContentAsString());
+        Assert.assertEquals("/app/path", response.getHeaders().get("X-Target"));
+        Assert.assertEquals("a=b", response.getHeaders().get("X-Query"));
+        Assert.assertNotNull(response.getHeaders().get("X-Via"));
+        Assert.assertNotNull(response.getHeaders().get("X-Forwarded"));
+        Assert.assertEquals("custom", response.getHeaders().get("X-Custom"));
+        Assert.assertNull(response.getHeaders().get("X-Hop"));
+    }
+
+    @Test
+    public void testDefaultHttpClientDoesNotDecodeContent() throws Exception
+    {
+        startServer(new EmptyHandler());
+        startProxy("/proxy", null);
+
+        HttpClient httpClient = proxyHandler.getHttpClient();
+        Assert.assertTrue(httpClient.getContentDecoderFactories().isEmpty());
+    }
+
+    @Test
+    public void testApplicationHttpClientIsNotReconfigured() throws Exception
+    {
+        startServer(new EmptyHandler());
+        HttpClient httpClient = new HttpClient();
+        startProxy("/proxy", null, httpClient);
+
+        Assert.assertSame(httpClient, proxyHandler.getHttpClient());
+        Assert.assertFalse(httpClient.getContentDecoderFactories().isEmpty());
+    }
+
+    @Test
+    public void testRequestNotMatchingPrefixIsHandledByNextHandler() throws Exception
+    {
+        startServer(new EmptyHandler());
+        startProxy("/proxy", new AbstractHandler()
+        {
+            @Override
+            public void handle(String target, Request baseRequest, HttpServletRequest request, HttpServletResponse response) throws IOException, ServletException
+            {
+                baseRequest.setHandled(true);
+                response.setStatus(HttpStatus.NO_CONTENT_204);
+            }
+        });
+        startClient();
+
+        ContentResponse response = client.newRequest("localhost", proxyConnector.getLocalPort())
+                .path("/other")
+                .timeout(5, TimeUnit.SECONDS)
+                .send();
+
+        Assert.assertEquals(HttpStatus.NO_CONTENT_204, response.getStatus());
+    }
+
+    @Test
+    public void testLargeRequestAndResponseContent() throws Exception
+    {
+        startServer(new AbstractHandler()
+        {
+            @Override
+            public void handle(String target, Request baseRequest, HttpServletRequest request, HttpServletResponse response) throws IOException, ServletException
+            {
+                baseRequest.setHandled(true);
+                // Echo the content.
+                ServletInputStream input = request.getInputStream();
+                ByteArrayOutputStream output = new ByteArrayOutputStream();
+                byte[] buffer = new byte[1024];
+                while (true)
+                {
+                    int read = input.read(buffer);
+                    if (read < 0)
+                        break;
+                    output.write(buffer, 0, read);
+                }
+                response.getOutputStream().write(output.toByteArray());
+            }
+        });
+        startProxy(null, null);
+        startClient();
+
+        byte[] content = new byte[1024 * 1024];
+        new Random().nextBytes(content);
+        ContentResponse response = client.newRequest("localhost", proxyConnector.getLocalPort())
+                .method(HttpMethod.POST)
+                .content(new BytesContentProvider(content))
+                .timeout(10, TimeUnit.SECONDS)
+                .send();
+
+        Assert.assertEquals(200, response.getStatus());
+        Assert.assertArrayEquals(content, response.getContent());
+    }
+
+    @Test
+    public void testServerDownReturns502() throws Exception
+    {
+        startServer(new EmptyHandler());
+        startProxy(null, null);
+        startClient();
+        server.stop();
+
+        ContentResponse response = client.newRequest("localhost", proxyConnector.getLocalPort())
+                .timeout(5, TimeUnit.SECONDS)
+                .send();
+
+        Assert.assertEquals(HttpStatus.BAD_GATEWAY_502, response.getStatus());
+    }
+
+    @Test
+    public void testServerTimeoutReturns504() throws Exception
+    {
+        startServer(new AbstractHandler()
+        {
+            @Override
+            public void handle(String target, Request baseRequest, HttpServletRequest request, HttpServletResponse response) throws IOException, ServletException
+            {
+                baseRequest.setHandled(true);
+                try
+                {
+                    TimeUnit.SECONDS.sleep(2);
+                }
+                catch (InterruptedException x)
+                {
+                    throw new ServletException(x);
+                }
+            }
+        });
+        startProxy(null, null);
+        proxyHandler.setTimeout(500);
+        startClient();
+
+        ContentResponse response = client.newRequest("localhost", proxyConnector.getLocalPort())
+                .timeout(5, TimeUnit.SECONDS)
+                .send();
+
+        Assert.assertEquals(HttpStatus.GATEWAY_TIMEOUT_504, response.getStatus());
+    }
+
+    private static class EmptyHandler extends AbstractHandler
+    {
+        @Override
+        public void handle(String target, Request baseRequest, HttpServletRequest request, HttpServletResponse response) throws IOException, ServletException
+        {
+            baseRequest.setHandled(true);
+        }
+    }
+}
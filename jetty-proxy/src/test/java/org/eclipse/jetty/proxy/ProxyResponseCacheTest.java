@@ -0,0 +1,405 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2015 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+
+package org.eclipse.jetty.proxy;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.eclipse.jetty.client.HttpClient;
+import org.eclipse.jetty.client.HttpProxy;
+import org.eclipse.jetty.client.api.ContentResponse;
+import org.eclipse.jetty.client.api.Request;
+import org.eclipse.jetty.http.HttpHeader;
+import org.eclipse.jetty.http.HttpMethod;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
+import org.eclipse.jetty.servlet.ServletContextHandler;
+import org.eclipse.jetty.servlet.ServletHolder;
+import org.eclipse.jetty.toolchain.test.TestTracker;
+import org.eclipse.jetty.toolchain.test.TestingDir;
+import org.eclipse.jetty.util.thread.QueuedThreadPool;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+@RunWith(Parameterized.class)
+public class ProxyResponseCacheTest
+{
+    @Parameterized.Parameters(name = "{0}")
+    public static Iterable<Object[]> data()
+    {
+        return Arrays.asList(new Object[][]{
+                {ProxyServlet.class},
+                {AsyncProxyServlet.class},
+                {AsyncMiddleManServlet.class}
+        });
+    }
+
+    @Rule
+    public final TestTracker tracker = new TestTracker();
+    @Rule
+    public final TestingDir testdir = new TestingDir();
+    private final AbstractProxyServlet proxyServlet;
+    private HttpClient client;
+    private Server proxy;
+    private ServerConnector proxyConnector;
+    private Server server;
+    private ServerConnector serverConnector;
+
+    public ProxyResponseCacheTest(Class<?> proxyServletClass) throws Exception
+    {
+        this.proxyServlet = (AbstractProxyServlet)proxyServletClass.newInstance();
+    }
+
+    private void start(CacheServlet servlet) throws Exception
+    {
+        start(servlet, new HashMap<>());
+    }
+
+    private void start(CacheServlet servlet, Map<String, String> initParams) throws Exception
+    {
+        QueuedThreadPool serverPool = new QueuedThreadPool();
+        serverPool.setName("server");
+        server = new Server(serverPool);
+        serverConnector = new ServerConnector(server);
+        server.addConnector(serverConnector);
+        ServletContextHandler appCtx = new ServletContextHandler(server, "/", true, false);
+        appCtx.addServlet(new ServletHolder(servlet), "/*");
+        server.start();
+
+        QueuedThreadPool proxyPool = new QueuedThreadPool();
+        proxyPool.setName("proxy");
+        proxy = new Server(proxyPool);
+        proxyConnector = new ServerConnector(proxy);
+        proxy.addConnector(proxyConnector);
+        ServletContextHandler proxyContext = new ServletContextHandler(proxy, "/", true, false);
+        ServletHolder proxyServletHolder = new ServletHolder(proxyServlet);
+        initParams.put("responseCache", "true");
+        proxyServletHolder.setInitParameters(initParams);
+        proxyServletHolder.setInitOrder(1);
+        proxyContext.addServlet(proxyServletHolder, "/*");
+        proxy.start();
+
+        QueuedThreadPool clientPool = new QueuedThreadPool();
+        clientPool.setName("client");
+        client = new HttpClient();
+        client.setExecutor(clientPool);
+        client.getProxyConfiguration().getProxies().add(new HttpProxy("localhost", proxyConnector.getLocalPort()));
+        client.start();
+    }
+
+    @After
+    public void dispose() throws Exception
+    {
+        client.stop();
+        proxy.stop();
+        server.stop();
+    }
+
+    private Request newRequest(String path)
+    {
+        return client.newRequest("localhost", serverConnector.getLocalPort())
+                .path(path)
+                .timeout(5, TimeUnit.SECONDS);
+    }
+
+    @Test
+    public void testFreshResponseIsServedFromCache() throws Exception
+    {
+        CacheServlet servlet = new CacheServlet("max-age=60");
+        start(servlet);
+
+        ContentResponse response1 = newRequest("/fresh").send();
+        Assert.assertEquals(200, response1.getStatus());
+        ContentResponse response2 = newRequest("/fresh").send();
+        Assert.assertEquals(200, response2.getStatus());
+
+        Assert.assertEquals(1, servlet.requests.get());
+        Assert.assertEquals(response1.getContentAsString(), response2.getContentAsString());
+        Assert.assertNotNull(response2.getHeaders().get(HttpHeader.AGE));
+        ProxyResponseCache cache = proxyServlet.getResponseCache();
+        Assert.assertEquals(1, cache.getHits());
+        Assert.assertEquals(1, cache.getMisses());
+        Assert.assertEquals(1, cache.getSize());
+    }
+
+    @Test
+    public void testPrivateResponseIsNotCached() throws Exception
+    {
+        CacheServlet servlet = new CacheServlet("private, max-age=60");
+        start(servlet);
+
+        newRequest("/private").send();
+        newRequest("/private").send();
+
+        Assert.assertEquals(2, servlet.requests.get());
+        Assert.assertEquals(0, proxyServlet.getResponseCache().getSize());
+    }
+
+    @Test
+    public void testResponseIsServedOnlyToMatchingVary() throws Exception
+    {
+        CacheServlet servlet = new CacheServlet("max-age=60")
+        {
+            @Override
+            protected void service(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException
+            {
+                response.setHeader(HttpHeader.VARY.asString(), HttpHeader.ACCEPT_LANGUAGE.asString());
+                super.service(request, response);
+            }
+        };
+        start(servlet);
+
+        ContentResponse response1 = newRequest("/vary").header(HttpHeader.ACCEPT_LANGUAGE, "en").send();
+        ContentResponse response2 = newRequest("/vary").header(HttpHeader.ACCEPT_LANGUAGE, "fr").send();
+        ContentResponse response3 = newRequest("/vary").header(HttpHeader.ACCEPT_LANGUAGE, "fr").send();
+
+        Assert.assertEquals(2, servlet.requests.get());
+        Assert.assertNotEquals(response1.getContentAsString(), response2.getContentAsString());
+        Assert.assertEquals(response2.getContentAsString(), response3.getContentAsString());
+    }
+
+    @Test
+    public void testStaleResponseIsRevalidated() throws Exception
+    {
+        CacheServlet servlet = new CacheServlet("max-age=0");
+        start(servlet);
+
+        ContentResponse response1 = newRequest("/stale").send();
+        ContentResponse response2 = newRequest("/stale").send();
+
+        // The second request is sent conditionally and the server replies 304.
+        Assert.assertEquals(2, servlet.requests.get());
+        Assert.assertEquals(1, servlet.notModified.get());
+        Assert.assertEquals(200, response2.getStatus());
+        Assert.assertEquals(response1.getContentAsString(), response2.getContentAsString());
+        Assert.assertEquals(1, proxyServlet.getResponseCache().getRevalidations());
+    }
+
+    @Test
+    public void testStaleResponseIsServedWhileRevalidated() throws Exception
+    {
+        CacheServlet servlet = new CacheServlet("max-age=0, stale-while-revalidate=60");
+        start(servlet);
+
+        ContentResponse response1 = newRequest("/swr").send();
+        ContentResponse response2 = newRequest("/swr").send();
+        Assert.assertEquals(200, response2.getStatus());
+        Assert.assertEquals(response1.getContentAsString(), response2.getContentAsString());
+        Assert.assertNotNull(response2.getHeaders().get(HttpHeader.WARNING));
+
+        ProxyResponseCache cache = proxyServlet.getResponseCache();
+        Assert.assertEquals(1, cache.getStaleHits());
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (cache.getRevalidations() == 0 && System.nanoTime() < deadline)
+            Thread.sleep(10);
+        Assert.assertEquals(1, cache.getRevalidations());
+        Assert.assertEquals(1, servlet.notModified.get());
+    }
+
+    @Test
+    public void testConcurrentMissesAreCoalesced() throws Exception
+    {
+        CountDownLatch latch = new CountDownLatch(1);
+        CacheServlet servlet = new CacheServlet("max-age=60")
+        {
+            @Override
+            protected void await() throws InterruptedException
+            {
+                latch.await(5, TimeUnit.SECONDS);
+            }
+        };
+        start(servlet);
+
+        int count = 3;
+        CountDownLatch responses = new CountDownLatch(count);
+        for (int i = 0; i < count; ++i)
+        {
+            newRequest("/coalesce").send(result ->
+            {
+                if (result.isSucceeded() && result.getResponse().getStatus() == 200)
+                    responses.countDown();
+            });
+        }
+
+        // Wait for the requests to arrive to the proxy.
+        ProxyResponseCache cache = proxyServlet.getResponseCache();
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (cache.getCoalesced() < count - 1 && System.nanoTime() < deadline)
+            Thread.sleep(10);
+
+        latch.countDown();
+        Assert.assertTrue(responses.await(5, TimeUnit.SECONDS));
+        Assert.assertEquals(1, servlet.requests.get());
+        Assert.assertEquals(count - 1, cache.getCoalesced());
+    }
+
+    @Test
+    public void testCoalescedMissesAreReleasedWhenResponseIsNotStorable() throws Exception
+    {
+        int count = 3;
+        CountDownLatch arrived = new CountDownLatch(count);
+        CacheServlet servlet = new CacheServlet("no-store")
+        {
+            @Override
+            protected void service(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException
+            {
+                arrived.countDown();
+                // Commit the headers, then wait for the coalesced requests.
+                response.setHeader(HttpHeader.CACHE_CONTROL.asString(), "no-store");
+                response.flushBuffer();
+                super.service(request, response);
+            }
+
+            @Override
+            protected void await() throws InterruptedException
+            {
+                arrived.await(5, TimeUnit.SECONDS);
+            }
+        };
+        start(servlet);
+
+        CountDownLatch responses = new CountDownLatch(count);
+        for (int i = 0; i < count; ++i)
+        {
+            newRequest("/pass").send(result ->
+            {
+                if (result.isSucceeded() && result.getResponse().getStatus() == 200)
+                    responses.countDown();
+            });
+        }
+
+        // All the requests reach the server while the first is still in progress.
+        Assert.assertTrue(arrived.await(5, TimeUnit.SECONDS));
+        Assert.assertTrue(responses.await(5, TimeUnit.SECONDS));
+        Assert.assertEquals(count, servlet.requests.get());
+        ProxyResponseCache cache = proxyServlet.getResponseCache();
+        Assert.assertEquals(0, cache.getSize());
+
+        // The key is now known not to be cacheable, so requests are not coalesced.
+        long coalesced = cache.getCoalesced();
+        newRequest("/pass").send();
+        Assert.assertEquals(coalesced, cache.getCoalesced());
+    }
+
+    @Test
+    public void testUnsafeMethodInvalidates() throws Exception
+    {
+        CacheServlet servlet = new CacheServlet("max-age=60");
+        start(servlet);
+
+        newRequest("/path").send();
+        newRequest("/path").method(HttpMethod.DELETE).send();
+        Assert.assertEquals(0, proxyServlet.getResponseCache().getSize());
+        newRequest("/path").send();
+
+        Assert.assertEquals(3, servlet.requests.get());
+    }
+
+    @Test
+    public void testResponsesEvictedFromMemoryAreServedFromDisk() throws Exception
+    {
+        CacheServlet servlet = new CacheServlet("max-age=60");
+        Map<String, String> initParams = new HashMap<>();
+        initParams.put("responseCacheDirectory", testdir.getEmptyPathDir().toString());
+        initParams.put("responseCacheMaxMemorySize", String.valueOf(CacheServlet.CONTENT_LENGTH));
+        start(servlet, initParams);
+
+        ContentResponse response1 = newRequest("/one").send();
+        ProxyResponseCache cache = proxyServlet.getResponseCache();
+        awaitSize(cache, 1);
+        newRequest("/two").send();
+        awaitSize(cache, 2);
+        Assert.assertEquals(CacheServlet.CONTENT_LENGTH, cache.getMemorySize());
+        Assert.assertEquals(CacheServlet.CONTENT_LENGTH, cache.getDiskSize());
+
+        ContentResponse response2 = newRequest("/one").send();
+        Assert.assertEquals(2, servlet.requests.get());
+        Assert.assertEquals(response1.getContentAsString(), response2.getContentAsString());
+    }
+
+    private void awaitSize(ProxyResponseCache cache, int size) throws InterruptedException
+    {
+        // The client may receive the whole content before the proxy stores the response.
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (cache.getSize() < size && System.nanoTime() < deadline)
+            Thread.sleep(10);
+        Assert.assertEquals(size, cache.getSize());
+    }
+
+    private static class CacheServlet extends HttpServlet
+    {
+        private static final int CONTENT_LENGTH = 16;
+
+        private final AtomicInteger requests = new AtomicInteger();
+        private final AtomicInteger notModified = new AtomicInteger();
+        private final String cacheControl;
+
+        private CacheServlet(String cacheControl)
+        {
+            this.cacheControl = cacheControl;
+        }
+
+        @Override
+        protected void service(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException
+        {
+            int count = requests.incrementAndGet();
+            try
+            {
+                await();
+            }
+            catch (InterruptedException x)
+            {
+                throw new ServletException(x);
+            }
+
+            String target = request.getRequestURI();
+            String etag = "\"" + target.hashCode() + "\"";
+            response.setHeader(HttpHeader.CACHE_CONTROL.asString(), cacheControl);
+            response.setHeader(HttpHeader.ETAG.asString(), etag);
+            if (etag.equals(request.getHeader(HttpHeader.IF_NONE_MATCH.asString())))
+            {
+                notModified.incrementAndGet();
+                response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+                return;
+            }
+
+            String content = String.format("%" + CONTENT_LENGTH + "s", target + count);
+            response.setContentLength(CONTENT_LENGTH);
+            response.getOutputStream().print(content.substring(0, CONTENT_LENGTH));
+        }
+
+        protected void await() throws InterruptedException
+        {
+        }
+    }
+}
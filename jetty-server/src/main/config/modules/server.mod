@@ -43,6 +43,9 @@ etc/jetty.xml
 ## Max response content write length that is buffered (in bytes)
 # jetty.httpConfig.outputAggregationSize=8192
 
+## Max time that a flush of buffered response content may be deferred (in ms)
+# jetty.httpConfig.outputFlushDelay=0
+
 ## Max request headers size (in bytes)
 # jetty.httpConfig.requestHeaderSize=8192
 
@@ -64,6 +67,9 @@ etc/jetty.xml
 ## Maximum number of error dispatches to prevent looping
 # jetty.httpConfig.maxErrorDispatches=10
 
+## Max unread request content read ahead of the application (in bytes)
+# jetty.httpConfig.maxBufferedRequestContent=0
+
 ## Maximum time to block in total for a blocking IO operation (default -1 is to use idleTimeout on progress)
 # jetty.httpConfig.blockingTimeout=-1
 
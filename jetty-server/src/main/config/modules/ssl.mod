@@ -45,6 +45,12 @@ http://git.eclipse.org/c/jetty/org.eclipse.jetty.project.git/plain/jetty-server/
 ## Whether request host names are checked to match any SNI names
 # jetty.ssl.sniHostCheck=true
 
+## Number of threads running TLS handshake tasks (0 runs them on the connection threads)
+# jetty.ssl.delegatedTaskThreads=0
+
+## Max number of queued TLS handshake tasks before handshakes are rejected
+# jetty.ssl.delegatedTaskQueueSize=1024
+
 ### SslContextFactory Configuration
 ## Note that OBF passwords are not secure, just protected from casual observation
 ## See http://www.eclipse.org/jetty/documentation/current/configuring-security-secure-passwords.html
@@ -81,3 +87,12 @@ http://git.eclipse.org/c/jetty/org.eclipse.jetty.project.git/plain/jetty-server/
 ## Whether cipher order is significant (since java 8 only)
 # jetty.sslContext.useCipherSuitesOrder=true
 
+## Whether OCSP responses are stapled to the server certificate (since java 9 only; JVM-wide setting)
+# jetty.sslContext.enableOCSPStapling=false
+
+## OCSP Responder queried for stapled responses, instead of the one in the certificate
+# jetty.sslContext.ocspStaplingResponderURL=
+
+## Whether the keystore and truststore are reloaded when their files change
+# jetty.sslContext.hotReload=false
+
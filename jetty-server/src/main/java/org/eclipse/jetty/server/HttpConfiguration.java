@@ -52,6 +52,8 @@ public class HttpConfiguration
     private final Trie<Boolean> _formEncodedMethods = new TreeTrie<>();
     private int _outputBufferSize=32*1024;
     private int _outputAggregationSize=_outputBufferSize/4;
+    private long _outputFlushDelay=0;
+    private OutputBufferSizer _outputBufferSizer;
     private int _requestHeaderSize=8*1024;
     private int _responseHeaderSize=8*1024;
     private int _headerCacheSize=512;
@@ -64,6 +66,7 @@ public class HttpConfiguration
     private boolean _delayDispatchUntilContent = true;
     private boolean _persistentConnectionsEnabled = true;
     private int _maxErrorDispatches = 10;
+    private int _maxBufferedRequestContent = 0;
 
     /* ------------------------------------------------------------ */
     /** 
@@ -108,6 +111,8 @@ public class HttpConfiguration
             _formEncodedMethods.put(s,Boolean.TRUE);
         _outputBufferSize=config._outputBufferSize;
         _outputAggregationSize=config._outputAggregationSize;
+        _outputFlushDelay=config._outputFlushDelay;
+        _outputBufferSizer=config._outputBufferSizer;
         _requestHeaderSize=config._requestHeaderSize;
         _responseHeaderSize=config._responseHeaderSize;
         _headerCacheSize=config._headerCacheSize;
@@ -120,6 +125,7 @@ public class HttpConfiguration
         _delayDispatchUntilContent=config._delayDispatchUntilContent;
         _persistentConnectionsEnabled=config._persistentConnectionsEnabled;
         _maxErrorDispatches=config._maxErrorDispatches;
+        _maxBufferedRequestContent=config._maxBufferedRequestContent;
     }
     
     /* ------------------------------------------------------------ */
@@ -164,6 +170,20 @@ public class HttpConfiguration
         return _outputAggregationSize;
     }
 
+    /* ------------------------------------------------------------ */
+    @ManagedAttribute("The max time in ms that a flush of aggregated HTTP output may be deferred")
+    public long getOutputFlushDelay()
+    {
+        return _outputFlushDelay;
+    }
+
+    /* ------------------------------------------------------------ */
+    @ManagedAttribute("The sizer of the buffer used to aggregate HTTP output")
+    public OutputBufferSizer getOutputBufferSizer()
+    {
+        return _outputBufferSizer;
+    }
+
     /* ------------------------------------------------------------ */
     @ManagedAttribute("The maximum allowed size in bytes for a HTTP request header")
     public int getRequestHeaderSize()
@@ -291,6 +311,13 @@ public class HttpConfiguration
         return _sendDateHeader;
     }
 
+    /* ------------------------------------------------------------ */
+    @ManagedAttribute("The max request content in bytes read ahead of the application")
+    public int getMaxBufferedRequestContent()
+    {
+        return _maxBufferedRequestContent;
+    }
+
     /* ------------------------------------------------------------ */
     /**
      * @param delay if true, delay the application dispatch until content is available (default false)
@@ -348,6 +375,36 @@ public class HttpConfiguration
         _outputAggregationSize = outputAggregationSize;
     }
 
+    /* ------------------------------------------------------------ */
+    /**
+     * Set the max time that an explicit blocking flush of aggregated response content may be deferred.
+     * <p>Applications that write small pieces of content and flush after each of them (as many JSON
+     * serializers do) cause a network write, and often a chunk, per flush.  With a flush delay, such
+     * a flush is deferred while less than {@link #getOutputAggregationSize()} bytes are aggregated,
+     * so that the content is coalesced with the content written after it, or with the completion of
+     * the response.  A deferred flush is performed by the first write or flush that occurs after the
+     * delay has expired, and always when the response is completed, but it is not performed by a timer:
+     * applications that rely on flush to stream content while otherwise idle should not use this.
+     * Flushes are never deferred for asynchronous requests.</p>
+     * @param outputFlushDelay the max time in ms that a flush may be deferred, or 0 to never defer flushes (default).
+     */
+    public void setOutputFlushDelay(long outputFlushDelay)
+    {
+        _outputFlushDelay = outputFlushDelay;
+    }
+
+    /* ------------------------------------------------------------ */
+    /**
+     * Set the sizer of the buffer into which response content is aggregated.
+     * <p>Without a sizer the aggregate buffer is acquired with {@link #getOutputBufferSize()},
+     * unless the response content length is known and smaller.</p>
+     * @param outputBufferSizer the sizer of the aggregate buffer, or null for none (default).
+     */
+    public void setOutputBufferSizer(OutputBufferSizer outputBufferSizer)
+    {
+        _outputBufferSizer = outputBufferSizer;
+    }
+
     /* ------------------------------------------------------------ */
     /** Set the maximum size of a request header.
      * <p>Larger headers will allow for more and/or larger cookies plus larger form content encoded 
@@ -381,6 +438,21 @@ public class HttpConfiguration
         _headerCacheSize = headerCacheSize;
     }
 
+    /* ------------------------------------------------------------ */
+    /** Set the maximum amount of request content that is read ahead of the application.
+     * <p>Request content that has been parsed but not yet read by the application is held
+     * in the request input.  While less than this amount is held, the connection continues to
+     * read from the network into fresh buffers; once it is reached, reading stops until the
+     * application consumes some content.  Larger values reduce the number of reads for fast
+     * uploads, but consume more memory per request when the application is slow to read.</p>
+     * @param maxBufferedRequestContent the max request content in bytes held unread, or 0 to
+     * only read further content once the previous content has been consumed (default).
+     */
+    public void setMaxBufferedRequestContent(int maxBufferedRequestContent)
+    {
+        _maxBufferedRequestContent = maxBufferedRequestContent;
+    }
+
     /* ------------------------------------------------------------ */
     /** Set the TCP/IP port used for CONFIDENTIAL and INTEGRAL redirections.
      * @param securePort the secure port to redirect to.
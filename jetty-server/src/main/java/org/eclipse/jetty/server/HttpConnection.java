@@ -64,7 +64,8 @@ public class HttpConnection extends AbstractConnection implements Runnable, Http
     private final HttpGenerator _generator;
     private final HttpChannelOverHttp _channel;
     private final HttpParser _parser;
-    private final AtomicInteger _contentBufferReferences=new AtomicInteger();
+    private final Object _contentBufferLock=new Object();
+    private volatile AtomicInteger _contentBufferReferences=new AtomicInteger();
     private volatile ByteBuffer _requestBuffer = null;
     private volatile ByteBuffer _chunk = null;
     private final BlockingReadCallback _blockingReadCallback = new BlockingReadCallback();
@@ -275,7 +276,7 @@ public class HttpConnection extends AbstractConnection implements Runnable, Http
             int filled = fillRequestBuffer();
             boolean handle = parseRequestBuffer();
             handled|=handle;
-            if (handle || filled<=0 || _channel.getRequest().getHttpInput().hasContent())
+            if (handle || filled<=0 || _input.hasContent() && _input.getBufferedContent()>=_config.getMaxBufferedRequestContent())
                 break;
         }
         return handled;
@@ -286,8 +287,16 @@ public class HttpConnection extends AbstractConnection implements Runnable, Http
     {
         if (_contentBufferReferences.get()>0)
         {
-            LOG.warn("{} fill with unconsumed content!",this);
-            return 0;
+            // The request buffer is referenced by unconsumed content, so it can only be
+            // left to that content and replaced if it has been fully parsed and the input
+            // is not already holding as much content as is allowed to be read ahead.
+            if (BufferUtil.hasContent(_requestBuffer) || _input.getBufferedContent()>=_config.getMaxBufferedRequestContent())
+            {
+                if (LOG.isDebugEnabled())
+                    LOG.debug("{} fill with unconsumed content {}",this,_input);
+                return 0;
+            }
+            detachRequestBuffer();
         }
 
         if (BufferUtil.isEmpty(_requestBuffer))
@@ -332,6 +341,22 @@ public class HttpConnection extends AbstractConnection implements Runnable, Http
         return 0;
     }
 
+    /* ------------------------------------------------------------ */
+    private void detachRequestBuffer()
+    {
+        synchronized (_contentBufferLock)
+        {
+            // The content still referencing the request buffer will release it
+            if (_contentBufferReferences.get()>0)
+            {
+                if (LOG.isDebugEnabled())
+                    LOG.debug("{} detach {}",this,BufferUtil.toDetailString(_requestBuffer));
+                _contentBufferReferences=new AtomicInteger();
+                _requestBuffer=null;
+            }
+        }
+    }
+
     /* ------------------------------------------------------------ */
     private boolean parseRequestBuffer()
     {
@@ -373,7 +398,7 @@ public class HttpConnection extends AbstractConnection implements Runnable, Http
                 {
                     LOG.warn("{} lingering content references?!?!",this);
                     _requestBuffer=null; // Not returned to pool!
-                    _contentBufferReferences.set(0);
+                    _contentBufferReferences=new AtomicInteger();
                 }
                 return;
             }
@@ -562,17 +587,34 @@ public class HttpConnection extends AbstractConnection implements Runnable, Http
 
     private class Content extends HttpInput.Content
     {
+        private final AtomicInteger _references;
+        private final ByteBuffer _buffer;
+
         public Content(ByteBuffer content)
         {
             super(content);
-            _contentBufferReferences.incrementAndGet();
+            synchronized (_contentBufferLock)
+            {
+                _references=_contentBufferReferences;
+                _buffer=_requestBuffer;
+                _references.incrementAndGet();
+            }
         }
 
         @Override
         public void succeeded()
         {
-            if (_contentBufferReferences.decrementAndGet()==0)
-                releaseRequestBuffer();
+            synchronized (_contentBufferLock)
+            {
+                if (_references.decrementAndGet()==0)
+                {
+                    // If the request buffer was detached to read ahead, it is released here.
+                    if (_references==_contentBufferReferences)
+                        releaseRequestBuffer();
+                    else if (_buffer!=null)
+                        _bufferPool.release(_buffer);
+                }
+            }
         }
 
         @Override
@@ -612,7 +654,8 @@ public class HttpConnection extends AbstractConnection implements Runnable, Http
         {
             if (fillAndParseForContent())
                 _channel.handle();
-            else if (!_input.isFinished())
+            // If content is already held, the application will ask for more by reading it
+            else if (!_input.isFinished() && !_input.hasContent())
                 asyncReadFillInterested();
         }
 
@@ -56,6 +56,7 @@ public class HttpInput extends ServletInputStream implements Runnable
     private ReadListener _listener;
     private State _state = STREAM;
     private long _contentConsumed;
+    private int _contentBuffered;
     private long _blockingTimeoutAt = -1;
 
     public HttpInput(HttpChannelState state)
@@ -83,6 +84,7 @@ public class HttpInput extends ServletInputStream implements Runnable
             _listener = null;
             _state = STREAM;
             _contentConsumed = 0;
+            _contentBuffered = 0;
         }
     }
 
@@ -315,6 +317,7 @@ public class HttpInput extends ServletInputStream implements Runnable
         int l = Math.min(content.remaining(), length);
         content.getContent().get(buffer, offset, l);
         _contentConsumed+=l;
+        _contentBuffered-=l;
         return l;
     }
 
@@ -331,6 +334,7 @@ public class HttpInput extends ServletInputStream implements Runnable
         ByteBuffer buffer = content.getContent();
         buffer.position(buffer.position()+l);
         _contentConsumed+=l;
+        _contentBuffered-=l;
         if (l>0 && !content.hasContent())
             pollContent(); // hungry succeed
 
@@ -381,6 +385,7 @@ public class HttpInput extends ServletInputStream implements Runnable
         synchronized (_inputQ)
         {
             _inputQ.offer(item);
+            _contentBuffered+=remaining(item);
             if (LOG.isDebugEnabled())
                 LOG.debug("{} addContent {}", this, item);
 
@@ -401,6 +406,18 @@ public class HttpInput extends ServletInputStream implements Runnable
         }
     }
 
+    /**
+     * @return the number of bytes of content that have been added to this input
+     * but not yet consumed by the application.
+     */
+    public int getBufferedContent()
+    {
+        synchronized (_inputQ)
+        {
+            return _contentBuffered;
+        }
+    }
+
     public void unblock()
     {
         synchronized (_inputQ)
@@ -24,6 +24,7 @@ import java.io.InputStream;
 import java.nio.ByteBuffer;
 import java.nio.channels.ReadableByteChannel;
 import java.nio.channels.WritePendingException;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicReference;
 
 import javax.servlet.RequestDispatcher;
@@ -74,6 +75,10 @@ public class HttpOutput extends ServletOutputStream implements Runnable
     private ByteBuffer _aggregate;
     private int _bufferSize;
     private int _commitSize;
+    private final long _flushDelay;
+    private long _flushDeferredAt;
+    private final OutputBufferSizer _sizer;
+    private String _sizerPath;
     private WriteListener _writeListener;
     private volatile Throwable _onError;
     /*
@@ -114,6 +119,8 @@ public class HttpOutput extends ServletOutputStream implements Runnable
             LOG.warn("OutputAggregationSize {} exceeds bufferSize {}",_commitSize,_bufferSize);
             _commitSize=_bufferSize;
         }
+        _flushDelay = TimeUnit.MILLISECONDS.toNanos(config.getOutputFlushDelay());
+        _sizer = config.getOutputBufferSizer();
     }
     
     public HttpChannel getHttpChannel()
@@ -158,6 +165,7 @@ public class HttpOutput extends ServletOutputStream implements Runnable
     
     private void write(ByteBuffer content, boolean complete) throws IOException
     {
+        _flushDeferredAt=0;
         try (Blocker blocker = _writeBlock.acquire())
         {        
             write(content, complete, blocker);
@@ -272,6 +280,70 @@ public class HttpOutput extends ServletOutputStream implements Runnable
         }
     }
 
+    /**
+     * Acquire the aggregate buffer if need be, or grow it up to the buffer size if it
+     * has been acquired smaller and has not the space for more content.
+     * @param len the length of the content to aggregate
+     */
+    private void acquireAggregate(int len)
+    {
+        int capacity = getBufferSize();
+        if (_aggregate == null)
+        {
+            int size = capacity;
+            long contentLength = _channel.getResponse().getLongContentLength();
+            if (contentLength>0 && contentLength<capacity)
+                size = (int)contentLength;
+            else if (_sizer != null)
+            {
+                _sizerPath = _sizer.getPath(_channel.getRequest());
+                size = _sizer.getBufferSize(_sizerPath, capacity);
+            }
+            _aggregate = _channel.getByteBufferPool().acquire(Math.min(capacity, Math.max(size, len)), _interceptor.isOptimizedForDirectBuffers());
+        }
+        else if (BufferUtil.space(_aggregate)<len && _aggregate.capacity()<capacity)
+        {
+            int size = Math.min(capacity, Math.max(2*_aggregate.capacity(), _aggregate.remaining()+len));
+            ByteBuffer aggregate = _channel.getByteBufferPool().acquire(size, _interceptor.isOptimizedForDirectBuffers());
+            BufferUtil.append(aggregate, _aggregate);
+            _channel.getByteBufferPool().release(_aggregate);
+            _aggregate = aggregate;
+        }
+    }
+
+    /**
+     * @return true if the aggregate buffer is full and cannot be grown any further
+     */
+    private boolean isAggregateFull()
+    {
+        return BufferUtil.isFull(_aggregate) && _aggregate.capacity()>=getBufferSize();
+    }
+
+    /**
+     * Defer a blocking flush of a small amount of aggregated content, so that it is
+     * coalesced with the content written next or with the completion of the response.
+     * @return true if the flush has been deferred
+     * @see HttpConfiguration#setOutputFlushDelay(long)
+     */
+    private boolean deferFlush()
+    {
+        if (_flushDelay<=0 || !BufferUtil.hasContent(_aggregate) || _aggregate.remaining()>=_commitSize)
+            return false;
+        if (_channel.getState().isAsyncStarted())
+            return false;
+        if (_flushDeferredAt==0)
+        {
+            _flushDeferredAt=System.nanoTime();
+            return true;
+        }
+        return !isFlushDeferralExpired();
+    }
+
+    private boolean isFlushDeferralExpired()
+    {
+        return _flushDeferredAt!=0 && System.nanoTime()-_flushDeferredAt>=_flushDelay;
+    }
+
     private void releaseBuffer()
     {
         if (_aggregate != null)
@@ -308,6 +380,8 @@ public class HttpOutput extends ServletOutputStream implements Runnable
             switch(_state.get())
             {
                 case OPEN:
+                    if (deferFlush())
+                        return;
                     write(BufferUtil.hasContent(_aggregate)?_aggregate:BufferUtil.EMPTY_BUFFER, false);
                     return;
 
@@ -361,14 +435,13 @@ public class HttpOutput extends ServletOutputStream implements Runnable
                     // Should we aggregate?
                     if (!complete && len<=_commitSize)
                     {
-                        if (_aggregate == null)
-                            _aggregate = _channel.getByteBufferPool().acquire(getBufferSize(), _interceptor.isOptimizedForDirectBuffers());
+                        acquireAggregate(len);
 
                         // YES - fill the aggregate with content from the buffer
                         int filled = BufferUtil.fill(_aggregate, b, off, len);
 
                         // return if we are not complete, not full and filled all the content
-                        if (filled==len && !BufferUtil.isFull(_aggregate))
+                        if (filled==len && !isAggregateFull())
                         {
                             if (!_state.compareAndSet(OutputState.PENDING, OutputState.ASYNC))
                                 throw new IllegalStateException();
@@ -403,18 +476,21 @@ public class HttpOutput extends ServletOutputStream implements Runnable
         // handle blocking write
 
         // Should we aggregate?
-        int capacity = getBufferSize();
         if (!complete && len<=_commitSize)
         {
-            if (_aggregate == null)
-                _aggregate = _channel.getByteBufferPool().acquire(capacity, _interceptor.isOptimizedForDirectBuffers());
+            acquireAggregate(len);
 
             // YES - fill the aggregate with content from the buffer
             int filled = BufferUtil.fill(_aggregate, b, off, len);
 
             // return if we are not complete, not full and filled all the content
-            if (filled==len && !BufferUtil.isFull(_aggregate))
+            if (filled==len && !isAggregateFull())
+            {
+                // unless a deferred flush is due
+                if (isFlushDeferralExpired())
+                    write(_aggregate, false);
                 return;
+            }
 
             // adjust offset/length
             off+=filled;
@@ -534,12 +610,11 @@ public class HttpOutput extends ServletOutputStream implements Runnable
             switch(_state.get())
             {
                 case OPEN:
-                    if (_aggregate == null)
-                        _aggregate = _channel.getByteBufferPool().acquire(getBufferSize(), _interceptor.isOptimizedForDirectBuffers());
+                    acquireAggregate(1);
                     BufferUtil.append(_aggregate, (byte)b);
 
-                    // Check if all written or full
-                    if (complete || BufferUtil.isFull(_aggregate))
+                    // Check if all written or full or a deferred flush is due
+                    if (complete || isAggregateFull() || isFlushDeferralExpired())
                     {
                         write(_aggregate, complete);
                         if (complete)
@@ -554,12 +629,11 @@ public class HttpOutput extends ServletOutputStream implements Runnable
                     if (!_state.compareAndSet(OutputState.READY, OutputState.PENDING))
                         continue;
 
-                    if (_aggregate == null)
-                        _aggregate = _channel.getByteBufferPool().acquire(getBufferSize(), _interceptor.isOptimizedForDirectBuffers());
+                    acquireAggregate(1);
                     BufferUtil.append(_aggregate, (byte)b);
 
                     // Check if all written or full
-                    if (!complete && !BufferUtil.isFull(_aggregate))
+                    if (!complete && !isAggregateFull())
                     {
                         if (!_state.compareAndSet(OutputState.PENDING, OutputState.ASYNC))
                             throw new IllegalStateException();
@@ -829,6 +903,11 @@ public class HttpOutput extends ServletOutputStream implements Runnable
 
     public void recycle()
     {
+        if (_sizerPath != null)
+        {
+            _sizer.onResponseWritten(_sizerPath, _written);
+            _sizerPath = null;
+        }
         resetBuffer();
         _interceptor=_channel;
     }
@@ -836,6 +915,7 @@ public class HttpOutput extends ServletOutputStream implements Runnable
     public void resetBuffer()
     {
         _written = 0;
+        _flushDeferredAt = 0;
         if (BufferUtil.hasContent(_aggregate))
             BufferUtil.clear(_aggregate);
         reopen();
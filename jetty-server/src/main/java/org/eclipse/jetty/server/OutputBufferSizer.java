@@ -0,0 +1,165 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2015 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+package org.eclipse.jetty.server;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.eclipse.jetty.util.annotation.ManagedAttribute;
+import org.eclipse.jetty.util.annotation.ManagedObject;
+import org.eclipse.jetty.util.annotation.ManagedOperation;
+
+/* ------------------------------------------------------------ */
+/** Sizes the aggregate buffer of {@link HttpOutput} from previously written responses.
+ * <p>Without a sizer, a response written with small writes aggregates them into a buffer of
+ * {@link HttpConfiguration#getOutputBufferSize()}, however small the response is.
+ * When an instance of this class is set with {@link HttpConfiguration#setOutputBufferSizer(OutputBufferSizer)},
+ * the aggregate buffer is first acquired with the size of the responses previously written for
+ * the same path, and is grown as needed up to the output buffer size, so that the point at which
+ * a response is committed does not change.</p>
+ * <p>Sizes are tracked for up to {@link #getMaxPaths()} paths, evicting the least recently used
+ * path when a new one is tracked.  The size for a path follows any larger response immediately
+ * and decays slowly towards smaller responses.</p>
+ */
+@ManagedObject("Response size based output buffer sizing")
+public class OutputBufferSizer
+{
+    private final Map<String, Integer> _sizes = new LinkedHashMap<String, Integer>(16, 0.75f, true)
+    {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Integer> eldest)
+        {
+            return size() > _maxPaths;
+        }
+    };
+    private volatile int _maxPaths = 1024;
+    private int _minBufferSize = 1024;
+
+    /* ------------------------------------------------------------ */
+    @ManagedAttribute("The max number of paths for which response sizes are tracked")
+    public int getMaxPaths()
+    {
+        return _maxPaths;
+    }
+
+    /* ------------------------------------------------------------ */
+    /**
+     * @param maxPaths the max number of paths for which response sizes are tracked
+     */
+    public void setMaxPaths(int maxPaths)
+    {
+        _maxPaths = maxPaths;
+    }
+
+    /* ------------------------------------------------------------ */
+    @ManagedAttribute("The min size in bytes of a sized output buffer")
+    public int getMinBufferSize()
+    {
+        return _minBufferSize;
+    }
+
+    /* ------------------------------------------------------------ */
+    /**
+     * @param minBufferSize the min size in bytes of a sized output buffer
+     */
+    public void setMinBufferSize(int minBufferSize)
+    {
+        _minBufferSize = minBufferSize;
+    }
+
+    /* ------------------------------------------------------------ */
+    @ManagedAttribute("The number of paths for which response sizes are tracked")
+    public int getPaths()
+    {
+        synchronized (_sizes)
+        {
+            return _sizes.size();
+        }
+    }
+
+    /* ------------------------------------------------------------ */
+    @ManagedOperation(value = "Clears the tracked response sizes", impact = "ACTION")
+    public void clear()
+    {
+        synchronized (_sizes)
+        {
+            _sizes.clear();
+        }
+    }
+
+    /* ------------------------------------------------------------ */
+    /**
+     * @param request the request being responded to
+     * @return the path for which the response size is tracked, or null if it is not tracked
+     */
+    public String getPath(Request request)
+    {
+        String path = request.getServletPath();
+        if (path == null || path.isEmpty())
+            path = request.getPathInfo();
+        return path;
+    }
+
+    /* ------------------------------------------------------------ */
+    /**
+     * @param path the path of the response
+     * @param maxBufferSize the output buffer size
+     * @return the size of the aggregate buffer to first acquire for the response
+     */
+    public int getBufferSize(String path, int maxBufferSize)
+    {
+        if (path == null)
+            return maxBufferSize;
+        Integer size;
+        synchronized (_sizes)
+        {
+            size = _sizes.get(path);
+        }
+        if (size == null)
+            return maxBufferSize;
+        return Math.min(maxBufferSize, Math.max(_minBufferSize, size));
+    }
+
+    /* ------------------------------------------------------------ */
+    /**
+     * @param path the path of the response
+     * @param written the number of bytes of content written for the response
+     */
+    public void onResponseWritten(String path, long written)
+    {
+        if (path == null)
+            return;
+
+        int size = (int)Math.min(Integer.MAX_VALUE, written);
+        synchronized (_sizes)
+        {
+            Integer current = _sizes.get(path);
+            if (current != null && size < current)
+                size = current - (current - size) / 8;
+            _sizes.put(path, size);
+        }
+    }
+
+    /* ------------------------------------------------------------ */
+    @Override
+    public String toString()
+    {
+        return String.format("%s@%x{paths=%d/%d}", getClass().getSimpleName(), hashCode(), getPaths(), _maxPaths);
+    }
+}
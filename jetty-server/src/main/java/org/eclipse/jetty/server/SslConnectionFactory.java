@@ -20,18 +20,50 @@
 package org.eclipse.jetty.server;
 
 
+import java.nio.ByteBuffer;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
 import javax.net.ssl.SSLEngine;
 import javax.net.ssl.SSLSession;
 
 import org.eclipse.jetty.http.HttpVersion;
+import org.eclipse.jetty.io.ByteBufferPool;
 import org.eclipse.jetty.io.Connection;
 import org.eclipse.jetty.io.EndPoint;
 import org.eclipse.jetty.io.ssl.SslConnection;
+import org.eclipse.jetty.io.ssl.SslHandshakeListener;
+import org.eclipse.jetty.util.Atomics;
+import org.eclipse.jetty.util.BlockingArrayQueue;
+import org.eclipse.jetty.util.annotation.ManagedAttribute;
+import org.eclipse.jetty.util.annotation.ManagedObject;
+import org.eclipse.jetty.util.annotation.ManagedOperation;
 import org.eclipse.jetty.util.annotation.Name;
+import org.eclipse.jetty.util.component.ContainerLifeCycle;
 import org.eclipse.jetty.util.ssl.SslContextFactory;
+import org.eclipse.jetty.util.thread.QueuedThreadPool;
 
+@ManagedObject("SSL Connection Factory")
 public class SslConnectionFactory extends AbstractConnectionFactory
 {
+    private final AtomicLong _handshakes = new AtomicLong();
+    private final AtomicLong _resumedHandshakes = new AtomicLong();
+    private final AtomicLong _failedHandshakes = new AtomicLong();
+    private final SslHandshakeListener _handshakeStatistics = new HandshakeStatistics();
+    private final AtomicLong _delegatedTasks = new AtomicLong();
+    private final AtomicLong _delegatedTasksRejected = new AtomicLong();
+    private final AtomicLong _delegatedTasksCompleted = new AtomicLong();
+    private final AtomicLong _delegatedTaskTime = new AtomicLong();
+    private final AtomicLong _delegatedTaskTimeMax = new AtomicLong();
+    private final AtomicLong _buffers = new AtomicLong();
+    private final AtomicLong _bufferBytes = new AtomicLong();
+    private final Executor _delegatedTaskStatistics = new DelegatedTaskExecutor();
+    private Executor _delegatedTaskExecutor;
+    private QueuedThreadPool _delegatedTaskPool;
+    private int _delegatedTaskThreads;
+    private int _delegatedTaskQueueSize = 1024;
     private final SslContextFactory _sslContextFactory;
     private final String _nextProtocol;
 
@@ -58,9 +90,162 @@ public class SslConnectionFactory extends AbstractConnectionFactory
         return _sslContextFactory;
     }
 
+    @ManagedAttribute("The number of successful TLS handshakes")
+    public long getHandshakes()
+    {
+        return _handshakes.get();
+    }
+
+    @ManagedAttribute("The number of successful TLS handshakes that resumed a cached session")
+    public long getResumedHandshakes()
+    {
+        return _resumedHandshakes.get();
+    }
+
+    @ManagedAttribute("The number of successful TLS handshakes that negotiated a new session")
+    public long getFullHandshakes()
+    {
+        return getHandshakes() - getResumedHandshakes();
+    }
+
+    @ManagedAttribute("The number of failed TLS handshakes")
+    public long getFailedHandshakes()
+    {
+        return _failedHandshakes.get();
+    }
+
+    @ManagedAttribute("The ratio of resumed to successful TLS handshakes")
+    public double getResumptionRatio()
+    {
+        long handshakes = getHandshakes();
+        return handshakes == 0 ? 0 : (double)getResumedHandshakes() / handshakes;
+    }
+
+    /**
+     * @return the executor that runs the SSLEngine delegated tasks, or null if they are run inline
+     * @see #setDelegatedTaskExecutor(Executor)
+     */
+    public Executor getDelegatedTaskExecutor()
+    {
+        return _delegatedTaskExecutor;
+    }
+
+    /**
+     * <p>Sets the executor that runs the SSLEngine delegated tasks, so that the expensive
+     * computations of TLS handshakes do not run on the threads that process requests.</p>
+     * <p>If the executor rejects a task, the handshake fails and the connection is closed.</p>
+     *
+     * @param executor the executor for delegated tasks, or null to use
+     * {@link #setDelegatedTaskThreads(int) a dedicated thread pool} or to run them inline
+     * @see SslConnection#setDelegatedTaskExecutor(Executor)
+     */
+    public void setDelegatedTaskExecutor(Executor executor)
+    {
+        updateBean(_delegatedTaskExecutor, executor);
+        _delegatedTaskExecutor = executor;
+    }
+
+    @ManagedAttribute("The number of threads of the dedicated pool for SSLEngine delegated tasks")
+    public int getDelegatedTaskThreads()
+    {
+        return _delegatedTaskThreads;
+    }
+
+    /**
+     * @param threads the number of threads of a dedicated pool started with this factory to run
+     * the SSLEngine delegated tasks when no {@link #setDelegatedTaskExecutor(Executor) executor}
+     * is set, or 0 (the default) to run the delegated tasks inline
+     */
+    public void setDelegatedTaskThreads(int threads)
+    {
+        _delegatedTaskThreads = threads;
+    }
+
+    @ManagedAttribute("The max number of SSLEngine delegated tasks queued by the dedicated pool")
+    public int getDelegatedTaskQueueSize()
+    {
+        return _delegatedTaskQueueSize;
+    }
+
+    /**
+     * @param queueSize the max number of SSLEngine delegated tasks queued by the dedicated pool
+     * before handshakes are rejected
+     */
+    public void setDelegatedTaskQueueSize(int queueSize)
+    {
+        _delegatedTaskQueueSize = queueSize;
+    }
+
+    @ManagedAttribute("The number of SSLEngine delegated tasks submitted")
+    public long getDelegatedTasks()
+    {
+        return _delegatedTasks.get();
+    }
+
+    @ManagedAttribute("The number of SSLEngine delegated tasks rejected")
+    public long getDelegatedTasksRejected()
+    {
+        return _delegatedTasksRejected.get();
+    }
+
+    @ManagedAttribute("The number of SSLEngine delegated tasks waiting in the queue of the dedicated pool")
+    public int getDelegatedTasksQueued()
+    {
+        QueuedThreadPool pool = _delegatedTaskPool;
+        return pool == null ? 0 : pool.getQueueSize();
+    }
+
+    @ManagedAttribute("The average time in ms to execute SSLEngine delegated tasks")
+    public double getDelegatedTaskTimeMean()
+    {
+        // Tasks still in execution have not yet contributed their time.
+        long tasks = _delegatedTasksCompleted.get();
+        return tasks == 0 ? 0 : (double)_delegatedTaskTime.get() / tasks / TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    @ManagedAttribute("The max time in ms to execute SSLEngine delegated tasks")
+    public long getDelegatedTaskTimeMax()
+    {
+        return TimeUnit.NANOSECONDS.toMillis(_delegatedTaskTimeMax.get());
+    }
+
+    @ManagedAttribute("The number of buffers held by SSL connections")
+    public long getBuffers()
+    {
+        return _buffers.get();
+    }
+
+    @ManagedAttribute("The number of bytes of the buffers held by SSL connections")
+    public long getBufferBytes()
+    {
+        return _bufferBytes.get();
+    }
+
+    @ManagedOperation(value = "Resets the TLS handshake statistics", impact = "ACTION")
+    public void resetStatistics()
+    {
+        _handshakes.set(0);
+        _resumedHandshakes.set(0);
+        _failedHandshakes.set(0);
+        _delegatedTasks.set(0);
+        _delegatedTasksRejected.set(0);
+        _delegatedTasksCompleted.set(0);
+        _delegatedTaskTime.set(0);
+        _delegatedTaskTimeMax.set(0);
+    }
+
     @Override
     protected void doStart() throws Exception
     {
+        if (_delegatedTaskExecutor == null && _delegatedTaskThreads > 0)
+        {
+            _delegatedTaskPool = new QueuedThreadPool(_delegatedTaskThreads, _delegatedTaskThreads, 60000,
+                    new BlockingArrayQueue<Runnable>(_delegatedTaskQueueSize, _delegatedTaskQueueSize, _delegatedTaskQueueSize));
+            _delegatedTaskPool.setName(String.format("ssl-tasks-%x", hashCode()));
+            _delegatedTaskPool.setDaemon(true);
+            addBean(_delegatedTaskPool, true);
+        }
+
         super.doStart();
 
         SSLEngine engine = _sslContextFactory.newSSLEngine();
@@ -71,6 +256,17 @@ public class SslConnectionFactory extends AbstractConnectionFactory
             setInputBufferSize(session.getPacketBufferSize());
     }
 
+    @Override
+    protected void doStop() throws Exception
+    {
+        super.doStop();
+        if (_delegatedTaskPool != null)
+        {
+            removeBean(_delegatedTaskPool);
+            _delegatedTaskPool = null;
+        }
+    }
+
     @Override
     public Connection newConnection(Connector connector, EndPoint endPoint)
     {
@@ -79,8 +275,20 @@ public class SslConnectionFactory extends AbstractConnectionFactory
 
         SslConnection sslConnection = newSslConnection(connector, endPoint, engine);
         sslConnection.setRenegotiationAllowed(_sslContextFactory.isRenegotiationAllowed());
+        if (_delegatedTaskExecutor != null || _delegatedTaskPool != null)
+            sslConnection.setDelegatedTaskExecutor(_delegatedTaskStatistics);
         configure(sslConnection, connector, endPoint);
 
+        // Add SslHandshakeListeners from Connector and from this factory
+        sslConnection.addHandshakeListener(_handshakeStatistics);
+        if (connector instanceof ContainerLifeCycle)
+        {
+            for (SslHandshakeListener listener : ((ContainerLifeCycle)connector).getBeans(SslHandshakeListener.class))
+                sslConnection.addHandshakeListener(listener);
+        }
+        for (SslHandshakeListener listener : getBeans(SslHandshakeListener.class))
+            sslConnection.addHandshakeListener(listener);
+
         ConnectionFactory next = connector.getConnectionFactory(_nextProtocol);
         EndPoint decryptedEndPoint = sslConnection.getDecryptedEndPoint();
         Connection connection = next.newConnection(connector, decryptedEndPoint);
@@ -91,7 +299,17 @@ public class SslConnectionFactory extends AbstractConnectionFactory
 
     protected SslConnection newSslConnection(Connector connector, EndPoint endPoint, SSLEngine engine)
     {
-        return new SslConnection(connector.getByteBufferPool(), connector.getExecutor(), endPoint, engine);
+        return new SslConnection(newByteBufferPool(connector), connector.getExecutor(), endPoint, engine);
+    }
+
+    /**
+     * @param connector the connector
+     * @return a pool that accounts the buffers held by SSL connections into
+     * {@link #getBufferBytes()} and delegates to the connector's pool
+     */
+    protected ByteBufferPool newByteBufferPool(Connector connector)
+    {
+        return new AccountingByteBufferPool(connector.getByteBufferPool());
     }
 
     @Override
@@ -100,4 +318,96 @@ public class SslConnectionFactory extends AbstractConnectionFactory
         return String.format("%s@%x{%s->%s}",this.getClass().getSimpleName(),hashCode(),getProtocol(),_nextProtocol);
     }
 
+    private class AccountingByteBufferPool implements ByteBufferPool
+    {
+        private final ByteBufferPool _delegate;
+
+        private AccountingByteBufferPool(ByteBufferPool delegate)
+        {
+            _delegate = delegate;
+        }
+
+        @Override
+        public ByteBuffer acquire(int size, boolean direct)
+        {
+            ByteBuffer buffer = _delegate.acquire(size, direct);
+            _buffers.incrementAndGet();
+            _bufferBytes.addAndGet(buffer.capacity());
+            return buffer;
+        }
+
+        @Override
+        public void release(ByteBuffer buffer)
+        {
+            _buffers.decrementAndGet();
+            _bufferBytes.addAndGet(-buffer.capacity());
+            _delegate.release(buffer);
+        }
+    }
+
+    private class DelegatedTaskExecutor implements Executor
+    {
+        @Override
+        public void execute(final Runnable task)
+        {
+            Executor executor = _delegatedTaskExecutor;
+            if (executor == null)
+                executor = _delegatedTaskPool;
+            if (executor == null)
+                throw new RejectedExecutionException(task.toString());
+
+            try
+            {
+                executor.execute(new Runnable()
+                {
+                    @Override
+                    public void run()
+                    {
+                        long begin = System.nanoTime();
+                        try
+                        {
+                            task.run();
+                        }
+                        finally
+                        {
+                            long elapsed = System.nanoTime() - begin;
+                            _delegatedTaskTime.addAndGet(elapsed);
+                            _delegatedTasksCompleted.incrementAndGet();
+                            Atomics.updateMax(_delegatedTaskTimeMax, elapsed);
+                        }
+                    }
+
+                    @Override
+                    public String toString()
+                    {
+                        return task.toString();
+                    }
+                });
+                _delegatedTasks.incrementAndGet();
+            }
+            catch (RejectedExecutionException x)
+            {
+                _delegatedTasksRejected.incrementAndGet();
+                throw x;
+            }
+        }
+    }
+
+    private class HandshakeStatistics implements SslHandshakeListener
+    {
+        @Override
+        public void handshakeSucceeded(Event event)
+        {
+            _handshakes.incrementAndGet();
+            if (event.isResumed())
+                _resumedHandshakes.incrementAndGet();
+        }
+
+        @Override
+        public void handshakeFailed(Event event, Throwable failure)
+        {
+            _failedHandshakes.incrementAndGet();
+        }
+    }
+
 }
@@ -28,6 +28,7 @@ import java.io.InputStream;
 import java.nio.ByteBuffer;
 import java.nio.channels.ReadableByteChannel;
 import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.servlet.AsyncContext;
@@ -279,6 +280,79 @@ public class HttpOutputTest
         assertThat(response,containsString("400\tThis is a big file"));
     }
     
+    @Test
+    public void testWriteSmallFlushed() throws Exception
+    {
+        final Resource simple = Resource.newClassPathResource("simple/simple.txt");
+        _handler._writeLengthIfKnown=false;
+        _handler._content=BufferUtil.toBuffer(simple,false);
+        _handler._arrayBuffer=new byte[4];
+        _handler._flush=true;
+
+        String response=_connector.getResponses("GET / HTTP/1.1\nHost: localhost:80\n\n",250,TimeUnit.MILLISECONDS);
+        assertThat(response,containsString("HTTP/1.1 200 OK"));
+        assertThat(response,containsString("Transfer-Encoding: chunked"));
+    }
+
+    @Test
+    public void testWriteSmallFlushDeferred() throws Exception
+    {
+        _connector.getConnectionFactory(HttpConnectionFactory.class).getHttpConfiguration().setOutputFlushDelay(60000);
+        final Resource simple = Resource.newClassPathResource("simple/simple.txt");
+        _handler._writeLengthIfKnown=false;
+        _handler._content=BufferUtil.toBuffer(simple,false);
+        _handler._arrayBuffer=new byte[4];
+        _handler._flush=true;
+
+        String response=_connector.getResponses("GET / HTTP/1.1\nHost: localhost:80\n\n",250,TimeUnit.MILLISECONDS);
+        assertThat(response,containsString("HTTP/1.1 200 OK"));
+        assertThat(response,containsString("Content-Length: 11"));
+        assertThat(response,Matchers.not(containsString("Transfer-Encoding")));
+    }
+
+    @Test
+    public void testWriteSmallSized() throws Exception
+    {
+        OutputBufferSizer sizer = new OutputBufferSizer();
+        _connector.getConnectionFactory(HttpConnectionFactory.class).getHttpConfiguration().setOutputBufferSizer(sizer);
+        final Resource simple = Resource.newClassPathResource("simple/simple.txt");
+        _handler._writeLengthIfKnown=false;
+        _handler._content=BufferUtil.toBuffer(simple,false);
+        _handler._arrayBuffer=new byte[8];
+
+        String response=_connector.getResponses("GET / HTTP/1.0\nHost: localhost:80\n\n");
+        assertThat(response,containsString("Content-Length: 11"));
+        for (int i=0; i<50 && sizer.getPaths()==0; i++)
+            Thread.sleep(10);
+        assertEquals(sizer.getMinBufferSize(),sizer.getBufferSize("/",4096));
+
+        // A larger response grows the aggregate buffer from the estimated size
+        final Resource big = Resource.newClassPathResource("simple/big.txt");
+        _handler._content=BufferUtil.toBuffer(big,false);
+        response=_connector.getResponses("GET / HTTP/1.0\nHost: localhost:80\n\n");
+        assertThat(response,containsString("HTTP/1.1 200 OK"));
+        assertThat(response,Matchers.endsWith(BufferUtil.toString(BufferUtil.toBuffer(big,false))));
+    }
+
+    @Test
+    public void testOutputBufferSizerEvictsLeastRecentlyUsedPath() throws Exception
+    {
+        OutputBufferSizer sizer = new OutputBufferSizer();
+        sizer.setMaxPaths(2);
+        sizer.setMinBufferSize(0);
+
+        sizer.onResponseWritten("/a",100);
+        sizer.onResponseWritten("/b",200);
+        assertEquals(100,sizer.getBufferSize("/a",4096));
+
+        // "/b" is now the least recently used path, so a new path evicts it
+        sizer.onResponseWritten("/c",300);
+        assertEquals(2,sizer.getPaths());
+        assertEquals(100,sizer.getBufferSize("/a",4096));
+        assertEquals(4096,sizer.getBufferSize("/b",4096));
+        assertEquals(300,sizer.getBufferSize("/c",4096));
+    }
+
     @Test
     public void testWriteMed() throws Exception
     {
@@ -603,6 +677,7 @@ public class HttpOutputTest
         AtomicInteger _owp = new AtomicInteger();
         boolean _writeLengthIfKnown=true;
         boolean _async;
+        boolean _flush;
         ByteBuffer _byteBuffer;
         byte[] _arrayBuffer;
         InputStream _contentInputStream;
@@ -689,6 +764,8 @@ public class HttpOutputTest
                         out.write(_arrayBuffer[0]);
                     else
                         out.write(_arrayBuffer,0,len);
+                    if (_flush)
+                        out.flush();
                 }
                 
                 return;
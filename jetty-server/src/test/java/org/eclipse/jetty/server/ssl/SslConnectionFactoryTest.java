@@ -21,6 +21,7 @@ package org.eclipse.jetty.server.ssl;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.Socket;
 import java.nio.charset.StandardCharsets;
@@ -28,6 +29,10 @@ import java.security.cert.X509Certificate;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Queue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.net.ssl.SNIHostName;
 import javax.net.ssl.SNIServerName;
@@ -40,6 +45,7 @@ import javax.servlet.http.HttpServletResponse;
 
 import org.eclipse.jetty.http.HttpVersion;
 import org.eclipse.jetty.io.Connection;
+import org.eclipse.jetty.io.ssl.SslHandshakeListener;
 import org.eclipse.jetty.server.HttpConfiguration;
 import org.eclipse.jetty.server.HttpConnectionFactory;
 import org.eclipse.jetty.server.Request;
@@ -154,9 +160,141 @@ public class SslConnectionFactoryTest
             
             Assert.assertThat(socket.getInputStream().read(),Matchers.equalTo(-1));
         }
-        
+
+        SslConnectionFactory factory = _connector.getBean(SslConnectionFactory.class);
+        Assert.assertEquals(1,factory.getFailedHandshakes());
+        Assert.assertEquals(0,factory.getHandshakes());
+    }
+
+    @Test
+    public void testHandshakeStatistics() throws Exception
+    {
+        final Queue<Boolean> resumed = new ConcurrentArrayQueue<>();
+        SslConnectionFactory factory = _connector.getBean(SslConnectionFactory.class);
+        factory.addBean(new SslHandshakeListener()
+        {
+            @Override
+            public void handshakeSucceeded(Event event)
+            {
+                resumed.add(event.isResumed());
+            }
+        });
+
+        SslContextFactory clientContextFactory = new SslContextFactory(true);
+        clientContextFactory.start();
+        try
+        {
+            SSLSocketFactory socketFactory = clientContextFactory.getSslContext().getSocketFactory();
+            for (int i = 0; i < 2; ++i)
+            {
+                try (SSLSocket sslSocket = (SSLSocket)socketFactory.createSocket("127.0.0.1", _port))
+                {
+                    sslSocket.getOutputStream().write(("GET /ctx/path HTTP/1.0\r\nHost: localhost:"+_port+"\r\n\r\n").getBytes(StandardCharsets.ISO_8859_1));
+                    String response = IO.toString(sslSocket.getInputStream());
+                    Assert.assertThat(response,Matchers.startsWith("HTTP/1.1 200 OK"));
+                }
+            }
+        }
+        finally
+        {
+            clientContextFactory.stop();
+        }
+
+        Assert.assertEquals(2,factory.getHandshakes());
+        Assert.assertEquals(0,factory.getFailedHandshakes());
+        Assert.assertEquals(2,resumed.size());
+        Assert.assertFalse(resumed.poll());
+        // The client reuses the cached session for the second connection.
+        Assert.assertTrue(resumed.poll());
+        Assert.assertEquals(1,factory.getResumedHandshakes());
+        Assert.assertEquals(1,factory.getFullHandshakes());
+
+        factory.resetStatistics();
+        Assert.assertEquals(0,factory.getHandshakes());
     }
     
+    @Test
+    public void testDelegatedTaskExecutor() throws Exception
+    {
+        final AtomicInteger executed = new AtomicInteger();
+        SslConnectionFactory factory = _connector.getBean(SslConnectionFactory.class);
+        factory.setDelegatedTaskExecutor(new Executor()
+        {
+            @Override
+            public void execute(Runnable task)
+            {
+                executed.incrementAndGet();
+                new Thread(task).start();
+            }
+        });
+
+        String response = getResponse("127.0.0.1",null);
+        Assert.assertThat(response,Matchers.containsString("host=127.0.0.1"));
+        Assert.assertThat(executed.get(),Matchers.greaterThan(0));
+        Assert.assertEquals(executed.get(),factory.getDelegatedTasks());
+        Assert.assertEquals(0,factory.getDelegatedTasksRejected());
+        Assert.assertEquals(1,factory.getHandshakes());
+    }
+
+    @Test
+    public void testDelegatedTaskRejected() throws Exception
+    {
+        SslConnectionFactory factory = _connector.getBean(SslConnectionFactory.class);
+        factory.setDelegatedTaskExecutor(new Executor()
+        {
+            @Override
+            public void execute(Runnable task)
+            {
+                throw new RejectedExecutionException();
+            }
+        });
+
+        try
+        {
+            getResponse("127.0.0.1",null);
+            Assert.fail();
+        }
+        catch (IOException x)
+        {
+            // Expected, the handshake fails
+        }
+        Assert.assertEquals(1,factory.getDelegatedTasksRejected());
+        Assert.assertEquals(1,factory.getFailedHandshakes());
+        Assert.assertEquals(0,factory.getHandshakes());
+    }
+
+    @Test
+    public void testIdleConnectionReleasesBuffers() throws Exception
+    {
+        SslConnectionFactory factory = _connector.getBean(SslConnectionFactory.class);
+        SslContextFactory clientContextFactory = new SslContextFactory(true);
+        clientContextFactory.start();
+        try (SSLSocket sslSocket = (SSLSocket)clientContextFactory.getSslContext().getSocketFactory().createSocket("127.0.0.1", _port))
+        {
+            sslSocket.getOutputStream().write(("GET /ctx/path HTTP/1.1\r\nHost: localhost:"+_port+"\r\n\r\n").getBytes(StandardCharsets.ISO_8859_1));
+            StringBuilder response = new StringBuilder();
+            InputStream input = sslSocket.getInputStream();
+            while (!response.toString().endsWith("\r\n0\r\n\r\n"))
+            {
+                int read = input.read();
+                Assert.assertTrue(read >= 0);
+                response.append((char)read);
+            }
+            Assert.assertThat(response.toString(),Matchers.startsWith("HTTP/1.1 200 OK"));
+
+            // The connection is idle, so it must not hold any buffer.
+            long end = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (factory.getBufferBytes() > 0 && System.nanoTime() < end)
+                Thread.sleep(10);
+            Assert.assertEquals(0,factory.getBuffers());
+            Assert.assertEquals(0,factory.getBufferBytes());
+        }
+        finally
+        {
+            clientContextFactory.stop();
+        }
+    }
+
     private String getResponse(String sniHost,String reqHost, String cn) throws Exception
     {
         SslContextFactory clientContextFactory = new SslContextFactory(true);
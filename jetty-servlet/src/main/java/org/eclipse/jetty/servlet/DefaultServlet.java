@@ -21,6 +21,8 @@ package org.eclipse.jetty.servlet;
 import static org.eclipse.jetty.http.GzipHttpContent.ETAG_GZIP_QUOTE;
 import static org.eclipse.jetty.http.GzipHttpContent.removeGzipFromETag;
 
+import java.io.Closeable;
+import java.io.EOFException;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
@@ -28,6 +30,8 @@ import java.io.OutputStream;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.SeekableByteChannel;
 import java.util.ArrayList;
 import java.util.Enumeration;
 import java.util.List;
@@ -932,32 +936,7 @@ public class DefaultServlet extends HttpServlet implements ResourceFactory
                     final AsyncContext context = request.startAsync();
                     context.setTimeout(0);
 
-                    ((HttpOutput)out).sendContent(content,new Callback()
-                    {
-                        @Override
-                        public void succeeded()
-                        {   
-                            context.complete();
-                            content.release();
-                        }
-
-                        @Override
-                        public void failed(Throwable x)
-                        {
-                            if (x instanceof IOException)
-                                LOG.debug(x);
-                            else
-                                LOG.warn(x);
-                            context.complete();
-                            content.release();
-                        }
-                        
-                        @Override
-                        public String toString() 
-                        {
-                            return String.format("DefaultServlet@%x$CB", DefaultServlet.this.hashCode());
-                        }
-                    });
+                    ((HttpOutput)out).sendContent(content,newAsyncCallback(context,content));
                     return false;
                 }
                 // otherwise write content blocking
@@ -992,7 +971,26 @@ public class DefaultServlet extends HttpServlet implements ResourceFactory
                     response.addDateHeader(HttpHeader.DATE.asString(),System.currentTimeMillis());
                 response.setHeader(HttpHeader.CONTENT_RANGE.asString(),
                         singleSatisfiableRange.toHeaderRangeString(content_length));
-                content.getResource().writeTo(out,singleSatisfiableRange.getFirst(content_length),singleLength);
+                long start=singleSatisfiableRange.getFirst(content_length);
+
+                try (RangeWriter writer=RangeWriter.newRangeWriter(out,content))
+                {
+                    if (writer==null)
+                        content.getResource().writeTo(out,start,singleLength);
+                    // write the range asynchronously if supported
+                    else if (!written && request.isAsyncSupported())
+                    {
+                        final AsyncContext context = request.startAsync();
+                        context.setTimeout(0);
+                        if (writer.isCached())
+                            ((HttpOutput)out).sendContent(writer.slice(start,singleLength),newAsyncCallback(context,content));
+                        else
+                            ((HttpOutput)out).sendContent(writer.channel(start,singleLength),newAsyncCallback(context,content));
+                        return false;
+                    }
+                    else
+                        writer.write(start,singleLength);
+                }
                 return true;
             }
 
@@ -1019,11 +1017,8 @@ public class DefaultServlet extends HttpServlet implements ResourceFactory
                 ctp = "multipart/byteranges; boundary=";
             response.setContentType(ctp+multi.getBoundary());
 
-            InputStream in=content.getResource().getInputStream();
-            long pos=0;
-
             // calculate the content-length
-            int length=0;
+            long length=0;
             String[] header = new String[ranges.size()];
             for (int i=0;i<ranges.size();i++)
             {
@@ -1038,44 +1033,86 @@ public class DefaultServlet extends HttpServlet implements ResourceFactory
                     (ibr.getLast(content_length)-ibr.getFirst(content_length))+1;
             }
             length+=2+2+multi.getBoundary().length()+2+2;
-            response.setContentLength(length);
+            response.setContentLengthLong(length);
 
-            for (int i=0;i<ranges.size();i++)
+            try (RangeWriter writer=RangeWriter.newRangeWriter(out,content))
             {
-                InclusiveByteRange ibr =  ranges.get(i);
-                multi.startPart(mimetype,new String[]{HttpHeader.CONTENT_RANGE+": "+header[i]});
+                InputStream in=writer==null?content.getResource().getInputStream():null;
+                long pos=0;
 
-                long start=ibr.getFirst(content_length);
-                long size=ibr.getSize(content_length);
-                if (in!=null)
+                for (int i=0;i<ranges.size();i++)
                 {
-                    // Handle non cached resource
-                    if (start<pos)
+                    InclusiveByteRange ibr =  ranges.get(i);
+                    multi.startPart(mimetype,new String[]{HttpHeader.CONTENT_RANGE+": "+header[i]});
+
+                    long start=ibr.getFirst(content_length);
+                    long size=ibr.getSize(content_length);
+                    if (writer!=null)
                     {
-                        in.close();
-                        in=content.getResource().getInputStream();
-                        pos=0;
+                        // Handle cached or seekable resource
+                        writer.write(start,size);
                     }
-                    if (pos<start)
+                    else if (in!=null)
                     {
-                        in.skip(start-pos);
-                        pos=start;
+                        // Handle non cached resource
+                        if (start<pos)
+                        {
+                            in.close();
+                            in=content.getResource().getInputStream();
+                            pos=0;
+                        }
+                        if (pos<start)
+                        {
+                            in.skip(start-pos);
+                            pos=start;
+                        }
+
+                        IO.copy(in,multi,size);
+                        pos+=size;
                     }
-                    
-                    IO.copy(in,multi,size);
-                    pos+=size;
+                    else
+                        // Handle cached resource
+                        content.getResource().writeTo(multi,start,size);
                 }
-                else
-                    // Handle cached resource
-                    content.getResource().writeTo(multi,start,size);
+                if (in!=null)
+                    in.close();
             }
-            if (in!=null)
-                in.close();
             multi.close();
         }
         return true;
     }
 
+    /* ------------------------------------------------------------ */
+    private Callback newAsyncCallback(final AsyncContext context, final HttpContent content)
+    {
+        return new Callback()
+        {
+            @Override
+            public void succeeded()
+            {   
+                context.complete();
+                content.release();
+            }
+
+            @Override
+            public void failed(Throwable x)
+            {
+                if (x instanceof IOException)
+                    LOG.debug(x);
+                else
+                    LOG.warn(x);
+                context.complete();
+                content.release();
+            }
+            
+            @Override
+            public String toString() 
+            {
+                return String.format("DefaultServlet@%x$CB", DefaultServlet.this.hashCode());
+            }
+        };
+    }
+
     /* ------------------------------------------------------------ */
     protected void putHeaders(HttpServletResponse response,HttpContent content, long contentLength)
     {
@@ -1113,4 +1150,180 @@ public class DefaultServlet extends HttpServlet implements ResourceFactory
         super.destroy();
     }
 
+    /* ------------------------------------------------------------ */
+    /** Writes ranges of a content to a {@link HttpOutput} without reading the content as a stream.
+     * <p>Ranges are sliced from the buffer of cached content, or else read with positional reads
+     * of the content channel into a pooled buffer.
+     * A single range may instead be obtained as a slice or as a channel, to be sent asynchronously.
+     */
+    private static class RangeWriter implements Closeable
+    {
+        private final HttpOutput _out;
+        private final ByteBuffer _content;
+        private SeekableByteChannel _channel;
+        private ByteBuffer _buffer;
+
+        /* ------------------------------------------------------------ */
+        /**
+         * @param out the output to write ranges to
+         * @param content the content to write ranges of
+         * @return a RangeWriter or null if the content can only be read as a stream
+         * @throws IOException if the content channel cannot be opened
+         */
+        static RangeWriter newRangeWriter(OutputStream out, HttpContent content) throws IOException
+        {
+            if (!(out instanceof HttpOutput))
+                return null;
+            HttpOutput http_out = (HttpOutput)out;
+
+            // Only cached content is sliced, as other content would be read whole into a new buffer
+            if (content instanceof ResourceCache.CachedHttpContent)
+            {
+                ByteBuffer buffer = http_out.getHttpChannel().useDirectBuffers()?content.getDirectBuffer():null;
+                if (buffer==null)
+                    buffer=content.getIndirectBuffer();
+                if (buffer!=null)
+                    return new RangeWriter(http_out,buffer,null);
+            }
+
+            ReadableByteChannel channel = content.getReadableByteChannel();
+            if (channel instanceof SeekableByteChannel)
+                return new RangeWriter(http_out,null,(SeekableByteChannel)channel);
+            if (channel!=null)
+                channel.close();
+            return null;
+        }
+
+        /* ------------------------------------------------------------ */
+        private RangeWriter(HttpOutput out, ByteBuffer content, SeekableByteChannel channel)
+        {
+            _out=out;
+            _content=content;
+            _channel=channel;
+        }
+
+        /* ------------------------------------------------------------ */
+        boolean isCached()
+        {
+            return _content!=null;
+        }
+
+        /* ------------------------------------------------------------ */
+        ByteBuffer slice(long start, long size)
+        {
+            ByteBuffer slice=_content.duplicate();
+            slice.position(slice.position()+(int)start);
+            slice.limit(slice.position()+(int)size);
+            return slice;
+        }
+
+        /* ------------------------------------------------------------ */
+        /**
+         * @param start the first byte of the range
+         * @param size the number of bytes of the range
+         * @return a channel reading the range of the content channel, which it then owns
+         * @throws IOException if the content channel cannot be positioned
+         */
+        ReadableByteChannel channel(final long start, final long size) throws IOException
+        {
+            final SeekableByteChannel channel=_channel;
+            _channel=null;
+            channel.position(start);
+            return new ReadableByteChannel()
+            {
+                private long _remaining=size;
+
+                @Override
+                public int read(ByteBuffer buffer) throws IOException
+                {
+                    if (_remaining==0)
+                        return -1;
+                    int limit=buffer.limit();
+                    if (buffer.remaining()>_remaining)
+                        buffer.limit(buffer.position()+(int)_remaining);
+                    try
+                    {
+                        int read=channel.read(buffer);
+                        if (read<0)
+                            throw new EOFException("Range "+start+"-"+(start+size-1)+" beyond end of content");
+                        _remaining-=read;
+                        return read;
+                    }
+                    finally
+                    {
+                        buffer.limit(limit);
+                    }
+                }
+
+                @Override
+                public boolean isOpen()
+                {
+                    return channel.isOpen();
+                }
+
+                @Override
+                public void close() throws IOException
+                {
+                    channel.close();
+                }
+            };
+        }
+
+        /* ------------------------------------------------------------ */
+        void write(long start, long size) throws IOException
+        {
+            int buffer_size=_out.getBufferSize();
+            if (_content!=null)
+            {
+                ByteBuffer slice=slice(start,size);
+                if (slice.isDirect())
+                {
+                    _out.write(slice);
+                    return;
+                }
+
+                // write indirect content a buffer size at a time to avoid the JVM pooling large direct buffers
+                int position=slice.position();
+                int limit=slice.limit();
+                while (position<limit)
+                {
+                    ByteBuffer chunk=slice.duplicate();
+                    chunk.position(position);
+                    chunk.limit(Math.min(limit,position+buffer_size));
+                    position=chunk.limit();
+                    _out.write(chunk);
+                }
+                return;
+            }
+
+            if (_buffer==null)
+                _buffer=_out.getHttpChannel().getByteBufferPool().acquire(buffer_size,_out.getHttpChannel().useDirectBuffers());
+            _channel.position(start);
+            while (size>0)
+            {
+                BufferUtil.clearToFill(_buffer);
+                if (_buffer.remaining()>size)
+                    _buffer.limit((int)size);
+                int read=_channel.read(_buffer);
+                if (read<0)
+                    throw new EOFException("Range "+start+"-"+(start+size-1)+" beyond end of content");
+                BufferUtil.flipToFlush(_buffer,0);
+                size-=read;
+                _out.write(_buffer);
+            }
+        }
+
+        /* ------------------------------------------------------------ */
+        @Override
+        public void close() throws IOException
+        {
+            if (_buffer!=null)
+            {
+                _out.getHttpChannel().getByteBufferPool().release(_buffer);
+                _buffer=null;
+            }
+            if (_channel!=null)
+                _channel.close();
+        }
+    }
 }
@@ -21,6 +21,7 @@ package org.eclipse.jetty.servlet;
 import static org.hamcrest.Matchers.containsString;
 import static org.hamcrest.Matchers.instanceOf;
 import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
 import static org.hamcrest.Matchers.not;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertThat;
@@ -909,4 +910,88 @@ public class AsyncIOServletTest
         Assert.assertFalse(oda.get());
     }
 
+    @Test
+    public void testSlowAsyncReadBuffersBoundedContent() throws Exception
+    {
+        final int maxBuffered = 16 * 1024;
+        final byte[] data = new byte[1024 * 1024];
+        final AtomicInteger read = new AtomicInteger();
+        final AtomicInteger buffered = new AtomicInteger();
+
+        startServer(new HttpServlet()
+        {
+            @Override
+            protected void service(final HttpServletRequest request, final HttpServletResponse response) throws ServletException, IOException
+            {
+                final AsyncContext async = request.startAsync();
+                async.setTimeout(10000);
+                final ServletInputStream in = request.getInputStream();
+                final byte[] buffer = new byte[4096];
+
+                in.setReadListener(new ReadListener()
+                {
+                    @Override
+                    public void onDataAvailable() throws IOException
+                    {
+                        while (in.isReady())
+                        {
+                            buffered.set(Math.max(buffered.get(), Request.getBaseRequest(request).getHttpInput().getBufferedContent()));
+                            int l = in.read(buffer);
+                            if (l < 0)
+                                return;
+                            read.addAndGet(l);
+                            try
+                            {
+                                // Simulate a slow consumer.
+                                Thread.sleep(1);
+                            }
+                            catch (InterruptedException x)
+                            {
+                                throw new IOException(x);
+                            }
+                        }
+                    }
+
+                    @Override
+                    public void onAllDataRead() throws IOException
+                    {
+                        response.getOutputStream().write("OK\n".getBytes(StandardCharsets.ISO_8859_1));
+                        async.complete();
+                    }
+
+                    @Override
+                    public void onError(Throwable t)
+                    {
+                        t.printStackTrace();
+                        async.complete();
+                    }
+                });
+            }
+        });
+        HttpConnectionFactory factory = connector.getConnectionFactory(HttpConnectionFactory.class);
+        factory.getHttpConfiguration().setMaxBufferedRequestContent(maxBuffered);
+
+        String request = "POST " + path + " HTTP/1.1\r\n" +
+                "Host: localhost:" + connector.getLocalPort() + "\r\n" +
+                "Content-Length: " + data.length + "\r\n" +
+                "Connection: close\r\n" +
+                "\r\n";
+
+        try (Socket client = new Socket("localhost", connector.getLocalPort()))
+        {
+            client.setSoTimeout(10000);
+            OutputStream output = client.getOutputStream();
+            output.write(request.getBytes(StandardCharsets.UTF_8));
+            output.write(data);
+            output.flush();
+
+            String response = IO.toString(client.getInputStream());
+            assertThat(response, containsString(" 200 OK"));
+            assertThat(response, containsString("OK\n"));
+        }
+
+        assertEquals(data.length, read.get());
+        // The content held is bounded by the read ahead plus the last buffer filled.
+        assertThat(buffered.get(), lessThanOrEqualTo(maxBuffered + factory.getInputBufferSize()));
+    }
 }
@@ -71,12 +71,22 @@ public class DefaultServletRangesTest
         FS.ensureDirExists(resBase);
         File data = new File(resBase, "data.txt");
         createFile(data, DATA);
+        StringBuilder big = new StringBuilder();
+        for (int i = 0; i < 1000; i++)
+            big.append(DATA);
+        createFile(new File(resBase, "big.txt"), big.toString());
         String resBasePath = resBase.getAbsolutePath();
 
         ServletHolder defholder = context.addServlet(DefaultServlet.class, "/");
         defholder.setInitParameter("acceptRanges", "true");
         defholder.setInitParameter("resourceBase", resBasePath);
 
+        ServletHolder cachedholder = context.addServlet(DefaultServlet.class, "/cached/*");
+        cachedholder.setInitParameter("acceptRanges", "true");
+        cachedholder.setInitParameter("resourceBase", resBasePath);
+        cachedholder.setInitParameter("pathInfoOnly", "true");
+        cachedholder.setInitParameter("maxCachedFiles", "10");
+
         server.start();
     }
 
@@ -164,6 +174,85 @@ public class DefaultServletRangesTest
 
     }
 
+    @Test
+    public void testMultipleRangeRequestsOutOfOrder() throws Exception
+    {
+        String response;
+        response = connector.getResponses(
+                "GET /context/data.txt HTTP/1.1\r\n" +
+                "Host: localhost\r\n" +
+                "Connection: close\r\n"+
+                "Range: bytes=40-49,0-9\r\n" +
+                "\r\n");
+        int start = response.indexOf("--jetty");
+        String body = response.substring(start);
+        assertResponseContains("206 Partial", response);
+        assertResponseContains("Content-Length: " + body.length(), response);
+        int second = assertResponseContains(DATA.substring(0,10), response);
+        int first = assertResponseContains(DATA.substring(40,50), response);
+        assertTrue(first < second);
+    }
+
+    @Test
+    public void testLargeSingleRangeRequest() throws Exception
+    {
+        // The range spans several output buffers, read from the file channel.
+        String response;
+        response = connector.getResponses(
+                "GET /context/big.txt HTTP/1.1\r\n" +
+                "Host: localhost\r\n" +
+                "Connection: close\r\n"+
+                "Range: bytes=100-70099\r\n" +
+                "\r\n");
+        assertResponseContains("206 Partial", response);
+        assertResponseContains("Content-Length: 70000", response);
+        assertResponseContains("Content-Range: bytes 100-70099/80000", response);
+        StringBuilder big = new StringBuilder();
+        for (int i = 0; i < 1000; i++)
+            big.append(DATA);
+        assertTrue(response.endsWith("\r\n\r\n" + big.substring(100,70100)));
+    }
+
+    @Test
+    public void testCachedSingleRangeRequests() throws Exception
+    {
+        String response;
+
+        response = connector.getResponses(
+                "GET /context/cached/data.txt HTTP/1.1\r\n" +
+                        "Host: localhost\r\n" +
+                        "Connection: close\r\n"+
+                        "Range: bytes=3-9\r\n" +
+                        "\r\n");
+        assertResponseContains("206 Partial", response);
+        assertResponseContains("Content-Length: 7", response);
+        assertResponseContains("Content-Range: bytes 3-9/80", response);
+        assertTrue(response.endsWith("\r\n\r\n" + DATA.substring(3,10)));
+    }
+
+    @Test
+    public void testCachedMultipleRangeRequests() throws Exception
+    {
+        String response;
+        response = connector.getResponses(
+                "GET /context/cached/data.txt HTTP/1.1\r\n" +
+                "Host: localhost\r\n" +
+                "Connection: close\r\n"+
+                "Range: bytes=40-49,0-9\r\n" +
+                "\r\n");
+        int start = response.indexOf("--jetty");
+        String body = response.substring(start);
+        String boundary = body.substring(0, body.indexOf("\r\n"));
+        assertResponseContains("206 Partial", response);
+        assertResponseContains("Content-Range: bytes 40-49/80", response);
+        assertResponseContains("Content-Range: bytes 0-9/80", response);
+        assertResponseContains("Content-Length: " + body.length(), response);
+        int second = assertResponseContains(DATA.substring(0,10), response);
+        int first = assertResponseContains(DATA.substring(40,50), response);
+        assertTrue(first < second);
+        assertTrue(body.endsWith(boundary + "--\r\n"));
+    }
+
     @Test
     public void testOpenEndRange() throws Exception
     {
@@ -72,6 +72,9 @@ import org.eclipse.jetty.util.log.Logger;
  * secondary resources are pushed to the client, unless the request carries
  * {@code If-xxx} header that hint that the client has the resources in its
  * cache.</p>
+ * <p>For HTTP/2 connectors, {@code org.eclipse.jetty.http2.server.ReferrerPushStrategy}
+ * provides the same functionality at the connection level, with bounded storage,
+ * confidence decay and per-connection tracking of the pushed resources.</p>
  */
 @ManagedObject("Push cache based on the HTTP 'Referer' header")
 public class PushCacheFilter implements Filter
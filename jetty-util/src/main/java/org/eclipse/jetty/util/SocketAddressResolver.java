@@ -23,14 +23,23 @@ import java.net.InetSocketAddress;
 import java.net.SocketAddress;
 import java.net.UnknownHostException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.Executor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.eclipse.jetty.util.annotation.ManagedAttribute;
 import org.eclipse.jetty.util.annotation.ManagedObject;
+import org.eclipse.jetty.util.annotation.ManagedOperation;
 import org.eclipse.jetty.util.log.Log;
 import org.eclipse.jetty.util.log.Logger;
 import org.eclipse.jetty.util.thread.Scheduler;
@@ -194,4 +203,417 @@ public interface SocketAddressResolver
             });
         }
     }
+
+    /**
+     * <p>Caches the results of another {@link SocketAddressResolver}.</p>
+     * <p>Successful resolutions are cached for {@link #getPositiveTTL() the positive TTL},
+     * while failed resolutions are cached for {@link #getNegativeTTL() the negative TTL}.
+     * Concurrent resolutions of the same host that miss the cache are coalesced into
+     * a single resolution performed by the wrapped resolver.</p>
+     * <p>When a cached successful resolution is used within {@link #getRefreshAhead() the
+     * refresh ahead period} before it expires, the host is resolved again in background
+     * while the cached addresses are still returned, so that hosts that are frequently
+     * resolved never miss the cache.</p>
+     * <p>At most {@link #getMaxSize() max size} hosts are cached: when the cache
+     * is full, expired resolutions are evicted first, then the least recently used.
+     * Expired resolutions are also evicted periodically as new hosts are cached.</p>
+     * <p>Example usage:</p>
+     * <pre>
+     * SocketAddressResolver async = new SocketAddressResolver.Async(executor, scheduler, timeout);
+     * httpClient.setSocketAddressResolver(new SocketAddressResolver.Caching(async));
+     * </pre>
+     */
+    @ManagedObject("The caching address resolver")
+    public static class Caching implements SocketAddressResolver
+    {
+        private static final Logger LOG = Log.getLogger(SocketAddressResolver.class);
+
+        private final ConcurrentMap<String, Holder> cache = new ConcurrentHashMap<>();
+        private final AtomicLong hits = new AtomicLong();
+        private final AtomicLong misses = new AtomicLong();
+        private final AtomicLong refreshes = new AtomicLong();
+        private final AtomicLong evictions = new AtomicLong();
+        private final AtomicBoolean sweeping = new AtomicBoolean();
+        private final SocketAddressResolver resolver;
+        private volatile long lastSweep = System.nanoTime();
+        private volatile int maxSize = 1024;
+        private volatile long positiveTTL = 60000;
+        private volatile long negativeTTL = 10000;
+        private volatile long refreshAhead = 10000;
+
+        /**
+         * @param resolver the resolver that performs the actual resolutions
+         */
+        public Caching(SocketAddressResolver resolver)
+        {
+            this.resolver = resolver;
+        }
+
+        public SocketAddressResolver getSocketAddressResolver()
+        {
+            return resolver;
+        }
+
+        /**
+         * @return the time, in milliseconds, successful resolutions are cached
+         */
+        @ManagedAttribute("The time, in milliseconds, successful resolutions are cached")
+        public long getPositiveTTL()
+        {
+            return positiveTTL;
+        }
+
+        /**
+         * @param positiveTTL the time, in milliseconds, successful resolutions are cached
+         */
+        public void setPositiveTTL(long positiveTTL)
+        {
+            this.positiveTTL = positiveTTL;
+        }
+
+        /**
+         * @return the time, in milliseconds, failed resolutions are cached
+         */
+        @ManagedAttribute("The time, in milliseconds, failed resolutions are cached")
+        public long getNegativeTTL()
+        {
+            return negativeTTL;
+        }
+
+        /**
+         * @param negativeTTL the time, in milliseconds, failed resolutions are cached
+         */
+        public void setNegativeTTL(long negativeTTL)
+        {
+            this.negativeTTL = negativeTTL;
+        }
+
+        /**
+         * @return the time, in milliseconds, before expiration when successful resolutions are refreshed
+         */
+        @ManagedAttribute("The time, in milliseconds, before expiration when successful resolutions are refreshed")
+        public long getRefreshAhead()
+        {
+            return refreshAhead;
+        }
+
+        /**
+         * @param refreshAhead the time, in milliseconds, before expiration when successful resolutions
+         * are refreshed, or 0 to never refresh before expiration
+         */
+        public void setRefreshAhead(long refreshAhead)
+        {
+            this.refreshAhead = refreshAhead;
+        }
+
+        /**
+         * @return the max number of cached hosts
+         */
+        @ManagedAttribute("The max number of cached hosts")
+        public int getMaxSize()
+        {
+            return maxSize;
+        }
+
+        /**
+         * @param maxSize the max number of cached hosts
+         */
+        public void setMaxSize(int maxSize)
+        {
+            this.maxSize = maxSize;
+        }
+
+        @ManagedAttribute(value = "The number of resolutions served from the cache", readonly = true)
+        public long getHits()
+        {
+            return hits.get();
+        }
+
+        @ManagedAttribute(value = "The number of resolutions not served from the cache", readonly = true)
+        public long getMisses()
+        {
+            return misses.get();
+        }
+
+        @ManagedAttribute(value = "The number of resolutions refreshed before expiration", readonly = true)
+        public long getRefreshes()
+        {
+            return refreshes.get();
+        }
+
+        @ManagedAttribute(value = "The number of cached hosts evicted", readonly = true)
+        public long getEvictions()
+        {
+            return evictions.get();
+        }
+
+        @ManagedAttribute(value = "The number of cached hosts", readonly = true)
+        public int getSize()
+        {
+            return cache.size();
+        }
+
+        @ManagedOperation(value = "Clears the cache", impact = "ACTION")
+        public void clear()
+        {
+            cache.clear();
+        }
+
+        @Override
+        public void resolve(String host, int port, Promise<List<InetSocketAddress>> promise)
+        {
+            long now = System.nanoTime();
+            String key = host.toLowerCase(Locale.ENGLISH);
+            Holder holder = cache.get(key);
+            if (holder == null)
+            {
+                Holder newHolder = new Holder(key);
+                newHolder.lastAccess = now;
+                holder = cache.putIfAbsent(key, newHolder);
+                if (holder == null)
+                {
+                    holder = newHolder;
+                    sweep(now);
+                }
+            }
+            holder.lastAccess = now;
+            Resolution resolution = holder.resolution;
+            if (resolution != null && resolution.expires - now > 0)
+            {
+                hits.incrementAndGet();
+                if (resolution.failure == null && resolution.expires - now <= TimeUnit.MILLISECONDS.toNanos(getRefreshAhead()))
+                {
+                    if (holder.resolve())
+                    {
+                        refreshes.incrementAndGet();
+                        if (LOG.isDebugEnabled())
+                            LOG.debug("Refreshing {}", host);
+                    }
+                }
+                resolution.complete(port, promise);
+            }
+            else
+            {
+                misses.incrementAndGet();
+                holder.waiters.offer(new Waiter(port, promise));
+                holder.resolve();
+            }
+        }
+
+        private void sweep(long now)
+        {
+            int size = cache.size();
+            int maxSize = getMaxSize();
+            long period = TimeUnit.MILLISECONDS.toNanos(Math.max(getPositiveTTL(), getNegativeTTL()));
+            if (size <= maxSize && now - lastSweep < period)
+                return;
+            if (!sweeping.compareAndSet(false, true))
+                return;
+            try
+            {
+                lastSweep = now;
+                List<Holder> live = new ArrayList<>(size);
+                for (Holder holder : cache.values())
+                {
+                    Resolution resolution = holder.resolution;
+                    if (resolution != null && resolution.expires - now <= 0 && !holder.resolving.get())
+                        evict(holder);
+                    else
+                        live.add(holder);
+                }
+
+                // Evict some more than necessary, so that the
+                // cache is not swept again at the next new host.
+                int excess = cache.size() - maxSize * 3 / 4;
+                if (size > maxSize && excess > 0)
+                {
+                    live.sort((h1, h2) -> Long.compare(h1.lastAccess - now, h2.lastAccess - now));
+                    for (int i = 0; i < excess && i < live.size(); ++i)
+                        evict(live.get(i));
+                }
+            }
+            finally
+            {
+                sweeping.set(false);
+            }
+        }
+
+        private void evict(Holder holder)
+        {
+            // A holder that is resolving still completes its waiters once evicted.
+            if (cache.remove(holder.host, holder))
+            {
+                evictions.incrementAndGet();
+                if (LOG.isDebugEnabled())
+                    LOG.debug("Evicted {}", holder.host);
+            }
+        }
+
+        private class Holder implements Promise<List<InetSocketAddress>>
+        {
+            private final AtomicBoolean resolving = new AtomicBoolean();
+            private final Queue<Waiter> waiters = new ConcurrentLinkedQueue<>();
+            private final String host;
+            private volatile Resolution resolution;
+            private volatile long lastAccess;
+
+            private Holder(String host)
+            {
+                this.host = host;
+            }
+
+            private boolean resolve()
+            {
+                if (!resolving.compareAndSet(false, true))
+                    return false;
+                try
+                {
+                    resolver.resolve(host, 0, this);
+                }
+                catch (Throwable x)
+                {
+                    failed(x);
+                }
+                return true;
+            }
+
+            @Override
+            public void succeeded(List<InetSocketAddress> result)
+            {
+                List<InetAddress> addresses = new ArrayList<>(result.size());
+                for (InetSocketAddress address : result)
+                    addresses.add(address.getAddress());
+                if (LOG.isDebugEnabled())
+                    LOG.debug("Caching {} -> {}", host, addresses);
+                complete(new Resolution(addresses, null, getPositiveTTL()));
+            }
+
+            @Override
+            public void failed(Throwable failure)
+            {
+                if (LOG.isDebugEnabled())
+                    LOG.debug("Caching " + host + " failure", failure);
+                complete(new Resolution(null, failure, getNegativeTTL()));
+            }
+
+            private void complete(Resolution resolution)
+            {
+                this.resolution = resolution;
+                resolving.set(false);
+                while (true)
+                {
+                    Waiter waiter = waiters.poll();
+                    if (waiter == null)
+                        break;
+                    resolution.complete(waiter.port, waiter.promise);
+                }
+            }
+        }
+
+        private static class Resolution
+        {
+            private final List<InetAddress> addresses;
+            private final Throwable failure;
+            private final long expires;
+
+            private Resolution(List<InetAddress> addresses, Throwable failure, long ttl)
+            {
+                this.addresses = addresses;
+                this.failure = failure;
+                this.expires = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(ttl);
+            }
+
+            private void complete(int port, Promise<List<InetSocketAddress>> promise)
+            {
+                if (failure != null)
+                {
+                    promise.failed(failure);
+                }
+                else
+                {
+                    List<InetSocketAddress> result = new ArrayList<>(addresses.size());
+                    for (InetAddress address : addresses)
+                        result.add(new InetSocketAddress(address, port));
+                    promise.succeeded(result);
+                }
+            }
+        }
+
+        private static class Waiter
+        {
+            private final int port;
+            private final Promise<List<InetSocketAddress>> promise;
+
+            private Waiter(int port, Promise<List<InetSocketAddress>> promise)
+            {
+                this.port = port;
+                this.promise = promise;
+            }
+        }
+    }
+
+    /**
+     * <p>Resolves hosts from a static table, similarly to a hosts file,
+     * without performing DNS lookups.</p>
+     * <p>Hosts that are not in the table are resolved by the optional fallback
+     * resolver, or fail with {@link UnknownHostException}.</p>
+     * <p>This is useful in tests to map names to specific addresses, for example
+     * to simulate hosts that resolve to multiple addresses.</p>
+     */
+    public static class Hosts implements SocketAddressResolver
+    {
+        private final Map<String, List<InetAddress>> hosts = new ConcurrentHashMap<>();
+        private final SocketAddressResolver fallback;
+
+        public Hosts()
+        {
+            this(null);
+        }
+
+        /**
+         * @param fallback the resolver for hosts that are not in the table, or null
+         */
+        public Hosts(SocketAddressResolver fallback)
+        {
+            this.fallback = fallback;
+        }
+
+        /**
+         * @param host the host name
+         * @param addresses the addresses the host resolves to, in order
+         */
+        public void put(String host, InetAddress... addresses)
+        {
+            hosts.put(host.toLowerCase(Locale.ENGLISH), Arrays.asList(addresses));
+        }
+
+        /**
+         * @param host the host name to remove from the table
+         */
+        public void remove(String host)
+        {
+            hosts.remove(host.toLowerCase(Locale.ENGLISH));
+        }
+
+        @Override
+        public void resolve(String host, int port, Promise<List<InetSocketAddress>> promise)
+        {
+            List<InetAddress> addresses = hosts.get(host.toLowerCase(Locale.ENGLISH));
+            if (addresses != null)
+            {
+                List<InetSocketAddress> result = new ArrayList<>(addresses.size());
+                for (InetAddress address : addresses)
+                    result.add(new InetSocketAddress(address, port));
+                promise.succeeded(result);
+            }
+            else if (fallback != null)
+            {
+                fallback.resolve(host, port, promise);
+            }
+            else
+            {
+                promise.failed(new UnknownHostException(host));
+            }
+        }
+    }
 }
@@ -19,10 +19,12 @@
 package org.eclipse.jetty.util.ssl;
 
 import java.io.ByteArrayInputStream;
+import java.io.File;
 import java.io.IOException;
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
 import java.net.MalformedURLException;
+import java.nio.file.Path;
 import java.security.KeyStore;
 import java.security.SecureRandom;
 import java.security.Security;
@@ -40,10 +42,12 @@ import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -60,6 +64,7 @@ import javax.net.ssl.SSLPeerUnverifiedException;
 import javax.net.ssl.SSLServerSocket;
 import javax.net.ssl.SSLServerSocketFactory;
 import javax.net.ssl.SSLSession;
+import javax.net.ssl.SSLSessionContext;
 import javax.net.ssl.SSLSocket;
 import javax.net.ssl.SSLSocketFactory;
 import javax.net.ssl.StandardConstants;
@@ -68,7 +73,11 @@ import javax.net.ssl.TrustManagerFactory;
 import javax.net.ssl.X509ExtendedKeyManager;
 import javax.net.ssl.X509TrustManager;
 
+import org.eclipse.jetty.util.PathWatcher;
 import org.eclipse.jetty.util.StringUtil;
+import org.eclipse.jetty.util.annotation.ManagedAttribute;
+import org.eclipse.jetty.util.annotation.ManagedObject;
+import org.eclipse.jetty.util.annotation.ManagedOperation;
 import org.eclipse.jetty.util.component.AbstractLifeCycle;
 import org.eclipse.jetty.util.log.Log;
 import org.eclipse.jetty.util.log.Logger;
@@ -87,6 +96,7 @@ import org.eclipse.jetty.util.security.Password;
 
 /**
  */
+@ManagedObject("SSL Context Factory")
 public class SslContextFactory extends AbstractLifeCycle
 {
     public final static TrustManager[] TRUST_ALL_CERTS = new X509TrustManager[]{new X509TrustManager()
@@ -121,6 +131,11 @@ public class SslContextFactory extends AbstractLifeCycle
     /** String name of keystore password property. */
     public static final String PASSWORD_PROPERTY = "org.eclipse.jetty.ssl.password";
 
+    /** The OCSP stapling system properties set by a factory, null if not yet configured */
+    private static Map<String, String> __ocspStaplingProperties;
+    /** Whether an SSLContext has been created by a factory, after which OCSP stapling cannot be configured */
+    private static boolean __sslContextCreated;
+
     /** Excluded protocols. */
     private final Set<String> _excludeProtocols = new LinkedHashSet<>();
 
@@ -152,9 +167,9 @@ public class SslContextFactory extends AbstractLifeCycle
 
     /** SSL certificate alias */
     private String _certAlias;
-    private final Map<String,X509> _aliasX509 = new HashMap<>();
-    private final Map<String,X509> _certHosts = new HashMap<>();
-    private final Map<String,X509> _certWilds = new HashMap<>();
+    private volatile Map<String,X509> _aliasX509 = new HashMap<>();
+    private volatile Map<String,X509> _certHosts = new HashMap<>();
+    private volatile Map<String,X509> _certWilds = new HashMap<>();
 
     /** Truststore path */
     private Resource _trustStoreResource;
@@ -201,6 +216,16 @@ public class SslContextFactory extends AbstractLifeCycle
     private boolean _enableOCSP = false;
     /** Location of OCSP Responder */
     private String _ocspResponderURL;
+    /** Set to true to enable stapling of OCSP responses by the server */
+    private boolean _enableOCSPStapling = false;
+    /** Location of the OCSP Responder queried for stapled responses */
+    private String _ocspStaplingResponderURL;
+    /** Lifetime in seconds of cached stapled OCSP responses */
+    private int _ocspStaplingCacheLifetime = -1;
+    /** Max number of cached stapled OCSP responses */
+    private int _ocspStaplingCacheSize = -1;
+    /** Timeout in milliseconds to fetch OCSP responses to staple */
+    private int _ocspStaplingResponseTimeout = -1;
 
     /** SSL keystore */
     private KeyStore _setKeyStore;
@@ -225,7 +250,15 @@ public class SslContextFactory extends AbstractLifeCycle
     /** Whether TLS renegotiation is allowed */
     private boolean _renegotiationAllowed = true;
 
-    protected Factory _factory;
+    /** Whether the key store and trust store are reloaded when they change */
+    private boolean _hotReload;
+    private PathWatcher _pathWatcher;
+    private final AtomicLong _reloads = new AtomicLong();
+    private final AtomicLong _reloadFailures = new AtomicLong();
+    private volatile long _lastReloadTime;
+    private volatile String _lastReloadFailure;
+
+    protected volatile Factory _factory;
 
 
 
@@ -307,6 +340,32 @@ public class SslContextFactory extends AbstractLifeCycle
     @Override
     protected void doStart() throws Exception
     {
+        load();
+
+        if (isHotReload())
+        {
+            List<Path> paths = getWatchedPaths();
+            if (!paths.isEmpty())
+            {
+                _pathWatcher = new PathWatcher();
+                for (Path path : paths)
+                    _pathWatcher.watch(path);
+                _pathWatcher.addListener(new KeyStoreListener());
+                _pathWatcher.setNotifyExistingOnStart(false);
+                _pathWatcher.start();
+            }
+        }
+    }
+
+    /**
+     * Creates the SSLContext and the state derived from the key store and trust store,
+     * and then replaces the current ones, so that they are used for new SSLEngines.
+     * @throws Exception if the SSLContext cannot be created
+     */
+    private void load() throws Exception
+    {
+        configureOCSPStapling();
+
         SSLContext context = _setContext;
         KeyStore keyStore = _setKeyStore;
         KeyStore trustStore = _setTrustStore;
@@ -340,7 +399,9 @@ public class SslContextFactory extends AbstractLifeCycle
                 Collection<? extends CRL> crls = loadCRL(_crlPath);
 
                 // Look for X.509 certificates to create alias map
-                _certHosts.clear();
+                Map<String,X509> aliasX509 = new HashMap<>();
+                Map<String,X509> certHosts = new HashMap<>();
+                Map<String,X509> certWilds = new HashMap<>();
                 if (keyStore!=null)
                 {
                     for (String alias : Collections.list(keyStore.aliases()))
@@ -358,7 +419,7 @@ public class SslContextFactory extends AbstractLifeCycle
                                 continue;
                             }
                             X509 x509 = new X509(alias,x509C);
-                            _aliasX509.put(alias,x509);
+                            aliasX509.put(alias,x509);
 
                             if (_validateCerts)
                             {
@@ -373,12 +434,15 @@ public class SslContextFactory extends AbstractLifeCycle
                             LOG.info("x509={} for {}",x509,this);
 
                             for (String h:x509.getHosts())
-                                _certHosts.put(h,x509);
+                                certHosts.put(h,x509);
                             for (String w:x509.getWilds())
-                                _certWilds.put(w,x509);
+                                certWilds.put(w,x509);
                         }
                     }
                 }
+                _aliasX509 = aliasX509;
+                _certHosts = certHosts;
+                _certWilds = certWilds;
 
                 // Instantiate key and trust managers
                 KeyManager[] keyManagers = getKeyManagers(keyStore);
@@ -391,6 +455,16 @@ public class SslContextFactory extends AbstractLifeCycle
             }
         }
 
+        synchronized (SslContextFactory.class)
+        {
+            // JSSE has been initialized, it is now too late to configure OCSP stapling.
+            __sslContextCreated = true;
+        }
+
+        // Configure the session caches, so that returning clients can resume their sessions
+        configureSessionContext(context.getServerSessionContext());
+        configureSessionContext(context.getClientSessionContext());
+
         // select the protocols and ciphers
         SSLEngine sslEngine=context.createSSLEngine();
         selectCipherSuites(
@@ -409,11 +483,111 @@ public class SslContextFactory extends AbstractLifeCycle
     @Override
     protected void doStop() throws Exception
     {
+        if (_pathWatcher != null)
+        {
+            _pathWatcher.stop();
+            _pathWatcher = null;
+        }
         _factory = null;
         super.doStop();
-        _certHosts.clear();
-        _certWilds.clear();
-        _aliasX509.clear();
+        _certHosts = new HashMap<>();
+        _certWilds = new HashMap<>();
+        _aliasX509 = new HashMap<>();
+    }
+
+    /**
+     * <p>Reloads the key store and trust store and replaces the SSLContext.</p>
+     * <p>New SSLEngines are created from the new SSLContext, while existing connections
+     * keep their SSLEngines. If the reload fails, the current SSLContext is retained.</p>
+     * @throws Exception if the key store or trust store cannot be loaded
+     */
+    @ManagedOperation(value = "Reloads the key store and trust store", impact = "ACTION")
+    public void reload() throws Exception
+    {
+        synchronized (this)
+        {
+            if (!isStarted())
+                throw new IllegalStateException("!STARTED: " + this);
+
+            Map<String,X509> aliasX509 = _aliasX509;
+            Map<String,X509> certHosts = _certHosts;
+            Map<String,X509> certWilds = _certWilds;
+            try
+            {
+                load();
+                _reloads.incrementAndGet();
+                _lastReloadTime = System.currentTimeMillis();
+                LOG.info("Reloaded {}",this);
+            }
+            catch (Throwable x)
+            {
+                _aliasX509 = aliasX509;
+                _certHosts = certHosts;
+                _certWilds = certWilds;
+                _reloadFailures.incrementAndGet();
+                _lastReloadFailure = x.toString();
+                throw x;
+            }
+        }
+    }
+
+    /**
+     * @return whether the key store and trust store are reloaded when their files change
+     */
+    @ManagedAttribute("Whether the key store and trust store are reloaded when they change")
+    public boolean isHotReload()
+    {
+        return _hotReload;
+    }
+
+    /**
+     * @param hotReload whether to watch the key store and trust store files and to
+     * {@link #reload() reload} them when they change
+     */
+    public void setHotReload(boolean hotReload)
+    {
+        checkNotStarted();
+        _hotReload = hotReload;
+    }
+
+    @ManagedAttribute("The number of successful reloads")
+    public long getReloads()
+    {
+        return _reloads.get();
+    }
+
+    @ManagedAttribute("The number of failed reloads")
+    public long getReloadFailures()
+    {
+        return _reloadFailures.get();
+    }
+
+    @ManagedAttribute("The time of the last successful reload, in ms since the epoch")
+    public long getLastReloadTime()
+    {
+        return _lastReloadTime;
+    }
+
+    @ManagedAttribute("The failure of the last failed reload")
+    public String getLastReloadFailure()
+    {
+        return _lastReloadFailure;
+    }
+
+    private List<Path> getWatchedPaths() throws IOException
+    {
+        List<Path> paths = new ArrayList<>();
+        for (Resource resource : Arrays.asList(_keyStoreResource, _trustStoreResource))
+        {
+            File file = resource == null ? null : resource.getFile();
+            if (file != null)
+            {
+                Path path = file.toPath().toAbsolutePath();
+                if (!paths.contains(path))
+                    paths.add(path);
+            }
+        }
+        return paths;
     }
 
     /**
@@ -1340,6 +1514,164 @@ public class SslContextFactory extends AbstractLifeCycle
         _ocspResponderURL = ocspResponderURL;
     }
 
+    /**
+     * @return true if stapling of OCSP responses by the server is enabled
+     */
+    public boolean isEnableOCSPStapling()
+    {
+        return _enableOCSPStapling;
+    }
+
+    /**
+     * <p>Enables stapling of OCSP responses by the server, so that clients do not need
+     * to query the OCSP Responder of the server certificate themselves.</p>
+     * <p>OCSP stapling is performed by the JDK (since Java 9), that fetches the OCSP
+     * responses from the OCSP Responder, caches them per certificate and attaches them
+     * to the handshakes. It is therefore JVM-level configuration: it is applied via system
+     * properties by the first factory that enables it, provided that no SSLContext has yet
+     * been created in the JVM, and applies to all the TLS servers of the JVM.
+     * Alternatively, the {@code jdk.tls.server.enableStatusRequestExtension} and
+     * {@code jdk.tls.stapling.*} system properties may be set on the command line.</p>
+     * @param enableOCSPStapling true - turn on, false - turn off
+     */
+    public void setEnableOCSPStapling(boolean enableOCSPStapling)
+    {
+        checkNotStarted();
+        _enableOCSPStapling = enableOCSPStapling;
+    }
+
+    /**
+     * @return Location of the OCSP Responder queried for stapled responses
+     */
+    public String getOcspStaplingResponderURL()
+    {
+        return _ocspStaplingResponderURL;
+    }
+
+    /** Set the location of the OCSP Responder queried for stapled responses,
+     * overriding the location specified by the certificates.
+     * @param ocspStaplingResponderURL location of the OCSP Responder
+     */
+    public void setOcspStaplingResponderURL(String ocspStaplingResponderURL)
+    {
+        checkNotStarted();
+        _ocspStaplingResponderURL = ocspStaplingResponderURL;
+    }
+
+    /**
+     * @return Lifetime in seconds of cached stapled OCSP responses
+     */
+    public int getOcspStaplingCacheLifetime()
+    {
+        return _ocspStaplingCacheLifetime;
+    }
+
+    /** Set the lifetime of cached stapled OCSP responses; a response is also
+     * refreshed when its nextUpdate time is reached.
+     * @param ocspStaplingCacheLifetime lifetime in seconds (0 for unlimited, -1 for the JDK default)
+     */
+    public void setOcspStaplingCacheLifetime(int ocspStaplingCacheLifetime)
+    {
+        checkNotStarted();
+        _ocspStaplingCacheLifetime = ocspStaplingCacheLifetime;
+    }
+
+    /**
+     * @return Max number of cached stapled OCSP responses
+     */
+    public int getOcspStaplingCacheSize()
+    {
+        return _ocspStaplingCacheSize;
+    }
+
+    /** Set the max number of cached stapled OCSP responses.
+     * @param ocspStaplingCacheSize max number of responses (0 for unlimited, -1 for the JDK default)
+     */
+    public void setOcspStaplingCacheSize(int ocspStaplingCacheSize)
+    {
+        checkNotStarted();
+        _ocspStaplingCacheSize = ocspStaplingCacheSize;
+    }
+
+    /**
+     * @return Timeout in milliseconds to fetch OCSP responses to staple
+     */
+    public int getOcspStaplingResponseTimeout()
+    {
+        return _ocspStaplingResponseTimeout;
+    }
+
+    /** Set the timeout to fetch OCSP responses to staple; handshakes proceed
+     * without a stapled response if the OCSP Responder does not reply in time.
+     * @param ocspStaplingResponseTimeout timeout in milliseconds (-1 for the JDK default)
+     */
+    public void setOcspStaplingResponseTimeout(int ocspStaplingResponseTimeout)
+    {
+        checkNotStarted();
+        _ocspStaplingResponseTimeout = ocspStaplingResponseTimeout;
+    }
+
+    /**
+     * @return the JVM system properties that configure OCSP stapling as set
+     * by this factory, empty if stapling is not enabled
+     */
+    Map<String, String> getOCSPStaplingProperties()
+    {
+        Map<String, String> properties = new LinkedHashMap<>();
+        if (!_enableOCSPStapling)
+            return properties;
+
+        // Enable the status_request TLS extensions on the server
+        properties.put("jdk.tls.server.enableStatusRequestExtension","true");
+        if (_ocspStaplingResponderURL != null)
+        {
+            // Override location of OCSP Responder
+            properties.put("jdk.tls.stapling.responderURI",_ocspStaplingResponderURL);
+            properties.put("jdk.tls.stapling.responderOverride","true");
+        }
+        if (_ocspStaplingCacheLifetime >= 0)
+            properties.put("jdk.tls.stapling.cacheLifetime",String.valueOf(_ocspStaplingCacheLifetime));
+        if (_ocspStaplingCacheSize >= 0)
+            properties.put("jdk.tls.stapling.cacheSize",String.valueOf(_ocspStaplingCacheSize));
+        if (_ocspStaplingResponseTimeout >= 0)
+            properties.put("jdk.tls.stapling.responseTimeout",String.valueOf(_ocspStaplingResponseTimeout));
+        return properties;
+    }
+
+    /**
+     * <p>Configures the JDK OCSP stapling support, if enabled.</p>
+     * <p>Stapling is configured via JVM system properties that JSSE reads only once,
+     * so it is configured at most once per JVM, and only if no SSLContext has been
+     * created yet by any SslContextFactory; otherwise a warning is logged.</p>
+     */
+    protected void configureOCSPStapling()
+    {
+        Map<String, String> properties = getOCSPStaplingProperties();
+        if (properties.isEmpty())
+            return;
+
+        synchronized (SslContextFactory.class)
+        {
+            if (__ocspStaplingProperties != null)
+            {
+                if (!__ocspStaplingProperties.equals(properties))
+                    LOG.warn("OCSP stapling already configured with {}, ignoring {} for {}",__ocspStaplingProperties,properties,this);
+                return;
+            }
+            if (__sslContextCreated)
+            {
+                LOG.warn("OCSP stapling must be configured before any SSLContext is created, ignoring {} for {}",properties,this);
+                return;
+            }
+            for (Map.Entry<String, String> property : properties.entrySet())
+                System.setProperty(property.getKey(),property.getValue());
+            __ocspStaplingProperties = properties;
+        }
+
+        if (LOG.isDebugEnabled())
+            LOG.debug("OCSP stapling enabled, responder={}",_ocspStaplingResponderURL);
+    }
+
     /** Set the key store.
      * @param keyStore the key store to set
      */
@@ -1413,15 +1745,17 @@ public class SslContextFactory extends AbstractLifeCycle
     }
 
     /** Get SSL session cache size.
-     * @return SSL session cache size
+     * @return SSL session cache size, or 0 to use the JVM default
      */
     public int getSslSessionCacheSize()
     {
         return _sslSessionCacheSize;
     }
 
-    /** SEt SSL session cache size.
-     * @param sslSessionCacheSize SSL session cache size to set
+    /** Set SSL session cache size.
+     * <p>The size is applied to the server and client session contexts of the
+     * {@link SSLContext} when this factory is started.</p>
+     * @param sslSessionCacheSize SSL session cache size to set, or 0 to use the JVM default
      */
     public void setSslSessionCacheSize(int sslSessionCacheSize)
     {
@@ -1429,7 +1763,7 @@ public class SslContextFactory extends AbstractLifeCycle
     }
 
     /** Get SSL session timeout.
-     * @return SSL session timeout
+     * @return SSL session timeout in seconds, or 0 to use the JVM default
      */
     public int getSslSessionTimeout()
     {
@@ -1437,7 +1771,9 @@ public class SslContextFactory extends AbstractLifeCycle
     }
 
     /** Set SSL session timeout.
-     * @param sslSessionTimeout SSL session timeout to set
+     * <p>The timeout is applied to the server and client session contexts of the
+     * {@link SSLContext} when this factory is started.</p>
+     * @param sslSessionTimeout SSL session timeout to set in seconds, or 0 to use the JVM default
      */
     public void setSslSessionTimeout(int sslSessionTimeout)
     {
@@ -1445,6 +1781,16 @@ public class SslContextFactory extends AbstractLifeCycle
     }
 
 
+    private void configureSessionContext(SSLSessionContext sessionContext)
+    {
+        if (sessionContext == null)
+            return;
+        if (_sslSessionCacheSize > 0)
+            sessionContext.setSessionCacheSize(_sslSessionCacheSize);
+        if (_sslSessionTimeout > 0)
+            sessionContext.setSessionTimeout(_sslSessionTimeout);
+    }
+
     public SSLServerSocket newSslServerSocket(String host,int port,int backlog) throws IOException
     {
         checkIsStarted();
@@ -1669,6 +2015,24 @@ public class SslContextFactory extends AbstractLifeCycle
                 _trustStoreResource);
     }
 
+    private class KeyStoreListener implements PathWatcher.EventListListener
+    {
+        @Override
+        public void onPathWatchEvents(List<PathWatcher.PathWatchEvent> events)
+        {
+            if (LOG.isDebugEnabled())
+                LOG.debug("Reloading {} after {}",SslContextFactory.this,events);
+            try
+            {
+                reload();
+            }
+            catch (Throwable x)
+            {
+                LOG.warn("Could not reload " + SslContextFactory.this, x);
+            }
+        }
+    }
+
     protected class Factory
     {
         final KeyStore _keyStore;
@@ -0,0 +1,242 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2015 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+package org.eclipse.jetty.util;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class SocketAddressResolverTest
+{
+    @Test
+    public void testHosts() throws Exception
+    {
+        SocketAddressResolver.Hosts hosts = new SocketAddressResolver.Hosts();
+        InetAddress address1 = InetAddress.getByName("127.0.0.1");
+        InetAddress address2 = InetAddress.getByName("::1");
+        hosts.put("Example.Test", address1, address2);
+
+        List<InetSocketAddress> result = resolve(hosts, "example.test", 8080);
+        Assert.assertEquals(2, result.size());
+        Assert.assertEquals(new InetSocketAddress(address1, 8080), result.get(0));
+        Assert.assertEquals(new InetSocketAddress(address2, 8080), result.get(1));
+
+        hosts.remove("example.test");
+        try
+        {
+            resolve(hosts, "example.test", 8080);
+            Assert.fail();
+        }
+        catch (ExecutionException x)
+        {
+            Assert.assertTrue(x.getCause() instanceof UnknownHostException);
+        }
+    }
+
+    @Test
+    public void testCachingPositiveTTL() throws Exception
+    {
+        CountingResolver counting = new CountingResolver();
+        counting.hosts.put("example.test", InetAddress.getByName("127.0.0.1"));
+        SocketAddressResolver.Caching caching = new SocketAddressResolver.Caching(counting);
+        caching.setPositiveTTL(500);
+        caching.setRefreshAhead(0);
+
+        Assert.assertEquals(80, resolve(caching, "example.test", 80).get(0).getPort());
+        Assert.assertEquals(1, counting.count.get());
+        Assert.assertEquals(1, caching.getMisses());
+
+        // The cached addresses are returned with the requested port.
+        Assert.assertEquals(443, resolve(caching, "EXAMPLE.test", 443).get(0).getPort());
+        Assert.assertEquals(1, counting.count.get());
+        Assert.assertEquals(1, caching.getHits());
+
+        TimeUnit.MILLISECONDS.sleep(1000);
+
+        resolve(caching, "example.test", 80);
+        Assert.assertEquals(2, counting.count.get());
+        Assert.assertEquals(2, caching.getMisses());
+    }
+
+    @Test
+    public void testCachingNegativeTTL() throws Exception
+    {
+        CountingResolver counting = new CountingResolver();
+        SocketAddressResolver.Caching caching = new SocketAddressResolver.Caching(counting);
+        caching.setNegativeTTL(500);
+
+        for (int i = 0; i < 2; ++i)
+        {
+            try
+            {
+                resolve(caching, "example.test", 80);
+                Assert.fail();
+            }
+            catch (ExecutionException x)
+            {
+                Assert.assertTrue(x.getCause() instanceof UnknownHostException);
+            }
+        }
+        Assert.assertEquals(1, counting.count.get());
+
+        // Once the failure expires, the new resolution succeeds.
+        counting.hosts.put("example.test", InetAddress.getByName("127.0.0.1"));
+        TimeUnit.MILLISECONDS.sleep(1000);
+        Assert.assertEquals(1, resolve(caching, "example.test", 80).size());
+        Assert.assertEquals(2, counting.count.get());
+    }
+
+    @Test
+    public void testCachingRefreshAhead() throws Exception
+    {
+        CountingResolver counting = new CountingResolver();
+        counting.hosts.put("example.test", InetAddress.getByName("127.0.0.1"));
+        SocketAddressResolver.Caching caching = new SocketAddressResolver.Caching(counting);
+        caching.setPositiveTTL(1000);
+        caching.setRefreshAhead(500);
+
+        resolve(caching, "example.test", 80);
+        Assert.assertEquals(1, counting.count.get());
+
+        TimeUnit.MILLISECONDS.sleep(700);
+
+        // Within the refresh ahead period, the cached addresses
+        // are returned and the host is resolved again.
+        counting.hosts.put("example.test", InetAddress.getByName("127.0.0.2"));
+        List<InetSocketAddress> result = resolve(caching, "example.test", 80);
+        Assert.assertEquals(InetAddress.getByName("127.0.0.1"), result.get(0).getAddress());
+        Assert.assertEquals(2, counting.count.get());
+        Assert.assertEquals(1, caching.getRefreshes());
+
+        result = resolve(caching, "example.test", 80);
+        Assert.assertEquals(InetAddress.getByName("127.0.0.2"), result.get(0).getAddress());
+        Assert.assertEquals(1, caching.getMisses());
+    }
+
+    @Test
+    public void testCachingCoalescesResolutions() throws Exception
+    {
+        List<Promise<List<InetSocketAddress>>> pending = new ArrayList<>();
+        SocketAddressResolver.Caching caching = new SocketAddressResolver.Caching((host, port, promise) -> pending.add(promise));
+
+        List<FuturePromise<List<InetSocketAddress>>> promises = new ArrayList<>();
+        for (int i = 0; i < 3; ++i)
+        {
+            FuturePromise<List<InetSocketAddress>> promise = new FuturePromise<>();
+            caching.resolve("example.test", 8000 + i, promise);
+            promises.add(promise);
+        }
+        Assert.assertEquals(1, pending.size());
+
+        List<InetSocketAddress> addresses = new ArrayList<>();
+        addresses.add(new InetSocketAddress(InetAddress.getByName("127.0.0.1"), 0));
+        pending.get(0).succeeded(addresses);
+
+        for (int i = 0; i < promises.size(); ++i)
+            Assert.assertEquals(8000 + i, promises.get(i).get(5, TimeUnit.SECONDS).get(0).getPort());
+    }
+
+    @Test
+    public void testCachingMaxSizeEvictsLeastRecentlyUsed() throws Exception
+    {
+        CountingResolver counting = new CountingResolver();
+        for (int i = 0; i < 5; ++i)
+            counting.hosts.put("host" + i + ".test", InetAddress.getByName("127.0.0.1"));
+        SocketAddressResolver.Caching caching = new SocketAddressResolver.Caching(counting);
+        caching.setMaxSize(4);
+
+        for (int i = 0; i < 4; ++i)
+        {
+            resolve(caching, "host" + i + ".test", 80);
+            TimeUnit.MILLISECONDS.sleep(1);
+        }
+        // Use host0 again, so that host1 is the least recently used.
+        resolve(caching, "host0.test", 80);
+        Assert.assertEquals(4, caching.getSize());
+
+        resolve(caching, "host4.test", 80);
+        Assert.assertTrue(caching.getSize() <= 4);
+        Assert.assertTrue(caching.getEvictions() > 0);
+
+        int count = counting.count.get();
+        resolve(caching, "host0.test", 80);
+        resolve(caching, "host4.test", 80);
+        Assert.assertEquals(count, counting.count.get());
+        resolve(caching, "host1.test", 80);
+        Assert.assertEquals(count + 1, counting.count.get());
+    }
+
+    @Test
+    public void testCachingEvictsExpiredResolutions() throws Exception
+    {
+        CountingResolver counting = new CountingResolver();
+        SocketAddressResolver.Caching caching = new SocketAddressResolver.Caching(counting);
+        caching.setPositiveTTL(100);
+        caching.setNegativeTTL(100);
+
+        for (int i = 0; i < 3; ++i)
+        {
+            try
+            {
+                resolve(caching, "host" + i + ".test", 80);
+            }
+            catch (ExecutionException x)
+            {
+                // Expected.
+            }
+        }
+        Assert.assertEquals(3, caching.getSize());
+
+        TimeUnit.MILLISECONDS.sleep(500);
+
+        // Caching a new host evicts the expired resolutions.
+        counting.hosts.put("example.test", InetAddress.getByName("127.0.0.1"));
+        resolve(caching, "example.test", 80);
+        Assert.assertEquals(1, caching.getSize());
+        Assert.assertEquals(3, caching.getEvictions());
+    }
+
+    private static List<InetSocketAddress> resolve(SocketAddressResolver resolver, String host, int port) throws Exception
+    {
+        FuturePromise<List<InetSocketAddress>> promise = new FuturePromise<>();
+        resolver.resolve(host, port, promise);
+        return promise.get(5, TimeUnit.SECONDS);
+    }
+
+    private static class CountingResolver implements SocketAddressResolver
+    {
+        private final AtomicInteger count = new AtomicInteger();
+        private final Hosts hosts = new Hosts();
+
+        @Override
+        public void resolve(String host, int port, Promise<List<InetSocketAddress>> promise)
+        {
+            count.incrementAndGet();
+            hosts.resolve(host, port, promise);
+        }
+    }
+}
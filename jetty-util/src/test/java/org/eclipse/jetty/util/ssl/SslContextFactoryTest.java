@@ -21,17 +21,35 @@ package org.eclipse.jetty.util.ssl;
 import static org.hamcrest.Matchers.greaterThan;
 import static org.hamcrest.Matchers.containsInAnyOrder;
 import static org.hamcrest.Matchers.equalTo;
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertThat;
 import static org.junit.Assert.assertTrue;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.security.KeyStore;
+import java.security.cert.X509Certificate;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
+import javax.net.ssl.SNIHostName;
+import javax.net.ssl.SSLContext;
 import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLEngineResult.HandshakeStatus;
+import javax.net.ssl.SSLParameters;
 
+import org.eclipse.jetty.toolchain.test.MavenTestingUtils;
+import org.eclipse.jetty.toolchain.test.TestingDir;
 import org.eclipse.jetty.util.component.AbstractLifeCycle;
 import org.eclipse.jetty.util.log.Log;
 import org.eclipse.jetty.util.log.StdErrLog;
@@ -39,11 +57,14 @@ import org.eclipse.jetty.util.resource.Resource;
 import org.hamcrest.Matchers;
 import org.junit.Assert;
 import org.junit.Before;
+import org.junit.Rule;
 import org.junit.Test;
 
 
 public class SslContextFactoryTest
 {
+    @Rule
+    public TestingDir testdir = new TestingDir();
 
     private SslContextFactory cf;
 
@@ -224,6 +245,166 @@ public class SslContextFactoryTest
     	assertNotNull(cf.getIncludeCipherSuites());
     }
     
+    @Test
+    public void testOCSPStaplingConfiguration() throws Exception
+    {
+        // Stapling is JVM-wide configuration that JSSE reads only once,
+        // so only the properties are verified, without setting them.
+        assertTrue(cf.getOCSPStaplingProperties().isEmpty());
+
+        cf.setEnableOCSPStapling(true);
+        cf.setOcspStaplingResponderURL("http://localhost:8888/ocsp");
+        cf.setOcspStaplingCacheLifetime(600);
+        cf.setOcspStaplingResponseTimeout(2000);
+
+        Map<String, String> properties = cf.getOCSPStaplingProperties();
+        assertEquals("true",properties.get("jdk.tls.server.enableStatusRequestExtension"));
+        assertEquals("http://localhost:8888/ocsp",properties.get("jdk.tls.stapling.responderURI"));
+        assertEquals("true",properties.get("jdk.tls.stapling.responderOverride"));
+        assertEquals("600",properties.get("jdk.tls.stapling.cacheLifetime"));
+        assertEquals("2000",properties.get("jdk.tls.stapling.responseTimeout"));
+        assertNull(properties.get("jdk.tls.stapling.cacheSize"));
+    }
+
+    @Test
+    public void testHotReload() throws Exception
+    {
+        Path keystore = testdir.getEmptyPathDir().resolve("keystore");
+        Files.copy(MavenTestingUtils.getTestResourceFile("keystore").toPath(),keystore);
+
+        cf.setKeyStorePath(keystore.toString());
+        cf.setKeyStorePassword("storepwd");
+        cf.setKeyManagerPassword("keypwd");
+        cf.setHotReload(true);
+        cf.start();
+        try
+        {
+            SSLContext context = cf.getSslContext();
+            assertFalse(cf.getAliases().contains("other"));
+
+            // Replace the key store, the new certificates are loaded.
+            Files.copy(MavenTestingUtils.getTestResourceFile("snikeystore").toPath(),keystore,StandardCopyOption.REPLACE_EXISTING);
+            long end = System.nanoTime() + TimeUnit.SECONDS.toNanos(15);
+            while (cf.getReloads() == 0 && System.nanoTime() < end)
+                Thread.sleep(50);
+            assertThat(cf.getReloads(),greaterThan(0L));
+            assertTrue(cf.getAliases().contains("other"));
+            assertTrue(cf.getSslContext() != context);
+
+            // Corrupt the key store, the current certificates are retained.
+            Files.write(keystore,"corrupted".getBytes(StandardCharsets.UTF_8));
+            end = System.nanoTime() + TimeUnit.SECONDS.toNanos(15);
+            while (cf.getReloadFailures() == 0 && System.nanoTime() < end)
+                Thread.sleep(50);
+            assertThat(cf.getReloadFailures(),greaterThan(0L));
+            assertNotNull(cf.getLastReloadFailure());
+            assertTrue(cf.getAliases().contains("other"));
+            assertNotNull(cf.newSSLEngine());
+        }
+        finally
+        {
+            cf.stop();
+        }
+    }
+
+    @Test
+    public void testHotReloadedCertificateIsUsed() throws Exception
+    {
+        // Start without the certificate for www.example.com.
+        Path keystore = testdir.getEmptyPathDir().resolve("keystore");
+        KeyStore ks = KeyStore.getInstance("JKS");
+        try (InputStream input = Files.newInputStream(MavenTestingUtils.getTestResourceFile("snikeystore").toPath()))
+        {
+            ks.load(input,"storepwd".toCharArray());
+        }
+        ks.deleteEntry("other");
+        try (OutputStream output = Files.newOutputStream(keystore))
+        {
+            ks.store(output,"storepwd".toCharArray());
+        }
+
+        cf.setKeyStorePath(keystore.toString());
+        cf.setKeyStorePassword("storepwd");
+        cf.setKeyManagerPassword("keypwd");
+        cf.setHotReload(true);
+        cf.start();
+        try
+        {
+            X509Certificate before = handshake(cf.newSSLEngine(),"www.example.com");
+            assertFalse(before.getSubjectX500Principal().getName().contains("O=Other"));
+
+            // Replace the key store, new connections are given the new certificate.
+            Files.copy(MavenTestingUtils.getTestResourceFile("snikeystore").toPath(),keystore,StandardCopyOption.REPLACE_EXISTING);
+            long end = System.nanoTime() + TimeUnit.SECONDS.toNanos(15);
+            while (cf.getReloads() == 0 && System.nanoTime() < end)
+                Thread.sleep(50);
+            assertEquals(1,cf.getReloads());
+
+            X509Certificate after = handshake(cf.newSSLEngine(),"www.example.com");
+            assertTrue(after.getSubjectX500Principal().getName().contains("O=Other"));
+        }
+        finally
+        {
+            cf.stop();
+        }
+    }
+
+    private static X509Certificate handshake(SSLEngine server, String host) throws Exception
+    {
+        SSLContext context = SSLContext.getInstance("TLS");
+        context.init(null,SslContextFactory.TRUST_ALL_CERTS,null);
+        SSLEngine client = context.createSSLEngine(host,443);
+        client.setUseClientMode(true);
+        SSLParameters parameters = client.getSSLParameters();
+        parameters.setServerNames(Collections.singletonList(new SNIHostName(host)));
+        client.setSSLParameters(parameters);
+        server.setUseClientMode(false);
+
+        int size = Math.max(client.getSession().getPacketBufferSize(),client.getSession().getApplicationBufferSize());
+        ByteBuffer clientToServer = ByteBuffer.allocate(size);
+        ByteBuffer serverToClient = ByteBuffer.allocate(size);
+        ByteBuffer application = ByteBuffer.allocate(size);
+        client.beginHandshake();
+        server.beginHandshake();
+        for (int i = 0; i < 1000 && (!isHandshaken(client) || !isHandshaken(server)); ++i)
+        {
+            step(client,serverToClient,clientToServer,application);
+            step(server,clientToServer,serverToClient,application);
+        }
+        assertTrue(isHandshaken(client));
+        return (X509Certificate)client.getSession().getPeerCertificates()[0];
+    }
+
+    private static boolean isHandshaken(SSLEngine engine)
+    {
+        HandshakeStatus status = engine.getHandshakeStatus();
+        return status == HandshakeStatus.NOT_HANDSHAKING || status == HandshakeStatus.FINISHED;
+    }
+
+    private static void step(SSLEngine engine, ByteBuffer in, ByteBuffer out, ByteBuffer application) throws Exception
+    {
+        switch (engine.getHandshakeStatus())
+        {
+            case NEED_TASK:
+                Runnable task;
+                while ((task = engine.getDelegatedTask()) != null)
+                    task.run();
+                break;
+            case NEED_WRAP:
+                engine.wrap(ByteBuffer.allocate(0),out);
+                break;
+            case NEED_UNWRAP:
+            case NEED_UNWRAP_AGAIN:
+                in.flip();
+                engine.unwrap(in,application);
+                in.compact();
+                application.clear();
+                break;
+            default:
+                break;
+        }
+    }
+
     @Test
     public void testSNICertificates() throws Exception
     {